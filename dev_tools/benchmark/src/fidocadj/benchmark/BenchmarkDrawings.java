@@ -0,0 +1,163 @@
+package fidocadj.benchmark;
+
+import java.io.*;
+import java.util.*;
+
+import fidocadj.FidoMain;
+import fidocadj.circuit.controllers.ParserActions;
+import fidocadj.circuit.model.DrawingModel;
+import fidocadj.geom.DrawingSize;
+import fidocadj.globals.Globals;
+import fidocadj.graphic.DimensionG;
+import fidocadj.graphic.PointG;
+import fidocadj.layers.StandardLayers;
+import fidocadj.primitives.GraphicPrimitive;
+import fidocadj.primitives.MacroDesc;
+
+/** BenchmarkDrawings: the drawings employed by the benchmarks.
+
+    Three drawings are available:
+    <ul>
+    <li>"small" is the test pattern of the export tests, containing all the
+        primitives except macros,</li>
+    <li>"large" is the same pattern repeated on a grid of TILES x TILES
+        copies,</li>
+    <li>"circuit" is the LED circuit of the export tests, mostly made of
+        macros, repeated in the same way.</li>
+    </ul>
+    The macros are taken from the standard libraries, which are read only
+    once.
+
+<pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+</pre>
+*/
+final class BenchmarkDrawings
+{
+    // Number of copies of the pattern in each direction.
+    static final int TILES=8;
+
+    private static Map<String, MacroDesc> library;
+
+    private BenchmarkDrawings()
+    {
+    }
+
+    /** Get the standard libraries.
+        @return the libraries.
+    */
+    static synchronized Map<String, MacroDesc> getLibrary()
+    {
+        if(library==null) {
+            DrawingModel m=new DrawingModel();
+            FidoMain.readLibrariesProbeDirectory(m, true, "");
+            library=m.getLibrary();
+        }
+        return library;
+    }
+
+    /** Get the FidoCadJ code of a drawing.
+        @param name "small", "large" or "circuit".
+        @return the code.
+        @throws IOException if the drawing can not be read.
+    */
+    static String getText(String name)
+        throws IOException
+    {
+        switch(name) {
+            case "small":
+                return readResource("test_pattern.fcd");
+            case "large":
+                return repeat(readResource("test_pattern.fcd"));
+            case "circuit":
+                return repeat(readResource("led_circuit.fcd"));
+            default:
+                throw new IOException("Unknown drawing: "+name);
+        }
+    }
+
+    /** Read and parse a drawing.
+        @param name "small", "large" or "circuit".
+        @return the drawing.
+        @throws IOException if the drawing can not be read.
+    */
+    static DrawingModel getDrawing(String name)
+        throws IOException
+    {
+        return parse(getText(name));
+    }
+
+    /** Parse some FidoCadJ code.
+        @param text the code.
+        @return the drawing.
+    */
+    static DrawingModel parse(String text)
+    {
+        DrawingModel dm=new DrawingModel();
+        dm.setLibrary(getLibrary());
+        dm.setLayers(StandardLayers.createStandardLayers());
+        new ParserActions(dm).parseString(new StringBuffer(text));
+        return dm;
+    }
+
+    /** Repeat a drawing on a grid.
+        @param text the code of the drawing.
+        @return the code of the TILES x TILES copies.
+    */
+    private static String repeat(String text)
+    {
+        DrawingModel dm=parse(text);
+        DimensionG d=DrawingSize.getImageSize(dm, 1, false,
+            new PointG(0,0));
+        StringBuilder sb=new StringBuilder();
+        for(int i=0; i<TILES; ++i) {
+            for(int j=0; j<TILES; ++j) {
+                dm=parse(text);
+                for(GraphicPrimitive g : dm.getPrimitiveVector()) {
+                    g.movePrimitive(i*(d.width+10), j*(d.height+10));
+                }
+                sb.append(new ParserActions(dm).getText(true));
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Read a drawing stored along with the benchmarks.
+        @param name the name of the file.
+        @return the contents of the file.
+        @throws IOException if the file can not be read.
+    */
+    private static String readResource(String name)
+        throws IOException
+    {
+        InputStream is=BenchmarkDrawings.class.getResourceAsStream(name);
+        if(is==null) {
+            throw new IOException("Resource not found: "+name);
+        }
+        StringBuilder sb=new StringBuilder();
+        try (Reader r=new InputStreamReader(is, Globals.encoding)) {
+            char[] buf=new char[4096];
+            int n;
+            while((n=r.read(buf))>0) {
+                sb.append(buf, 0, n);
+            }
+        }
+        return sb.toString();
+    }
+}
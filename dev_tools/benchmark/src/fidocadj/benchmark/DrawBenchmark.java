@@ -0,0 +1,116 @@
+package fidocadj.benchmark;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import fidocadj.circuit.model.DrawingModel;
+import fidocadj.circuit.views.Drawing;
+import fidocadj.geom.DrawingSize;
+import fidocadj.geom.MapCoordinates;
+import fidocadj.graphic.GraphicsInterface;
+import fidocadj.graphic.nil.GraphicsNull;
+import fidocadj.graphic.swing.Graphics2DSwing;
+
+/** DrawBenchmark: time needed by Drawing.draw to draw a drawing zoomed to
+    fit a 1024x768 area, either in a GraphicsNull (only the geometry is
+    calculated) or in a Graphics2DSwing writing in a BufferedImage.
+
+    When "changed" is true, the drawing is marked as modified before each
+    call, as it happens after an edit, and all the primitives recalculate
+    their geometry. Otherwise, the cached geometry is employed, as it
+    happens when the window is simply repainted.
+
+<pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+</pre>
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(value=1, jvmArgsAppend="-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class DrawBenchmark
+{
+    private static final int WIDTH=1024;
+    private static final int HEIGHT=768;
+
+    @Param({"small", "large", "circuit"})
+    public String drawing;
+
+    @Param({"null", "image"})
+    public String target;
+
+    @Param({"true", "false"})
+    public boolean changed;
+
+    private DrawingModel dm;
+    private Drawing drawingAgent;
+    private MapCoordinates cs;
+    private GraphicsInterface gi;
+    private Graphics2D g2d;
+
+    /** Read the drawing and prepare the graphic context.
+        @throws IOException if the drawing can not be read.
+    */
+    @Setup
+    public void setup()
+        throws IOException
+    {
+        dm=BenchmarkDrawings.getDrawing(drawing);
+        drawingAgent=new Drawing(dm);
+        cs=DrawingSize.calculateZoomToFit(dm, WIDTH, HEIGHT, true);
+        if("image".equals(target)) {
+            BufferedImage img=new BufferedImage(WIDTH, HEIGHT,
+                BufferedImage.TYPE_INT_RGB);
+            g2d=img.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+            gi=new Graphics2DSwing(g2d);
+        } else {
+            gi=new GraphicsNull();
+        }
+        gi.setZoom(cs.getXMagnitude());
+    }
+
+    /** Release the graphic context.
+    */
+    @TearDown
+    public void tearDown()
+    {
+        if(g2d!=null) {
+            g2d.dispose();
+        }
+    }
+
+    /** Draw the drawing.
+    */
+    @Benchmark
+    public void draw()
+    {
+        if(changed) {
+            dm.setChanged(true);
+        }
+        drawingAgent.draw(gi, cs);
+    }
+}
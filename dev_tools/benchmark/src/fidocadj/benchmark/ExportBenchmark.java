@@ -0,0 +1,119 @@
+package fidocadj.benchmark;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import fidocadj.circuit.model.DrawingModel;
+import fidocadj.circuit.views.Export;
+import fidocadj.export.*;
+import fidocadj.geom.MapCoordinates;
+import fidocadj.graphic.nil.GraphicsNull;
+
+/** ExportBenchmark: time needed to export a drawing in a file, with each
+    of the implementations of ExportInterface. The "circuit" drawing is not
+    employed, since the export of some macros to pcb-rnd fails.
+
+<pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+</pre>
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(value=1, jvmArgsAppend="-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class ExportBenchmark
+{
+    @Param({"small", "large"})
+    public String drawing;
+
+    @Param({"svg", "eps", "pdf", "pgf", "scr", "pcb", "fcd"})
+    public String format;
+
+    private DrawingModel dm;
+    private MapCoordinates cs;
+    private File file;
+
+    /** Read the drawing and create the output file.
+        @throws IOException if something goes wrong.
+    */
+    @Setup
+    public void setup()
+        throws IOException
+    {
+        dm=BenchmarkDrawings.getDrawing(drawing);
+        cs=new MapCoordinates();
+        cs.setMagnitudes(2, 2);
+        file=File.createTempFile("fidocadj_benchmark", "."+format);
+    }
+
+    /** Delete the output file.
+    */
+    @TearDown
+    public void tearDown()
+    {
+        if(!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /** Create the exporter.
+        @return the exporter.
+        @throws IOException if the file can not be created.
+    */
+    private ExportInterface createExporter()
+        throws IOException
+    {
+        switch(format) {
+            case "svg":
+                return new ExportSVG(file, new GraphicsNull());
+            case "eps":
+                return new ExportEPS(file);
+            case "pdf":
+                return new ExportPDF(file, new GraphicsNull());
+            case "pgf":
+                return new ExportPGF(file);
+            case "scr":
+                return new ExportEagle(file);
+            case "pcb":
+                return new ExportPCBRND(file);
+            default:
+                ExportFidoCad ef=new ExportFidoCad(file);
+                ef.setExtensions(true);
+                return ef;
+        }
+    }
+
+    /** Export the drawing.
+        @throws IOException if the file can not be written.
+    */
+    @Benchmark
+    public void export()
+        throws IOException
+    {
+        ExportInterface ei=createExporter();
+        Export e=new Export(dm);
+        e.exportHeader(ei, cs);
+        e.exportDrawing(ei, false, cs);
+        ei.exportEnd();
+    }
+}
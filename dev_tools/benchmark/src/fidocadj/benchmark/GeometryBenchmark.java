@@ -0,0 +1,124 @@
+package fidocadj.benchmark;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import fidocadj.circuit.controllers.EditorActions;
+import fidocadj.circuit.controllers.SelectionActions;
+import fidocadj.circuit.model.DrawingModel;
+import fidocadj.geom.DrawingSize;
+import fidocadj.geom.MapCoordinates;
+import fidocadj.graphic.DimensionG;
+import fidocadj.graphic.PointG;
+
+/** GeometryBenchmark: time needed to select the primitives with a click
+    (EditorActions.handleSelection) or with a rectangle
+    (EditorActions.selectRect), and to calculate the size of the drawing
+    (DrawingSize.getImageSize). The points and the rectangles are chosen
+    at random in the drawing, always in the same sequence.
+
+<pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+</pre>
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(value=1, jvmArgsAppend="-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class GeometryBenchmark
+{
+    private static final int POINTS=1024;
+
+    @Param({"small", "large", "circuit"})
+    public String drawing;
+
+    private DrawingModel dm;
+    private SelectionActions sa;
+    private EditorActions ea;
+    private MapCoordinates cs;
+
+    // Points in screen coordinates, rectangles in logical coordinates.
+    private final int[] xs=new int[POINTS];
+    private final int[] ys=new int[POINTS];
+    private final int[] rx=new int[POINTS];
+    private final int[] ry=new int[POINTS];
+    private final int[] rw=new int[POINTS];
+    private final int[] rh=new int[POINTS];
+    private int index;
+
+    /** Read the drawing and choose the points and the rectangles.
+        @throws IOException if the drawing can not be read.
+    */
+    @Setup
+    public void setup()
+        throws IOException
+    {
+        dm=BenchmarkDrawings.getDrawing(drawing);
+        sa=new SelectionActions(dm);
+        ea=new EditorActions(dm, sa, null);
+        cs=DrawingSize.calculateZoomToFit(dm, 1024, 768, true);
+        PointG o=new PointG(0,0);
+        DimensionG d=DrawingSize.getImageSize(dm, 1, true, o);
+        Random r=new Random(42);
+        for(int i=0; i<POINTS; ++i) {
+            int x=o.x+r.nextInt(d.width+1);
+            int y=o.y+r.nextInt(d.height+1);
+            xs[i]=cs.mapX(x, y);
+            ys[i]=cs.mapY(x, y);
+            rw[i]=1+r.nextInt(d.width/4+1);
+            rh[i]=1+r.nextInt(d.height/4+1);
+            rx[i]=x-rw[i]/2;
+            ry[i]=y-rh[i]/2;
+        }
+    }
+
+    /** Select the primitive closest to a point, as done by a click.
+    */
+    @Benchmark
+    public void handleSelection()
+    {
+        index=(index+1)%POINTS;
+        ea.handleSelection(cs, xs[index], ys[index], false);
+    }
+
+    /** Select the primitives in a rectangle.
+        @return true if something has been selected.
+    */
+    @Benchmark
+    public boolean selectRect()
+    {
+        index=(index+1)%POINTS;
+        sa.setSelectionAll(false);
+        return ea.selectRect(rx[index], ry[index], rw[index], rh[index]);
+    }
+
+    /** Calculate the size of the drawing.
+        @return the size.
+    */
+    @Benchmark
+    public DimensionG getImageSize()
+    {
+        return DrawingSize.getImageSize(dm, 1, true, new PointG(0,0));
+    }
+}
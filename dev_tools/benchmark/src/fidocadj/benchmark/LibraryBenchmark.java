@@ -0,0 +1,95 @@
+package fidocadj.benchmark;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import fidocadj.FidoMain;
+import fidocadj.circuit.controllers.LibraryLoader;
+import fidocadj.circuit.model.DrawingModel;
+import fidocadj.primitives.MacroDesc;
+
+/** LibraryBenchmark: time needed to load the standard libraries, as done
+    at startup. When "index" is true, the libraries are read from an index
+    created before the measurement (see LibraryLoader.setIndexDirectory).
+
+<pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+</pre>
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(value=1, jvmArgsAppend="-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class LibraryBenchmark
+{
+    @Param({"false", "true"})
+    public boolean index;
+
+    private File indexDirectory;
+
+    /** Create the index, if needed.
+        @throws IOException if the index directory can not be created.
+    */
+    @Setup
+    public void setup()
+        throws IOException
+    {
+        if(index) {
+            indexDirectory=File.createTempFile("fidocadj_benchmark", "");
+            if(!indexDirectory.delete() || !indexDirectory.mkdir()) {
+                throw new IOException("Can not create "+indexDirectory);
+            }
+            LibraryLoader.setIndexDirectory(indexDirectory);
+            load();
+        }
+    }
+
+    /** Delete the index.
+    */
+    @TearDown
+    public void tearDown()
+    {
+        LibraryLoader.setIndexDirectory(null);
+        if(indexDirectory!=null) {
+            File[] files=indexDirectory.listFiles();
+            if(files!=null) {
+                for(File f : files) {
+                    f.delete();
+                }
+            }
+            indexDirectory.delete();
+        }
+    }
+
+    /** Load the libraries.
+        @return the libraries.
+    */
+    @Benchmark
+    public Map<String, MacroDesc> load()
+    {
+        DrawingModel dm=new DrawingModel();
+        FidoMain.readLibrariesProbeDirectory(dm, true, "");
+        return dm.getLibrary();
+    }
+}
@@ -0,0 +1,77 @@
+package fidocadj.benchmark;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import fidocadj.circuit.controllers.ParserActions;
+import fidocadj.circuit.model.DrawingModel;
+import fidocadj.layers.LayerDesc;
+import fidocadj.layers.StandardLayers;
+import fidocadj.primitives.MacroDesc;
+
+/** ParseBenchmark: time needed by ParserActions.parseString to read a
+    drawing in a new model.
+
+<pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+</pre>
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(value=1, jvmArgsAppend="-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class ParseBenchmark
+{
+    @Param({"small", "large", "circuit"})
+    public String drawing;
+
+    private String text;
+    private Map<String, MacroDesc> library;
+    private List<LayerDesc> layers;
+
+    /** Prepare the code to be parsed.
+        @throws IOException if the drawing can not be read.
+    */
+    @Setup
+    public void setup()
+        throws IOException
+    {
+        text=BenchmarkDrawings.getText(drawing);
+        library=BenchmarkDrawings.getLibrary();
+        layers=StandardLayers.createStandardLayers();
+    }
+
+    /** Parse the drawing.
+        @return the drawing, so that the work is not optimized away.
+    */
+    @Benchmark
+    public DrawingModel parseString()
+    {
+        DrawingModel dm=new DrawingModel();
+        dm.setLibrary(library);
+        dm.setLayers(layers);
+        new ParserActions(dm).parseString(new StringBuffer(text));
+        return dm;
+    }
+}
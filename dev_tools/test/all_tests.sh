@@ -47,6 +47,41 @@ then
         test_failed=1
 fi
 
+
+cd ../geometry
+./test_geometry.sh
+
+if test $? != 0
+then
+        test_failed=1
+fi
+
+
+cd ../concurrency
+./test_concurrency.sh
+
+if test $? != 0
+then
+        test_failed=1
+fi
+
+
+cd ../extents
+./test_extents.sh
+
+if test $? != 0
+then
+        test_failed=1
+fi
+
+cd ../undo
+./test_undo.sh
+
+if test $? != 0
+then
+        test_failed=1
+fi
+
 cd ..
 
 
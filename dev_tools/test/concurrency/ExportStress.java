@@ -0,0 +1,295 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import fidocadj.FidoMain;
+import fidocadj.circuit.controllers.ParserActions;
+import fidocadj.circuit.model.DrawingModel;
+import fidocadj.circuit.views.Export;
+import fidocadj.export.*;
+import fidocadj.geom.MapCoordinates;
+import fidocadj.globals.Globals;
+import fidocadj.graphic.nil.GraphicsNull;
+import fidocadj.layers.StandardLayers;
+import fidocadj.primitives.MacroDesc;
+
+/** Export several drawings in all the formats at the same time, from many
+    threads, and check that the files obtained are identical, byte by byte,
+    to the ones obtained by exporting the drawings one after the other.
+
+    Since the threads do not always run at the same time, the vector formats
+    are also checked by exporting two drawings with two exporters which are
+    both open: each drawing must end up only in its own file.
+
+    Usage: java ExportStress outputdir drawing.fcd ...
+
+<pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+</pre>
+*/
+public final class ExportStress
+{
+    private static final String[] FORMATS={"png", "jpg", "svg", "eps",
+        "pdf", "pgf", "scr", "pcb", "fcd", "fcda"};
+    private static final String[] VECTOR_FORMATS={"svg", "eps", "pdf",
+        "pgf", "scr", "pcb", "fcd"};
+    private static final int THREADS=8;
+    private static final int ROUNDS=5;
+
+    private static Map<String, MacroDesc> library;
+
+    private ExportStress()
+    {
+    }
+
+    /** Read a drawing.
+        @param in the drawing to be read.
+        @return the drawing.
+        @throws IOException if the drawing can not be read.
+    */
+    private static DrawingModel readDrawing(File in)
+        throws IOException
+    {
+        Globals.useThreadSizes();
+        DrawingModel pP=new DrawingModel();
+        pP.setLibrary(copyLibrary());
+        pP.setLayers(StandardLayers.createStandardLayers());
+        ParserActions pa=new ParserActions(pP);
+        try (BufferedReader br=new BufferedReader(new FileReader(in))) {
+            pa.parseReader(br);
+        }
+        return pP;
+    }
+
+    /** Read a drawing and export it.
+        @param in the drawing to be read.
+        @param out the file to be written.
+        @param format the export format.
+        @return null if the export was successful, or a description of the
+            error.
+    */
+    private static String export(File in, File out, String format)
+    {
+        try {
+            ExportGraphic.export(out, readDrawing(in), format, 2, true,
+                false, true, true, false);
+        } catch (IOException|RuntimeException eE) {
+            return eE.toString();
+        }
+        return null;
+    }
+
+    /** Create the exporter for a vector format.
+        @param format the format.
+        @param out the file to be written.
+        @return the exporter.
+        @throws IOException if the file can not be created.
+    */
+    private static ExportInterface createExporter(String format, File out)
+        throws IOException
+    {
+        switch(format) {
+            case "svg":
+                return new ExportSVG(out, new GraphicsNull());
+            case "eps":
+                return new ExportEPS(out);
+            case "pdf":
+                return new ExportPDF(out, new GraphicsNull());
+            case "pgf":
+                return new ExportPGF(out);
+            case "scr":
+                return new ExportEagle(out);
+            case "pcb":
+                return new ExportPCBRND(out);
+            default:
+                ExportFidoCad ef=new ExportFidoCad(out);
+                ef.setExtensions(true);
+                return ef;
+        }
+    }
+
+    /** Export two drawings with two exporters.
+        @param in the two drawings.
+        @param out the two files to be written.
+        @param format the export format.
+        @param interleaved if false, the second drawing is exported after
+            the first one is complete. If true, the two exporters are open
+            at the same time.
+        @throws IOException if something goes wrong.
+    */
+    private static void exportPair(File[] in, File[] out, String format,
+        boolean interleaved)
+        throws IOException
+    {
+        MapCoordinates m=new MapCoordinates();
+        m.setMagnitudes(2, 2);
+        Export[] e=new Export[2];
+        ExportInterface[] ei=new ExportInterface[2];
+        for(int i=0; i<2; ++i) {
+            e[i]=new Export(readDrawing(in[i]));
+            ei[i]=createExporter(format, out[i]);
+        }
+        if(interleaved) {
+            e[0].exportHeader(ei[0], m);
+            e[1].exportHeader(ei[1], m);
+            e[0].exportDrawing(ei[0], false, m);
+            e[1].exportDrawing(ei[1], false, m);
+            ei[0].exportEnd();
+            ei[1].exportEnd();
+        } else {
+            for(int i=0; i<2; ++i) {
+                e[i].exportHeader(ei[i], m);
+                e[i].exportDrawing(ei[i], false, m);
+                ei[i].exportEnd();
+            }
+        }
+    }
+
+    /** Copy the libraries, so that the macros are never shared between two
+        drawings.
+        @return the copy.
+    */
+    private static Map<String, MacroDesc> copyLibrary()
+    {
+        Map<String, MacroDesc> copy=new TreeMap<>();
+        for(Map.Entry<String, MacroDesc> e : library.entrySet()) {
+            MacroDesc md=e.getValue();
+            MacroDesc c=new MacroDesc(md.key, md.name, md.description,
+                md.category, md.library, md.filename);
+            c.level=md.level;
+            copy.put(e.getKey(), c);
+        }
+        return copy;
+    }
+
+    /** Read the contents of a file. The creation date written in the EPS
+        files is removed, since it changes from one export to the other.
+        @param f the file.
+        @return the contents, or null if the file does not exist.
+        @throws IOException if the file can not be read.
+    */
+    private static byte[] read(File f)
+        throws IOException
+    {
+        if(!f.exists()) {
+            return null;
+        }
+        byte[] b=Files.readAllBytes(f.toPath());
+        if(f.getName().endsWith(".eps")) {
+            String s=new String(b, "ISO-8859-1");
+            s=s.replaceFirst("%%CreationDate: [^\n]*", "");
+            b=s.getBytes("ISO-8859-1");
+        }
+        return b;
+    }
+
+    /** Run the test.
+        @param args the output directory, followed by the drawings.
+        @throws Exception if something goes wrong.
+    */
+    public static void main(String... args)
+        throws Exception
+    {
+        DrawingModel lib=new DrawingModel();
+        FidoMain.readLibrariesProbeDirectory(lib, true, "");
+        library=lib.getLibrary();
+
+        File serial=new File(args[0], "serial");
+        File parallel=new File(args[0], "parallel");
+        serial.mkdirs();
+        parallel.mkdirs();
+
+        List<File> inputs=new ArrayList<>();
+        List<String> formats=new ArrayList<>();
+        List<String> names=new ArrayList<>();
+        List<String> errors=new ArrayList<>();
+        for(int i=1; i<args.length; ++i) {
+            for(String format : FORMATS) {
+                inputs.add(new File(args[i]));
+                formats.add(format);
+                names.add(i+"_"+new File(args[i]).getName()+"."+format);
+            }
+        }
+
+        // The reference: one export after the other.
+        for(int i=0; i<inputs.size(); ++i) {
+            errors.add(export(inputs.get(i), new File(serial, names.get(i)),
+                formats.get(i)));
+        }
+
+        // All the exports at the same time, in a different order. This is
+        // repeated, since the threads do not always run at the same time.
+        int wrong=0;
+        for(int k=0; k<ROUNDS; ++k) {
+            ExecutorService executor=Executors.newFixedThreadPool(THREADS);
+            List<Future<String>> results=new ArrayList<>();
+            for(int i=inputs.size()-1; i>=0; --i) {
+                final int j=i;
+                results.add(0, executor.submit(() -> export(inputs.get(j),
+                    new File(parallel, names.get(j)), formats.get(j))));
+            }
+            executor.shutdown();
+
+            for(int i=0; i<inputs.size(); ++i) {
+                String e=results.get(i).get();
+                if(!Objects.equals(e, errors.get(i))
+                    || !Arrays.equals(read(new File(serial, names.get(i))),
+                        read(new File(parallel, names.get(i)))))
+                {
+                    System.err.println("Different results for "+
+                        names.get(i));
+                    ++wrong;
+                }
+            }
+        }
+
+        // Two exporters open at the same time, for the drawings which can
+        // be exported without errors.
+        int pairs=0;
+        for(int i=1; i+1<args.length; ++i) {
+            File[] in={new File(args[i]), new File(args[i+1])};
+            for(String format : VECTOR_FORMATS) {
+                String[] n={"a"+i+"."+format, "b"+i+"."+format};
+                File[] s={new File(serial, n[0]), new File(serial, n[1])};
+                File[] p={new File(parallel, n[0]), new File(parallel, n[1])};
+                try {
+                    exportPair(in, s, format, false);
+                } catch (IOException|RuntimeException eE) {
+                    continue;
+                }
+                exportPair(in, p, format, true);
+                ++pairs;
+                for(int j=0; j<2; ++j) {
+                    if(!Arrays.equals(read(s[j]), read(p[j]))) {
+                        System.err.println("Different results for "+
+                            in[j].getName()+" exported with "+in[1-j]
+                            .getName()+" in "+format);
+                        ++wrong;
+                    }
+                }
+            }
+        }
+
+        System.err.println(ROUNDS*inputs.size()+" exports, "+THREADS+
+            " threads, "+pairs+" interleaved pairs, "+wrong+
+            " different results.");
+        System.exit(wrong==0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,24 @@
+#!/bin/sh
+
+echo "Test the export of many drawings at the same time"
+echo "-------------------------------------------------"
+echo
+
+test_failed=0
+
+rm -rf output
+javac -cp ../../jar/fidocadj.jar -d . ExportStress.java
+if java -Djava.awt.headless=true -cp ../../jar/fidocadj.jar:. ExportStress \
+    output ../export/original/*.fcd ../size/complex/*.fcd \
+    ../size/primitives/*.fcd >output_stress.txt 2>&1
+then
+  echo "  Export:     OK"
+  rm -rf output
+else
+  printf "\033[1mTest failed: exports done at the same time differ\033[0m\n"
+  grep "^Different" output_stress.txt
+  test_failed=1
+fi
+rm -f ExportStress*.class
+
+exit $test_failed
@@ -0,0 +1,285 @@
+import java.io.*;
+import java.util.*;
+
+import fidocadj.FidoMain;
+import fidocadj.circuit.controllers.ParserActions;
+import fidocadj.circuit.model.DrawingModel;
+import fidocadj.circuit.views.Drawing;
+import fidocadj.geom.MapCoordinates;
+import fidocadj.globals.Globals;
+import fidocadj.graphic.nil.GraphicsNull;
+import fidocadj.layers.LayerDesc;
+import fidocadj.layers.StandardLayers;
+import fidocadj.primitives.GraphicPrimitive;
+import fidocadj.primitives.MacroDesc;
+
+/** Check that the extents of a drawing maintained by DrawingModel (see
+    DrawingModel.trackExtremePoints) are identical to the ones obtained by
+    drawing the whole drawing in a GraphicsNull object, as it was done
+    before. The drawings given on the command line and many random drawings
+    are checked at different zooms, while primitives are added, removed,
+    moved and layers are hidden.
+
+<pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+</pre>
+*/
+public final class ExtentsStress
+{
+    private static final double[] ZOOMS={0.25, 0.33, 1, 1.37, 2, 7.5, 20};
+    private static final String[] FONTS={"Courier New", "Helvetica",
+        "Times"};
+    private static final int DRAWINGS=200;
+    private static final int EDITS=60;
+
+    private static final Random rnd=new Random(19);
+    private static List<String> macros;
+    private static Map<String, MacroDesc> library;
+    private static int failures;
+
+    private ExtentsStress()
+    {
+    }
+
+    /** Get the extents of a drawing as it was done before, by drawing all
+        the primitives.
+        @param dm the drawing.
+        @param z the zoom.
+        @return the extents (xmin, ymin, xmax, ymax).
+    */
+    private static int[] drawnExtents(DrawingModel dm, double z)
+    {
+        MapCoordinates m=new MapCoordinates();
+        m.setMagnitudesNoCheck(z, z);
+        dm.setChanged(true);
+        new Drawing(dm).draw(new GraphicsNull(), m);
+        dm.setChanged(true);
+        return new int[] {m.getXMin(), m.getYMin(), m.getXMax(),
+            m.getYMax()};
+    }
+
+    /** Get the extents of a drawing maintained by the model.
+        @param dm the drawing.
+        @param z the zoom.
+        @return the extents (xmin, ymin, xmax, ymax).
+    */
+    private static int[] trackedExtents(DrawingModel dm, double z)
+    {
+        MapCoordinates m=new MapCoordinates();
+        m.setMagnitudesNoCheck(z, z);
+        dm.trackExtremePoints(m);
+        return new int[] {m.getXMin(), m.getYMin(), m.getXMax(),
+            m.getYMax()};
+    }
+
+    /** Compare the two ways of getting the extents.
+        @param dm the drawing.
+        @param z the zoom.
+        @param name the description of the test case.
+    */
+    private static void check(DrawingModel dm, double z, String name)
+    {
+        // The tracked extents are obtained twice, to check also the values
+        // kept from the previous query.
+        int[] t=trackedExtents(dm, z);
+        int[] d=drawnExtents(dm, z);
+        int[] u=trackedExtents(dm, z);
+        if(!Arrays.equals(t, d) || !Arrays.equals(u, d)) {
+            if(++failures<=20) {
+                System.out.println("Different extents for "+name
+                    +" at zoom "+z+": drawn "+Arrays.toString(d)
+                    +", tracked "+Arrays.toString(t)+" "
+                    +Arrays.toString(u));
+            }
+        }
+    }
+
+    /** Create a new drawing.
+        @return the drawing, empty.
+    */
+    private static DrawingModel newDrawing()
+    {
+        DrawingModel dm=new DrawingModel();
+        dm.setLibrary(MacroDesc.copyLibrary(library));
+        dm.setLayers(StandardLayers.createStandardLayers());
+        return dm;
+    }
+
+    /** Get a random coordinate.
+        @return the coordinate.
+    */
+    private static int c()
+    {
+        return rnd.nextInt(400)-100;
+    }
+
+    /** Get a random primitive, in the FidoCadJ format.
+        @return the line describing the primitive.
+    */
+    private static String randomPrimitive()
+    {
+        int l=rnd.nextInt(LayerDesc.MAX_LAYERS);
+        switch(rnd.nextInt(12)) {
+            case 0:
+                return "LI "+c()+" "+c()+" "+c()+" "+c()+" "+l;
+            case 1:
+                return (rnd.nextBoolean()?"RV ":"RP ")+c()+" "+c()+" "+c()
+                    +" "+c()+" "+l;
+            case 2:
+                return (rnd.nextBoolean()?"EV ":"EP ")+c()+" "+c()+" "+c()
+                    +" "+c()+" "+l;
+            case 3:
+                return "BE "+c()+" "+c()+" "+c()+" "+c()+" "+c()+" "+c()
+                    +" "+c()+" "+c()+" "+l;
+            case 4:
+                return "PV "+c()+" "+c()+" "+c()+" "+c()+" "+c()+" "+c()
+                    +" "+l;
+            case 5:
+                return "CV "+rnd.nextInt(2)+" "+c()+" "+c()+" "+c()+" "+c()
+                    +" "+c()+" "+c()+" "+l;
+            case 6:
+                return "SA "+c()+" "+c()+" "+l;
+            case 7:
+                return "PL "+c()+" "+c()+" "+c()+" "+c()+" "
+                    +(1+rnd.nextInt(10))+" "+l;
+            case 8:
+                return "PA "+c()+" "+c()+" "+(2+rnd.nextInt(20))+" "
+                    +(2+rnd.nextInt(20))+" "+(1+rnd.nextInt(5))+" "
+                    +rnd.nextInt(3)+" "+l;
+            case 9:
+                return "TY "+c()+" "+c()+" "+(2+rnd.nextInt(10))+" "
+                    +(2+rnd.nextInt(10))+" "+rnd.nextInt(360)+" "
+                    +rnd.nextInt(8)+" "+l+" * "
+                    +(rnd.nextBoolean()?"Text":"V_{cc}^{2} x");
+            default:
+                return "MC "+c()+" "+c()+" "+rnd.nextInt(4)+" "
+                    +rnd.nextInt(2)+" "+macros.get(rnd.nextInt(macros.size()));
+        }
+    }
+
+    /** Parse some primitives.
+        @param text the primitives, in the FidoCadJ format.
+        @return the primitives.
+    */
+    private static List<GraphicPrimitive> parse(String text)
+    {
+        DrawingModel dm=newDrawing();
+        new ParserActions(dm).parseString(new StringBuffer(text));
+        return new ArrayList<GraphicPrimitive>(dm.getPrimitiveVector());
+    }
+
+    /** Modify a drawing at random, as an editor would do.
+        @param dm the drawing.
+    */
+    private static void edit(DrawingModel dm)
+    {
+        List<GraphicPrimitive> v=dm.getPrimitiveVector();
+        int op=rnd.nextInt(6);
+        if(v.isEmpty()) {
+            op=0;
+        }
+        GraphicPrimitive g;
+        switch(op) {
+            case 0:
+                for(GraphicPrimitive p : parse(randomPrimitive())) {
+                    dm.addPrimitive(p, null);
+                }
+                break;
+            case 1:
+                dm.removePrimitive(v.get(rnd.nextInt(v.size())));
+                break;
+            case 2:
+                g=v.get(rnd.nextInt(v.size()));
+                g.movePrimitive(rnd.nextInt(100)-50, rnd.nextInt(100)-50);
+                dm.updatePrimitiveIndex(g);
+                break;
+            case 3:
+                g=v.get(rnd.nextInt(v.size()));
+                g.rotatePrimitive(false, 0, 0);
+                dm.updatePrimitiveIndex(g);
+                break;
+            case 4:
+                LayerDesc l=dm.getLayers().get(
+                    rnd.nextInt(LayerDesc.MAX_LAYERS));
+                l.setVisible(!l.isVisible());
+                break;
+            default:
+                dm.setTextFont(FONTS[rnd.nextInt(FONTS.length)],
+                    3+rnd.nextInt(6), null);
+                break;
+        }
+    }
+
+    /** Check a drawing at all the zooms, then while it is edited.
+        @param dm the drawing.
+        @param name the description of the drawing.
+    */
+    private static void checkDrawing(DrawingModel dm, String name)
+    {
+        for(double z : ZOOMS) {
+            check(dm, z, name);
+        }
+        double z=1;
+        for(int i=0; i<EDITS; ++i) {
+            edit(dm);
+            // Most of the times the zoom is kept, as it happens when the
+            // size of the drawing is obtained after each modification.
+            if(rnd.nextInt(4)==0) {
+                z=ZOOMS[rnd.nextInt(ZOOMS.length)];
+            }
+            check(dm, z, name+" (edit "+i+")");
+        }
+    }
+
+    /** Run the test.
+        @param args drawings to be checked, in addition to the random ones.
+        @throws Exception if something goes wrong.
+    */
+    public static void main(String... args)
+        throws Exception
+    {
+        DrawingModel lib=new DrawingModel();
+        FidoMain.readLibrariesProbeDirectory(lib, true, "");
+        library=lib.getLibrary();
+        macros=new ArrayList<String>(library.keySet());
+        Globals.useThreadSizes();
+
+        for(String a : args) {
+            DrawingModel dm=newDrawing();
+            try (BufferedReader br=new BufferedReader(new FileReader(a))) {
+                new ParserActions(dm).parseReader(br);
+            }
+            checkDrawing(dm, a);
+        }
+        for(int i=0; i<DRAWINGS; ++i) {
+            DrawingModel dm=newDrawing();
+            StringBuilder s=new StringBuilder();
+            int n=rnd.nextInt(100);
+            for(int j=0; j<n; ++j) {
+                s.append(randomPrimitive()).append('\n');
+            }
+            new ParserActions(dm).parseString(new StringBuffer(s));
+            checkDrawing(dm, "random drawing "+i);
+        }
+        if(failures>0) {
+            System.out.println(failures+" differences found");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+#!/bin/sh
+
+echo "Test the size of the drawings kept up to date by the model"
+echo "----------------------------------------------------------"
+echo
+
+test_failed=0
+
+javac -cp ../../jar/fidocadj.jar -d . ExtentsStress.java
+if java -Djava.awt.headless=true -cp ../../jar/fidocadj.jar:. ExtentsStress \
+    ../export/original/*.fcd ../size/complex/*.fcd ../size/primitives/*.fcd
+then
+  echo "  Extents:    OK"
+else
+  printf "\033[1mTest failed: the size of the drawing is not calculated correctly\033[0m\n"
+  test_failed=1
+fi
+rm -f ExtentsStress*.class
+
+exit $test_failed
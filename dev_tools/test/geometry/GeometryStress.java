@@ -0,0 +1,137 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import fidocadj.geom.GeometricDistances;
+
+/** Call the methods of GeometricDistances from many threads at the same
+    time and check that the results are identical to the ones obtained by
+    calling them from a single thread.
+
+<pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+</pre>
+*/
+public final class GeometryStress
+{
+    private static final int CASES=20000;
+    private static final int THREADS=8;
+    private static final int ROUNDS=50;
+
+    private static final int[][] data=new int[CASES][];
+    private static final double[] expected=new double[CASES];
+
+    private GeometryStress()
+    {
+    }
+
+    /** Calculate the result of a test case. The first element of the data
+        chooses the method to be called.
+        @param d the data of the test case.
+        @return the result.
+    */
+    private static double calculate(int[] d)
+    {
+        switch(d[0]) {
+            case 0:
+                return GeometricDistances.pointToSegment(d[1], d[2], d[3],
+                    d[4], d[5], d[6]);
+            case 1:
+                return GeometricDistances.pointToSegment(d[1]/3.0, d[2]/3.0,
+                    d[3]/3.0, d[4]/3.0, d[5]/3.0, d[6]/3.0);
+            case 2:
+                return GeometricDistances.pointToBezier(d[1], d[2], d[3],
+                    d[4], d[5], d[6], d[7], d[8], d[9], d[10]);
+            case 3:
+                return GeometricDistances.pointInEllipse(d[1], d[2],
+                    Math.abs(d[3]), Math.abs(d[4]), d[5], d[6]) ? 1 : 0;
+            case 4:
+                return GeometricDistances.pointToEllipse(d[1], d[2],
+                    Math.abs(d[3]), Math.abs(d[4]), d[5], d[6]);
+            case 5:
+                return GeometricDistances.pointToRectangle(d[1], d[2],
+                    Math.abs(d[3]), Math.abs(d[4]), d[5], d[6]);
+            default:
+                // Polygon: d[1], d[2] is the point, then the vertices.
+                int n=(d.length-3)/2;
+                int[] xp=new int[n];
+                int[] yp=new int[n];
+                for(int i=0; i<n; ++i) {
+                    xp[i]=d[3+2*i];
+                    yp[i]=d[4+2*i];
+                }
+                return GeometricDistances.pointInPolygon(xp, yp, n,
+                    d[1], d[2]) ? 1 : 0;
+        }
+    }
+
+    /** Create the test cases and calculate the expected results.
+    */
+    private static void createCases()
+    {
+        Random r=new Random(1234);
+        for(int i=0; i<CASES; ++i) {
+            int type=r.nextInt(7);
+            int n=type==6 ? 3+2*(3+r.nextInt(6)) : 11;
+            int[] d=new int[n];
+            d[0]=type;
+            for(int j=1; j<n; ++j) {
+                d[j]=r.nextInt(400)-200;
+            }
+            data[i]=d;
+            expected[i]=calculate(d);
+        }
+    }
+
+    /** Run the test.
+        @param args not used.
+        @throws InterruptedException if the test is interrupted.
+    */
+    public static void main(String... args)
+        throws InterruptedException
+    {
+        createCases();
+        AtomicInteger errors=new AtomicInteger();
+        ExecutorService executor=Executors.newFixedThreadPool(THREADS);
+        for(int t=0; t<THREADS; ++t) {
+            final int start=t*CASES/THREADS;
+            executor.execute(() -> {
+                for(int k=0; k<ROUNDS; ++k) {
+                    for(int i=0; i<CASES; ++i) {
+                        int c=(start+i)%CASES;
+                        try {
+                            if(Double.compare(calculate(data[c]),
+                                expected[c])!=0)
+                            {
+                                errors.incrementAndGet();
+                            }
+                        } catch (RuntimeException eE) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+        System.out.println(THREADS+" threads, "+(THREADS*ROUNDS*CASES)+
+            " calls, "+errors.get()+" wrong results.");
+        System.exit(errors.get()==0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,19 @@
+#!/bin/sh
+
+echo "Test the geometric calculations done by many threads at the same time"
+echo "---------------------------------------------------------------------"
+echo
+
+test_failed=0
+
+javac -cp ../../jar/fidocadj.jar -d . GeometryStress.java
+if java -cp ../../jar/fidocadj.jar:. GeometryStress
+then
+  echo "  Geometry:   OK"
+else
+  printf "\033[1mTest failed: results differ when computed by many threads\033[0m\n"
+  test_failed=1
+fi
+rm -f GeometryStress*.class
+
+exit $test_failed
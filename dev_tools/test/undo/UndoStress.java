@@ -0,0 +1,368 @@
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+import fidocadj.FidoMain;
+import fidocadj.circuit.controllers.ParserActions;
+import fidocadj.circuit.controllers.UndoActions;
+import fidocadj.circuit.model.DrawingModel;
+import fidocadj.layers.LayerDesc;
+import fidocadj.layers.StandardLayers;
+import fidocadj.primitives.GraphicPrimitive;
+import fidocadj.primitives.MacroDesc;
+import fidocadj.undo.UndoManager;
+import fidocadj.undo.UndoState;
+
+/** Check that the undo states, which only contain the differences with
+    the previous state (see UndoActions), restore exactly the drawing which
+    was saved. Random edits are done on the drawings given on the command
+    line and on many random drawings, with undo and redo operations in
+    between. After each operation, the drawing is compared with the one
+    obtained by parsing again the whole text saved with the state.
+
+    The test also brings the drawing directly to states which are not
+    consecutive to the current one, and back, as UndoActions does when the
+    undo buffer and the drawing do not correspond. This is done by calling
+    UndoActions.restoreState with reflection.
+
+<pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+</pre>
+*/
+public final class UndoStress
+{
+    private static final String[] FONTS={"Courier New", "Helvetica",
+        "Times"};
+    private static final int DRAWINGS=100;
+    private static final int OPERATIONS=300;
+    // Same value as in UndoActions.
+    private static final int MAX_UNDO=100;
+
+    private static final Random rnd=new Random(4);
+    private static List<String> macros;
+    private static Map<String, MacroDesc> library;
+    private static Field managerField;
+    private static Method restoreMethod;
+    private static int failures;
+    private static int checks;
+
+    // The drawing being tested and the text of each saved state, in the
+    // same order as in the undo buffer.
+    private DrawingModel dm;
+    private ParserActions pa;
+    private UndoActions ua;
+    private final List<String> saved=new ArrayList<String>();
+    // Position of the current state, as in UndoManager.
+    private int pointer;
+    private boolean redoable;
+    private final String name;
+
+    /** Standard constructor.
+        @param n the description of the drawing.
+    */
+    private UndoStress(String n)
+    {
+        name=n;
+    }
+
+    /** Create a new drawing.
+        @return the drawing, empty.
+    */
+    private static DrawingModel newDrawing()
+    {
+        DrawingModel d=new DrawingModel();
+        d.setLibrary(MacroDesc.copyLibrary(library));
+        d.setLayers(StandardLayers.createStandardLayers());
+        return d;
+    }
+
+    /** Get the text of a drawing, after parsing it again.
+        @param text the text of the drawing.
+        @return the text obtained.
+    */
+    private static String reparse(String text)
+    {
+        DrawingModel d=newDrawing();
+        ParserActions p=new ParserActions(d);
+        p.parseString(new StringBuffer(text));
+        return p.getText(true).toString();
+    }
+
+    /** Get a random coordinate.
+        @return the coordinate.
+    */
+    private static int c()
+    {
+        return rnd.nextInt(400)-100;
+    }
+
+    /** Get a random primitive, in the FidoCadJ format.
+        @return the line describing the primitive.
+    */
+    private static String randomPrimitive()
+    {
+        int l=rnd.nextInt(LayerDesc.MAX_LAYERS);
+        switch(rnd.nextInt(10)) {
+            case 0:
+                return "LI "+c()+" "+c()+" "+c()+" "+c()+" "+l;
+            case 1:
+                return (rnd.nextBoolean()?"RV ":"RP ")+c()+" "+c()+" "+c()
+                    +" "+c()+" "+l;
+            case 2:
+                return (rnd.nextBoolean()?"EV ":"EP ")+c()+" "+c()+" "+c()
+                    +" "+c()+" "+l;
+            case 3:
+                return "BE "+c()+" "+c()+" "+c()+" "+c()+" "+c()+" "+c()
+                    +" "+c()+" "+c()+" "+l;
+            case 4:
+                return "PV "+c()+" "+c()+" "+c()+" "+c()+" "+c()+" "+c()
+                    +" "+l;
+            case 5:
+                return "SA "+c()+" "+c()+" "+l;
+            case 6:
+                return "PL "+c()+" "+c()+" "+c()+" "+c()+" "
+                    +(1+rnd.nextInt(10))+" "+l;
+            case 7:
+                return "TY "+c()+" "+c()+" "+(2+rnd.nextInt(10))+" "
+                    +(2+rnd.nextInt(10))+" "+rnd.nextInt(360)+" "
+                    +rnd.nextInt(8)+" "+l+" * Text";
+            default:
+                return "MC "+c()+" "+c()+" "+rnd.nextInt(4)+" "
+                    +rnd.nextInt(2)+" "+macros.get(rnd.nextInt(macros.size()));
+        }
+    }
+
+    /** Get a random primitive of the drawing.
+        @return the primitive.
+    */
+    private GraphicPrimitive pick()
+    {
+        List<GraphicPrimitive> v=dm.getPrimitiveVector();
+        return v.get(rnd.nextInt(v.size()));
+    }
+
+    /** Modify the drawing at random, as an editor would do, and save the
+        state. The selected primitives are sometimes modified without
+        notifying the drawing, as some editing operations do.
+    */
+    private void edit()
+    {
+        int n=1+rnd.nextInt(3);
+        for(int i=0; i<n; ++i) {
+            int op=rnd.nextInt(8);
+            if(dm.getPrimitiveVector().isEmpty()) {
+                op=0;
+            }
+            GraphicPrimitive g;
+            switch(op) {
+                case 0:
+                    DrawingModel d=newDrawing();
+                    new ParserActions(d).parseString(
+                        new StringBuffer(randomPrimitive()));
+                    for(GraphicPrimitive p : d.getPrimitiveVector()) {
+                        dm.addPrimitive(p, null);
+                    }
+                    break;
+                case 1:
+                    dm.removePrimitive(pick());
+                    break;
+                case 2:
+                    g=pick();
+                    g.movePrimitive(rnd.nextInt(100)-50,
+                        rnd.nextInt(100)-50);
+                    dm.updatePrimitiveIndex(g);
+                    break;
+                case 3:
+                    g=pick();
+                    g.rotatePrimitive(false, 0, 0);
+                    dm.updatePrimitiveIndex(g);
+                    break;
+                case 4:
+                    g=pick();
+                    g.setSelected(!g.isSelected());
+                    break;
+                case 5:
+                    g=pick();
+                    g.mirrorPrimitive(rnd.nextInt(50));
+                    dm.updatePrimitiveIndex(g);
+                    break;
+                case 6:
+                    dm.setTextFont(FONTS[rnd.nextInt(FONTS.length)],
+                        3+rnd.nextInt(6), null);
+                    break;
+                default:
+                    pa.parseString(new StringBuffer(pa.getText(true)));
+                    break;
+            }
+        }
+        // The modification is the last one before saving the state, as in
+        // the editor.
+        if(rnd.nextInt(3)==0) {
+            int x=rnd.nextInt(50);
+            for(GraphicPrimitive p : dm.getPrimitiveVector()) {
+                if(p.isSelected()) {
+                    p.mirrorPrimitive(x);
+                }
+            }
+        }
+        ua.saveUndoState();
+        // Same behaviour as UndoManager.undoPush.
+        if(saved.size()==MAX_UNDO) {
+            saved.remove(0);
+            --pointer;
+        }
+        saved.subList(pointer, saved.size()).clear();
+        saved.add(pa.getText(true).toString());
+        ++pointer;
+        redoable=false;
+    }
+
+    /** Compare the drawing with the text saved for the current state.
+        @param op the description of the last operation.
+    */
+    private void check(String op)
+    {
+        ++checks;
+        String expected=reparse(saved.get(pointer-1));
+        String actual=pa.getText(true).toString();
+        // The drawing should also be identical to itself parsed again.
+        String again=reparse(actual);
+        if(!expected.equals(actual) || !expected.equals(again)) {
+            if(++failures<=20) {
+                System.out.println("Different drawing for "+name
+                    +" after "+op+" (state "+pointer+")");
+            }
+        }
+    }
+
+    /** Bring the drawing to a state of the undo buffer.
+        @param i the position of the state in the buffer.
+        @param op the description of the operation.
+        @throws Exception if the reflection fails.
+    */
+    private void restore(int i, String op)
+        throws Exception
+    {
+        UndoManager um=(UndoManager)managerField.get(ua);
+        restoreMethod.invoke(ua, um.getStates().get(i), Boolean.FALSE);
+        ++checks;
+        String expected=reparse(saved.get(i));
+        String actual=pa.getText(true).toString();
+        if(!expected.equals(actual)) {
+            if(++failures<=20) {
+                System.out.println("Different drawing for "+name
+                    +" after "+op+" to state "+(i+1));
+            }
+        }
+    }
+
+    /** Go to a random state of the undo buffer, then back to the current
+        one. The states are usually not consecutive, so that the text of
+        the drawing is obtained from the states in between.
+        @param op the description of the operation.
+        @throws Exception if the reflection fails.
+    */
+    private void jump(String op)
+        throws Exception
+    {
+        restore(rnd.nextInt(saved.size()), op);
+        restore(pointer-1, op+" back");
+    }
+
+    /** Edit the drawing, undo and redo at random.
+        @param text the initial contents of the drawing.
+        @throws Exception if the reflection fails.
+    */
+    private void run(String text)
+        throws Exception
+    {
+        dm=newDrawing();
+        pa=new ParserActions(dm);
+        ua=new UndoActions(pa);
+        pa.parseString(new StringBuffer(text));
+        ua.saveUndoState();
+        saved.add(pa.getText(true).toString());
+        pointer=1;
+
+        for(int i=0; i<OPERATIONS; ++i) {
+            int op=rnd.nextInt(10);
+            if(op<4) {
+                edit();
+                check("edit "+i);
+            } else if(op<7) {
+                // Same behaviour as UndoManager.undoPop.
+                ua.undo();
+                pointer=Math.max(pointer-1, 1);
+                redoable=true;
+                check("undo "+i);
+            } else if(op<9) {
+                if(redoable) {
+                    ua.redo();
+                    pointer=Math.min(pointer+1, saved.size());
+                    check("redo "+i);
+                }
+            } else {
+                jump("jump "+i);
+            }
+        }
+    }
+
+    /** Run the test.
+        @param args drawings to be checked, in addition to the random ones.
+        @throws Exception if something goes wrong.
+    */
+    public static void main(String... args)
+        throws Exception
+    {
+        DrawingModel lib=new DrawingModel();
+        FidoMain.readLibrariesProbeDirectory(lib, true, "");
+        library=lib.getLibrary();
+        macros=new ArrayList<String>(library.keySet());
+
+        managerField=UndoActions.class.getDeclaredField("um");
+        managerField.setAccessible(true);
+        restoreMethod=UndoActions.class.getDeclaredMethod("restoreState",
+            UndoState.class, boolean.class);
+        restoreMethod.setAccessible(true);
+
+        for(String a : args) {
+            StringBuilder s=new StringBuilder();
+            try (BufferedReader br=new BufferedReader(new FileReader(a))) {
+                String l;
+                while((l=br.readLine())!=null) {
+                    s.append(l).append('\n');
+                }
+            }
+            new UndoStress(a).run(s.toString());
+        }
+        for(int i=0; i<DRAWINGS; ++i) {
+            StringBuilder s=new StringBuilder();
+            int n=rnd.nextInt(60);
+            for(int j=0; j<n; ++j) {
+                s.append(randomPrimitive()).append('\n');
+            }
+            new UndoStress("random drawing "+i).run(s.toString());
+        }
+        System.out.println(checks+" states checked, "+failures
+            +" differences found.");
+        if(failures>0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+#!/bin/sh
+
+echo "Test the undo and redo operations, applied as differences"
+echo "---------------------------------------------------------"
+echo
+
+test_failed=0
+
+javac -cp ../../jar/fidocadj.jar -d . UndoStress.java
+if java -Djava.awt.headless=true -cp ../../jar/fidocadj.jar:. UndoStress \
+    ../export/original/*.fcd ../size/complex/*.fcd
+then
+  echo "  Undo:       OK"
+else
+  printf "\033[1mTest failed: undo or redo do not restore the drawing\033[0m\n"
+  test_failed=1
+fi
+rm -f UndoStress*.class
+
+exit $test_failed
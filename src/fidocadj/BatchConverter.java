@@ -0,0 +1,284 @@
+package fidocadj;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.nio.file.*;
+
+import fidocadj.circuit.controllers.ParserActions;
+import fidocadj.circuit.model.DrawingModel;
+import fidocadj.export.ExportGraphic;
+import fidocadj.globals.Globals;
+import fidocadj.layers.StandardLayers;
+import fidocadj.primitives.MacroDesc;
+
+/** BatchConverter.java
+    Convert many FidoCadJ files from the command line, with the libraries
+    loaded only once.
+
+    The inputs can be files, directories (all the .fcd files they contain),
+    glob patterns such as "drawings/*.fcd" and manifest files, given as
+    "@list.txt", containing one input per line. The files are converted in
+    parallel by a fixed number of threads. Each file is read in its own
+    DrawingModel and each thread employs its own copy of the libraries, so
+    that the parsed macros are never shared between two threads.
+
+    <pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+    </pre>
+
+    @author Davide Bucci
+*/
+final class BatchConverter
+{
+    private final CommandLineParser clp;
+    private final Map<String, MacroDesc> library;
+
+    // The copy of the libraries employed by each thread.
+    private final ThreadLocal<Map<String, MacroDesc>> threadLibrary;
+
+    /** The result of the conversion of a single file.
+    */
+    private static final class Result
+    {
+        String error;
+        long time;
+    }
+
+    /** Standard constructor.
+        @param c the command line options, describing the conversion.
+        @param lib the libraries, already loaded.
+    */
+    BatchConverter(CommandLineParser c, Map<String, MacroDesc> lib)
+    {
+        clp=c;
+        library=lib;
+        threadLibrary=ThreadLocal.withInitial(
+            () -> MacroDesc.copyLibrary(library));
+    }
+
+    /** Convert all the files given in the command line. A line is printed
+        for each file, followed by a summary.
+        @return the number of files which could not be converted, or 1 if
+            no file has been found.
+    */
+    int convert()
+    {
+        long start=System.nanoTime();
+        List<File> inputs=new ArrayList<>();
+        for(String s : clp.getLoadFileNames()) {
+            if(!addInputs(s, inputs)) {
+                System.err.println("No FidoCadJ file found: "+s);
+            }
+        }
+        if(inputs.isEmpty()) {
+            System.err.println("You should specify a FidoCadJ file to"
+                + " read");
+            return 1;
+        }
+        File outputDir=new File(clp.getOutputFile());
+        if(!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            System.err.println("Can not create the output directory: "+
+                outputDir);
+            return inputs.size();
+        }
+
+        int threads=clp.getBatchThreads();
+        if(threads<=0) {
+            threads=Runtime.getRuntime().availableProcessors();
+        }
+        threads=Math.max(1, Math.min(threads, inputs.size()));
+
+        ExecutorService executor=Executors.newFixedThreadPool(threads);
+        List<Future<Result>> results=new ArrayList<>(inputs.size());
+        Set<File> outputs=new HashSet<>();
+        for(File in : inputs) {
+            File out=getOutputFile(in, outputDir);
+            boolean clash=!outputs.add(out);
+            results.add(executor.submit(() -> convertFile(in, out, clash)));
+        }
+        executor.shutdown();
+
+        // The results are printed in the order of the input files.
+        int errors=0;
+        long totalTime=0;
+        for(int i=0; i<inputs.size(); ++i) {
+            Result r=getResult(results.get(i));
+            totalTime+=r.time;
+            if(r.error==null) {
+                System.out.println("OK     "+r.time+" ms "+inputs.get(i));
+            } else {
+                System.out.println("FAILED "+r.time+" ms "+inputs.get(i)+
+                    ": "+r.error);
+                ++errors;
+            }
+        }
+        long elapsed=(System.nanoTime()-start)/1000000;
+        System.out.println("Converted "+(inputs.size()-errors)+" of "+
+            inputs.size()+" files with "+threads+" thread(s) in "+elapsed+
+            " ms (conversion time "+totalTime+" ms, "+
+            (totalTime/inputs.size())+" ms per file).");
+        return errors;
+    }
+
+    /** Wait for the conversion of a file.
+        @param f the conversion.
+        @return the result of the conversion.
+    */
+    private static Result getResult(Future<Result> f)
+    {
+        try {
+            return f.get();
+        } catch (InterruptedException eE) {
+            Thread.currentThread().interrupt();
+            Result r=new Result();
+            r.error="Interrupted";
+            return r;
+        } catch (ExecutionException eE) {
+            Result r=new Result();
+            r.error=eE.getCause().toString();
+            return r;
+        }
+    }
+
+    /** Read and convert a single file.
+        @param in the file to be read.
+        @param out the file to be written.
+        @param clash true if the output file is also employed for another
+            input file.
+        @return the result of the conversion.
+    */
+    private Result convertFile(File in, File out, boolean clash)
+    {
+        Result r=new Result();
+        long start=System.nanoTime();
+        try {
+            if(clash) {
+                throw new IOException("Output file already used: "+out);
+            }
+            // Line widths and connection size are set by each drawing.
+            Globals.useThreadSizes();
+            DrawingModel pP=new DrawingModel();
+            pP.setLibrary(threadLibrary.get());
+            pP.setLayers(StandardLayers.createStandardLayers());
+            ParserActions pa=new ParserActions(pP);
+            try (BufferedReader br=new BufferedReader(new FileReader(in))) {
+                pa.parseReader(br);
+            }
+            if (clp.getResolutionBasedExport()) {
+                ExportGraphic.export(out, pP,
+                        clp.getExportFormat(), clp.getResolution(),
+                        true, false, true, true, clp.shouldSplitLayers());
+            } else {
+                ExportGraphic.exportSize(out, pP,
+                        clp.getExportFormat(), clp.getXSize(),
+                        clp.getYSize(),
+                        true, false, true, true, clp.shouldSplitLayers());
+            }
+        } catch (IOException|RuntimeException eE) {
+            r.error=eE.toString();
+        }
+        r.time=(System.nanoTime()-start)/1000000;
+        return r;
+    }
+
+    /** Get the name of the output file corresponding to an input file.
+        @param in the input file.
+        @param outputDir the directory where the files should be written.
+        @return the output file.
+    */
+    private File getOutputFile(File in, File outputDir)
+    {
+        String format=clp.getExportFormat();
+        String ext="fcda".equals(format)?"fcd":format;
+        String name=in.getName();
+        int dot=name.lastIndexOf('.');
+        if(dot>0) {
+            name=name.substring(0, dot);
+        }
+        return new File(outputDir, name+"."+ext).getAbsoluteFile();
+    }
+
+    /** Add the files corresponding to an input given in the command line:
+        a file, a directory, a glob pattern or a manifest file ("@name").
+        @param s the input.
+        @param inputs the list where the files will be added.
+        @return false if no file has been found.
+    */
+    private static boolean addInputs(String s, List<File> inputs)
+    {
+        int n=inputs.size();
+        if(s.startsWith("@")) {
+            File manifest=new File(s.substring(1));
+            try (BufferedReader br=new BufferedReader(
+                new FileReader(manifest)))
+            {
+                String line;
+                while((line=br.readLine())!=null) {
+                    line=line.trim();
+                    if(line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    // Relative names are relative to the manifest.
+                    File f=new File(line);
+                    if(!f.isAbsolute()) {
+                        f=new File(manifest.getAbsoluteFile().getParentFile(),
+                            line);
+                    }
+                    if(!addInputs(f.getPath(), inputs)) {
+                        System.err.println("No FidoCadJ file found: "+line);
+                    }
+                }
+            } catch (IOException eE) {
+                System.err.println("Unable to read the manifest: "+eE);
+            }
+        } else if(s.indexOf('*')>=0 || s.indexOf('?')>=0) {
+            File pattern=new File(s);
+            File dir=pattern.getAbsoluteFile().getParentFile();
+            PathMatcher pm=FileSystems.getDefault().getPathMatcher(
+                "glob:"+pattern.getName());
+            addFiles(dir, f -> pm.matches(Paths.get(f.getName())), inputs);
+        } else {
+            File f=new File(s);
+            if(f.isDirectory()) {
+                addFiles(f, g -> g.getName().toLowerCase(Locale.US)
+                    .endsWith(".fcd"), inputs);
+            } else if(f.isFile()) {
+                inputs.add(f);
+            }
+        }
+        return inputs.size()>n;
+    }
+
+    /** Add the files of a directory accepted by a filter, sorted by name.
+        @param dir the directory.
+        @param filter the filter.
+        @param inputs the list where the files will be added.
+    */
+    private static void addFiles(File dir, FileFilter filter,
+        List<File> inputs)
+    {
+        File[] files=dir.listFiles(
+            f -> f.isFile() && filter.accept(f));
+        if(files!=null) {
+            Arrays.sort(files);
+            inputs.addAll(Arrays.asList(files));
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package fidocadj;
 
-import java.util.Locale;
+import java.util.*;
 
 import fidocadj.globals.Globals;
 
@@ -54,12 +54,24 @@ public class CommandLineParser
     private boolean resolutionBasedExport = false;
     private boolean printSize=false;
     private boolean printTime=false;
+    private boolean printStats=false;
     private boolean splitLayers=false;
     private double resolution=1;
     private Locale currentLocale=null;
 
+    // In batch mode, many files are converted and the output file given to
+    // -c is the directory where the converted files are written.
+    private boolean batchMode=false;
+    private int batchThreads=0;
+
+    // In daemon mode, the drawings to be converted are received through a
+    // local socket (see RenderDaemon).
+    private boolean daemonMode=false;
+    private int daemonPort=0;
+
     // Filename to open or a particular library directory to be considered
     private String loadFile="";
+    private final List<String> loadFiles=new ArrayList<>();
     private String libDirectory="";
 
     // The standard behavior implies that FidoCadJ tries to activate some
@@ -84,6 +96,15 @@ public class CommandLineParser
         return loadFile;
     }
 
+    /** Get all the files, directories, patterns or manifests given in the
+        command line, for the batch mode.
+        @return the list of names, which may be empty.
+    */
+    public List<String> getLoadFileNames()
+    {
+        return Collections.unmodifiableList(loadFiles);
+    }
+
     /** Get the name (completed with the given path) of the directory
         containing the libraries to be loaded.
         @return the path, or "" if no dir has been given.
@@ -125,6 +146,21 @@ public class CommandLineParser
                 if ("-open".equalsIgnoreCase(args[i].trim())) {
                     continue;
                 }
+                // -stats must be checked before -s.
+                if ("-stats".equalsIgnoreCase(args[i].trim())) {
+                    printStats=true;
+                    continue;
+                }
+                // -daemon must be checked before -d. The port may follow.
+                if ("-daemon".equalsIgnoreCase(args[i].trim())) {
+                    daemonMode=true;
+                    commandLineOnly=true;
+                    System.setProperty("java.awt.headless", "true");
+                    if(i<args.length-1 && args[i+1].matches("\\d+")) {
+                        daemonPort=Integer.parseInt(args[++i]);
+                    }
+                    continue;
+                }
                 if (args[i].startsWith("-k")) {
                     // -k: show the current locale
                     System.out.println("Detected locale: "+
@@ -187,6 +223,23 @@ public class CommandLineParser
                     }
 
                     convertFile=true;
+                } else if (args[i].startsWith("-b")) {
+                    // -b activates the batch mode. The number of threads
+                    // to be employed may follow immediately (-b4). No GUI
+                    // is shown, as with -n.
+                    batchMode=true;
+                    commandLineOnly=true;
+                    System.setProperty("java.awt.headless", "true");
+                    if(args[i].length()>2) {
+                        try {
+                            batchThreads=Integer.parseInt(
+                                args[i].substring(2));
+                        } catch (NumberFormatException eE) {
+                            System.err.println("-b option requires a "+
+                                "number of threads.");
+                            System.exit(1);
+                        }
+                    }
                 } else if (args[i].startsWith("-h")) { // Zu Hilfe!
                     showCommandLineHelp();
                     System.exit(0);
@@ -234,10 +287,11 @@ public class CommandLineParser
                     System.out.println("Changed the library directory: "
                         +args[i]);
                 } else {
-                    if (loaded) {
+                    if (loaded && !batchMode) {
                         System.err.println("Only one file can be"+
                             " specified in the command line");
                     }
+                    loadFiles.add(args[i]);
                     // We can not load the file now, since the main frame
                     // has not been initialized yet.
                     loadFile=args[i];
@@ -278,6 +332,22 @@ public class CommandLineParser
             "        NOTE: the correctness of the file extension is checked, unless the -f\n"+
             "        option is specified.\n\n"+
 
+            " -b     Batch mode: convert all the given files, loading the libraries only\n"+
+            "        once. The output file given to -c is the directory where the\n"+
+            "        converted files are written, with the same name as the input files.\n"+
+            "        Files, directories, patterns such as dir/*.fcd and manifest files\n"+
+            "        containing one of them per line (given as @list.txt) are accepted.\n"+
+            "        The number of conversions done in parallel may follow (e.g. -b4).\n"+
+            "        The graphical user interface is not started, as with -n.\n\n"+
+
+            " -daemon Convert the drawings received through a local socket, loading the\n"+
+            "        libraries only once. The port may follow (a free one is chosen\n"+
+            "        otherwise and printed). Each request is a line such as\n"+
+            "        'png r2 length' or 'svg 800 600 length', followed by the given number\n"+
+            "        of bytes of FidoCadJ code. The answer is 'OK length' followed by the\n"+
+            "        file, or 'ERROR message'. 'QUIT token' stops the daemon, where token\n"+
+            "        is the string printed at startup.\n\n"+
+
             " -m     if a file export is done towards a vector graphic file format, split\n"+
             "        the layers and write one file for each layer. The file name will be\n"+
             "        obtained by appending _ followed by the layer number to the specified\n"+
@@ -291,6 +361,11 @@ public class CommandLineParser
 
             " -t     Print the time used by FidoCadJ for the specified operation.\n\n"+
 
+            " -stats Print, when FidoCadJ exits, the statistics about the time needed\n"+
+            "        by the main operations (drawing, parsing, exporting...) and the\n"+
+            "        number of primitives drawn. They are also available through JMX\n"+
+            "        and Java Flight Recorder while FidoCadJ is running.\n\n"+
+
             " -p     Do not activate some platform-dependent optimizations. You might try\n"+
             "        this option if FidoCadJ hangs or is painfully slow.\n\n"+
 
@@ -311,6 +386,9 @@ public class CommandLineParser
             "        graphic user interface (the so called headless mode).\n"+
             "        Each FidoCadJ logical unit will be converted in 2 pixels on the image.\n"+
             "  java -jar fidocadj.jar -n -c r2 png out2.png test2.fcd\n\n"+
+            "Example: convert all the drawings in a directory to png files in out/,\n"+
+            "        using four threads.\n"+
+            "  java -jar fidocadj.jar -n -b4 -c r2 png out drawings\n\n"+
             "Example: load FidoCadJ forcing the locale to simplified Chinese (zh).\n"+
             "  java -jar fidocadj.jar -l zh\n\n";
 
@@ -325,6 +403,38 @@ public class CommandLineParser
     {
         return splitLayers;
     }
+    /** Check if many files should be converted in batch mode.
+        @return true if the batch mode is active.
+    */
+    public boolean getBatchMode()
+    {
+        return batchMode;
+    }
+
+    /** Check if the drawings should be received through a local socket.
+        @return true if the daemon mode is active.
+    */
+    public boolean getDaemonMode()
+    {
+        return daemonMode;
+    }
+
+    /** Get the port on which the daemon should listen.
+        @return the port, or 0 if a free port should be chosen.
+    */
+    public int getDaemonPort()
+    {
+        return daemonPort;
+    }
+
+    /** Get the number of files to be converted in parallel in batch mode.
+        @return the number of threads, or 0 if not specified.
+    */
+    public int getBatchThreads()
+    {
+        return batchThreads;
+    }
+
     /** Check if a file conversion (export) should be done.
         @return true if an export should be done.
     */
@@ -410,6 +520,15 @@ public class CommandLineParser
         return printTime;
     }
 
+    /** Check if the statistics about the performances have to be printed
+        when the program exits.
+        @return true if the statistics have to be printed.
+    */
+    public boolean getHasToPrintStats()
+    {
+        return printStats;
+    }
+
     /** Get the resolution to be employed for the graphic export.
         @return the resolution in pixels for logical unit.
     */
@@ -19,6 +19,7 @@ import fidocadj.dialogs.settings.DialogSettings;
 import fidocadj.dialogs.DialogAbout;
 import fidocadj.geom.DrawingSize;
 import fidocadj.geom.MapCoordinates;
+import fidocadj.graphic.DetailLevel;
 import fidocadj.globals.Globals;
 import fidocadj.globals.AccessResources;
 import fidocadj.globals.Utf8ResourceBundle;
@@ -28,7 +29,7 @@ import fidocadj.circuit.HasChangedListener;
 import fidocadj.circuit.CircuitPanel;
 import fidocadj.circuit.controllers.CopyPasteActions;
 import fidocadj.circuit.controllers.AddElements;
-import fidocadj.circuit.controllers.ParserActions;
+import fidocadj.circuit.controllers.LibraryLoader;
 import fidocadj.circuit.controllers.ElementsEdtActions;
 import fidocadj.globals.OSValidator;
 import fidocadj.toolbars.ToolbarZoom;
@@ -382,12 +383,12 @@ public final class FidoFrame extends JFrame implements
         fileTools.readPrefs();
 
         // Element sizes
-        Globals.lineWidth =
-                SettingsManager.getDouble("STROKE_SIZE_STRAIGHT", 0.5);
-        Globals.lineWidthCircles =
-                SettingsManager.getDouble("STROKE_SIZE_OVAL", 0.35);
-        Globals.diameterConnection =
-                SettingsManager.getDouble("CONNECTION_SIZE", 2.0);
+        Globals.setLineWidth(
+                SettingsManager.getDouble("STROKE_SIZE_STRAIGHT", 0.5));
+        Globals.setLineWidthCircles(
+                SettingsManager.getDouble("STROKE_SIZE_OVAL", 0.35));
+        Globals.setDiameterConnection(
+                SettingsManager.getDouble("CONNECTION_SIZE", 2.0));
     }
 
     /** Load the saved configuration for the grid.
@@ -442,11 +443,35 @@ public final class FidoFrame extends JFrame implements
         circuitPanel.setSelectedColor(Color.decode(
                 SettingsManager.get("SELECTED_ELEMENTS_COLOR", "#00FF00")));
 
+        // Draw the macros by copying cached images (off by default).
+        circuitPanel.setMacroRenderCache(
+                SettingsManager.getBoolean("MACRO_RENDER_CACHE", false),
+                SettingsManager.getInt("MACRO_RENDER_CACHE_SIZE", 32));
+
+        readDetailLevel();
+
+        // Draw each layer in its own image (off by default).
+        circuitPanel.setLayerCache(
+                SettingsManager.getBoolean("LAYER_CACHE", false));
+
         MapCoordinates mc=circuitPanel.getMapCoordinates();
         double z=Double.parseDouble(SettingsManager.get("CURRENT_ZOOM","4.0"));
         mc.setMagnitudes(z,z);
     }
 
+    /** Load the saved level of detail, employed to simplify the elements
+        which are too small on the screen. The sizes are in pixels and all
+        the simplifications are off by default (see DetailLevel).
+    */
+    private void readDetailLevel()
+    {
+        circuitPanel.setDetailLevel(new DetailLevel(
+                SettingsManager.getInt("DETAIL_TEXT_SIZE", 0),
+                SettingsManager.getInt("DETAIL_MACRO_SIZE", 0),
+                SettingsManager.getInt("DETAIL_PRIMITIVE_SIZE", 0),
+                SettingsManager.getInt("DETAIL_DASH_SIZE", 0)));
+    }
+
     /** Load the standard libraries according to the locale.
     */
     public void loadLibraries()
@@ -462,9 +487,16 @@ public final class FidoFrame extends JFrame implements
         // This is useful if this is not the first time that libraries are
         // being loaded.
         circuitPanel.getDrawingModel().resetLibrary();
-        ParserActions pa=circuitPanel.getParserActions();
-
         if(runsAsApplication) {
+            // Keep the parsed libraries on disk, so that they are parsed
+            // again only when they are modified. An empty directory name
+            // disables the index.
+            String indexDirectory=SettingsManager.get(
+                "LIBRARY_INDEX_DIRECTORY", new File(
+                    System.getProperty("user.home"),
+                    ".fidocadj"+File.separator+"libindex").getPath());
+            LibraryLoader.setIndexDirectory("".equals(indexDirectory) ?
+                null : new File(indexDirectory));
             FidoMain.readLibrariesProbeDirectory(circuitPanel.getDrawingModel(),
                 englishLibraries, libDirectory);
         } else {
@@ -472,31 +504,34 @@ public final class FidoFrame extends JFrame implements
             // to the user file system, for example because it is run as an
             // applet. In this case, the only accesses will be internal to
             // the jar file in order to respect security restrictions.
+            LibraryLoader ll=new LibraryLoader(
+                circuitPanel.getDrawingModel());
             if(englishLibraries) {
                 // Read the english version of the libraries
-                pa.loadLibraryInJar(FidoFrame.class.getResource(
+                ll.loadLibraryInJar(FidoFrame.class.getResource(
                     "lib/IHRAM_en.FCL"), "ihram");
-                pa.loadLibraryInJar(FidoFrame.class.getResource(
+                ll.loadLibraryInJar(FidoFrame.class.getResource(
                     "lib/FCDstdlib_en.fcl"), "");
-                pa.loadLibraryInJar(FidoFrame.class.getResource(
+                ll.loadLibraryInJar(FidoFrame.class.getResource(
                     "lib/PCB_en.fcl"), "pcb");
-                pa.loadLibraryInJar(FidoFrame.class.getResource(
+                ll.loadLibraryInJar(FidoFrame.class.getResource(
                     "lib/elettrotecnica_en.fcl"), "elettrotecnica");
-                pa.loadLibraryInJar(FidoFrame.class.getResource(
+                ll.loadLibraryInJar(FidoFrame.class.getResource(
                     "lib/EY_Libraries.fcl"), "EY_Libraries");
             } else {
                 // Read the italian version of the libraries
-                pa.loadLibraryInJar(FidoFrame.class.getResource(
+                ll.loadLibraryInJar(FidoFrame.class.getResource(
                     "lib/IHRAM.FCL"), "ihram");
-                pa.loadLibraryInJar(FidoFrame.class.getResource(
+                ll.loadLibraryInJar(FidoFrame.class.getResource(
                     "lib/FCDstdlib.fcl"), "");
-                pa.loadLibraryInJar(FidoFrame.class.getResource(
+                ll.loadLibraryInJar(FidoFrame.class.getResource(
                     "lib/PCB.fcl"), "pcb");
-                pa.loadLibraryInJar(FidoFrame.class.getResource(
+                ll.loadLibraryInJar(FidoFrame.class.getResource(
                     "lib/elettrotecnica.fcl"), "elettrotecnica");
-                pa.loadLibraryInJar(FidoFrame.class.getResource(
+                ll.loadLibraryInJar(FidoFrame.class.getResource(
                     "lib/EY_Libraries.fcl"), "EY_Libraries");
             }
+            ll.load();
         }
         libraryModel.forceUpdate();
     }
@@ -769,6 +804,17 @@ public final class FidoFrame extends JFrame implements
         circuitPanel.setSelectedColor(Color.decode(
                 SettingsManager.get("SELECTED_ELEMENTS_COLOR", "#00FF00")));
 
+        // Draw the macros by copying cached images (off by default).
+        circuitPanel.setMacroRenderCache(
+                SettingsManager.getBoolean("MACRO_RENDER_CACHE", false),
+                SettingsManager.getInt("MACRO_RENDER_CACHE_SIZE", 32));
+
+        readDetailLevel();
+
+        // Draw each layer in its own image (off by default).
+        circuitPanel.setLayerCache(
+                SettingsManager.getBoolean("LAYER_CACHE", false));
+
         circuitPanel.profileTime = SettingsManager.getBoolean("PROFILE_TIME",
                 circuitPanel.profileTime);
         circuitPanel.setAntiAlias(SettingsManager.getBoolean("ANTIALIAS",
@@ -810,12 +856,12 @@ public final class FidoFrame extends JFrame implements
 
         libDirectory = SettingsManager.getString("DIR_LIBS", libDirectory);
 
-        Globals.lineWidth = SettingsManager.getDouble(
-                    "STROKE_SIZE_STRAIGHT", Globals.lineWidth);
-        Globals.lineWidthCircles = SettingsManager.getDouble(
-                    "STROKE_SIZE_OVAL", Globals.lineWidthCircles);
-        Globals.diameterConnection = SettingsManager.getDouble(
-                    "CONNECTION_SIZE", Globals.diameterConnection);
+        Globals.setLineWidth(SettingsManager.getDouble(
+                    "STROKE_SIZE_STRAIGHT", Globals.getLineWidth()));
+        Globals.setLineWidthCircles(SettingsManager.getDouble(
+                    "STROKE_SIZE_OVAL", Globals.getLineWidthCircles()));
+        Globals.setDiameterConnection(SettingsManager.getDouble(
+                    "CONNECTION_SIZE", Globals.getDiameterConnection()));
 
         if (!libDirectory.equals(oldDirectory)) {
             loadLibraries();
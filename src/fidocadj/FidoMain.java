@@ -5,15 +5,16 @@ import javax.swing.*;
 import java.io.*;
 import java.util.*;
 
+import fidocadj.circuit.controllers.LibraryLoader;
 import fidocadj.circuit.controllers.ParserActions;
 import fidocadj.circuit.model.DrawingModel;
 import fidocadj.export.ExportGraphic;
 import fidocadj.geom.DrawingSize;
 import fidocadj.globals.Globals;
-import fidocadj.globals.FileUtils;
 import fidocadj.globals.OSValidator;
 import fidocadj.globals.SettingsManager;
 import fidocadj.layers.StandardLayers;
+import fidocadj.timer.Metrics;
 import fidocadj.timer.MyTimer;
 import fidocadj.graphic.PointG;
 import fidocadj.graphic.DimensionG;
@@ -81,8 +82,21 @@ public final class FidoMain
             clp.processArguments(args);
         }
 
+        // The measurements can be read through JMX while the program is
+        // running, or printed at the end.
+        Metrics.registerMBean();
+        if (clp.getHasToPrintStats()) {
+            Runtime.getRuntime().addShutdownHook(new Thread(
+                    () -> System.out.print(Metrics.getReport()),
+                    "Statistics"));
+        }
+
         // Now we proceed with all the operations: opening files, converting...
-        if (clp.getHeadlessMode()) {
+        if (clp.getDaemonMode()) {
+            doDaemon(clp);
+        } else if (clp.getBatchMode()) {
+            doBatchConvert(clp);
+        } else if (clp.getHeadlessMode()) {
             // Creates a circuit object
             DrawingModel pP = new DrawingModel();
 
@@ -98,10 +112,11 @@ public final class FidoMain
             ParserActions pa = new ParserActions(pP);
 
             MyTimer mt = new MyTimer();
-            try {
-                String txt = FileUtils.readFile(clp.getLoadFileName());
-                // Here txt contains the new circuit: parse it!
-                pa.parseString(new StringBuffer(txt));
+            try (BufferedReader in = new BufferedReader(
+                    new FileReader(clp.getLoadFileName())))
+            {
+                // The circuit is parsed while the file is read.
+                pa.parseReader(in);
             } catch (IllegalArgumentException iae) {
                 System.err.println("Illegal filename");
             } catch (Exception e) {
@@ -266,6 +281,43 @@ public final class FidoMain
         }
     }
 
+    /** Convert many files in batch mode, loading the libraries only once.
+     * The program exits with a non zero code if some files can not be
+     * converted.
+     *
+     * @param clp command-line arguments.
+     */
+    private static void doBatchConvert(CommandLineParser clp)
+    {
+        if (!clp.shouldConvertFile()) {
+            System.err.println("The batch mode requires the -c option.");
+            System.exit(1);
+        }
+        DrawingModel pP = new DrawingModel();
+        readLibrariesProbeDirectory(pP, false, clp.getLibDirectory());
+        int errors = new BatchConverter(clp, pP.getLibrary()).convert();
+        if (errors > 0) {
+            System.exit(1);
+        }
+    }
+
+    /** Convert the drawings received through a local socket, until the
+     * daemon is stopped.
+     *
+     * @param clp command-line arguments.
+     */
+    private static void doDaemon(CommandLineParser clp)
+    {
+        DrawingModel pP = new DrawingModel();
+        readLibrariesProbeDirectory(pP, false, clp.getLibDirectory());
+        try {
+            new RenderDaemon(clp.getDaemonPort(), pP.getLibrary()).run();
+        } catch (IOException ioe) {
+            System.err.println("Daemon error: " + ioe);
+            System.exit(1);
+        }
+    }
+
     /** Read all libraries, eventually by inspecting the directory specified
      * by the user. There are three standard directories: IHRAM.FCL,
      * FCDstdlib.fcl and PCB.fcl. If those files are found in the external
@@ -281,19 +333,20 @@ public final class FidoMain
             boolean englishLibraries, String libDirectoryO)
     {
         String libDirectory = libDirectoryO;
-        ParserActions pa = new ParserActions(pP);
+        // The libraries are read in parallel and merged in the order in
+        // which they are given here.
+        LibraryLoader ll = new LibraryLoader(pP);
 
-        synchronized (pP) {
-            if (libDirectory == null || libDirectory.length() < 3) {
-                libDirectory = System.getProperty("user.home");
-            }
-
-            readIHRAM(englishLibraries, libDirectory, pa);
-            readFCDstdlib(englishLibraries, libDirectory, pa);
-            readPCBlib(englishLibraries, libDirectory, pa);
-            readEYLibraries(englishLibraries, libDirectory, pa);
-            readElecLib(englishLibraries, libDirectory, pa);
+        if (libDirectory == null || libDirectory.length() < 3) {
+            libDirectory = System.getProperty("user.home");
         }
+
+        readIHRAM(englishLibraries, libDirectory, ll);
+        readFCDstdlib(englishLibraries, libDirectory, ll);
+        readPCBlib(englishLibraries, libDirectory, ll);
+        readEYLibraries(englishLibraries, libDirectory, ll);
+        readElecLib(englishLibraries, libDirectory, ll);
+        ll.load();
     }
 
     /** Read the internal IHRAM library, unless a file called
@@ -302,23 +355,23 @@ public final class FidoMain
      * @param libDirectory path where to search for the library.
      * @param englishLibraries specify if the English version of the lib
      * should be loaded instead of the Italian one.
-     * @param pa the object by which the library will be crunched.
+     * @param ll the object by which the library will be crunched.
      */
     private static void readIHRAM(boolean englishLibraries,
             String libDirectory,
-            ParserActions pa)
+            LibraryLoader ll)
     {
-        pa.loadLibraryDirectory(libDirectory);
+        ll.loadLibraryDirectory(libDirectory);
         if (new File(Globals.createCompleteFileName(
                 libDirectory, "IHRAM.FCL")).exists())
         {
             System.out.println("IHRAM library got from external file");
         } else {
             if (englishLibraries) {
-                pa.loadLibraryInJar(FidoFrame.class.getResource(
+                ll.loadLibraryInJar(FidoFrame.class.getResource(
                         "/lib/IHRAM_en.FCL"), "ihram");
             } else {
-                pa.loadLibraryInJar(FidoFrame.class.getResource(
+                ll.loadLibraryInJar(FidoFrame.class.getResource(
                         "/lib/IHRAM.FCL"), "ihram");
             }
         }
@@ -330,11 +383,11 @@ public final class FidoMain
      * @param libDirectory path where to search for the library.
      * @param englishLibraries specify if the English version of the lib
      * should be loaded instead of the Italian one.
-     * @param pa the object by which the library will be crunched.
+     * @param ll the object by which the library will be crunched.
      */
     private static void readFCDstdlib(boolean englishLibraries,
             String libDirectory,
-            ParserActions pa)
+            LibraryLoader ll)
     {
         if (new File(Globals.createCompleteFileName(
                 libDirectory, "FCDstdlib.fcl")).exists())
@@ -342,10 +395,10 @@ public final class FidoMain
             System.out.println("Standard library got from external file");
         } else {
             if (englishLibraries) {
-                pa.loadLibraryInJar(FidoFrame.class.getResource(
+                ll.loadLibraryInJar(FidoFrame.class.getResource(
                         "/lib/FCDstdlib_en.fcl"), "");
             } else {
-                pa.loadLibraryInJar(FidoFrame.class.getResource(
+                ll.loadLibraryInJar(FidoFrame.class.getResource(
                         "/lib/FCDstdlib.fcl"), "");
             }
         }
@@ -357,11 +410,11 @@ public final class FidoMain
      * @param libDirectory path where to search for the library.
      * @param englishLibraries specify if the English version of the lib
      * should be loaded instead of the Italian one.
-     * @param pa the object by which the library will be crunched.
+     * @param ll the object by which the library will be crunched.
      */
     private static void readPCBlib(boolean englishLibraries,
             String libDirectory,
-            ParserActions pa)
+            LibraryLoader ll)
     {
         if (new File(Globals.createCompleteFileName(
                 libDirectory, "PCB.fcl")).exists())
@@ -369,10 +422,10 @@ public final class FidoMain
             System.out.println("Standard PCB library got from external file");
         } else {
             if (englishLibraries) {
-                pa.loadLibraryInJar(FidoFrame.class.getResource(
+                ll.loadLibraryInJar(FidoFrame.class.getResource(
                         "/lib/PCB_en.fcl"), "pcb");
             } else {
-                pa.loadLibraryInJar(FidoFrame.class.getResource(
+                ll.loadLibraryInJar(FidoFrame.class.getResource(
                         "/lib/PCB.fcl"), "pcb");
             }
         }
@@ -384,11 +437,11 @@ public final class FidoMain
      * @param libDirectory path where to search for the library.
      * @param englishLibraries specify if the English version of the lib
      * should be loaded instead of the Italian one.
-     * @param pa the object by which the library will be crunched.
+     * @param ll the object by which the library will be crunched.
      */
     private static void readEYLibraries(boolean englishLibraries,
             String libDirectory,
-            ParserActions pa)
+            LibraryLoader ll)
     {/*
          * if(!englishLibraries) {
          * System.out.println("EY library is only available in english");
@@ -398,7 +451,7 @@ public final class FidoMain
         {
             System.out.println("Standard EY_Libraries got from external file");
         } else {
-            pa.loadLibraryInJar(FidoFrame.class.getResource(
+            ll.loadLibraryInJar(FidoFrame.class.getResource(
                     "/lib/EY_Libraries.fcl"), "EY_Libraries");
         }
     }
@@ -409,11 +462,11 @@ public final class FidoMain
      * @param libDirectory path where to search for the library.
      * @param englishLibraries specify if the English version of the lib
      * should be loaded instead of the Italian one.
-     * @param pa the object by which the library will be crunched.
+     * @param ll the object by which the library will be crunched.
      */
     private static void readElecLib(boolean englishLibraries,
             String libDirectory,
-            ParserActions pa)
+            LibraryLoader ll)
     {
         if (new File(Globals.createCompleteFileName(
                 libDirectory, "elettrotecnica.fcl")).exists())
@@ -422,10 +475,10 @@ public final class FidoMain
                     "Electrotechnics library got from external file");
         } else {
             if (englishLibraries) {
-                pa.loadLibraryInJar(FidoFrame.class.getResource(
+                ll.loadLibraryInJar(FidoFrame.class.getResource(
                         "/lib/elettrotecnica_en.fcl"), "elettrotecnica");
             } else {
-                pa.loadLibraryInJar(FidoFrame.class.getResource(
+                ll.loadLibraryInJar(FidoFrame.class.getResource(
                         "/lib/elettrotecnica.fcl"), "elettrotecnica");
             }
         }
@@ -132,7 +132,6 @@ public class FileTools
     {
 
         BufferedReader bufRead = null;
-        StringBuffer txt = new StringBuffer();
 
         try {
             bufRead = new BufferedReader(
@@ -141,22 +140,15 @@ public class FileTools
                                      .getParserActions().openFileName),
                             Globals.encoding));
 
-            String line = bufRead.readLine();
-            while (line != null) {
-                txt.append(line);
-                txt.append("\n");
-                line = bufRead.readLine();
-            }
+            // The circuit is parsed while the file is read: draw it!
+            fidoFrame.getCircuitPanel().getParserActions().parseReader(
+                    bufRead);
         } finally {
             if (bufRead != null) {
                 bufRead.close();
             }
         }
 
-        // Here txt contains the new circuit: draw it!
-        fidoFrame.getCircuitPanel().getParserActions().parseString(
-                new StringBuffer(txt.toString()));
-
         // Check for ghost primitives (hidden outside the drawing area)
         if (fidoFrame.getCircuitPanel().checkGhostPrimitives()) {
             int response = JOptionPane.showConfirmDialog(fidoFrame,
@@ -292,28 +284,25 @@ public class FileTools
                  * while exporting in a vector graphic format one has
                  * indeed to split macros.
                  */
-                ExportGraphic.export(new File(
-                        cc.getParserActions().openFileName),
-                        cc.getDrawingModel(),
-                        "fcd", 1.0, true, false, !cc.extStrict, false, false);
+                try (Writer output = new BufferedWriter(
+                        new OutputStreamWriter(new FileOutputStream(
+                                cc.getParserActions().openFileName),
+                        Globals.encoding)))
+                {
+                    ExportGraphic.exportFidoCad(output, cc.getDrawingModel(),
+                            false, !cc.extStrict);
+                }
                 cc.getUndoActions().setModified(false);
             } else {
-                // Create file
-                BufferedWriter output = null;
-                try {
-                    output = new BufferedWriter(new OutputStreamWriter(
-                            new FileOutputStream(
-                                    cc.getParserActions().openFileName),
-                            Globals.encoding));
-
+                // Create file. The drawing is written directly to it,
+                // without obtaining its whole text first.
+                try (Writer output = new BufferedWriter(
+                        new OutputStreamWriter(new FileOutputStream(
+                                cc.getParserActions().openFileName),
+                        Globals.encoding)))
+                {
                     output.write("[FIDOCAD]\n");
-                    output.write(
-                            cc.getParserActions().getText(!cc.extStrict)
-                                    .toString());
-                } finally {
-                    if (output != null) {
-                        output.close();
-                    }
+                    cc.getParserActions().writeText(output, !cc.extStrict);
                 }
                 cc.getUndoActions().setModified(false);
             }
@@ -0,0 +1,347 @@
+package fidocadj;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.*;
+
+import fidocadj.circuit.controllers.ParserActions;
+import fidocadj.circuit.model.DrawingModel;
+import fidocadj.export.ExportGraphic;
+import fidocadj.globals.Globals;
+import fidocadj.layers.StandardLayers;
+import fidocadj.primitives.MacroDesc;
+
+/** RenderDaemon.java
+    Convert FidoCadJ drawings received through a local socket, with the
+    libraries loaded only once. A program converting many drawings does not
+    need to start FidoCadJ for each of them.
+
+    The daemon listens only on the loopback interface. Each connection can
+    send many requests, one after the other, and the connections are served
+    in parallel by a fixed number of threads. The connections which can not
+    be served immediately wait for a free thread, up to a given number, and
+    the other ones are refused. A connection idle for too long is closed.
+    A request is a line of text, followed by the drawing:
+    <pre>
+    format r[resolution] length
+    format width height length
+    </pre>
+    where format is one of the formats accepted by -c (png, svg, pdf...),
+    the size of the image is given as with -c and length is the number of
+    bytes of the drawing (FidoCadJ code, in UTF-8), which follows
+    immediately. The answer is either "OK length" followed by the converted
+    file, or "ERROR message". The line "QUIT token" stops the daemon, where
+    token is the random string printed at startup, so that only who started
+    the daemon can stop it. All the lines end with '\n'.
+
+    Each drawing is read in its own DrawingModel. The libraries are loaded
+    only once and shared: each thread only has its own copy of the map of
+    the macros, since the parsed macros are kept in it (as in
+    BatchConverter). The descriptions of the macros are not copied.
+
+    <pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+    </pre>
+
+    @author Davide Bucci
+*/
+final class RenderDaemon
+{
+    // Maximum length of a request line and of a drawing, in bytes.
+    private static final int MAX_LINE=256;
+    private static final int MAX_DRAWING=64*1024*1024;
+
+    // Number of connections waiting for a thread, beyond which the new
+    // connections are refused.
+    private static final int MAX_WAITING=64;
+
+    // Time after which an idle connection is closed, in milliseconds.
+    private static final int IDLE_TIMEOUT=60*1000;
+
+    private final int port;
+    private final int threads;
+    private final Map<String, MacroDesc> library;
+
+    // The string which must follow QUIT to stop the daemon.
+    private final String quitToken;
+
+    // The copy of the libraries employed by each thread.
+    private final ThreadLocal<Map<String, MacroDesc>> threadLibrary;
+
+    // Directory where the converted files are written before being sent.
+    private Path tempDir;
+
+    private volatile ServerSocket server;
+    private volatile boolean running=true;
+
+    /** A request which can not be satisfied. The message is sent back.
+    */
+    private static final class RequestException extends Exception
+    {
+        private static final long serialVersionUID=1L;
+
+        // True if the drawing has not been read, so that the following
+        // requests can not be found and the connection must be closed.
+        final boolean closing;
+
+        /** Standard constructor.
+            @param message the description of the problem.
+            @param c true if the connection must be closed.
+        */
+        RequestException(String message, boolean c)
+        {
+            super(message);
+            closing=c;
+        }
+    }
+
+    /** Standard constructor. The number of connections served in parallel
+        is the number of available processors.
+        @param p the port to listen to, or 0 to choose a free one.
+        @param lib the libraries, already loaded.
+    */
+    RenderDaemon(int p, Map<String, MacroDesc> lib)
+    {
+        port=p;
+        library=lib;
+        threads=Runtime.getRuntime().availableProcessors();
+        threadLibrary=ThreadLocal.withInitial(
+            () -> MacroDesc.copyLibrary(library));
+
+        byte[] b=new byte[16];
+        new SecureRandom().nextBytes(b);
+        StringBuilder t=new StringBuilder(2*b.length);
+        for(byte c : b) {
+            t.append(String.format("%02x", c & 0xFF));
+        }
+        quitToken=t.toString();
+    }
+
+    /** Serve the requests, until QUIT is received.
+        @throws IOException if the socket can not be opened.
+    */
+    void run()
+        throws IOException
+    {
+        tempDir=Files.createTempDirectory("fidocadj_daemon");
+        ThreadPoolExecutor executor=new ThreadPoolExecutor(threads, threads,
+            0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(MAX_WAITING), r -> {
+                Thread t=new Thread(r, "Render daemon");
+                t.setDaemon(true);
+                return t;
+            });
+        try (ServerSocket ss=new ServerSocket(port, 50,
+            InetAddress.getLoopbackAddress()))
+        {
+            server=ss;
+            // These lines are employed by scripts to know the port and
+            // how to stop the daemon.
+            System.out.println("Listening on port "+ss.getLocalPort());
+            System.out.println("Quit token "+quitToken);
+            while(running) {
+                Socket s;
+                try {
+                    s=ss.accept();
+                } catch (SocketException eE) {
+                    // The socket has been closed by QUIT.
+                    break;
+                }
+                try {
+                    executor.execute(() -> serve(s));
+                } catch (RejectedExecutionException eE) {
+                    refuse(s);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            Files.deleteIfExists(tempDir);
+        }
+    }
+
+    /** Refuse a connection, since too many of them are waiting.
+        @param s the socket of the connection.
+    */
+    private static void refuse(Socket s)
+    {
+        try (Socket socket=s;
+            OutputStream out=socket.getOutputStream())
+        {
+            out.write("ERROR Too many connections\n".getBytes(
+                StandardCharsets.UTF_8));
+        } catch (IOException eE) {
+            // The client has gone away: nothing to do.
+        }
+    }
+
+    /** Serve all the requests of a connection.
+        @param s the socket of the connection.
+    */
+    private void serve(Socket s)
+    {
+        try (Socket socket=s;
+            InputStream in=new BufferedInputStream(socket.getInputStream());
+            OutputStream out=new BufferedOutputStream(
+                socket.getOutputStream()))
+        {
+            socket.setSoTimeout(IDLE_TIMEOUT);
+            String line;
+            while((line=readLine(in))!=null) {
+                String[] q=line.trim().split("\\s+");
+                if("QUIT".equals(q[0])) {
+                    if(q.length==2 && quitToken.equals(q[1])) {
+                        stop();
+                        return;
+                    }
+                    out.write("ERROR Invalid token\n".getBytes(
+                        StandardCharsets.UTF_8));
+                    out.flush();
+                    continue;
+                }
+                byte[] result;
+                try {
+                    result=convert(line, in);
+                } catch (RequestException eE) {
+                    out.write(("ERROR "+eE.getMessage()+"\n").getBytes(
+                        StandardCharsets.UTF_8));
+                    out.flush();
+                    if(eE.closing) {
+                        return;
+                    }
+                    continue;
+                }
+                out.write(("OK "+result.length+"\n").getBytes(
+                    StandardCharsets.UTF_8));
+                out.write(result);
+                out.flush();
+            }
+        } catch (IOException eE) {
+            // The client has gone away: nothing to do.
+        }
+    }
+
+    /** Stop accepting connections.
+        @throws IOException if the socket can not be closed.
+    */
+    private void stop()
+        throws IOException
+    {
+        running=false;
+        server.close();
+    }
+
+    /** Read a request and the drawing which follows it, then convert it.
+        @param line the request line.
+        @param in the stream from which the drawing is read.
+        @return the converted file.
+        @throws RequestException if the request is not valid or the drawing
+            can not be converted.
+        @throws IOException if the connection is broken.
+    */
+    private byte[] convert(String line, InputStream in)
+        throws RequestException, IOException
+    {
+        String[] t=line.trim().split("\\s+");
+        if(t.length<3 || t.length>4) {
+            throw new RequestException("Invalid request: "+line, true);
+        }
+        String format=t[0].toLowerCase(Locale.US);
+        int length;
+        double resolution=0;
+        int width=0;
+        int height=0;
+        try {
+            length=Integer.parseInt(t[t.length-1]);
+            if(t.length==3 && t[1].startsWith("r")) {
+                resolution=Double.parseDouble(t[1].substring(1));
+            } else if(t.length==4) {
+                width=Integer.parseInt(t[1]);
+                height=Integer.parseInt(t[2]);
+            } else {
+                throw new RequestException("Invalid request: "+line, true);
+            }
+        } catch (NumberFormatException eE) {
+            throw new RequestException("Invalid request: "+line, true);
+        }
+        if(length<0 || length>MAX_DRAWING) {
+            throw new RequestException("Invalid length: "+length, true);
+        }
+        byte[] drawing=in.readNBytes(length);
+        if(drawing.length<length) {
+            throw new EOFException();
+        }
+        if(resolution<=0 && (width<=0 || height<=0)) {
+            throw new RequestException("Invalid size: "+line, false);
+        }
+
+        Path out=null;
+        try {
+            out=Files.createTempFile(tempDir, "render", "."+format);
+            // Line widths and connection size are set by each drawing.
+            Globals.useThreadSizes();
+            DrawingModel pP=new DrawingModel();
+            pP.setLibrary(threadLibrary.get());
+            pP.setLayers(StandardLayers.createStandardLayers());
+            new ParserActions(pP).parseReader(new InputStreamReader(
+                new ByteArrayInputStream(drawing), StandardCharsets.UTF_8));
+            if(resolution>0) {
+                ExportGraphic.export(out.toFile(), pP, format, resolution,
+                    true, false, true, true, false);
+            } else {
+                ExportGraphic.exportSize(out.toFile(), pP, format, width,
+                    height, true, false, true, true, false);
+            }
+            return Files.readAllBytes(out);
+        } catch (IOException|RuntimeException eE) {
+            throw new RequestException(eE.toString().replace('\n', ' '),
+                false);
+        } finally {
+            if(out!=null) {
+                Files.deleteIfExists(out);
+            }
+        }
+    }
+
+    /** Read a line of text ending with '\n'.
+        @param in the stream.
+        @return the line, without the end of line, or null if the stream
+            has ended before the line.
+        @throws IOException if the line is too long or the reading fails.
+    */
+    private static String readLine(InputStream in)
+        throws IOException
+    {
+        ByteArrayOutputStream b=new ByteArrayOutputStream(64);
+        int c;
+        while((c=in.read())!='\n') {
+            if(c<0) {
+                return null;
+            }
+            if(b.size()>=MAX_LINE) {
+                throw new IOException("Request line too long");
+            }
+            b.write(c);
+        }
+        return b.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -3,6 +3,8 @@ package fidocadj.circuit;
 import java.awt.*;
 import java.io.*;
 import java.awt.event.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import javax.swing.*;
 import java.util.*;
 
@@ -11,7 +13,9 @@ import fidocadj.dialogs.controls.TypedParameter;
 import fidocadj.dialogs.controls.ParameterDescription;
 import fidocadj.dialogs.DialogParameters;
 import fidocadj.primitives.GraphicPrimitive;
-import fidocadj.timer.MyTimer;
+import fidocadj.primitives.MacroRenderCache;
+import fidocadj.timer.Metrics;
+import fidocadj.timer.TimeStats;
 import fidocadj.toolbars.ChangeSelectionListener;
 import fidocadj.toolbars.ChangeZoomListener;
 import fidocadj.toolbars.ChangeGridState;
@@ -26,10 +30,12 @@ import fidocadj.circuit.controllers.PrimitivesParInterface;
 import fidocadj.circuit.controllers.ElementsEdtActions;
 import fidocadj.circuit.controllers.HandleActions;
 import fidocadj.circuit.model.DrawingModel;
+import fidocadj.circuit.model.ProcessElementsInterface;
 import fidocadj.circuit.views.Drawing;
 import fidocadj.clipboard.TextTransfer;
 import fidocadj.graphic.PointG;
 import fidocadj.graphic.DimensionG;
+import fidocadj.graphic.DetailLevel;
 import fidocadj.graphic.swing.Graphics2DSwing;
 import fidocadj.graphic.swing.ColorSwing;
 import fidocadj.geom.MapCoordinates;
@@ -105,6 +111,42 @@ public class CircuitPanel extends JPanel implements ChangeSelectedLayer,
     // Default grid lines color
     private ColorSwing gridLinesColor;
 
+    // Image of the visible part of the panel, containing the background,
+    // the attached image, the grid and the drawing. The elements drawn over
+    // the drawing (handles, selection rectangle, primitive being edited,
+    // ruler) are painted over a copy of it, so they do not require the
+    // drawing to be redrawn. See paintStaticLayer.
+    private transient BufferedImage staticLayer;
+
+    // False when the contents of staticLayer should be drawn again.
+    private boolean staticLayerValid;
+
+    // The part of the panel contained in staticLayer, and the view
+    // employed to draw it.
+    private final Rectangle staticRect = new Rectangle();
+    private double staticScaleX;
+    private double staticScaleY;
+    private double staticXMagnitude;
+    private double staticYMagnitude;
+    private double staticXCenter;
+    private double staticYCenter;
+    private int staticOrientation;
+    private boolean staticMirror;
+
+    // When drawing the elements takes more than SLOW_DRAW_TIME (in
+    // nanoseconds), they are drawn in background threads by tileRenderer.
+    // They are drawn directly again when this takes less than
+    // FAST_DRAW_TIME.
+    private static final long SLOW_DRAW_TIME = 50000000L;
+    private static final long FAST_DRAW_TIME = 10000000L;
+    private transient TileRenderer tileRenderer;
+    private boolean tiled;
+
+    // When it is not null, each layer is drawn in its own image, and the
+    // images are copied in staticLayer. Drawing in background threads is
+    // not employed in this case.
+    private transient LayerRasters layerRasters;
+
     public CircuitPanel()
     {
         this.ruler = null;
@@ -144,13 +186,17 @@ public class CircuitPanel extends JPanel implements ChangeSelectedLayer,
     // ********** PROFILING **********
     // Specify that the profiling mode should be activated.
     public boolean profileTime;
-    private double average;
-
-    // Record time for the redrawing.
-    private double record;
 
-    // Number of times the redraw has occourred.
-    private double runs;
+    // Time needed by the redrawing and by each of its phases.
+    private static final TimeStats PAINT_TIME = Metrics.getTimer("paint");
+    private static final TimeStats CANVAS_TIME =
+            Metrics.getTimer("paint.canvas");
+    private static final TimeStats GRID_TIME = Metrics.getTimer("paint.grid");
+    private static final TimeStats DRAW_TIME = Metrics.getTimer("paint.draw");
+    private static final TimeStats HANDLES_TIME =
+            Metrics.getTimer("paint.handles");
+    private static final TimeStats OVERLAY_TIME =
+            Metrics.getTimer("paint.overlay");
 
     // ********** INTERFACE **********
     // If this variable is different from null, the component will ensure that
@@ -198,7 +244,6 @@ public class CircuitPanel extends JPanel implements ChangeSelectedLayer,
         isGridVisible = true;
         zoomListener = null;
         antiAlias = true;
-        record = 1e100;
         evidenceRect = new Rectangle(0, 0, -1, -1);
 
         isLeftToRight = false;
@@ -212,8 +257,6 @@ public class CircuitPanel extends JPanel implements ChangeSelectedLayer,
         mapCoordinates.setYMagnitude(4.0);
         mapCoordinates.setOrientation(0);
         setOpaque(true);
-        runs = 0;
-        average = 0;
 
         // This is not useful when preparing the applet: the circuit panel will
         // not be editable in this case.
@@ -314,6 +357,7 @@ public class CircuitPanel extends JPanel implements ChangeSelectedLayer,
     public void setAntiAlias(boolean antiAlias)
     {
         this.antiAlias = antiAlias;
+        staticLayerValid = false;
     }
 
     /**
@@ -581,6 +625,7 @@ public class CircuitPanel extends JPanel implements ChangeSelectedLayer,
     public void setBackground(Color sfondo)
     {
         backgroundColor = sfondo;
+        staticLayerValid = false;
     }
 
     /**
@@ -591,6 +636,7 @@ public class CircuitPanel extends JPanel implements ChangeSelectedLayer,
     public void setDotsGridColor(Color color)
     {
         gridDotsColor = new ColorSwing(color);
+        staticLayerValid = false;
     }
 
     /**
@@ -601,6 +647,67 @@ public class CircuitPanel extends JPanel implements ChangeSelectedLayer,
     public void setSelectedColor(Color color)
     {
         graphicSwing.setSelectedColor(color);
+        staticLayerValid = false;
+    }
+
+    /**
+     Activate or deactivate the cache of the images of the macros. When it
+     is active, the contents of the macros which are not selected are drawn
+     by copying images prepared in advance.
+
+     @param enabled true if the cache should be used.
+     @param megabytes the maximum memory to be employed by the cache.
+     */
+    public void setMacroRenderCache(boolean enabled, int megabytes)
+    {
+        graphicSwing.setBitmapsEnabled(enabled);
+        MacroRenderCache.setMaxMemory(megabytes*1024L*1024L);
+        repaint();
+    }
+
+    /**
+     Set the sizes below which the elements of the drawing are simplified
+     on the screen, to speed up the redraw at small zooms. The exports are
+     not affected.
+
+     @param d the level of detail.
+     */
+    public void setDetailLevel(DetailLevel d)
+    {
+        if (!d.equals(graphicSwing.getDetailLevel())) {
+            graphicSwing.setDetailLevel(d);
+            // The cached images of the macros may have been simplified.
+            MacroRenderCache.clear();
+            repaint();
+        }
+    }
+
+    /**
+     Activate or deactivate the drawing of each layer in a separate image.
+     When it is active, hiding or showing a layer, or changing its color,
+     only require to draw again the layer which has changed, or nothing at
+     all, at the price of the memory needed by an image of the size of the
+     panel for each layer employed in the drawing. Drawing in background
+     threads is not employed in this case, since the images are kept
+     complete.
+
+     @param enabled true if each layer should be drawn in its own image.
+     */
+    public void setLayerCache(boolean enabled)
+    {
+        if (enabled == (layerRasters != null)) {
+            return;
+        }
+        if (enabled) {
+            layerRasters = new LayerRasters();
+            tiled = false;
+            if (tileRenderer != null) {
+                tileRenderer.clear();
+            }
+        } else {
+            layerRasters = null;
+        }
+        repaint();
     }
 
     /**
@@ -631,6 +738,7 @@ public class CircuitPanel extends JPanel implements ChangeSelectedLayer,
     public void setLinesGridColor(Color color)
     {
         gridLinesColor = new ColorSwing(color);
+        staticLayerValid = false;
     }
 
     /** Activate and sets an evidence rectangle which will be put on screen
@@ -654,12 +762,13 @@ public class CircuitPanel extends JPanel implements ChangeSelectedLayer,
     /** Repaint the panel.
      * This method performs the following operations:<br>
      * 1. set the anti aliasing on (or off, depending on antiAlias).<br>
-     * 2. paint in white the background, draw the bk. image and the grid.<br>
-     * 3. call drawingAgent draw.<br>
-     * 4. draw all active handles.<br>
-     * 5. if needed, draw the primitive being edited.<br>
-     * 6. draw the ruler, if needed.<br>
-     * 7. if requested, print information about redraw speed.<br>
+     * 2. copy the image of the background, the bk. image, the grid and the
+     * drawing, after having updated it if needed (see paintStaticLayer).<br>
+     * 3. draw all active handles.<br>
+     * 4. if needed, draw the primitive being edited.<br>
+     * 5. draw the ruler, if needed.<br>
+     * 6. if requested, print information about redraw speed.<br>
+     * The time needed by each phase is measured (see Metrics).
      *
      * @param g the graphic context on which perform the drawing operations.
      */
@@ -667,31 +776,19 @@ public class CircuitPanel extends JPanel implements ChangeSelectedLayer,
     public void paintComponent(Graphics g)
     {
         super.paintComponent(g);
-        MyTimer mt;
-        mt = new MyTimer();
+        long start = TimeStats.start();
 
         Graphics2D g2 = (Graphics2D) g;
-        graphicSwing.setGraphicContext(g2);
-        activateDrawingSettings(g2);
+        activateDrawingSettings(g2, antiAlias);
 
-        // Draw the background.
-        g.setColor(backgroundColor);
-        g.fillRect(0, 0, getWidth(), getHeight());
-
-        drawingModel.getImgCanvas().drawCanvasImage(g2, mapCoordinates);
-        // Draw the grid if necessary.
-        if (isGridVisible) {
-            graphicSwing.drawGrid(mapCoordinates, 0, 0,
-                    getWidth(), getHeight(), gridDotsColor, gridLinesColor);
-        }
+        // Draw the background, the grid and all the elements of the drawing.
+        paintStaticLayer(g2);
 
+        graphicSwing.setGraphicContext(g2);
         // The standard color is black.
         g.setColor(Color.black);
         // This is important for taking into account the dashing size
         graphicSwing.setZoom(mapCoordinates.getXMagnitude());
-
-        // Draw all the elements of the drawing.
-        drawingAgent.draw(graphicSwing, mapCoordinates);
         drawingModel.getImgCanvas().trackExtremePoints(mapCoordinates);
 
         if (zoomListener != null) {
@@ -699,7 +796,11 @@ public class CircuitPanel extends JPanel implements ChangeSelectedLayer,
         }
 
         // Draw the handles of all selected primitives.
+        long phase = TimeStats.start();
         drawingAgent.drawSelectedHandles(graphicSwing, mapCoordinates);
+        HANDLES_TIME.stop(phase);
+
+        phase = TimeStats.start();
 
         if (this.isLeftToRight) {
             this.selectionColor = leftToRightColor;
@@ -729,6 +830,7 @@ public class CircuitPanel extends JPanel implements ChangeSelectedLayer,
 
         // If a ruler.isActive() is active, draw it.
         ruler.drawRuler(g, mapCoordinates);
+        OVERLAY_TIME.stop(phase);
 
         setSizeIfNeeded();
 
@@ -741,29 +843,296 @@ public class CircuitPanel extends JPanel implements ChangeSelectedLayer,
         // perceived speed, we monitor it very carefully if the program
         // profiling is active.
 
+        double elapsed = PAINT_TIME.stop(start) / 1e6;
         if (profileTime) {
-            double elapsed = mt.getElapsed();
             g2.drawString("Version: "
                     + Globals.version, 0, 100);
             g.drawString("Time elapsed: "
                     + elapsed + " ms", 0, 50);
-            ++runs;
-            average += elapsed;
-            if (elapsed < record) {
-                record = elapsed;
-            }
             System.out.println("R: Time elapsed: "
                     + elapsed
                     + " averaging "
-                    + average / runs
-                    + "ms in " + runs
-                    + " redraws; record: " + record + " ms");
+                    + PAINT_TIME.getMean() / 1e6
+                    + "ms in " + PAINT_TIME.getCount()
+                    + " redraws; p95: " + PAINT_TIME.getPercentile(95) / 1e6
+                    + " ms; record: " + PAINT_TIME.getMin() / 1e6 + " ms");
+        }
+    }
+
+    /** Copy in the graphic context the image of the visible part of the
+     * panel, containing the background, the attached image, the grid and
+     * the drawing. The image is drawn again only when the drawing, the view
+     * or the settings have changed since the last time. When the panel has
+     * just been scrolled, the part of the image which is still visible is
+     * moved and only the new parts are drawn.
+     * If drawing the elements is too slow, they are drawn in background
+     * threads (see TileRenderer) and they appear when they are ready.
+     *
+     * @param g2 the graphic context.
+     */
+    private void paintStaticLayer(Graphics2D g2)
+    {
+        Rectangle r = getVisibleRect();
+        if (r.isEmpty()) {
+            return;
+        }
+        // The image has the resolution of the device (HiDPI screens).
+        AffineTransform t = g2.getTransform();
+        double sx = t.getScaleX();
+        double sy = t.getScaleY();
+        int w = (int) Math.ceil(r.width * sx);
+        int h = (int) Math.ceil(r.height * sy);
+
+        // When the elements are drawn in background threads, their copy of
+        // the drawing tells if it has changed (see TileRenderer.setDrawing),
+        // since the drawing is not calculated here.
+        boolean changed = tiled ? tileRenderer.setDrawing(drawingModel,
+                graphicSwing.getSelectedColor(),
+                graphicSwing.getBitmapsEnabled(),
+                graphicSwing.getDetailLevel())
+            : drawingModel.getChanged();
+
+        boolean sameView = staticLayer != null && staticLayerValid
+            && !changed
+            && staticLayer.getWidth() == w && staticLayer.getHeight() == h
+            && staticRect.width == r.width && staticRect.height == r.height
+            && staticScaleX == sx && staticScaleY == sy
+            && staticXMagnitude == mapCoordinates.getXMagnitude()
+            && staticYMagnitude == mapCoordinates.getYMagnitude()
+            && staticXCenter == mapCoordinates.getXCenter()
+            && staticYCenter == mapCoordinates.getYCenter()
+            && staticOrientation == mapCoordinates.getOrientation()
+            && staticMirror == mapCoordinates.getMirror();
+
+        if (!sameView) {
+            if (staticLayer == null || staticLayer.getWidth() != w
+                || staticLayer.getHeight() != h)
+            {
+                staticLayer = createStaticLayer(w, h);
+            }
+            staticRect.setBounds(r);
+            staticScaleX = sx;
+            staticScaleY = sy;
+            staticXMagnitude = mapCoordinates.getXMagnitude();
+            staticYMagnitude = mapCoordinates.getYMagnitude();
+            staticXCenter = mapCoordinates.getXCenter();
+            staticYCenter = mapCoordinates.getYCenter();
+            staticOrientation = mapCoordinates.getOrientation();
+            staticMirror = mapCoordinates.getMirror();
+            if (tiled) {
+                // The size of the drawing is calculated by the background
+                // threads as well (see boundsReady).
+                mapCoordinates.resetMinMax();
+                tileRenderer.trackBounds(mapCoordinates, getTileView());
+            } else if (layerRasters != null) {
+                // The layers are drawn only in the regions which are not up
+                // to date, with the coordinates calculated here.
+                drawingAgent.calculate(mapCoordinates);
+            }
+            drawStaticLayer(r);
+            staticLayerValid = true;
+            checkTiles();
+        } else if (!r.getLocation().equals(staticRect.getLocation())) {
+            scrollStaticLayer(r);
+            checkTiles();
+        }
+
+        // Copy the image pixel by pixel.
+        AffineTransform saved = g2.getTransform();
+        g2.setTransform(AffineTransform.getTranslateInstance(
+            Math.round(t.getTranslateX() + r.x * sx),
+            Math.round(t.getTranslateY() + r.y * sy)));
+        g2.drawImage(staticLayer, 0, 0, null);
+        g2.setTransform(saved);
+    }
+
+    /** Create the image employed by paintStaticLayer.
+     *
+     * @param w the width in pixels.
+     * @param h the height in pixels.
+     * @return the image.
+     */
+    private BufferedImage createStaticLayer(int w, int h)
+    {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (gc != null) {
+            return gc.createCompatibleImage(w, h);
+        }
+        return new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+    }
+
+    /** Move the contents of the image employed by paintStaticLayer after a
+     * scroll and draw the parts which have become visible.
+     *
+     * @param r the new visible part of the panel.
+     */
+    private void scrollStaticLayer(Rectangle r)
+    {
+        Rectangle kept = staticRect.intersection(r);
+        // The image can be moved only by an integer number of pixels.
+        if (kept.isEmpty() || staticScaleX != Math.rint(staticScaleX)
+            || staticScaleY != Math.rint(staticScaleY))
+        {
+            staticRect.setBounds(r);
+            if (layerRasters != null) {
+                layerRasters.invalidate();
+            }
+            drawStaticLayer(r);
+            return;
+        }
+        int dx = (int) ((staticRect.x - r.x) * staticScaleX);
+        int dy = (int) ((staticRect.y - r.y) * staticScaleY);
+        Graphics2D gi = staticLayer.createGraphics();
+        gi.copyArea(0, 0, staticLayer.getWidth(), staticLayer.getHeight(),
+            dx, dy);
+        gi.dispose();
+        staticRect.setBounds(r);
+        if (layerRasters != null) {
+            layerRasters.scroll(dx, dy, staticRect);
+        }
+
+        // Draw the bands above and below the part kept, then the bands at
+        // its left and at its right.
+        if (kept.y > r.y) {
+            drawStaticLayer(new Rectangle(r.x, r.y, r.width, kept.y - r.y));
+        }
+        if (kept.y + kept.height < r.y + r.height) {
+            drawStaticLayer(new Rectangle(r.x, kept.y + kept.height,
+                r.width, r.y + r.height - kept.y - kept.height));
+        }
+        if (kept.x > r.x) {
+            drawStaticLayer(new Rectangle(r.x, kept.y, kept.x - r.x,
+                kept.height));
+        }
+        if (kept.x + kept.width < r.x + r.width) {
+            drawStaticLayer(new Rectangle(kept.x + kept.width, kept.y,
+                r.x + r.width - kept.x - kept.width, kept.height));
+        }
+    }
+
+    /** Draw the background, the attached image, the grid and the drawing
+     * in a region of the image employed by paintStaticLayer. If the
+     * elements are drawn in background threads, the ones which are not
+     * ready are not drawn.
+     *
+     * @param area the region to be drawn, in the coordinates of the panel.
+     */
+    private void drawStaticLayer(Rectangle area)
+    {
+        Graphics2D gi = staticLayer.createGraphics();
+        gi.scale(staticScaleX, staticScaleY);
+        gi.translate(-staticRect.x, -staticRect.y);
+        gi.clip(area);
+        activateDrawingSettings(gi, antiAlias);
+        graphicSwing.setGraphicContext(gi);
+
+        // Draw the background.
+        gi.setColor(backgroundColor);
+        gi.fill(area);
+
+        long start = TimeStats.start();
+        drawingModel.getImgCanvas().drawCanvasImage(gi, mapCoordinates);
+        CANVAS_TIME.stop(start);
+        // Draw the grid if necessary.
+        if (isGridVisible) {
+            start = TimeStats.start();
+            graphicSwing.drawGrid(mapCoordinates, 0, 0,
+                    getWidth(), getHeight(), gridDotsColor, gridLinesColor);
+            GRID_TIME.stop(start);
+        }
+
+        // The standard color is black.
+        gi.setColor(Color.black);
+        // This is important for taking into account the dashing size
+        graphicSwing.setZoom(mapCoordinates.getXMagnitude());
+
+        // Draw all the elements of the drawing.
+        if (layerRasters != null) {
+            start = TimeStats.start();
+            layerRasters.draw(gi, staticLayer.getWidth(),
+                staticLayer.getHeight(), area, drawingAgent, drawingModel,
+                mapCoordinates, graphicSwing);
+            DRAW_TIME.stop(start);
+        } else if (tiled) {
+            tileRenderer.draw(gi, area, getTileView());
+        } else {
+            start = TimeStats.start();
+            drawingAgent.draw(graphicSwing, mapCoordinates);
+            if (DRAW_TIME.stop(start) > SLOW_DRAW_TIME) {
+                if (tileRenderer == null) {
+                    tileRenderer = new TileRenderer(this::tileReady,
+                        this::boundsReady);
+                }
+                tiled = true;
+            }
+        }
+        gi.dispose();
+    }
+
+    /** Get the view employed to draw the image used by paintStaticLayer,
+     * in the form needed by the tile renderer.
+     *
+     * @return the view.
+     */
+    private TileRenderer.View getTileView()
+    {
+        return new TileRenderer.View(mapCoordinates, staticScaleX,
+            staticScaleY, antiAlias);
+    }
+
+    /** Copy in the image employed by paintStaticLayer a tile of the drawing
+     * which has been drawn in background.
+     *
+     * @param r the region of the panel covered by the tile.
+     */
+    private void tileReady(Rectangle r)
+    {
+        if (!tiled || !staticLayerValid) {
+            // The image will be drawn again anyway.
+            return;
+        }
+        Rectangle area = r.intersection(staticRect);
+        if (!area.isEmpty()) {
+            drawStaticLayer(area);
+            checkTiles();
+            forcesOverlayRepaint(area.x, area.y, area.width, area.height);
+        }
+    }
+
+    /** Update the size of the drawing, when it has been calculated by the
+     * background threads.
+     */
+    private void boundsReady()
+    {
+        if (!tiled || !staticLayerValid) {
+            // The size will be requested again anyway.
+            return;
+        }
+        mapCoordinates.resetMinMax();
+        tileRenderer.trackBounds(mapCoordinates, getTileView());
+        forcesOverlayRepaint();
+    }
+
+    /** Check if all the tiles of the visible part of the panel are ready.
+     * In this case, if drawing them has been fast enough, the elements
+     * will be drawn directly from now on.
+     */
+    private void checkTiles()
+    {
+        if (tiled && tileRenderer.checkComplete(staticRect, getTileView())
+            && tileRenderer.getCompleteTime() < FAST_DRAW_TIME)
+        {
+            tiled = false;
+            tileRenderer.clear();
         }
     }
 
     /** Activate or deactivate anti-aliasing if necessary.
+     *
+     * @param g2 the graphic context.
+     * @param antiAlias true if anti-aliasing should be active.
      */
-    private void activateDrawingSettings(Graphics2D g2)
+    static void activateDrawingSettings(Graphics2D g2, boolean antiAlias)
     {
         if (antiAlias) {
             g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
@@ -851,6 +1220,10 @@ public class CircuitPanel extends JPanel implements ChangeSelectedLayer,
     public final void setDrawingModel(DrawingModel dm)
     {
         drawingModel = dm;
+        tiled = false;
+        if (tileRenderer != null) {
+            tileRenderer.clear();
+        }
         selectionActions = new SelectionActions(drawingModel);
         parserActions = new ParserActions(drawingModel);
         undoActions = new UndoActions(parserActions);
@@ -1138,6 +1511,16 @@ public class CircuitPanel extends JPanel implements ChangeSelectedLayer,
             }
             drawingModel.setChanged(true);
 
+            // The primitives may have been moved or resized.
+            selectionActions.applyToSelectedElements(
+                new ProcessElementsInterface()
+            {
+                public void doAction(GraphicPrimitive g)
+                {
+                    drawingModel.updatePrimitiveIndex(g);
+                }
+            });
+
             // We need to check and sort the layers, since the user can
             // change the layer associated with a given primitive thanks to
             // the dialog window which has been shown.
@@ -1192,6 +1575,7 @@ public class CircuitPanel extends JPanel implements ChangeSelectedLayer,
         mapCoordinates = m;
         // Force an in-depth redraw.
         drawingModel.setChanged(true);
+        staticLayerValid = false;
     }
 
     /** Get the current coordinate mapping.
@@ -1223,6 +1607,46 @@ public class CircuitPanel extends JPanel implements ChangeSelectedLayer,
         repaint(x, y, width, height);
     }
 
+    /** Force a repaint of the elements drawn over the drawing, which has
+     * not been modified.
+     */
+    @Override
+    public void forcesOverlayRepaint()
+    {
+        super.repaint(0, 0, 0, getWidth(), getHeight());
+    }
+
+    /** Force a repaint of the elements drawn over the drawing, which has
+     * not been modified.
+     *
+     * @param x the x leftmost corner of the dirty region to repaint.
+     * @param y the y leftmost corner of the dirty region to repaint.
+     * @param width the width of the dirty region.
+     * @param height the height of the dirty region.
+     */
+    @Override
+    public void forcesOverlayRepaint(int x, int y, int width, int height)
+    {
+        super.repaint(0, x, y, width, height);
+    }
+
+    /** Schedule a repaint. Since the drawing may have been modified, it
+     * will be drawn again. Use forcesOverlayRepaint when only the elements
+     * drawn over it have changed.
+     *
+     * @param tm maximum time in milliseconds before update.
+     * @param x the x leftmost corner of the dirty region to repaint.
+     * @param y the y leftmost corner of the dirty region to repaint.
+     * @param width the width of the dirty region.
+     * @param height the height of the dirty region.
+     */
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height)
+    {
+        staticLayerValid = false;
+        super.repaint(tm, x, y, width, height);
+    }
+
     /** Get the Ruler object.
      *
      * @return the Ruler object.
@@ -1300,6 +1724,7 @@ public class CircuitPanel extends JPanel implements ChangeSelectedLayer,
             // Apply the translation to all primitives
             for (GraphicPrimitive gp : model.getPrimitiveVector()) {
                 gp.movePrimitive(deltaX, deltaY);
+                model.updatePrimitiveIndex(gp);
             }
             // Return true indicating that a translation was performed
             return true;
@@ -0,0 +1,300 @@
+package fidocadj.circuit;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.List;
+
+import fidocadj.circuit.model.DrawingModel;
+import fidocadj.circuit.views.Drawing;
+import fidocadj.geom.MapCoordinates;
+import fidocadj.globals.Globals;
+import fidocadj.graphic.swing.Graphics2DSwing;
+import fidocadj.layers.LayerDesc;
+import fidocadj.primitives.GraphicPrimitive;
+import fidocadj.primitives.MacroTemplate;
+import fidocadj.timer.Metrics;
+import fidocadj.timer.TimeStats;
+
+/** LayerRasters: keep the image of each layer of the drawing shown by a
+    panel, so that hiding or showing a layer, or changing the color of a
+    layer, do not require to draw the whole drawing again.
+
+    Each layer is drawn in its own transparent image, with its color and
+    its transparency, and the images of the visible layers are copied one
+    over the other in the order of the layers. The holes of the pads are
+    drawn in a last image. The image of a layer is drawn again only when
+    the primitives it contains are modified (see
+    DrawingModel.getLayerVersion), selected or deselected, or when the
+    color of the layer is changed. All the images are drawn again when the
+    view or the settings of the panel change.
+
+    All the methods should be called from the event dispatch thread.
+
+    <pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+    </pre>
+
+    @author Davide Bucci
+*/
+final class LayerRasters
+{
+    // Index of the image containing the holes of the pads.
+    private static final int HOLES=LayerDesc.MAX_LAYERS;
+
+    private static final TimeStats LAYER_TIME=
+        Metrics.getTimer("paint.layers.draw");
+    private static final TimeStats COMPOSE_TIME=
+        Metrics.getTimer("paint.layers.compose");
+
+    private final BufferedImage[] images=new BufferedImage[HOLES+1];
+    // Part of each image which is up to date, in the coordinates of the
+    // panel.
+    private final Area[] valid=new Area[HOLES+1];
+    // Contents and appearance of each layer when its image has been drawn.
+    private final Object[] keys=new Object[HOLES+1];
+    // Conditions shared by all the layers when the images have been drawn.
+    private List<Object> view;
+
+    /** Draw the drawing in a region of a graphic context, by copying the
+        images of the visible layers. The parts of the images which are not
+        up to date are drawn before. The coordinates of the drawing should
+        have been calculated before with the given coordinate mapping (see
+        Drawing.calculate), so that only the primitives visible in the
+        region are drawn.
+        @param g the graphic context, in the coordinates of the panel and
+            clipped to the region to be drawn. Its transform and its
+            rendering hints are employed to draw the images.
+        @param w the width of g in pixels.
+        @param h the height of g in pixels.
+        @param area the region to be drawn, in the coordinates of the panel.
+        @param drawing the view employed to draw the layers.
+        @param dm the drawing.
+        @param m the coordinate mapping.
+        @param gs the graphic context employed by the panel to draw. Its
+            Swing graphic context is replaced.
+    */
+    void draw(Graphics2D g, int w, int h, Rectangle area, Drawing drawing,
+        DrawingModel dm, MapCoordinates m, Graphics2DSwing gs)
+    {
+        List<Object> v=getView(g, w, h, dm, m, gs);
+        if (!v.equals(view)) {
+            invalidate();
+            view=v;
+        }
+        List<LayerDesc> layers=dm.getLayers();
+        List<List<GraphicPrimitive>> selected=getSelected(dm);
+        Object[] k=new Object[HOLES+1];
+        for (int i=0; i<HOLES; ++i) {
+            if (i<layers.size()) {
+                LayerDesc l=layers.get(i);
+                k[i]=Arrays.asList(dm.getLayerVersion(i),
+                    l.getColor().getRGB(), l.getAlpha(), selected.get(i));
+            }
+        }
+        // The holes are drawn only in the pads of the visible layers.
+        boolean[] visible=new boolean[layers.size()];
+        for (int i=0; i<visible.length; ++i) {
+            visible[i]=layers.get(i).isVisible();
+        }
+        k[HOLES]=Arrays.asList(Arrays.asList(k).subList(0, HOLES),
+            Arrays.toString(visible));
+
+        for (int i=0; i<=HOLES; ++i) {
+            boolean used=i<HOLES ? dm.containsLayer(i) : needsHoles(dm);
+            if (!used || k[i]==null) {
+                // Free the memory.
+                images[i]=null;
+                valid[i]=null;
+                keys[i]=null;
+                continue;
+            }
+            if (i<HOLES && !layers.get(i).isVisible()) {
+                continue;
+            }
+            if (images[i]==null || images[i].getWidth()!=w
+                || images[i].getHeight()!=h)
+            {
+                images[i]=new BufferedImage(w, h,
+                    BufferedImage.TYPE_INT_ARGB_PRE);
+                valid[i]=new Area();
+            }
+            if (!k[i].equals(keys[i])) {
+                valid[i].reset();
+                keys[i]=k[i];
+            }
+            Area r=new Area(area);
+            r.subtract(valid[i]);
+            if (!r.isEmpty()) {
+                long start=TimeStats.start();
+                drawLayer(g, i, r, drawing, dm, m, gs);
+                LAYER_TIME.stop(start);
+                valid[i].add(r);
+            }
+        }
+
+        // Copy the images pixel by pixel, in the order of the layers. The
+        // clip region of g is kept.
+        long start=TimeStats.start();
+        AffineTransform t=g.getTransform();
+        g.setTransform(new AffineTransform());
+        for (int i=0; i<=HOLES; ++i) {
+            if (images[i]!=null && (i==HOLES || layers.get(i).isVisible())) {
+                g.drawImage(images[i], 0, 0, null);
+            }
+        }
+        g.setTransform(t);
+        COMPOSE_TIME.stop(start);
+    }
+
+    /** Draw a layer (or the holes) in a region of its image.
+        @param g the graphic context of the panel.
+        @param i the layer, or HOLES.
+        @param r the region, in the coordinates of the panel.
+        @param drawing the view employed to draw the layers.
+        @param dm the drawing.
+        @param m the coordinate mapping.
+        @param gs the graphic context employed by the panel to draw.
+    */
+    private void drawLayer(Graphics2D g, int i, Area r, Drawing drawing,
+        DrawingModel dm, MapCoordinates m, Graphics2DSwing gs)
+    {
+        Graphics2D gi=images[i].createGraphics();
+        gi.setTransform(g.getTransform());
+        gi.clip(r);
+        // Erase the region, without anti aliasing.
+        gi.setComposite(AlphaComposite.Clear);
+        gi.fill(r);
+        gi.setComposite(AlphaComposite.SrcOver);
+        gi.setRenderingHints(g.getRenderingHints());
+        gi.setColor(Color.black);
+        gs.setGraphicContext(gi);
+        try {
+            if (i==HOLES) {
+                dm.setDrawOnlyPads(true);
+            } else {
+                dm.setDrawOnlyLayer(i);
+            }
+            drawing.draw(gs, m);
+        } finally {
+            dm.setDrawOnlyPads(false);
+            dm.setDrawOnlyLayer(-1);
+            gs.setGraphicContext(g);
+            gi.dispose();
+        }
+    }
+
+    /** Move the contents of the images after a scroll of the panel. The
+        parts which are not in the panel any more are not valid.
+        @param dx the horizontal translation, in pixels of the images.
+        @param dy the vertical translation, in pixels of the images.
+        @param rect the new part of the panel contained in the images.
+    */
+    void scroll(int dx, int dy, Rectangle rect)
+    {
+        for (int i=0; i<=HOLES; ++i) {
+            if (images[i]!=null) {
+                Graphics2D gi=images[i].createGraphics();
+                gi.setComposite(AlphaComposite.Src);
+                gi.copyArea(0, 0, images[i].getWidth(),
+                    images[i].getHeight(), dx, dy);
+                gi.dispose();
+                valid[i].intersect(new Area(rect));
+            }
+        }
+    }
+
+    /** Specify that all the images should be drawn again.
+    */
+    void invalidate()
+    {
+        for (int i=0; i<=HOLES; ++i) {
+            if (valid[i]!=null) {
+                valid[i].reset();
+            }
+        }
+    }
+
+    /** Check if some primitives of the drawing need holes.
+        @param dm the drawing.
+        @return true if holes should be drawn.
+    */
+    private static boolean needsHoles(DrawingModel dm)
+    {
+        for (GraphicPrimitive p: dm.getHolePrimitives()) {
+            if (p.needsHoles()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Get the selected primitives of each layer.
+        @param dm the drawing.
+        @return for each layer, the selected primitives which contain it,
+            in the order of the drawing.
+    */
+    private static List<List<GraphicPrimitive>> getSelected(DrawingModel dm)
+    {
+        List<List<GraphicPrimitive>> s=
+            new ArrayList<List<GraphicPrimitive>>(HOLES);
+        for (int i=0; i<HOLES; ++i) {
+            s.add(new ArrayList<GraphicPrimitive>());
+        }
+        for (GraphicPrimitive p: dm.getPrimitiveVector()) {
+            if (p.isSelected()) {
+                for (int i=0; i<HOLES; ++i) {
+                    if (p.containsLayer(i)) {
+                        s.get(i).add(p);
+                    }
+                }
+            }
+        }
+        return s;
+    }
+
+    /** Get the conditions which affect all the layers. The objects which
+        can be modified are compared by identity (the library by its hash
+        code, to avoid comparing its contents).
+        @param g the graphic context of the panel.
+        @param w the width of g in pixels.
+        @param h the height of g in pixels.
+        @param dm the drawing.
+        @param m the coordinate mapping.
+        @param gs the graphic context employed by the panel to draw.
+        @return the conditions.
+    */
+    private static List<Object> getView(Graphics2D g, int w, int h,
+        DrawingModel dm, MapCoordinates m, Graphics2DSwing gs)
+    {
+        AffineTransform t=g.getTransform();
+        return Arrays.asList(w, h, t.getScaleX(), t.getScaleY(),
+            g.getRenderingHints(), m.getXMagnitude(), m.getYMagnitude(),
+            m.getXCenter(), m.getYCenter(), m.getOrientation(),
+            m.getMirror(), dm, dm.getLayers(), dm.getLayers().size(),
+            System.identityHashCode(dm.getLibrary()),
+            dm.getLibrary().size(), MacroTemplate.getLibraryVersion(),
+            dm.getTextFont(), dm.getTextFontSize(), gs.getSelectedColor(),
+            gs.getBitmapsEnabled(), gs.getDetailLevel(),
+            Globals.getLineWidth(), Globals.getLineWidthCircles(),
+            Globals.getDiameterConnection());
+    }
+}
@@ -8,7 +8,8 @@ import fidocadj.circuit.controllers.ElementsEdtActions;
 import fidocadj.circuit.controllers.ContinuosMoveActions;
 import fidocadj.circuit.controllers.EditorActions;
 import fidocadj.circuit.controllers.HandleActions;
-import fidocadj.timer.MyTimer;
+import fidocadj.timer.Metrics;
+import fidocadj.timer.TimeStats;
 import fidocadj.geom.MapCoordinates;
 import fidocadj.globals.OSValidator;
 
@@ -44,11 +45,11 @@ public class MouseMoveClickHandler implements MouseMotionListener,
     private final ContinuosMoveActions eea;
     private final HandleActions haa;
 
-    // Record time for mouse down handle event in selection.
-    private double record_c;
-
-    // Record time for click up event in selection.
-    private double record_d;
+    // Time needed for handling the mouse events.
+    private static final TimeStats PRESS_TIME=Metrics.getTimer("mouse.press");
+    private static final TimeStats DRAG_TIME=Metrics.getTimer("mouse.drag");
+    private static final TimeStats RELEASE_TIME=
+        Metrics.getTimer("mouse.release");
 
     /** Constructor. Create a MouseMoveClickHandler and associates it to the
         provided handler.
@@ -60,7 +61,6 @@ public class MouseMoveClickHandler implements MouseMotionListener,
         edt=cp.getEditorActions();
         eea=cp.getContinuosMoveActions();
         haa=cp.getHandleActions();
-        record_c=record_d=1e100;
     }
 
     /** Called when the mouse is clicked inside the control
@@ -87,8 +87,9 @@ public class MouseMoveClickHandler implements MouseMotionListener,
 
         boolean toggle = getToggle(evt);
 
+        // Only the primitive being edited has to be drawn again.
         if (eea.continuosMove(cp.getMapCoordinates(), xa, ya, toggle)) {
-            cp.repaint();
+            cp.forcesOverlayRepaint();
         }
     }
 
@@ -112,7 +113,7 @@ public class MouseMoveClickHandler implements MouseMotionListener,
     */
     @Override public void mousePressed(MouseEvent evt)
     {
-        MyTimer mt = new MyTimer();
+        long start=TimeStats.start();
 
         int px=evt.getX();
         int py=evt.getY();
@@ -133,13 +134,10 @@ public class MouseMoveClickHandler implements MouseMotionListener,
             cp.getRuler().setActive(true);
         }
 
+        double elapsed=PRESS_TIME.stop(start)/1e6;
         if(cp.isProfiling()) {
-            double elapsed=mt.getElapsed();
-            if(elapsed<record_c) {
-                record_c=elapsed;
-            }
             System.out.println("MP: Time elapsed: "+elapsed+
-                "; record: "+record_c+" ms");
+                "; record: "+PRESS_TIME.getMin()/1e6+" ms");
         }
     }
 
@@ -148,34 +146,34 @@ public class MouseMoveClickHandler implements MouseMotionListener,
     */
     @Override public void mouseDragged(MouseEvent evt)
     {
-        MyTimer mt = new MyTimer();
+        long start=TimeStats.start();
         int px=evt.getX();
         int py=evt.getY();
 
-        // Handle the ruler. Basically, we just save the coordinates and
-        // we launch a repaint which will be done as soon as possible.
-        // No graphical elements are drawn outside a repaint.
-        if((evt.getModifiersEx() & InputEvent.BUTTON3_DOWN_MASK)!=0 ||
-            evt.isShiftDown())
-        {
-            cp.getRuler().setRulerEnd(px, py);
-            cp.repaint();
-            return;
-        }
+        try {
+            // Handle the ruler. Basically, we just save the coordinates and
+            // we launch a repaint which will be done as soon as possible.
+            // No graphical elements are drawn outside a repaint.
+            if((evt.getModifiersEx() & InputEvent.BUTTON3_DOWN_MASK)!=0 ||
+                evt.isShiftDown())
+            {
+                cp.getRuler().setRulerEnd(px, py);
+                cp.forcesOverlayRepaint();
+                return;
+            }
 
-        haa.dragHandleDrag(cp, px, py, cp.getMapCoordinates(),
-            (evt.getModifiersEx() & ActionEvent.CTRL_MASK)==
-            ActionEvent.CTRL_MASK);
-        // A little profiling if necessary. I noticed that time needed for
-        // handling clicks is not negligible in large drawings, hence the
-        // need of controlling it.
-        if(cp.isProfiling()) {
-            double elapsed=mt.getElapsed();
-            if(elapsed<record_d) {
-                record_d=elapsed;
+            haa.dragHandleDrag(cp, px, py, cp.getMapCoordinates(),
+                (evt.getModifiersEx() & ActionEvent.CTRL_MASK)==
+                ActionEvent.CTRL_MASK);
+        } finally {
+            // A little profiling if necessary. I noticed that time needed
+            // for handling clicks is not negligible in large drawings, hence
+            // the need of controlling it.
+            double elapsed=DRAG_TIME.stop(start)/1e6;
+            if(cp.isProfiling()) {
+                System.out.println("MD: Time elapsed: "+elapsed+
+                    "; record: "+DRAG_TIME.getMin()/1e6+" ms");
             }
-            System.out.println("MD: Time elapsed: "+elapsed+
-                "; record: "+record_d+" ms");
         }
     }
 
@@ -184,7 +182,7 @@ public class MouseMoveClickHandler implements MouseMotionListener,
     */
     @Override public void mouseReleased(MouseEvent evt)
     {
-        MyTimer mt = new MyTimer();
+        long start=TimeStats.start();
         int px=evt.getX();
         int py=evt.getY();
         MapCoordinates cs=cp.getMapCoordinates();
@@ -235,13 +233,10 @@ public class MouseMoveClickHandler implements MouseMotionListener,
         // which is done in this phase is finding the closest component to
         // the mouse pointer and eventually selecting it.
 
+        double elapsed=RELEASE_TIME.stop(start)/1e6;
         if(cp.isProfiling()) {
-            double elapsed=mt.getElapsed();
-            if(elapsed<record_d) {
-                record_d=elapsed;
-            }
             System.out.println("MR: Time elapsed: "+elapsed+
-                "; record: "+record_d+" ms");
+                "; record: "+RELEASE_TIME.getMin()/1e6+" ms");
         }
     }
 
@@ -296,7 +291,7 @@ public class MouseMoveClickHandler implements MouseMotionListener,
         cp.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         if(eea.successiveMove) {
             eea.successiveMove = false;
-            cp.repaint();
+            cp.forcesOverlayRepaint();
         }
     }
 }
@@ -0,0 +1,922 @@
+package fidocadj.circuit;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import javax.swing.SwingUtilities;
+
+import fidocadj.circuit.controllers.ParserActions;
+import fidocadj.circuit.model.DrawingModel;
+import fidocadj.circuit.views.Drawing;
+import fidocadj.geom.MapCoordinates;
+import fidocadj.globals.Globals;
+import fidocadj.graphic.DetailLevel;
+import fidocadj.graphic.swing.Graphics2DSwing;
+import fidocadj.layers.LayerDesc;
+import fidocadj.primitives.GraphicPrimitive;
+import fidocadj.primitives.MacroDesc;
+import fidocadj.primitives.MacroTemplate;
+import fidocadj.undo.UndoDelta;
+
+/** TileRenderer: draw the elements of a drawing in background threads, so
+    that the user interface is not blocked while a very large drawing is
+    being drawn.
+
+    The panel is divided in square tiles, which are drawn independently by a
+    pool of threads. Each thread reads its own copy of the drawing and
+    employs its own graphic context and coordinate mapping, so that nothing
+    is shared with the event dispatch thread: the primitives keep in cache
+    their coordinates while being drawn, so that they can not be drawn by
+    several threads at once. The text of the drawing is written in the event
+    dispatch thread (see Snapshot), with the differences from the previous
+    version, and each thread parses again only the primitives which differ
+    (see Worker). The size of the drawing is calculated by the same threads.
+    The tiles are kept in a cache, where the least recently used ones are
+    discarded when the memory limit is exceeded. They are identified by the
+    view (zoom, position of the origin...), the version of the drawing and
+    their position. The version changes only when the drawing or its
+    appearance is modified (see setDrawing), so that the tiles are reused
+    when the user goes back to a view already shown.
+
+    All the methods, except where noted, should be called from the event
+    dispatch thread. When a tile is ready, the panel is notified in the
+    event dispatch thread. Until then, the tiles of the last view which has
+    been completely shown are employed in its place, scaled if needed.
+
+    <pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+    </pre>
+
+    @author Davide Bucci
+*/
+final class TileRenderer
+{
+    // Size of the side of a tile, in pixels of the panel.
+    static final int TILE_SIZE=256;
+
+    // Memory limit of the cache, in bytes.
+    private static final long MAX_MEMORY=64L*1024L*1024L;
+
+    // Number of versions for which the differences are kept, so that a
+    // thread which has not drawn the last versions can still update its
+    // copy of the drawing without parsing it again.
+    private static final int MAX_DELTAS=16;
+
+    /** The way the drawing is shown. Tiles drawn with different views can
+        not be exchanged.
+    */
+    static final class View
+    {
+        final double xMagnitude;
+        final double yMagnitude;
+        final double xCenter;
+        final double yCenter;
+        // Scale of the device (HiDPI screens).
+        final double scaleX;
+        final double scaleY;
+        final boolean antiAlias;
+
+        /** Standard constructor.
+            @param m the coordinate mapping of the panel.
+            @param sx the horizontal scale of the device.
+            @param sy the vertical scale of the device.
+            @param aa true if anti aliasing is active.
+        */
+        View(MapCoordinates m, double sx, double sy, boolean aa)
+        {
+            xMagnitude=m.getXMagnitude();
+            yMagnitude=m.getYMagnitude();
+            xCenter=m.getXCenter();
+            yCenter=m.getYCenter();
+            scaleX=sx;
+            scaleY=sy;
+            antiAlias=aa;
+        }
+
+        @Override public int hashCode()
+        {
+            return Objects.hash(xMagnitude, yMagnitude, xCenter, yCenter,
+                scaleX, scaleY, antiAlias);
+        }
+
+        @Override public boolean equals(Object obj)
+        {
+            if(!(obj instanceof View)) {
+                return false;
+            }
+            View v=(View)obj;
+            return xMagnitude==v.xMagnitude && yMagnitude==v.yMagnitude
+                && xCenter==v.xCenter && yCenter==v.yCenter
+                && scaleX==v.scaleX && scaleY==v.scaleY
+                && antiAlias==v.antiAlias;
+        }
+    }
+
+    /** All the information needed by the background threads to build their
+        copy of a version of the drawing. It is written in the event
+        dispatch thread and never modified once created, so that it can be
+        read by any thread.
+    */
+    private static final class Snapshot
+    {
+        final long version;
+        // The drawing shown by the panel and its version (see
+        // DrawingModel.getVersion) when the snapshot has been created.
+        final DrawingModel model;
+        final long modelVersion;
+        // Copy of the list of the primitives, with the text of each one,
+        // and configuration lines which begin the text of the drawing.
+        final List<GraphicPrimitive> primitives;
+        final List<String> lines;
+        final String header;
+        // The differences between the last versions, the last one leading
+        // to this version. Empty if the drawing should be parsed again.
+        final List<UndoDelta> deltas;
+        // Position of the selected primitives in the list.
+        final int[] selected;
+        final LayerDesc[] layers;
+        // Copy of the library, shared by all the snapshots until the
+        // library is modified.
+        final Map<String, MacroDesc> library;
+        final String font;
+        final int fontSize;
+        final Color selectedColor;
+        final boolean bitmaps;
+        final DetailLevel detail;
+
+        /** Standard constructor. The text of the primitives is written
+            again only if the drawing has been modified since the previous
+            snapshot.
+            @param v the version of the drawing.
+            @param dm the drawing.
+            @param sel the position of the selected primitives.
+            @param lib the copy of the library.
+            @param sc the color of the selected elements.
+            @param b true if the cache of the macros should be employed.
+            @param dl the level of detail.
+            @param prev the previous snapshot (version v-1), or null.
+        */
+        Snapshot(long v, DrawingModel dm, int[] sel,
+            Map<String, MacroDesc> lib, Color sc, boolean b, DetailLevel dl,
+            Snapshot prev)
+        {
+            version=v;
+            model=dm;
+            modelVersion=dm.getVersion();
+            header=new ParserActions(dm).registerConfiguration(true)
+                .toString();
+            if(prev!=null && prev.model==dm && prev.modelVersion==modelVersion)
+            {
+                primitives=prev.primitives;
+                lines=prev.lines;
+            } else {
+                primitives=new ArrayList<GraphicPrimitive>(
+                    dm.getPrimitiveVector());
+                List<String> t=new ArrayList<String>(primitives.size());
+                StringBuilder s=new StringBuilder(64);
+                for(GraphicPrimitive g : primitives) {
+                    s.setLength(0);
+                    g.appendText(s, true);
+                    t.add(s.toString());
+                }
+                lines=Collections.unmodifiableList(t);
+            }
+            selected=sel;
+            List<LayerDesc> l=dm.getLayers();
+            layers=new LayerDesc[l.size()];
+            for(int i=0; i<layers.length; ++i) {
+                LayerDesc d=l.get(i);
+                layers[i]=new LayerDesc(d.getColor(), d.isVisible(),
+                    d.getDescription(), d.getAlpha());
+            }
+            library=lib;
+            font=dm.getTextFont();
+            fontSize=dm.getTextFontSize();
+            selectedColor=sc;
+            bitmaps=b;
+            detail=dl;
+
+            // The copies of the drawing can be updated only if the macros
+            // and the texts are parsed in the same way.
+            if(prev==null || prev.library!=library
+                || prev.layers.length!=layers.length
+                || !prev.font.equals(font) || prev.fontSize!=fontSize)
+            {
+                deltas=Collections.emptyList();
+            } else {
+                List<UndoDelta> d=new ArrayList<UndoDelta>(prev.deltas.subList(
+                    Math.max(0, prev.deltas.size()-MAX_DELTAS+1),
+                    prev.deltas.size()));
+                if(lines==prev.lines) {
+                    // Only the header may be different.
+                    d.add(UndoDelta.compute(prev.header,
+                        Collections.<String>emptyList(),
+                        Collections.emptyList(), header,
+                        Collections.<String>emptyList(),
+                        Collections.emptyList()));
+                } else {
+                    d.add(UndoDelta.compute(prev.header, prev.lines,
+                        prev.primitives, header, lines, primitives));
+                }
+                deltas=Collections.unmodifiableList(d);
+            }
+        }
+    }
+
+    /** Identify a tile.
+    */
+    private static final class Key
+    {
+        final View view;
+        final long version;
+        final int column;
+        final int row;
+
+        /** Standard constructor.
+            @param v the view.
+            @param ver the version of the drawing.
+            @param c the column of the tile.
+            @param r the row of the tile.
+        */
+        Key(View v, long ver, int c, int r)
+        {
+            view=v;
+            version=ver;
+            column=c;
+            row=r;
+        }
+
+        @Override public int hashCode()
+        {
+            return Objects.hash(view, version, column, row);
+        }
+
+        @Override public boolean equals(Object obj)
+        {
+            if(!(obj instanceof Key)) {
+                return false;
+            }
+            Key k=(Key)obj;
+            return version==k.version && column==k.column && row==k.row
+                && view.equals(k.view);
+        }
+    }
+
+    /** A tile which has been drawn.
+    */
+    private static final class Tile
+    {
+        final BufferedImage image;
+        // The time needed to draw the tile, in nanoseconds.
+        final long time;
+
+        /** Standard constructor.
+            @param i the image.
+            @param t the time needed to draw it.
+        */
+        Tile(BufferedImage i, long t)
+        {
+            image=i;
+            time=t;
+        }
+
+        /** Get the memory employed by the image.
+            @return the size in bytes.
+        */
+        long getSize()
+        {
+            return 4L*image.getWidth()*image.getHeight();
+        }
+    }
+
+    /** The copy of the drawing employed by a background thread. It is kept
+        from one version to the next one: only the primitives which differ
+        are parsed again.
+    */
+    private static final class Worker
+    {
+        long version=-1;
+        Map<String, MacroDesc> librarySource;
+        Map<String, MacroDesc> library;
+        List<LayerDesc> layers;
+        DrawingModel model;
+        ParserActions parser;
+        Drawing drawing;
+        final MapCoordinates cs=new MapCoordinates();
+        final Graphics2DSwing graphic=new Graphics2DSwing();
+
+        /** Bring the copy of the drawing to the given version, if needed.
+            @param s the snapshot of the drawing.
+        */
+        void update(Snapshot s)
+        {
+            if(s.version==version) {
+                return;
+            }
+            // The line widths given in the drawing apply only to this copy.
+            Globals.useThreadSizes();
+            boolean reload=model==null || s.library!=librarySource
+                || layers.size()!=s.layers.length
+                || !s.font.equals(model.getTextFont())
+                || s.fontSize!=model.getTextFontSize();
+            if(s.library!=librarySource) {
+                librarySource=s.library;
+                library=MacroDesc.copyLibrary(s.library);
+            }
+            // The layers are modified in place, since the macros parsed
+            // (see MacroTemplate) are bound to the list.
+            if(layers==null || layers.size()!=s.layers.length) {
+                layers=new ArrayList<LayerDesc>(s.layers.length);
+                for(LayerDesc l : s.layers) {
+                    layers.add(new LayerDesc(l.getColor(), l.isVisible(),
+                        l.getDescription(), l.getAlpha()));
+                }
+            } else {
+                for(int i=0; i<s.layers.length; ++i) {
+                    LayerDesc l=layers.get(i);
+                    l.setColor(s.layers[i].getColor());
+                    l.setVisible(s.layers[i].isVisible());
+                    l.setDescription(s.layers[i].getDescription());
+                    l.setAlpha(s.layers[i].getAlpha());
+                }
+            }
+            if(reload) {
+                model=new DrawingModel();
+                model.setLibrary(library);
+                model.setLayers(layers);
+                model.setTextFont(s.font, s.fontSize, null);
+                parser=new ParserActions(model);
+                drawing=new Drawing(model);
+            } else if(version<0 || s.version-version>s.deltas.size()) {
+                reload=true;
+            } else {
+                int n=s.deltas.size();
+                for(UndoDelta d : s.deltas.subList(n-(int)(s.version-version),
+                    n))
+                {
+                    if(!applyDelta(d)) {
+                        reload=true;
+                        break;
+                    }
+                }
+            }
+            if(reload) {
+                StringBuffer t=new StringBuffer(s.header);
+                for(String l : s.lines) {
+                    t.append(l);
+                }
+                parser.parseString(t);
+            }
+            List<GraphicPrimitive> p=model.getPrimitiveVector();
+            for(GraphicPrimitive g : p) {
+                g.setSelected(false);
+            }
+            for(int i : s.selected) {
+                if(i<p.size()) {
+                    p.get(i).setSelected(true);
+                }
+            }
+            model.setChanged(true);
+            graphic.setSelectedColor(s.selectedColor);
+            graphic.setBitmapsEnabled(s.bitmaps);
+            graphic.setDetailLevel(s.detail);
+            version=s.version;
+        }
+
+        /** Apply the differences between two versions to the copy of the
+            drawing, as UndoActions does. Only the primitives which differ
+            are parsed.
+            @param d the differences.
+            @return false if the copy does not correspond to the old version
+                and should be parsed again.
+        */
+        private boolean applyDelta(UndoDelta d)
+        {
+            if(d.isHeaderChanged()) {
+                parser.addString(new StringBuffer(d.getHeader(true)), false);
+            }
+            for(UndoDelta.Hunk h : d.getHunks()) {
+                int p=h.getPosition(true);
+                String[] removed=h.getRemoved(true);
+                String[] inserted=h.getInserted(true);
+                if(p+removed.length>model.getPrimitiveVector().size()) {
+                    return false;
+                }
+                for(int i=0; i<removed.length; ++i) {
+                    model.removePrimitiveAt(p);
+                }
+                StringBuffer s=new StringBuffer();
+                for(String l : inserted) {
+                    s.append(l);
+                }
+                List<GraphicPrimitive> v=parser.parsePrimitives(s);
+                if(v.size()!=inserted.length) {
+                    return false;
+                }
+                for(int i=0; i<v.size(); ++i) {
+                    if(model.insertPrimitive(p+i, v.get(i))!=p+i) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    private final Consumer<Rectangle> listener;
+    private final Runnable boundsListener;
+    private final ThreadPoolExecutor executor;
+    private final ThreadLocal<Worker> worker=
+        ThreadLocal.withInitial(Worker::new);
+
+    // The cache of the tiles, accessed by all the threads.
+    private final Map<Key, Tile> tiles=
+        new LinkedHashMap<Key, Tile>(64, 0.75f, true);
+    private long usedMemory;
+
+    // The tiles being drawn, accessed by all the threads.
+    private final Set<Key> pending=new HashSet<Key>();
+
+    // The view and the version being shown (accessed by all the threads).
+    private View currentView;
+    private long currentVersion=-1;
+
+    private Snapshot snapshot;
+    // Everything the snapshot depends on (see getState), and the last
+    // version employed.
+    private List<Object> state;
+    private long lastVersion;
+    private Map<String, MacroDesc> libraryCopy;
+    private Map<String, MacroDesc> librarySource;
+    private int librarySize;
+    private int libraryVersion;
+
+    // The last view and version for which all the tiles were available.
+    private View completeView;
+    private long completeVersion=-1;
+
+    // The time needed to draw the tiles of the last complete view.
+    private long completeTime=-1;
+
+    // The size of the drawing (xmin, ymin, xmax, ymax in pixels) calculated
+    // by the background threads, with the view and the version employed
+    // (accessed by all the threads).
+    private int[] bounds;
+    private View boundsView;
+    private long boundsVersion=-1;
+    // The view and the version for which the size has been requested last.
+    private View requestedView;
+    private long requestedVersion=-1;
+
+    /** Standard constructor.
+        @param l the object to be notified (in the event dispatch thread)
+            when a tile becomes available. It receives the region of the
+            panel covered by the tile.
+        @param b the object to be notified (in the event dispatch thread)
+            when the size of the drawing has been calculated (see
+            trackBounds).
+    */
+    TileRenderer(Consumer<Rectangle> l, Runnable b)
+    {
+        listener=l;
+        boundsListener=b;
+        // Keep a processor for the user interface, if possible.
+        int n=Math.max(1, Runtime.getRuntime().availableProcessors()-1);
+        executor=new ThreadPoolExecutor(n, n, 5L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), r -> {
+                Thread t=new Thread(r, "Tile renderer");
+                t.setDaemon(true);
+                t.setPriority(Thread.NORM_PRIORITY-1);
+                return t;
+            });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /** Set the drawing to be shown. If it has been modified since the last
+        call, or if its appearance has changed, a new version is copied for
+        the background threads. The text of the primitives is written here
+        only if the drawing has been modified.
+        @param dm the drawing.
+        @param sc the color of the selected elements.
+        @param bitmaps true if the cache of the macros should be employed.
+        @param detail the level of detail.
+        @return true if a new version of the drawing is shown.
+    */
+    boolean setDrawing(DrawingModel dm, Color sc, boolean bitmaps,
+        DetailLevel detail)
+    {
+        Map<String, MacroDesc> lib=dm.getLibrary();
+        int lv=MacroTemplate.getLibraryVersion();
+        if(libraryCopy==null || lib!=librarySource
+            || lib.size()!=librarySize || lv!=libraryVersion)
+        {
+            libraryCopy=Collections.unmodifiableMap(
+                MacroDesc.copyLibrary(lib));
+            librarySource=lib;
+            librarySize=lib.size();
+            libraryVersion=lv;
+        }
+        List<GraphicPrimitive> p=dm.getPrimitiveVector();
+        int n=0;
+        int[] sel=new int[p.size()];
+        for(int i=0; i<p.size(); ++i) {
+            if(p.get(i).isSelected()) {
+                sel[n++]=i;
+            }
+        }
+        sel=Arrays.copyOf(sel, n);
+        List<Object> st=getState(dm, sel, sc, bitmaps, detail);
+        if(snapshot!=null && st.equals(state)) {
+            return false;
+        }
+        state=st;
+        snapshot=new Snapshot(++lastVersion, dm, sel, libraryCopy, sc,
+            bitmaps, detail, snapshot);
+        return true;
+    }
+
+    /** Get everything a version of the drawing depends on. The objects
+        which can be modified are compared by identity.
+        @param dm the drawing.
+        @param sel the position of the selected primitives.
+        @param sc the color of the selected elements.
+        @param bitmaps true if the cache of the macros should be employed.
+        @param detail the level of detail.
+        @return the list of the objects.
+    */
+    private List<Object> getState(DrawingModel dm, int[] sel, Color sc,
+        boolean bitmaps, DetailLevel detail)
+    {
+        StringBuilder l=new StringBuilder();
+        for(LayerDesc d : dm.getLayers()) {
+            l.append(d.getColor().getRGB()).append(' ')
+                .append(d.isVisible()).append(' ')
+                .append(d.getAlpha()).append(' ')
+                .append(d.getDescription()).append('\n');
+        }
+        return Arrays.asList(dm, dm.getVersion(),
+            dm.getPrimitiveVector().size(), Arrays.toString(sel),
+            dm.getLayers(), l.toString(), libraryCopy, dm.getTextFont(),
+            dm.getTextFontSize(), sc, bitmaps, detail,
+            Globals.getLineWidth(), Globals.getLineWidthCircles(),
+            Globals.getDiameterConnection());
+    }
+
+    /** Track in a coordinate mapping the size of the drawing shown with
+        the given view. It is calculated by the background threads: if it
+        is not available yet, it is requested and the last size calculated
+        is employed in the meantime, scaled to the current zoom. The
+        listener is notified when the size is available.
+        @param m the coordinate mapping where the size is tracked.
+        @param view the current view.
+        @return true if the size was available.
+    */
+    boolean trackBounds(MapCoordinates m, View view)
+    {
+        long version=snapshot.version;
+        int[] b;
+        View bv;
+        boolean exact;
+        synchronized(this) {
+            currentView=view;
+            currentVersion=version;
+            b=bounds;
+            bv=boundsView;
+            exact=b!=null && boundsVersion==version && view.equals(bv);
+            if(!exact && (requestedVersion!=version
+                || !view.equals(requestedView)))
+            {
+                requestedView=view;
+                requestedVersion=version;
+                Snapshot s=snapshot;
+                executor.execute(() -> calculateBounds(view, s));
+            }
+        }
+        if(b==null) {
+            return false;
+        }
+        if(b[0]>b[2] || b[1]>b[3]) {
+            // The drawing is empty.
+            return exact;
+        }
+        double kx=view.xMagnitude/bv.xMagnitude;
+        double ky=view.yMagnitude/bv.yMagnitude;
+        m.trackBounds(
+            (int)Math.floor((b[0]-bv.xCenter)*kx+view.xCenter),
+            (int)Math.floor((b[1]-bv.yCenter)*ky+view.yCenter),
+            (int)Math.ceil((b[2]-bv.xCenter)*kx+view.xCenter),
+            (int)Math.ceil((b[3]-bv.yCenter)*ky+view.yCenter));
+        return exact;
+    }
+
+    /** Calculate the size of the drawing (background threads).
+        @param view the view.
+        @param s the snapshot of the drawing.
+    */
+    private void calculateBounds(View view, Snapshot s)
+    {
+        // The size is not calculated if it is not needed any more.
+        synchronized(this) {
+            if(s.version!=currentVersion || !view.equals(currentView)) {
+                return;
+            }
+        }
+        Worker w=worker.get();
+        w.update(s);
+        w.cs.setMagnitudesNoCheck(view.xMagnitude, view.yMagnitude);
+        w.cs.setXCenter(view.xCenter);
+        w.cs.setYCenter(view.yCenter);
+        w.drawing.calculate(w.cs);
+        int[] b=new int[] {w.cs.getXMin(), w.cs.getYMin(),
+            w.cs.getXMax(), w.cs.getYMax()};
+        synchronized(this) {
+            bounds=b;
+            boundsView=view;
+            boundsVersion=s.version;
+        }
+        SwingUtilities.invokeLater(boundsListener);
+    }
+
+    /** Draw the tiles covering a region of the panel. The tiles which are
+        not available are requested to the background threads.
+        @param g the graphic context, in the coordinates of the panel.
+        @param area the region to be drawn.
+        @param view the current view.
+        @return true if all the tiles were available.
+    */
+    boolean draw(Graphics2D g, Rectangle area, View view)
+    {
+        long version=snapshot.version;
+        synchronized(this) {
+            currentView=view;
+            currentVersion=version;
+        }
+        int c0=Math.floorDiv(area.x, TILE_SIZE);
+        int r0=Math.floorDiv(area.y, TILE_SIZE);
+        int c1=Math.floorDiv(area.x+area.width-1, TILE_SIZE);
+        int r1=Math.floorDiv(area.y+area.height-1, TILE_SIZE);
+        boolean complete=true;
+        for(int r=r0; r<=r1; ++r) {
+            for(int c=c0; c<=c1; ++c) {
+                Tile t=getTile(new Key(view, version, c, r));
+                Rectangle tr=new Rectangle(c*TILE_SIZE, r*TILE_SIZE,
+                    TILE_SIZE, TILE_SIZE);
+                if(t==null) {
+                    complete=false;
+                    request(new Key(view, version, c, r));
+                    drawReplacement(g, tr.intersection(area), view);
+                } else {
+                    drawTile(g, t, tr, view, view);
+                }
+            }
+        }
+        return complete;
+    }
+
+    /** Check if all the tiles covering a region of the panel are available.
+        In this case, they will replace the missing tiles in the following
+        calls to draw, until a new region is completed.
+        @param area the region.
+        @param view the current view.
+        @return true if all the tiles are available.
+    */
+    boolean checkComplete(Rectangle area, View view)
+    {
+        if(snapshot==null) {
+            return false;
+        }
+        long version=snapshot.version;
+        int c0=Math.floorDiv(area.x, TILE_SIZE);
+        int r0=Math.floorDiv(area.y, TILE_SIZE);
+        int c1=Math.floorDiv(area.x+area.width-1, TILE_SIZE);
+        int r1=Math.floorDiv(area.y+area.height-1, TILE_SIZE);
+        long time=0;
+        for(int r=r0; r<=r1; ++r) {
+            for(int c=c0; c<=c1; ++c) {
+                Tile t=getTile(new Key(view, version, c, r));
+                if(t==null) {
+                    return false;
+                }
+                time+=t.time;
+            }
+        }
+        completeView=view;
+        completeVersion=version;
+        completeTime=time;
+        return true;
+    }
+
+    /** Get the time needed to draw the tiles of the last region found
+        complete by checkComplete.
+        @return the time in nanoseconds, or -1 if not available.
+    */
+    long getCompleteTime()
+    {
+        return completeTime;
+    }
+
+    /** Discard all the tiles and the tiles being drawn.
+    */
+    void clear()
+    {
+        synchronized(this) {
+            tiles.clear();
+            pending.clear();
+            usedMemory=0;
+            bounds=null;
+            boundsView=null;
+            boundsVersion=-1;
+            requestedView=null;
+            requestedVersion=-1;
+        }
+        executor.getQueue().clear();
+        snapshot=null;
+        state=null;
+        completeView=null;
+        completeVersion=-1;
+        completeTime=-1;
+    }
+
+    /** Draw the tiles of the last view completely drawn, in place of a
+        tile which is not available.
+        @param g the graphic context, in the coordinates of the panel.
+        @param area the region of the panel to be covered.
+        @param view the current view.
+    */
+    private void drawReplacement(Graphics2D g, Rectangle area, View view)
+    {
+        if(completeView==null || area.isEmpty()) {
+            return;
+        }
+        View old=completeView;
+        // Region covered, in the panel coordinates of the old view.
+        double kx=old.xMagnitude/view.xMagnitude;
+        double ky=old.yMagnitude/view.yMagnitude;
+        double xa=(area.x-view.xCenter)*kx+old.xCenter;
+        double ya=(area.y-view.yCenter)*ky+old.yCenter;
+        double xb=(area.x+area.width-view.xCenter)*kx+old.xCenter;
+        double yb=(area.y+area.height-view.yCenter)*ky+old.yCenter;
+        int c0=(int)Math.floor(Math.min(xa, xb)/TILE_SIZE);
+        int r0=(int)Math.floor(Math.min(ya, yb)/TILE_SIZE);
+        int c1=(int)Math.floor(Math.max(xa, xb)/TILE_SIZE);
+        int r1=(int)Math.floor(Math.max(ya, yb)/TILE_SIZE);
+        // Avoid looking for too many tiles after a large zoom out.
+        if((long)(c1-c0+1)*(r1-r0+1)>256) {
+            return;
+        }
+        Shape oldClip=g.getClip();
+        g.clip(area);
+        for(int r=r0; r<=r1; ++r) {
+            for(int c=c0; c<=c1; ++c) {
+                Tile t=getTile(new Key(old, completeVersion, c, r));
+                if(t!=null) {
+                    drawTile(g, t, new Rectangle(c*TILE_SIZE, r*TILE_SIZE,
+                        TILE_SIZE, TILE_SIZE), old, view);
+                }
+            }
+        }
+        g.setClip(oldClip);
+    }
+
+    /** Draw a tile, which may have been drawn with a different view.
+        @param g the graphic context, in the coordinates of the panel.
+        @param t the tile.
+        @param r the region covered by the tile in its own view.
+        @param tv the view of the tile.
+        @param view the current view.
+    */
+    private static void drawTile(Graphics2D g, Tile t, Rectangle r, View tv,
+        View view)
+    {
+        double kx=view.xMagnitude/tv.xMagnitude;
+        double ky=view.yMagnitude/tv.yMagnitude;
+        AffineTransform at=AffineTransform.getTranslateInstance(
+            (r.x-tv.xCenter)*kx+view.xCenter,
+            (r.y-tv.yCenter)*ky+view.yCenter);
+        at.scale(kx*r.width/t.image.getWidth(),
+            ky*r.height/t.image.getHeight());
+        g.drawImage(t.image, at, null);
+    }
+
+    /** Get a tile from the cache (any thread).
+        @param k the key identifying the tile.
+        @return the tile, or null if it is not available.
+    */
+    private synchronized Tile getTile(Key k)
+    {
+        return tiles.get(k);
+    }
+
+    /** Ask the background threads to draw a tile, if it is not already
+        being drawn.
+        @param k the key identifying the tile.
+    */
+    private void request(Key k)
+    {
+        Snapshot s=snapshot;
+        synchronized(this) {
+            if(!pending.add(k)) {
+                return;
+            }
+        }
+        executor.execute(() -> render(k, s));
+    }
+
+    /** Draw a tile and store it in the cache (background threads).
+        @param k the key identifying the tile.
+        @param s the snapshot of the drawing.
+    */
+    private void render(Key k, Snapshot s)
+    {
+        try {
+            // The tiles which are not needed any more are not drawn.
+            synchronized(this) {
+                if(k.version!=currentVersion || !k.view.equals(currentView))
+                {
+                    return;
+                }
+            }
+            Worker w=worker.get();
+            w.update(s);
+            long start=System.nanoTime();
+            View v=k.view;
+            BufferedImage img=new BufferedImage(
+                (int)Math.ceil(TILE_SIZE*v.scaleX),
+                (int)Math.ceil(TILE_SIZE*v.scaleY),
+                BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D g=img.createGraphics();
+            g.scale(v.scaleX, v.scaleY);
+            g.translate(-k.column*TILE_SIZE, -k.row*TILE_SIZE);
+            g.clipRect(k.column*TILE_SIZE, k.row*TILE_SIZE, TILE_SIZE,
+                TILE_SIZE);
+            CircuitPanel.activateDrawingSettings(g, v.antiAlias);
+            w.cs.setMagnitudesNoCheck(v.xMagnitude, v.yMagnitude);
+            w.cs.setXCenter(v.xCenter);
+            w.cs.setYCenter(v.yCenter);
+            w.graphic.setGraphicContext(g);
+            g.setColor(Color.black);
+            w.graphic.setZoom(v.xMagnitude);
+            w.drawing.draw(w.graphic, w.cs);
+            g.dispose();
+            store(k, new Tile(img, System.nanoTime()-start));
+            SwingUtilities.invokeLater(() -> notifyListener(k));
+        } finally {
+            synchronized(this) {
+                pending.remove(k);
+            }
+        }
+    }
+
+    /** Store a tile in the cache. The least recently used tiles are
+        discarded if the memory limit is exceeded (background threads).
+        @param k the key identifying the tile.
+        @param t the tile.
+    */
+    private synchronized void store(Key k, Tile t)
+    {
+        Tile old=tiles.put(k, t);
+        if(old!=null) {
+            usedMemory-=old.getSize();
+        }
+        usedMemory+=t.getSize();
+        Iterator<Tile> i=tiles.values().iterator();
+        while(usedMemory>MAX_MEMORY && i.hasNext()) {
+            usedMemory-=i.next().getSize();
+            i.remove();
+        }
+    }
+
+    /** Tell the panel that a tile is available, if it is still needed.
+        @param k the key identifying the tile.
+    */
+    private void notifyListener(Key k)
+    {
+        synchronized(this) {
+            if(k.version!=currentVersion || !k.view.equals(currentView)) {
+                return;
+            }
+        }
+        listener.accept(new Rectangle(k.column*TILE_SIZE, k.row*TILE_SIZE,
+            TILE_SIZE, TILE_SIZE));
+    }
+}
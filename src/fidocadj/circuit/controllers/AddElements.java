@@ -157,7 +157,7 @@ public class AddElements
             dmp.getTextFont(), dmp.getTextFontSize());
         g.setMacroFont(dmp.getTextFont(), dmp.getTextFontSize());
 
-        dmp.addPrimitive(g, true, ua);
+        dmp.addPrimitive(g, ua);
     }
 
     /** Introduce a line. You can introduce lines point by point, so you
@@ -200,7 +200,7 @@ public class AddElements
                                  0,3,2,0,
                                  dmp.getTextFont(),
                                  dmp.getTextFontSize());
-            dmp.addPrimitive(g, true, ua);
+            dmp.addPrimitive(g, ua);
             // Check if the user has clicked with the right button.
             // In this case, the introduction is stopped, or we continue
             // with a second line (segment) continuous to the one just
@@ -250,7 +250,7 @@ public class AddElements
                     dmp.getLayers(), x, y, macroKey,"",
                     x+10, y+5, "", x+10, y+10,
                     dmp.getTextFont(),
-                    dmp.getTextFontSize(), orientation, mirror), true, ua);
+                    dmp.getTextFontSize(), orientation, mirror), ua);
             primEdit=null;
 
         } catch (IOException gG) {
@@ -300,7 +300,7 @@ public class AddElements
                                          currentLayer,0,
                                          dmp.getTextFont(),
                                          dmp.getTextFontSize());
-            dmp.addPrimitive(g, true, ua);
+            dmp.addPrimitive(g, ua);
             cn = 0;
         }
         return cn;
@@ -349,7 +349,7 @@ public class AddElements
                                         dmp.getTextFont(),
                                         dmp.getTextFontSize());
 
-            dmp.addPrimitive(g, true, ua);
+            dmp.addPrimitive(g, ua);
 
             cn = 0;
         }
@@ -396,7 +396,7 @@ public class AddElements
                                          currentLayer,0,
                                          dmp.getTextFont(),
                                          dmp.getTextFontSize());
-            dmp.addPrimitive(g, true, ua);
+            dmp.addPrimitive(g, ua);
             cn = 0;
         }
         if (cn>=2)  { cn = 0; }
@@ -442,7 +442,7 @@ public class AddElements
                                          currentLayer,
                                          dmp.getTextFont(),
                                          dmp.getTextFontSize());
-            dmp.addPrimitive(g, true,ua);
+            dmp.addPrimitive(g, ua);
 
             // Check if the user has clicked with the right button.
             if(altButton) {
@@ -475,6 +475,6 @@ public class AddElements
                                   currentLayer,
                                   dmp.getTextFont(), dmp.getTextFontSize());
 
-        dmp.addPrimitive(g, true, ua);
+        dmp.addPrimitive(g, ua);
     }
 }
\ No newline at end of file
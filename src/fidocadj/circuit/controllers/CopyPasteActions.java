@@ -90,10 +90,9 @@ public class CopyPasteActions
     {
         StringBuffer s = sa.getSelectedString(extensions, pa);
 
-        /*  If we have to split non standard macros, we need to work on a
-            temporary file, since the splitting works on the basis of the
-            export technique.
-            The temporary file will then be loaded in the clipboard.
+        /*  If we have to split non standard macros, the selection is
+            exported in the FidoCadJ format (in memory), since the splitting
+            works on the basis of the export technique.
         */
         if (splitNonStandard) {
             s=pa.splitMacros(s,  false);
@@ -5,6 +5,7 @@ import java.util.*;
 import fidocadj.circuit.model.ProcessElementsInterface;
 import fidocadj.circuit.model.DrawingModel;
 import fidocadj.geom.MapCoordinates;
+import fidocadj.geom.GeometricDistances;
 import fidocadj.layers.LayerDesc;
 import fidocadj.primitives.GraphicPrimitive;
 import fidocadj.primitives.PrimitiveMacro;
@@ -45,6 +46,10 @@ public class EditorActions
     // Tolerance in pixels to select an object
     public int sel_tolerance = 10;
 
+    // Size (logical units) of the first region examined around a point when
+    // searching for the closest primitive.
+    private static final int SEARCH_RADIUS = 8;
+
 
     /** Standard constructor: provide the database class.
         @param pp the Model containing the database.
@@ -94,6 +99,7 @@ public class EditorActions
             public void doAction(GraphicPrimitive g)
             {
                 g.rotatePrimitive(false, ix, iy);
+                dmp.updatePrimitiveIndex(g);
             }
         });
 
@@ -111,6 +117,7 @@ public class EditorActions
             public void doAction(GraphicPrimitive g)
             {
                 g.movePrimitive(dx, dy);
+                dmp.updatePrimitiveIndex(g);
             }
         });
 
@@ -132,6 +139,7 @@ public class EditorActions
             public void doAction(GraphicPrimitive g)
             {
                 g.mirrorPrimitive(ix);
+                dmp.updatePrimitiveIndex(g);
             }
         });
 
@@ -152,7 +160,7 @@ public class EditorActions
 
         for (i=0; i<v.size(); ++i){
             if(v.get(i).isSelected()) {
-                v.remove(v.get(i--));
+                dmp.removePrimitive(v.get(i--));
             }
         }
         if (saveState && ua!=null) {
@@ -173,6 +181,7 @@ public class EditorActions
             // to layer 0.
             if (g.isSelected() && ! (g instanceof PrimitiveMacro)) {
                 g.setLayer(l);
+                dmp.updatePrimitiveIndex(g);
                 toRedraw=true;
             }
         }
@@ -192,15 +201,43 @@ public class EditorActions
         @return the distance in logical units.
     */
     public int distancePrimitive(int px, int py)
+    {
+        int mindistance;
+        int floor=Math.min(dmp.getDistanceFloor(),
+            GeometricDistances.MIN_DISTANCE);
+
+        // Search in regions of growing size around the given point. If the
+        // minimum distance found is smaller than the size of the region,
+        // the primitives outside can not give a smaller value.
+        for(int r=SEARCH_RADIUS; r<=floor; r*=4) {
+            mindistance=minimumDistance(dmp.getPrimitivesNear(px, py, r),
+                px, py);
+            if(mindistance<r) {
+                return mindistance;
+            }
+        }
+
+        // Check the minimum distance by searching among all
+        // primitives
+        return minimumDistance(dmp.getPrimitiveVector(), px, py);
+    }
+
+    /** Calculates the minimum distance between the given point and the
+        primitives of the given list lying on a visible layer.
+
+        @param v the list of primitives.
+        @param px the x coordinate of the given point.
+        @param py the y coordinate of the given point.
+        @return the distance in logical units.
+    */
+    private int minimumDistance(List<GraphicPrimitive> v, int px, int py)
     {
         int distance;
         int mindistance=Integer.MAX_VALUE;
         int layer=0;
         List<LayerDesc> layerV=dmp.getLayers();
 
-        // Check the minimum distance by searching among all
-        // primitives
-        for (GraphicPrimitive g: dmp.getPrimitiveVector()) {
+        for (GraphicPrimitive g: v) {
             distance=g.getDistanceToPoint(px,py);
             if(distance<=mindistance) {
                 layer = g.getLayer();
@@ -257,9 +294,10 @@ public class EditorActions
 
         /*  The search method is very simple: we compute the distance of the
             given point from each primitive and we retain the minimum value, if
-            it is less than a given tolerance.
+            it is less than a given tolerance. Only the primitives which are
+            close enough to the point are checked.
         */
-        for  (GraphicPrimitive g: dmp.getPrimitiveVector()) {
+        for  (GraphicPrimitive g: dmp.getPrimitivesNear(px, py, tolerance)) {
             layer = g.getLayer();
             if(layerV.get(layer).isVisible() || g instanceof PrimitiveMacro) {
                 distance=g.getDistanceToPoint(px,py);
@@ -300,8 +338,9 @@ public class EditorActions
         }
 
         List<LayerDesc> layerV=dmp.getLayers();
-        // Process every primitive, if the corresponding layer is visible.
-        for (GraphicPrimitive g: dmp.getPrimitiveVector()){
+        // Process every primitive in the region, if the corresponding layer
+        // is visible.
+        for (GraphicPrimitive g: dmp.getPrimitivesInRect(px,py,w,h)){
             layer= g.getLayer();
             if((layer>=layerV.size() ||
                 layerV.get(layer).isVisible() ||
@@ -339,6 +378,7 @@ public class EditorActions
             {
                 int dx = finalLeftmost - g.getPosition().x;
                 g.movePrimitive(dx, 0);
+                dmp.updatePrimitiveIndex(g);
             }
         });
 
@@ -375,6 +415,7 @@ public class EditorActions
                 int dx = finalRightmost -
                         (g.getPosition().x + g.getSize().width);
                 g.movePrimitive(dx, 0);
+                dmp.updatePrimitiveIndex(g);
             }
         });
 
@@ -410,6 +451,7 @@ public class EditorActions
             {
                 int dy = finalTopmost - g.getPosition().y;
                 g.movePrimitive(0, dy);
+                dmp.updatePrimitiveIndex(g);
             }
         });
 
@@ -446,6 +488,7 @@ public class EditorActions
                 int dy = finalBottommost -
                         (g.getPosition().y + g.getSize().height);
                 g.movePrimitive(0, dy);
+                dmp.updatePrimitiveIndex(g);
             }
         });
 
@@ -490,6 +533,7 @@ public class EditorActions
                         g.getPosition().y + (g.getSize().height / 2);
                 int dy = verticalCenter - currentCenterY;
                 g.movePrimitive(0, dy);
+                dmp.updatePrimitiveIndex(g);
             }
         });
 
@@ -534,6 +578,7 @@ public class EditorActions
                         g.getPosition().x + (g.getSize().width / 2);
                 int dx = horizontalCenter - currentCenterX;
                 g.movePrimitive(dx, 0);
+                dmp.updatePrimitiveIndex(g);
             }
         });
 
@@ -587,6 +632,7 @@ public class EditorActions
             GraphicPrimitive g = selectedPrimitives.get(i);
             int dx = targetX - g.getPosition().x;
             g.movePrimitive(dx, 0);
+            dmp.updatePrimitiveIndex(g);
         }
 
         // Save the state for the undo operation
@@ -639,6 +685,7 @@ public class EditorActions
             GraphicPrimitive g = selectedPrimitives.get(i);
             int dy = targetY - g.getPosition().y;
             g.movePrimitive(0, dy);
+            dmp.updatePrimitiveIndex(g);
         }
 
         // Save the state for the undo operation
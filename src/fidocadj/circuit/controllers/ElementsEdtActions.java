@@ -320,7 +320,7 @@ public class ElementsEdtActions
                                         3,4,dmp.getTextFont(),0,0,
                                         "String", currentLayer);
                 sa.setSelectionAll(false);
-                dmp.addPrimitive(newtext, true, ua);
+                dmp.addPrimitive(newtext, ua);
                 newtext.setSelected(true);
                 repaint=true;
                 if(primitivesParListener!=null) {
@@ -353,7 +353,7 @@ public class ElementsEdtActions
                         poly.addPoint(xpoly[i],ypoly[i]);
                     }
 
-                    dmp.addPrimitive(poly, true,ua);
+                    dmp.addPrimitive(poly, ua);
                     clickNumber = 0;
                     repaint=true;
                     break;
@@ -384,7 +384,7 @@ public class ElementsEdtActions
                         compc.addPoint(xpoly[i],ypoly[i]);
                     }
 
-                    dmp.addPrimitive(compc, true,ua);
+                    dmp.addPrimitive(compc, ua);
                     clickNumber = 0;
                     repaint=true;
                 } else {
@@ -160,6 +160,7 @@ public class HandleActions
                         g.virtualPoint[j].y += dy;
                     }
                     g.setChanged(true);
+                    drawingModel.updatePrimitiveIndex(g);
                 }
             }
         }
@@ -286,7 +287,9 @@ public class HandleActions
                     selectionActions.setSelectionAll(false);
                 }
 
-                for (GraphicPrimitive g : drawingModel.getPrimitiveVector()) {
+                for (GraphicPrimitive g : drawingModel.getPrimitivesInRect(xa,
+                    ya, xb - xa, yb - ya))
+                {
                     if (g.intersects(selectionRect, isLeftToRightSelection)) {
                         g.setSelected(true);
                     }
@@ -373,10 +376,12 @@ public class HandleActions
                     c=Math.max(c, Math.abs(xb-xa));
                     d=Math.max(d, Math.abs(yb-ya));
 
+                    // The drawing does not change until the selection
+                    // is done.
                     if (flip) {
-                        editorObject.forcesRepaint();
+                        editorObject.forcesOverlayRepaint();
                     } else {
-                        editorObject.forcesRepaint(a,b,c+10,d+10);
+                        editorObject.forcesOverlayRepaint(a,b,c+10,d+10);
                     }
                     return;
                 }
@@ -413,5 +418,6 @@ public class HandleActions
         }
         primBeingDragged.virtualPoint[handleBeingDragged].y=cs.unmapYsnap(ymm);
         primBeingDragged.setChanged(true);
+        drawingModel.updatePrimitiveIndex(primBeingDragged);
     }
 }
\ No newline at end of file
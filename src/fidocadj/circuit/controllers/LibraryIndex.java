@@ -0,0 +1,272 @@
+package fidocadj.circuit.controllers;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+import fidocadj.globals.Globals;
+import fidocadj.primitives.MacroDesc;
+
+/** LibraryIndex: keep on disk the macros obtained by parsing a library, so
+    that the library does not need to be parsed again at the next startup.
+
+    Each library has its own index file in the index directory, containing
+    the key, name, category, library name, file name and description of
+    all its macros. The index also records the size, the modification time
+    and a checksum of the library. When the size and the modification time
+    are unchanged, the index is read without even opening the library. When
+    they differ, the library is read and its checksum is compared with the
+    one of the index: only if the contents have really changed, the library
+    is parsed again and its index is rewritten. The other libraries are not
+    affected.
+
+    Libraries which can not be read completely are never indexed, so that
+    the same error messages are shown at each startup.
+
+<pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+</pre>
+*/
+final class LibraryIndex
+{
+    // Identifies the index files. Change the version each time the format
+    // of the index or the parsing of the libraries is modified.
+    private static final int MAGIC=0x46434c49;     // "FCLI"
+    private static final int VERSION=1;
+
+    private final File indexFile;
+    private final String source;
+    private final String prefix;
+
+    // The contents of the index, when it has been read.
+    private long size=-1;
+    private long modified;
+    private long checksum;
+    private List<MacroDesc> macros;
+
+    /** Standard constructor.
+        @param directory the directory where the index files are kept.
+        @param s the URL of the library.
+        @param p the prefix of the library.
+    */
+    private LibraryIndex(File directory, URL s, String p)
+    {
+        source=s.toString();
+        prefix=p;
+        CRC32 crc=new CRC32();
+        crc.update(source.getBytes(StandardCharsets.UTF_8));
+        String name=s.getPath();
+        name=name.substring(name.lastIndexOf('/')+1)
+            .replaceAll("[^A-Za-z0-9_-]", "_");
+        indexFile=new File(directory, name+"_"+
+            Long.toHexString(crc.getValue())+".idx");
+    }
+
+    /** Read a library, employing the index if it is up to date.
+        @param directory the directory containing the index files.
+        @param s the URL of the library.
+        @param prefix the prefix of the library.
+        @param library the map in which the macros should be added.
+        @throws IOException if the library can not be read.
+    */
+    static void readLibrary(File directory, URL s, String prefix,
+        Map<String, MacroDesc> library)
+        throws IOException
+    {
+        new LibraryIndex(directory, s, prefix).read(s, library);
+    }
+
+    /** Read a library, employing the index if it is up to date and
+        updating it if it is not.
+        @param s the URL of the library.
+        @param library the map in which the macros should be added.
+        @throws IOException if the library can not be read.
+    */
+    private void read(URL s, Map<String, MacroDesc> library)
+        throws IOException
+    {
+        URLConnection conn=s.openConnection();
+        long librarySize=conn.getContentLengthLong();
+        long libraryModified=conn.getLastModified();
+
+        boolean indexed=readIndex();
+        if(indexed && librarySize>=0 && libraryModified!=0
+            && librarySize==size && libraryModified==modified)
+        {
+            addMacros(library);
+            return;
+        }
+
+        byte[] contents;
+        try (InputStream in=conn.getInputStream()) {
+            contents=in.readAllBytes();
+        }
+        CRC32 crc=new CRC32();
+        crc.update(contents);
+
+        if(indexed && contents.length==size && crc.getValue()==checksum) {
+            // Only the modification time has changed.
+            addMacros(library);
+        } else {
+            Map<String, MacroDesc> m=new LinkedHashMap<>();
+            try (BufferedReader bufRead=new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(contents),
+                    Globals.encoding)))
+            {
+                ParserActions.readLibraryBufferedReader(bufRead, prefix, m);
+            } finally {
+                library.putAll(m);
+            }
+            macros=new ArrayList<>(m.values());
+        }
+        size=contents.length;
+        modified=libraryModified;
+        checksum=crc.getValue();
+        writeIndex();
+    }
+
+    /** Add the macros contained in the index to a map.
+        @param library the map.
+    */
+    private void addMacros(Map<String, MacroDesc> library)
+    {
+        for(MacroDesc md : macros) {
+            library.put(md.key, md);
+        }
+    }
+
+    /** Read the index file, if it exists and if it corresponds to the
+        library.
+        @return true if the index has been read.
+    */
+    private boolean readIndex()
+    {
+        if(!indexFile.isFile()) {
+            return false;
+        }
+        try (DataInputStream in=new DataInputStream(new
+            ByteArrayInputStream(Files.readAllBytes(indexFile.toPath()))))
+        {
+            if(in.readInt()!=MAGIC || in.readInt()!=VERSION
+                || !source.equals(readString(in))
+                || !prefix.equals(readString(in)))
+            {
+                return false;
+            }
+            size=in.readLong();
+            modified=in.readLong();
+            checksum=in.readLong();
+            int n=in.readInt();
+            // Each macro takes at least the lengths of its six strings.
+            if(n<0 || n>in.available()/24) {
+                throw new IOException("Invalid number of macros: "+n);
+            }
+            macros=new ArrayList<>(n);
+            for(int i=0; i<n; ++i) {
+                String key=readString(in);
+                String name=readString(in);
+                String description=readString(in);
+                String category=readString(in);
+                String libraryName=readString(in);
+                String filename=readString(in);
+                macros.add(new MacroDesc(key, name, description, category,
+                    libraryName, filename));
+            }
+            return true;
+        } catch (IOException|RuntimeException eE) {
+            // A damaged index is simply rebuilt.
+            macros=null;
+            return false;
+        }
+    }
+
+    /** Write the index file. Problems are ignored: the library will be
+        parsed again at the next startup.
+    */
+    private void writeIndex()
+    {
+        File dir=indexFile.getParentFile();
+        if(!dir.isDirectory() && !dir.mkdirs()) {
+            return;
+        }
+        File temp=new File(dir, indexFile.getName()+".tmp");
+        try {
+            try (DataOutputStream out=new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp))))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, source);
+                writeString(out, prefix);
+                out.writeLong(size);
+                out.writeLong(modified);
+                out.writeLong(checksum);
+                out.writeInt(macros.size());
+                for(MacroDesc md : macros) {
+                    writeString(out, md.key);
+                    writeString(out, md.name);
+                    writeString(out, md.description);
+                    writeString(out, md.category);
+                    writeString(out, md.library);
+                    writeString(out, md.filename);
+                }
+            }
+            // Another copy of FidoCadJ may be reading the index.
+            Files.move(temp.toPath(), indexFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException|RuntimeException eE) {
+            temp.delete();
+        }
+    }
+
+    /** Write a string, whose length is not limited as with writeUTF.
+        @param out the stream.
+        @param s the string.
+        @throws IOException if the string can not be written.
+    */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException
+    {
+        byte[] b=s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    /** Read a string written by writeString.
+        @param in the stream.
+        @return the string.
+        @throws IOException if the string can not be read, or if its length
+            is not valid (damaged index).
+    */
+    private static String readString(DataInputStream in)
+        throws IOException
+    {
+        int l=in.readInt();
+        if(l<0 || l>in.available()) {
+            throw new IOException("Invalid string length: "+l);
+        }
+        byte[] b=new byte[l];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,225 @@
+package fidocadj.circuit.controllers;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.net.*;
+
+import fidocadj.circuit.model.DrawingModel;
+import fidocadj.globals.Globals;
+import fidocadj.primitives.MacroDesc;
+import fidocadj.timer.Metrics;
+import fidocadj.timer.TimeStats;
+
+/** LibraryLoader: read several libraries at the same time. Each library is
+    read and parsed by a separate thread, in a map containing only its own
+    macros. When all the libraries have been read, the maps are merged in the
+    library of the drawing, in the same order in which the libraries have
+    been given. In this way, when a macro is defined more than once, the
+    last definition is kept, exactly as when the libraries are loaded one
+    after the other with ParserActions.
+
+    If an index directory has been specified, the parsed libraries are kept
+    there (see LibraryIndex) and they are parsed again only when modified.
+
+<pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+</pre>
+*/
+public class LibraryLoader
+{
+    // The directory containing the index of the libraries, or null.
+    private static File indexDirectory;
+
+    // Time needed for loading all the libraries (from the creation of the
+    // loader to the end of load).
+    private static final TimeStats LOAD_TIME=
+        Metrics.getTimer("library.load");
+    private final long start;
+
+    private final DrawingModel model;
+    private final ExecutorService executor;
+
+    // The libraries being read, in the order in which they will be merged.
+    private final List<Future<Library>> libraries=new ArrayList<>();
+
+    /** The macros read from a single library, with the message to be shown
+        if something went wrong while reading it.
+    */
+    private static final class Library
+    {
+        final Map<String, MacroDesc> macros=new HashMap<>();
+        String message;
+    }
+
+    /** Standard constructor.
+        @param m the drawing in which the libraries will be loaded.
+    */
+    public LibraryLoader(DrawingModel m)
+    {
+        start=TimeStats.start();
+        model=m;
+        int n=Runtime.getRuntime().availableProcessors();
+        executor=Executors.newFixedThreadPool(Math.max(1, n), r -> {
+            Thread t=new Thread(r, "Library loader");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Set the directory where the index of the parsed libraries is kept.
+        @param dir the directory, or null if the libraries should always be
+            parsed.
+    */
+    public static synchronized void setIndexDirectory(File dir)
+    {
+        indexDirectory=dir;
+    }
+
+    /** Get the directory where the index of the parsed libraries is kept.
+        @return the directory, or null if the libraries are always parsed.
+    */
+    public static synchronized File getIndexDirectory()
+    {
+        return indexDirectory;
+    }
+
+    /** Start reading all the libraries ("*.fcl" files) contained in the
+        given directory.
+        @param s the directory in which the libraries should be present.
+    */
+    public void loadLibraryDirectory(String s)
+    {
+        File[] files=ParserActions.getLibraryFiles(s);
+        if(files==null) {
+            return;
+        }
+        File index=getIndexDirectory();
+        for (File f: files) {
+            libraries.add(executor.submit(() -> {
+                Library l=new Library();
+                try {
+                    if(index==null) {
+                        ParserActions.readLibraryFile(f.getPath(), l.macros);
+                    } else {
+                        LibraryIndex.readLibrary(index, f.toURI().toURL(),
+                            ParserActions.getLibraryPrefix(f.getPath()),
+                            l.macros);
+                    }
+                } catch (IOException eE) {
+                    l.message="Problems reading library "+f.getName()+" "+eE;
+                }
+                return l;
+            }));
+        }
+    }
+
+    /** Start reading a library contained in a resource.
+        @param s the URL of the resource.
+        @param prefixS the prefix of the library.
+    */
+    public void loadLibraryInJar(URL s, String prefixS)
+    {
+        final String prefix=prefixS==null?"":prefixS;
+        if(s==null) {
+            System.out.println("Resource not found! "+prefix);
+            return;
+        }
+        File index=getIndexDirectory();
+        libraries.add(executor.submit(() -> {
+            Library l=new Library();
+            try {
+                if(index==null) {
+                    readResource(s, prefixS, l.macros);
+                } else {
+                    LibraryIndex.readLibrary(index, s, prefixS, l.macros);
+                }
+            } catch (IOException eE) {
+                l.message="Problems reading library: "+s.toString();
+            }
+            return l;
+        }));
+    }
+
+    /** Read a library contained in a resource.
+        @param s the URL of the resource.
+        @param prefix the prefix of the library.
+        @param library the map in which the macros should be added.
+        @throws IOException if the library can not be read.
+    */
+    private static void readResource(URL s, String prefix,
+        Map<String, MacroDesc> library)
+        throws IOException
+    {
+        try (BufferedReader bufRead=new BufferedReader(
+            new InputStreamReader(s.openStream(), Globals.encoding)))
+        {
+            ParserActions.readLibraryBufferedReader(bufRead, prefix,
+                library);
+        }
+    }
+
+    /** Wait until all the libraries have been read and add their macros to
+        the library of the drawing. The loader can not be used any more
+        after this call.
+    */
+    public void load()
+    {
+        try {
+            synchronized(model) {
+                Map<String, MacroDesc> lib=model.getLibrary();
+                for(Future<Library> f : libraries) {
+                    Library l=getLibrary(f);
+                    if(l==null) {
+                        return;
+                    }
+                    lib.putAll(l.macros);
+                    if(l.message!=null) {
+                        System.out.println(l.message);
+                    }
+                }
+            }
+        } finally {
+            libraries.clear();
+            executor.shutdownNow();
+            LOAD_TIME.stop(start);
+        }
+    }
+
+    /** Wait until a library has been read.
+        @param f the library being read.
+        @return the library, or null if the thread has been interrupted.
+    */
+    private static Library getLibrary(Future<Library> f)
+    {
+        try {
+            return f.get();
+        } catch (InterruptedException eE) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException eE) {
+            // Same behaviour as when the library is read directly.
+            Throwable t=eE.getCause();
+            if(t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            throw (Error) t;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package fidocadj.circuit.controllers;
+
+import java.io.*;
+
+/** LineTokenizer: split FidoCadJ code in lines and tokens, for the parser
+    (see ParserActions). The text is read in blocks, either from a
+    StringBuffer or directly from a Reader, so that it is not necessary to
+    have the whole file in memory before parsing it.
+
+    Tokens are separated by a single space: two consecutive spaces give an
+    empty token, exactly as in the original FidoCAD parser. Most of the
+    tokens of a drawing (commands, coordinates, layers...) are repeated
+    many times. For this reason, the strings obtained for the short tokens
+    are kept in a small table and reused, which avoids creating a new
+    String for each of them.
+
+<pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+</pre>
+*/
+final class LineTokenizer
+{
+    // Size of the blocks of text read at each time.
+    private static final int BLOCK_SIZE=8192;
+
+    // Size of the table of the reused tokens (must be a power of two) and
+    // maximum length of a token for being kept in the table.
+    private static final int CACHE_SIZE=4096;
+    private static final int MAX_CACHED_LENGTH=16;
+
+    // Source of the text: only one of those is employed.
+    private final StringBuffer text;
+    private final Reader reader;
+
+    // In the files, a CR LF sequence is a single line end.
+    private final boolean joinCRLF;
+
+    private final char[] block=new char[BLOCK_SIZE];
+    private int position;
+    private int available;
+    private int textPosition;
+    private boolean endReached;
+
+    private char[] token=new char[256];
+    private int tokenLength;
+
+    private final String[] cache=new String[CACHE_SIZE];
+
+    private int lastToken;
+    private int lineNumber=1;
+
+    /** Create a tokenizer for the given text. Each CR or LF character ends
+        a line.
+        @param s the text to be tokenized.
+    */
+    LineTokenizer(StringBuffer s)
+    {
+        text=s;
+        reader=null;
+        joinCRLF=false;
+    }
+
+    /** Create a tokenizer reading the text from the given source. Lines end
+        with CR, LF or CR LF, as with BufferedReader.readLine().
+        @param r the source of the text.
+    */
+    LineTokenizer(Reader r)
+    {
+        text=null;
+        reader=r;
+        joinCRLF=true;
+    }
+
+    /** Read the next line and split it in tokens.
+        @param tokens the array where the tokens will be stored. If the line
+            contains more tokens than the size of the array, the exceeding
+            ones are ignored and a message is printed.
+        @return false if the text is finished and no line has been read.
+        @throws IOException if the text can not be read.
+    */
+    boolean readLine(String[] tokens)
+        throws IOException
+    {
+        if(!fill()) {
+            return false;
+        }
+
+        int j=0;
+        boolean lineTooLong=false;
+        tokenLength=0;
+
+        while(true) {
+            char c=block[position++];
+            boolean last=!fill();
+
+            if(last && !joinCRLF) {
+                // The very last character of the text ends the line. It is
+                // part of the last token, unless it is a space or a LF.
+                if(c!='\n' && c!=' ') {
+                    append(c);
+                }
+                return endLine(tokens, j);
+            } else if(c=='\n' || c=='\r') {
+                if(joinCRLF && c=='\r' && !last && block[position]=='\n') {
+                    ++position;
+                }
+                return endLine(tokens, j);
+            } else if(c==' ' && !lineTooLong) {    // Ready for next token
+                tokens[j]=getToken();
+                tokenLength=0;
+                ++j;
+                if(j>=tokens.length) {
+                    System.out.println("Too much tokens!");
+                    System.out.println("string parsing line: "+lineNumber);
+                    j=tokens.length-1;
+                    lineTooLong=true;
+                }
+            } else if(!lineTooLong) {
+                append(c);
+            }
+
+            // In a file, the last line may not end with a line feed.
+            if(last) {
+                return endLine(tokens, j);
+            }
+        }
+    }
+
+    /** Store the last token of the line.
+        @param tokens the array where the tokens are stored.
+        @param j the index of the last token.
+        @return always true.
+    */
+    private boolean endLine(String[] tokens, int j)
+    {
+        ++lineNumber;
+        tokens[j]=getToken();
+        lastToken=j;
+        if(tokenLength==0) {    // Avoids trailing spaces
+            --lastToken;
+        }
+        return true;
+    }
+
+    /** Get the index of the last token of the line read by readLine.
+        @return the index, or -1 if the line is empty.
+    */
+    int getLastToken()
+    {
+        return lastToken;
+    }
+
+    /** Get the number of the line which will be read next, starting from 1.
+        It is the number employed in the error messages.
+        @return the line number.
+    */
+    int getLineNumber()
+    {
+        return lineNumber;
+    }
+
+    /** Append a character to the token being read.
+        @param c the character.
+    */
+    private void append(char c)
+    {
+        if(tokenLength==token.length) {
+            char[] t=new char[2*token.length];
+            System.arraycopy(token, 0, t, 0, tokenLength);
+            token=t;
+        }
+        token[tokenLength++]=c;
+    }
+
+    /** Get the token being read as a String. If the same short token has
+        already been read, the same String is returned.
+        @return the token.
+    */
+    private String getToken()
+    {
+        if(tokenLength==0) {
+            return "";
+        }
+        if(tokenLength>MAX_CACHED_LENGTH) {
+            return new String(token, 0, tokenLength);
+        }
+        int h=0;
+        for(int i=0; i<tokenLength; ++i) {
+            h=31*h+token[i];
+        }
+        int index=(h^(h>>>12))&(CACHE_SIZE-1);
+        String s=cache[index];
+        if(s!=null && s.length()==tokenLength) {
+            int i=0;
+            while(i<tokenLength && s.charAt(i)==token[i]) {
+                ++i;
+            }
+            if(i==tokenLength) {
+                return s;
+            }
+        }
+        s=new String(token, 0, tokenLength);
+        cache[index]=s;
+        return s;
+    }
+
+    /** Make sure that at least one character is available in the block.
+        @return false if the text is finished.
+        @throws IOException if the text can not be read.
+    */
+    private boolean fill()
+        throws IOException
+    {
+        if(position<available) {
+            return true;
+        }
+        position=0;
+        available=0;
+        while(available==0 && !endReached) {
+            if(reader==null) {
+                int n=Math.min(BLOCK_SIZE, text.length()-textPosition);
+                if(n<=0) {
+                    endReached=true;
+                } else {
+                    text.getChars(textPosition, textPosition+n, block, 0);
+                    textPosition+=n;
+                    available=n;
+                }
+            } else {
+                int n=reader.read(block, 0, BLOCK_SIZE);
+                if(n<0) {
+                    endReached=true;
+                } else {
+                    available=n;
+                }
+            }
+        }
+        return available>0;
+    }
+}
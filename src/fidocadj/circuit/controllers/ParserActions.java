@@ -23,6 +23,8 @@ import fidocadj.primitives.PrimitiveRectangle;
 import fidocadj.primitives.PrimitiveOval;
 import fidocadj.primitives.MacroDesc;
 import fidocadj.primitives.PrimitivePolygon;
+import fidocadj.timer.Metrics;
+import fidocadj.timer.TimeStats;
 
 /** ParserActions: perform parsing of FidoCadJ code.
     In general, those routines are constructed such as they are relatively
@@ -66,6 +68,20 @@ public class ParserActions
     // Name of the last file opened
     public String openFileName = null;
 
+    // Time needed for parsing a drawing and for obtaining its text.
+    private static final TimeStats PARSE_TIME=Metrics.getTimer("parse");
+    private static final TimeStats SERIALIZE_TIME=
+        Metrics.getTimer("serialize");
+
+    // Number of characters written at once by writeText.
+    private static final int WRITE_BUFFER=8192;
+
+    // Primitives parsed by addTokens and not yet added to the drawing, as
+    // they are added all together at the end. The one which will be the
+    // first of the drawing among them is kept apart.
+    private List<GraphicPrimitive> parsed;
+    private GraphicPrimitive firstParsed;
+
     /** Standard constructor: provide the database class.
         @param pp the drawing model (database of the circuit).
     */
@@ -81,9 +97,60 @@ public class ParserActions
     */
     public void parseString(StringBuffer s)
     {
-        model.getPrimitiveVector().clear();
+        long start=TimeStats.start();
+        model.removeAllPrimitives();
         addString(s, false);
         model.setChanged(true);
+        PARSE_TIME.stop(start);
+    }
+
+    /** Parse the circuit read from the Reader specified. This function
+        resets the primitive database and then parses the circuit. The text
+        is parsed while it is read, so that it is not necessary to store it
+        completely in memory.
+
+        @param r the source of the circuit. It is not closed.
+        @throws IOException if the reading fails. The primitives read before
+            the error are kept in the drawing.
+    */
+    public void parseReader(Reader r)
+        throws IOException
+    {
+        long start=TimeStats.start();
+        model.removeAllPrimitives();
+        try {
+            addTokens(new LineTokenizer(r), false);
+        } finally {
+            model.setChanged(true);
+            PARSE_TIME.stop(start);
+        }
+    }
+
+    /** Parse the primitives contained in the StringBuffer specified, without
+        adding them to the current drawing. The library, the layers and the
+        text font of the current drawing are used.
+
+        @param s the string containing the primitives.
+        @return the primitives obtained, ordered by layer.
+    */
+    public List<GraphicPrimitive> parsePrimitives(StringBuffer s)
+    {
+        DrawingModel qQ=new DrawingModel();
+        qQ.setLibrary(model.getLibrary());  // Inherit the library
+        qQ.setLayers(model.getLayers());    // Inherit the layers
+        qQ.setTextFont(model.getTextFont(), model.getTextFontSize(), null);
+
+        ParserActions pas=new ParserActions(qQ);
+        pas.addString(s, false);
+        return new ArrayList<GraphicPrimitive>(qQ.getPrimitiveVector());
+    }
+
+    /** Get the drawing model on which this controller operates.
+        @return the drawing model.
+    */
+    public DrawingModel getModel()
+    {
+        return model;
     }
 
     /** Renders a split version of the macros contained in the given string.
@@ -95,80 +162,86 @@ public class ParserActions
     public StringBuffer splitMacros(StringBuffer s,
         boolean splitStandardMacros)
     {
-        StringBuffer txt= new StringBuffer("");
+        StringWriter txt=new StringWriter(s.length()*2);
+        try {
+            splitMacros(s, splitStandardMacros, txt);
+        } catch(IOException e) {
+            System.out.println("Error: "+e);
+        }
+        return txt.getBuffer();
+    }
 
+    /** Write a split version of the macros contained in the given string.
+        Everything is done in memory: the result is written directly to the
+        given writer, which is flushed but not closed.
+        @param s a string containing macros to be splitted.
+        @param splitStandardMacros if it is true, even the standard macros
+            will be split.
+        @param out the writer where the split macros are written.
+        @throws IOException if the writer fails.
+    */
+    public void splitMacros(StringBuffer s, boolean splitStandardMacros,
+        Writer out)
+        throws IOException
+    {
         DrawingModel qQ=new DrawingModel();
         qQ.setLibrary(model.getLibrary());  // Inherit the library
         qQ.setLayers(model.getLayers());    // Inherit the layers
 
         // from the obtained string, obtain the new qQ object which will
-        // be exported and then loaded into the clipboard.
-
-        try {
-            ParserActions pas=new ParserActions(qQ);
-            pas.parseString(s);
-
-            File temp= File.createTempFile("copy", ".fcd");
-            temp.deleteOnExit();
-            String frm="";
-            if(splitStandardMacros) {
-                frm = "fcda";
-            } else {
-                frm = "fcd";
-            }
-
-            ExportGraphic.export(temp,  qQ, frm, 1,true,false, true,false,
-                false);
-
-            FileInputStream input = null;
-            BufferedReader bufRead = null;
+        // be exported.
+        ParserActions pas=new ParserActions(qQ);
+        pas.parseString(s);
 
-            try {
-                input = new FileInputStream(temp);
-                bufRead = new BufferedReader(
-                    new InputStreamReader(input, Globals.encoding));
-
-                String line=bufRead.readLine();
-                if (line==null) {
-                    bufRead.close();
-                    return new StringBuffer("");
-                }
-
-                txt = new StringBuffer();
+        ExportGraphic.exportFidoCad(out, qQ, splitStandardMacros, true);
+    }
 
-                do {
-                    txt.append(line);
-                    txt.append("\n");
-                    line =bufRead.readLine();
-                } while (line != null);
-            } finally {
-                if(input!=null) { input.close(); }
-                if(bufRead!=null) { bufRead.close(); }
-            }
+    /** Get the FidoCadJ text file.
 
+        @param extensions specify if FCJ extensions should be used
+        @return the sketch in the text FidoCadJ format
+    */
+    public StringBuffer getText(boolean extensions)
+    {
+        StringBuffer s=new StringBuffer();
+        try {
+            writeText(s, extensions);
         } catch(IOException e) {
+            // A StringBuffer never throws an IOException.
             System.out.println("Error: "+e);
         }
-
-        return txt;
+        return s;
     }
 
-    /** Get the FidoCadJ text file.
+    /** Write the FidoCadJ text file, without the [FIDOCAD] header. The
+        primitives are written in a buffer which is reused and flushed to
+        the output each time it is full: the text of the whole drawing is
+        never kept in memory.
 
+        @param out where the text is written (for example a buffered
+            Writer). It is not flushed nor closed.
         @param extensions specify if FCJ extensions should be used
-        @return the sketch in the text FidoCadJ format
+        @throws IOException if the output fails.
     */
-    public StringBuffer getText(boolean extensions)
+    public void writeText(Appendable out, boolean extensions)
+        throws IOException
     {
-        StringBuffer s=registerConfiguration(extensions);
+        long start=TimeStats.start();
+        out.append(registerConfiguration(extensions));
 
+        StringBuilder s=new StringBuilder(WRITE_BUFFER+256);
         for (GraphicPrimitive g:model.getPrimitiveVector()){
-            s.append(g.toString(extensions));
+            g.appendText(s, extensions);
             if(useWindowsLineFeed) {
-                s.append("\r");
+                s.append('\r');
+            }
+            if(s.length()>=WRITE_BUFFER) {
+                out.append(s);
+                s.setLength(0);
             }
         }
-        return s;
+        out.append(s);
+        SERIALIZE_TIME.stop(start);
     }
     /** If it is needed, provides all the configurations settings at
         the beginning of the FidoCadJ file.
@@ -196,23 +269,23 @@ public class ParserActions
         // We consider that a difference of 1e-5 is small enough
 
         if(Math.abs(Globals.diameterConnectionDefault-
-            Globals.diameterConnection)>1e-5)
+            Globals.getDiameterConnection())>1e-5)
         {
-            s.append("FJC C "+Globals.diameterConnection+"\n");
+            s.append("FJC C "+Globals.getDiameterConnection()+"\n");
         }
 
         s.append(checkAndRegisterLayers());
 
         // Check if the line widths should be indicated
-        if(Math.abs(Globals.lineWidth -
+        if(Math.abs(Globals.getLineWidth() -
             Globals.lineWidthDefault)>1e-5)
         {
-            s.append("FJC A "+Globals.lineWidth+"\n");
+            s.append("FJC A "+Globals.getLineWidth()+"\n");
         }
-        if(Math.abs(Globals.lineWidthCircles -
+        if(Math.abs(Globals.getLineWidthCircles() -
             Globals.lineWidthCirclesDefault)>1e-5)
         {
-            s.append("FJC B "+Globals.lineWidthCircles+"\n");
+            s.append("FJC B "+Globals.getLineWidthCircles()+"\n");
         }
 
         return s;
@@ -254,19 +327,30 @@ public class ParserActions
         @param selectNew specify that the added primitives should be selected.
     */
     public void addString(StringBuffer s, boolean selectNew)
-        //throws IOException
     {
-        int i; // Character pointer within the string
+        try {
+            addTokens(new LineTokenizer(s), selectNew);
+        } catch (IOException eE) {
+            // This should never happen, as the text is already in memory.
+            System.out.println("Error encountered: "+eE.toString());
+        }
+    }
+
+    /** Parse the circuit provided by the tokenizer specified.
+        this funcion add the circuit to the current primitive database.
+
+        @param tk the tokenizer giving the lines of the circuit.
+        @param selectNew specify that the added primitives should be selected.
+        @throws IOException if the text can not be read.
+    */
+    private void addTokens(LineTokenizer tk, boolean selectNew)
+        throws IOException
+    {
         int j; // Token counter within the string
         boolean hasFCJ=false; // The last primitive had FCJ extensions
-        StringBuffer token=new StringBuffer();
         String macroFont = model.getTextFont();
         int macroFontSize = model.getTextFontSize();
 
-        // Flag indicating that the line is already too long and should not be
-        // processed anymore:
-        boolean lineTooLong=false;
-
         GraphicPrimitive g = new PrimitiveLine(macroFont, macroFontSize);
 
         // The tokenized command string.
@@ -289,8 +373,6 @@ public class ParserActions
         int macroCounter=0;
         int l;
 
-        token.ensureCapacity(256);
-
         /*  This code is not very easy to read. If more extensions of the
             original FidoCAD format (performed with the FCJ tag) are to be
             implemented, it can be interesting to rewrite the parser as a
@@ -299,32 +381,20 @@ public class ParserActions
         synchronized(this) {
             List<LayerDesc> layerV=model.getLayers();
 
-            char c='\n';
-            int len;
-
             // Actual line number. This is useful to indicate where errors are.
             int lineNum=1;
 
-            j=0;
-            token.setLength(0);
-            len=s.length();
+            parsed=new ArrayList<GraphicPrimitive>();
+            firstParsed=null;
 
             // The purpose of this code is to tokenize the lines. Things are
             // made more complicated by the FCJ mechanism which acts as a
             // modifier for the previous command.
 
-            for(i=0; i<len;++i){
-                c=s.charAt(i);
-                if(c=='\n' || c=='\r'|| i==len-1) { //The string is finished
-                    lineTooLong=false;
-                    if(i==len-1 && c!='\n' && c!=' '){
-                        token.append(c);
-                    }
-                    ++lineNum;
-                    tokens[j]=token.toString();
-                    if (token.length()==0) { // Avoids trailing spaces
-                        j--;
-                    }
+            try {
+                while(tk.readLine(tokens)) {
+                    j=tk.getLastToken();
+                    lineNum=tk.getLineNumber();
 
                     try{
                         // When we enter here, we have tokenized the current
@@ -377,7 +447,7 @@ public class ParserActions
                                 if(oldJ>5 && "1".equals(oldTokens[oldJ])) {
                                     macroCounter = 2;
                                 } else {
-                                    model.addPrimitive(g,false,null);
+                                    addParsed(g);
                                 }
 
                             } else if (hasFCJ && "BE".equals(oldTokens[0])) {
@@ -393,7 +463,7 @@ public class ParserActions
                                 if(oldJ>5 && "1".equals(oldTokens[oldJ])) {
                                     macroCounter = 2;
                                 } else {
-                                    model.addPrimitive(g,false,null);
+                                    addParsed(g);
                                 }
                             } else if (hasFCJ && ("RV".equals(oldTokens[0])||
                                 "RP".equals(oldTokens[0])))
@@ -411,7 +481,7 @@ public class ParserActions
                                 if(oldJ>2 && "1".equals(oldTokens[oldJ])) {
                                     macroCounter = 2;
                                 } else {
-                                    model.addPrimitive(g,false,null);
+                                    addParsed(g);
                                 }
                             } else if (hasFCJ && ("EV".equals(oldTokens[0])||
                                 "EP".equals(oldTokens[0])))
@@ -428,7 +498,7 @@ public class ParserActions
                                 if(oldJ>2 && "1".equals(oldTokens[oldJ])) {
                                     macroCounter = 2;
                                 } else {
-                                    model.addPrimitive(g,false,null);
+                                    addParsed(g);
                                 }
                             } else if (hasFCJ && ("PV".equals(oldTokens[0])||
                                 "PP".equals(oldTokens[0])))
@@ -446,7 +516,7 @@ public class ParserActions
                                 if(oldJ>2 && "1".equals(oldTokens[oldJ])) {
                                     macroCounter = 2;
                                 } else {
-                                    model.addPrimitive(g,false,null);
+                                    addParsed(g);
                                 }
                             } else if (hasFCJ && ("CV".equals(oldTokens[0])||
                                 "CP".equals(oldTokens[0])))
@@ -470,7 +540,7 @@ public class ParserActions
                                 if(oldJ>2 && "1".equals(oldTokens[oldJ])) {
                                     macroCounter = 2;
                                 } else {
-                                    model.addPrimitive(g,false,null);
+                                    addParsed(g);
                                 }
                             } else if (hasFCJ && "PL".equals(oldTokens[0])) {
                                 macroCounter = 2;
@@ -517,7 +587,7 @@ public class ParserActions
                             g=new PrimitiveAdvText();
                             g.parseTokens(tokens, j+1);
                             g.setSelected(selectNew);
-                            model.addPrimitive(g,false,null);
+                            addParsed(g);
                         } else if("TY".equals(tokens[0])) {
                             // The TY command is somewhat special, because
                             // it can be used to specify the name and the value
@@ -542,7 +612,7 @@ public class ParserActions
                                 g.setValue(value,vv+1);
 
                                 g.setSelected(selectNew);
-                                model.addPrimitive(g, false,null);
+                                addParsed(g);
                                 macroCounter=0;
                             } else {
                                 // If we are in the classical case of a simple
@@ -550,7 +620,7 @@ public class ParserActions
                                 g=new PrimitiveAdvText();
                                 g.parseTokens(tokens, j+1);
                                 g.setSelected(selectNew);
-                                model.addPrimitive(g,false,null);
+                                addParsed(g);
                             }
                         } else if("PL".equals(tokens[0])) {
                             hasFCJ=true;
@@ -644,42 +714,58 @@ public class ParserActions
                         }
                         oldJ=j;
                     }
-                    j=0;
-                    token.setLength(0);
-                } else if (c==' ' && !lineTooLong){ // Ready for next token
-                    tokens[j]=token.toString();
-                    token.setLength(0);
-                    ++j;
-                    if (j>=MAX_TOKENS) {
-                        System.out.println("Too much tokens!");
-                        System.out.println("string parsing line: "+lineNum);
-                        j=MAX_TOKENS-1;
-                        lineTooLong=true;
-                        continue;
-                    }
-                } else {
-                    if (!lineTooLong) {
-                        token.append(c);
-                    }
                 }
-            }
 
-            // We need to process the very last line, which is contained in
-            // the tokens currently read.
-            try{
-                registerPrimitivesWithFCJ(hasFCJ, tokens, g, oldTokens, oldJ,
-                    selectNew);
-            } catch(IOException eE) {
-                System.out.println("Error encountered: "+eE.toString());
-                System.out.println("string parsing line: "+lineNum);
-            } catch(NumberFormatException fF) {
-                System.out.println("I could not read a number at line: "
-                                         +lineNum);
+                // We need to process the very last line, which is contained in
+                // the tokens currently read.
+                try{
+                    registerPrimitivesWithFCJ(hasFCJ, tokens, g, oldTokens,
+                        oldJ, selectNew);
+                } catch(IOException eE) {
+                    System.out.println("Error encountered: "+eE.toString());
+                    System.out.println("string parsing line: "+lineNum);
+                } catch(NumberFormatException fF) {
+                    System.out.println("I could not read a number at line: "
+                                             +lineNum);
+                }
+            } finally {
+                model.addPrimitives(parsed);
+                parsed=null;
+                firstParsed=null;
             }
-            model.sortPrimitiveLayers();
         }
     }
 
+    /** Store a primitive which has just been parsed. It will be added to
+        the drawing at the end of the parsing.
+        @param g the primitive.
+    */
+    private void addParsed(GraphicPrimitive g)
+    {
+        parsed.add(g);
+        if(firstParsed==null || g.getLayer()<firstParsed.getLayer()) {
+            firstParsed=g;
+        }
+    }
+
+    /** Get the size of the font to be used for the primitives being parsed.
+        As in DrawingModel.getTextFontSize(), this is the size used by the
+        first primitive of the drawing, also considering the primitives
+        which have been parsed but not yet added.
+        @return the size of the font.
+    */
+    private int getTextFontSize()
+    {
+        List<GraphicPrimitive> v=model.getPrimitiveVector();
+        if(firstParsed==null
+            || !v.isEmpty() && v.get(0).getLayer()<=firstParsed.getLayer())
+        {
+            return model.getTextFontSize();
+        }
+        int size=firstParsed.getMacroFontSize();
+        return size<=0 ? 1 : size;
+    }
+
     /** Handle the FCJ command for the program configuration.
 
     */
@@ -736,13 +822,13 @@ public class ParserActions
         // If the schematics has some configuration information, we need
         // to set them up.
         if (newConnectionSize>0) {
-            Globals.diameterConnection=newConnectionSize;
+            Globals.setDiameterConnection(newConnectionSize);
         }
         if (newLineWidth>0) {
-            Globals.lineWidth = newLineWidth;
+            Globals.setLineWidth(newLineWidth);
         }
         if (newLineWidthCircles>0) {
-            Globals.lineWidthCircles = newLineWidthCircles;
+            Globals.setLineWidthCircles(newLineWidthCircles);
         }
     }
 
@@ -758,7 +844,7 @@ public class ParserActions
         throws IOException
     {
         String macroFont = model.getTextFont();
-        int macroFontSize = model.getTextFontSize();
+        int macroFontSize = getTextFontSize();
         List<LayerDesc> layerV=model.getLayers();
 
         GraphicPrimitive g=gg;
@@ -810,7 +896,7 @@ public class ParserActions
         if(addPrimitive) {
             g.parseTokens(oldTokens, oldJ+1);
             g.setSelected(selectNew);
-            model.addPrimitive(g,false,null);
+            addParsed(g);
             hasFCJ = false;
         }
         return hasFCJ;
@@ -849,6 +935,20 @@ public class ParserActions
     */
     public void readLibraryFile(String openFileName)
         throws IOException
+    {
+        readLibraryFile(openFileName, model.getLibrary());
+    }
+
+    /** Read the library contained in a file, storing the macros in the given
+        map.
+        @param openFileName the name of the file to be loaded
+        @param library the map where the macros will be stored.
+        @throws IOException when something goes horribly wrong. Most of the
+            times the filename is not found.
+    */
+    static void readLibraryFile(String openFileName,
+        Map<String, MacroDesc> library)
+        throws IOException
     {
         InputStreamReader input = null;
         BufferedReader bufRead = null;
@@ -860,18 +960,29 @@ public class ParserActions
 
             bufRead = new BufferedReader(input);
 
-            prefix = Globals.getFileNameOnly(openFileName);
-            if ("FCDstdlib".equals(prefix)) {
-                prefix="";
-            }
+            prefix = getLibraryPrefix(openFileName);
 
-            readLibraryBufferedReader(bufRead, prefix);
+            readLibraryBufferedReader(bufRead, prefix, library);
         } finally {
             if(bufRead!=null) { bufRead.close(); }
             if(input!=null) { input.close(); }
         }
     }
 
+    /** Get the prefix of the macros contained in a library file. It is the
+        name of the file, except for the standard library.
+        @param openFileName the name of the file.
+        @return the prefix.
+    */
+    static String getLibraryPrefix(String openFileName)
+    {
+        String prefix = Globals.getFileNameOnly(openFileName);
+        if ("FCDstdlib".equals(prefix)) {
+            prefix="";
+        }
+        return prefix;
+    }
+
     /** Read a library provided by a buffered reader. Adds all the macro keys
         in memory, with the given prefix.
         @param bufRead The buffered reader prepared with the stream containing
@@ -883,6 +994,22 @@ public class ParserActions
     public void readLibraryBufferedReader(BufferedReader bufRead,
         String prefix)
         throws IOException
+    {
+        readLibraryBufferedReader(bufRead, prefix, model.getLibrary());
+    }
+
+    /** Read a library provided by a buffered reader. Adds all the macro keys
+        in the given map, with the given prefix.
+        @param bufRead The buffered reader prepared with the stream containing
+            the library we want to read.
+        @param prefix The prefix which should be added to the macro key when
+            using a non standard macro.
+        @param library the map where the macros will be stored.
+        @throws IOException when something goes horribly wrong.
+    */
+    static void readLibraryBufferedReader(BufferedReader bufRead,
+        String prefix, Map<String, MacroDesc> library)
+        throws IOException
     {
         String macroName="";
         String longName="";
@@ -893,105 +1020,130 @@ public class ParserActions
 
         MacroDesc macroDesc;
 
-        while(true) {
-            // Read and process line by line.
-            line = bufRead.readLine();
+        // The description of the macro being read is built here and stored
+        // in the MacroDesc object when the macro is complete. This avoids
+        // copying it again and again each time a line is added.
+        MacroDesc current=null;
+        StringBuilder description=new StringBuilder(256);
 
-            if(line==null) {
-                break;
-            }
+        try {
+            while(true) {
+                // Read and process line by line.
+                line = bufRead.readLine();
 
-            // Avoid trailing spaces
-            line=line.trim();
+                if(line==null) {
+                    break;
+                }
 
-            // Avoid processing shorter lines
-            if (line.length()<=1) {
-                continue;
-            }
+                // Avoid trailing spaces
+                line=line.trim();
 
-            // A category
-            if(line.charAt(0)=='{') {
-                categoryName="";
-                StringBuffer temp=new StringBuffer(25);
-                for(i=1; i<line.length()&&line.charAt(i)!='}'; ++i){
-                    temp.append(line.charAt(i));
+                // Avoid processing shorter lines
+                if (line.length()<=1) {
+                    continue;
                 }
-                categoryName=temp.toString().trim();
-                if(i==line.length()) {
-                    IOException e=new IOException(
-                        "Category non terminated with }.");
-                    throw e;
+
+                // A category
+                if(line.charAt(0)=='{') {
+                    categoryName="";
+                    StringBuffer temp=new StringBuffer(25);
+                    for(i=1; i<line.length()&&line.charAt(i)!='}'; ++i){
+                        temp.append(line.charAt(i));
+                    }
+                    categoryName=temp.toString().trim();
+                    if(i==line.length()) {
+                        IOException e=new IOException(
+                            "Category non terminated with }.");
+                        throw e;
+                    }
+                    continue;
                 }
-                continue;
-            }
 
-            // A macro
-            if(line.charAt(0)=='[') {
-                macroName="";
+                // A macro
+                if(line.charAt(0)=='[') {
+                    macroName="";
+
+                    longName="";
+                    StringBuffer temp=new StringBuffer(25);
+                    for(i=1; line.charAt(i)!=' ' &&
+                             line.charAt(i)!=']' &&
+                             i<line.length(); ++i)
+                    {
+                        temp.append(line.charAt(i));
+                    }
+                    macroName=temp.toString().trim();
+                    int j;
+                    temp=new StringBuffer(25);
+                    for(j=i; j<line.length()&&line.charAt(j)!=']'; ++j){
+                        temp.append(line.charAt(j));
+                    }
+                    longName=temp.toString();
+                    if(j==line.length()) {
+                        IOException e=new IOException(
+                            "Macro name non terminated with ].");
+                        throw e;
+                    }
+
+                    if ("FIDOLIB".equals(macroName)) {
+                        libraryName = longName.trim();
+                        continue;
+                    } else {
+                        if(!"".equals(prefix)) {
+                            macroName=prefix+"."+macroName;
+                        }
 
-                longName="";
-                StringBuffer temp=new StringBuffer(25);
-                for(i=1; line.charAt(i)!=' ' &&
-                         line.charAt(i)!=']' &&
-                         i<line.length(); ++i)
-                {
-                    temp.append(line.charAt(i));
-                }
-                macroName=temp.toString().trim();
-                int j;
-                temp=new StringBuffer(25);
-                for(j=i; j<line.length()&&line.charAt(j)!=']'; ++j){
-                    temp.append(line.charAt(j));
-                }
-                longName=temp.toString();
-                if(j==line.length()) {
-                    IOException e=new IOException(
-                        "Macro name non terminated with ].");
-                    throw e;
+                        macroName=macroName.toLowerCase(
+                                            Locale.forLanguageTag("en"));
+                        setDescription(current, description);
+                        current=new MacroDesc(macroName,"","","","", prefix);
+                        library.put(macroName, current);
+                        /*System.out.printf("-- macroName:%s | longName:%s |
+                            categoryName:%s | libraryName:%s | prefix:%s\n",
+                            macroName,longName,categoryName,libraryName,
+                            prefix);*/
+                        continue;
+                    }
                 }
 
-                if ("FIDOLIB".equals(macroName)) {
-                    libraryName = longName.trim();
-                    continue;
-                } else {
-                    if(!"".equals(prefix)) {
-                        macroName=prefix+"."+macroName;
+                // TODO rewrite this block
+                if(!"".equals(macroName)){
+                    // Add the macro name.
+                    // NOTE: in FidoCAD, the macro prefix is somewhat case
+                    // insensitive, since it indicates a file name and in
+                    // Windows all file names are case insensitive. Under
+                    // other operating systems, we need to be waaay much
+                    // careful, hence we convert the macro name to lower case.
+                    macroName = macroName.toLowerCase(
+                        Locale.forLanguageTag("en"));
+                    macroDesc = library.get(macroName);
+                    if(macroDesc==null) {
+                        return;
                     }
+                    macroDesc.name = longName;
+                    macroDesc.key = macroName;
+                    macroDesc.category = categoryName;
+                    macroDesc.library = libraryName;
+                    macroDesc.filename = prefix;
 
-                    macroName=macroName.toLowerCase(
-                                        Locale.forLanguageTag("en"));
-                    model.getLibrary().put(macroName, new
-                        MacroDesc(macroName,"","","","", prefix));
-                    /*System.out.printf("-- macroName:%s | longName:%s |
-                        categoryName:%s | libraryName:%s | prefix:%s\n",
-                        macroName,longName,categoryName,libraryName,prefix);*/
-                    continue;
+                    description.append('\n').append(line);
                 }
             }
+        } finally {
+            setDescription(current, description);
+        }
+    }
 
-            // TODO rewrite this block
-            if(!"".equals(macroName)){
-                // Add the macro name.
-                // NOTE: in FidoCAD, the macro prefix is somewhat case
-                // insensitive, since it indicates a file name and in
-                // Windows all file names are case insensitive. Under
-                // other operating systems, we need to be waaay much
-                // careful, hence we convert the macro name to lower case.
-                macroName = macroName.toLowerCase(Locale.forLanguageTag("en"));
-                macroDesc = model.getLibrary().get(macroName);
-                if(macroDesc==null) {
-                    return;
-                }
-                macroDesc.name = longName;
-                macroDesc.key = macroName;
-                macroDesc.category = categoryName;
-                macroDesc.library = libraryName;
-                macroDesc.filename = prefix;
-
-                macroDesc.description = macroDesc.description + "\n" +
-                        line;
-            }
+    /** Store the description of a macro read from a library.
+        @param md the macro, or null if no macro has been read.
+        @param description the description. It is emptied.
+    */
+    private static void setDescription(MacroDesc md,
+        StringBuilder description)
+    {
+        if(md!=null) {
+            md.description=description.toString();
         }
+        description.setLength(0);
     }
     /** Try to load all libraries ("*.fcl") files in the given directory.
         FCDstdlib.fcl if exists will be considered as standard library.
@@ -999,6 +1151,31 @@ public class ParserActions
         @param s the directory in which the libraries should be present.
     */
     public void loadLibraryDirectory(String s)
+    {
+        File[] files=getLibraryFiles(s);
+        if(files==null) {
+            return;
+        }
+        // We read all the directory content, file by file
+        for (File f: files) {
+            try {
+                // Here we have a hopefully valid file in f, so we may read its
+                // contents
+                readLibraryFile(f.getPath());
+            } catch (IOException eE) {
+                System.out.println("Problems reading library "+
+                    f.getName()+" "+eE);
+            }
+        }
+    }
+
+    /** Get all libraries ("*.fcl") files in the given directory.
+        A message is printed if the directory can not be read.
+
+        @param s the directory in which the libraries should be present.
+        @return the files, or null if the directory can not be read.
+    */
+    static File[] getLibraryFiles(String s)
     {
         String[] files;  // The names of the files in the directory.
         File dir = new File(s);
@@ -1023,19 +1200,12 @@ public class ParserActions
             }
             System.out.println(
                 "Activated FidoCadJ internal libraries and symbols.");
-            return;
+            return null;
         }
-        // We read all the directory content, file by file
-        for (String fs: files) {
-            File f = new File(dir, fs);
-            try {
-                // Here we have a hopefully valid file in f, so we may read its
-                // contents
-                readLibraryFile(f.getPath());
-            } catch (IOException eE) {
-                System.out.println("Problems reading library "+
-                    f.getName()+" "+eE);
-            }
+        File[] f=new File[files.length];
+        for (int i=0; i<files.length; ++i) {
+            f[i]=new File(dir, files[i]);
         }
+        return f;
     }
 }
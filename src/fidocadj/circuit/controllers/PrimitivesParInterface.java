@@ -71,6 +71,21 @@ public interface PrimitivesParInterface
     */
     void forcesRepaint(int x, int y, int width, int height);
 
+    /** Forces a repaint event, when only the elements drawn over the
+        drawing (selection rectangle, ruler, primitive being edited) have
+        changed. The drawing itself is not drawn again.
+    */
+    void forcesOverlayRepaint();
+
+    /** Forces a repaint, when only the elements drawn over the drawing have
+        changed.
+        @param x the x leftmost corner of the dirty region to repaint.
+        @param y the y leftmost corner of the dirty region to repaint.
+        @param width the width of the dirty region.
+        @param height the height of the dirty region.
+    */
+    void forcesOverlayRepaint(int x, int y, int width, int height);
+
     /** Activate and sets an evidence rectangle which will be put on screen
         at the next redraw. All sizes are given in pixel.
         @param lx   the x coordinate of the left top corner
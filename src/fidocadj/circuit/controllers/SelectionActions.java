@@ -175,11 +175,13 @@ public class SelectionActions
 
         s.append(pa.registerConfiguration(extensions));
 
+        StringBuilder b=new StringBuilder();
         for (GraphicPrimitive g: dmp.getPrimitiveVector()){
             if(g.isSelected()) {
-                s.append(g.toString(extensions));
+                g.appendText(b, extensions);
             }
         }
+        s.append(b);
         return s;
     }
 }
\ No newline at end of file
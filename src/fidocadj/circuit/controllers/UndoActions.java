@@ -4,7 +4,12 @@ import java.io.*;
 import java.util.*;
 
 import fidocadj.circuit.HasChangedListener;
+import fidocadj.circuit.model.DrawingModel;
 import fidocadj.globals.FileUtils;
+import fidocadj.primitives.GraphicPrimitive;
+import fidocadj.timer.Metrics;
+import fidocadj.timer.TimeStats;
+import fidocadj.undo.UndoDelta;
 import fidocadj.undo.UndoState;
 import fidocadj.undo.UndoManager;
 import fidocadj.undo.LibraryUndoListener;
@@ -13,6 +18,16 @@ import fidocadj.undo.UndoActorListener;
 /** UndoActions: perform undo operations. Since some parsing operations are
     to be done, this class requires the ParserActions controller.
 
+    Each undo state does not contain the whole drawing, but only the
+    differences with respect to the previous state (see UndoDelta). A copy of
+    the text of the current state is kept, primitive by primitive, so that
+    the differences can be calculated and applied. When saving a state, only
+    the text of the primitives which may have been modified is written
+    again: the ones reported by the model (see
+    DrawingModel.takeModifiedPrimitives) and the selected ones, since the
+    editing operations act on the selection. When undoing or redoing, only
+    the primitives which have been modified are parsed again.
+
 <pre>
     This file is part of FidoCadJ.
 
@@ -38,6 +53,10 @@ public class UndoActions implements UndoActorListener
 {
     private final ParserActions pa;
 
+    // Time needed for saving an undo state.
+    private static final TimeStats SNAPSHOT_TIME=
+        Metrics.getTimer("undo.snapshot");
+
     // Undo manager
     private final UndoManager um;
 
@@ -52,6 +71,16 @@ public class UndoActions implements UndoActorListener
 
     private String tempLibraryDirectory="";
 
+    // Text of the current state: the header and a string for each primitive.
+    private String currentHeader="";
+    private final List<String> currentLines=new ArrayList<String>();
+    // The primitives of the current state, associated to the strings.
+    private final List<GraphicPrimitive> currentPrimitives=
+        new ArrayList<GraphicPrimitive>();
+    // The current state.
+    private UndoState currentState;
+    // The last number used to identify a state.
+    private int lastSerial;
 
     // Listeners
     private LibraryUndoListener libraryUndoListener;
@@ -73,16 +102,15 @@ public class UndoActions implements UndoActorListener
     public void undo()
     {
         UndoState r = (UndoState)um.undoPop();
+        boolean library=false;
 
         // Check if it is an operation involving libraries.
         if(um.isNextOperationOnALibrary() && libraryUndoListener!=null) {
             libraryUndoListener.undoLibrary(r.libraryDir);
+            library=true;
         }
 
-        if(!"".equals(r.text)) {
-            StringBuffer s=new StringBuffer(r.text);
-            pa.parseString(s);
-        }
+        restoreState(r, library);
         isModified = r.isModified;
         pa.openFileName = r.fileName;
 
@@ -94,14 +122,13 @@ public class UndoActions implements UndoActorListener
     public void redo()
     {
         UndoState r = (UndoState)um.undoRedo();
+        boolean library=false;
         if(r.libraryOperation && libraryUndoListener!=null) {
             libraryUndoListener.undoLibrary(r.libraryDir);
+            library=true;
         }
 
-        if(!"".equals(r.text)) {
-            StringBuffer s=new StringBuffer(r.text);
-            pa.parseString(s);
-        }
+        restoreState(r, library);
 
         isModified = r.isModified;
         pa.openFileName = r.fileName;
@@ -115,11 +142,12 @@ public class UndoActions implements UndoActorListener
     */
     public void saveUndoState()
     {
+        long start=TimeStats.start();
         UndoState s = new UndoState();
 
-        // In fact, the whole drawing is stored as a text.
-        // In this way, we can easily store it on a string.
-        s.text=pa.getText(true).toString();
+        // In fact, the differences in the text describing the drawing
+        // are stored.
+        storeDelta(s);
 
         s.isModified=isModified;
         s.fileName=pa.openFileName;
@@ -127,6 +155,7 @@ public class UndoActions implements UndoActorListener
         s.libraryOperation=false;
 
         um.undoPush(s);
+        SNAPSHOT_TIME.stop(start);
         isModified = true;
         if(cl!=null) { cl.somethingHasChanged(); }
     }
@@ -137,15 +166,257 @@ public class UndoActions implements UndoActorListener
     */
     public void saveUndoLibrary(String t)
     {
+        long start=TimeStats.start();
         tempLibraryDirectory=t;
         UndoState s = new UndoState();
-        s.text=pa.getText(true).toString();
+        storeDelta(s);
         s.libraryDir=tempLibraryDirectory;
         s.isModified=isModified;
         s.fileName=pa.openFileName;
         s.libraryOperation=true;
         tempDir.add(t);
         um.undoPush(s);
+        SNAPSHOT_TIME.stop(start);
+    }
+
+    /** Calculate the differences between the current drawing and the
+        current undo state, store them in the new state and make it current.
+        @param s the new undo state.
+    */
+    private void storeDelta(UndoState s)
+    {
+        DrawingModel model=pa.getModel();
+        String header=pa.registerConfiguration(true).toString();
+        List<GraphicPrimitive> prims=new ArrayList<GraphicPrimitive>(
+            model.getPrimitiveVector());
+
+        // The text of the primitives which have not been modified is the
+        // one of the current state.
+        Set<GraphicPrimitive> modified=model.takeModifiedPrimitives();
+        Map<GraphicPrimitive, String> known=
+            new IdentityHashMap<GraphicPrimitive, String>();
+        if(modified!=null) {
+            for(int i=0; i<currentPrimitives.size(); ++i) {
+                known.put(currentPrimitives.get(i), currentLines.get(i));
+            }
+        }
+        List<String> lines=new ArrayList<String>(prims.size());
+        StringBuilder b=new StringBuilder(64);
+        for(GraphicPrimitive g: prims) {
+            String l=known.get(g);
+            if(l==null || g.isSelected() || modified.contains(g)) {
+                b.setLength(0);
+                g.appendText(b, true);
+                l=b.toString();
+            }
+            lines.add(l);
+        }
+
+        s.delta=UndoDelta.compute(currentHeader, currentLines,
+            currentPrimitives, header, lines, prims);
+        s.previousSerial=currentState==null?0:currentState.serial;
+        s.serial=++lastSerial;
+
+        currentHeader=header;
+        currentLines.clear();
+        currentLines.addAll(lines);
+        currentPrimitives.clear();
+        currentPrimitives.addAll(prims);
+        currentState=s;
+    }
+
+    /** Bring the drawing to the given undo state. Only the primitives which
+        differ are parsed again if the state immediately precedes or follows
+        the current one, otherwise the whole drawing is parsed again.
+        @param r the state.
+        @param library true if the libraries have been modified, so that all
+            the macros should be parsed again.
+    */
+    private void restoreState(UndoState r, boolean library)
+    {
+        UndoDelta d=null;
+        boolean forward=false;
+        boolean reload=library;
+        if(currentState==null) {
+            return;
+        } else if(currentState.previousSerial==r.serial) {
+            d=currentState.delta;
+            forward=false;
+        } else if(r.previousSerial==currentState.serial) {
+            d=r.delta;
+            forward=true;
+        } else if(currentState!=r) {
+            // The text of the state is obtained from the states in between
+            // and the whole drawing is parsed again.
+            if(!walkText(r)) {
+                // The states in between have been discarded from the undo
+                // buffer: the drawing remains the current state.
+                return;
+            }
+            reload=true;
+        }
+
+        // The model may be updated only if it contains exactly the
+        // primitives of the current state.
+        boolean incremental=!reload && isModelCurrent();
+        if(d!=null) {
+            if(incremental) {
+                incremental=applyDelta(d, forward);
+            } else {
+                d.apply(currentLines, forward);
+            }
+            currentHeader=d.getHeader(forward);
+        }
+        DrawingModel model=pa.getModel();
+        if(!incremental) {
+            StringBuffer s=new StringBuffer(currentHeader);
+            for(String l: currentLines) {
+                s.append(l);
+            }
+            pa.parseString(s);
+        }
+        model.setChanged(true);
+
+        currentPrimitives.clear();
+        currentPrimitives.addAll(model.getPrimitiveVector());
+        // The drawing now corresponds exactly to the text of the state.
+        model.takeModifiedPrimitives();
+        currentState=r;
+    }
+
+    /** Bring the text of the current state to the one of a state which does
+        not immediately precede or follow it. Each state contains the
+        differences with respect to the state which was current when it has
+        been saved (see UndoState.previousSerial): the differences are
+        applied backwards up to the closest state from which both states
+        descend, then forwards down to the given state.
+        @param r the state.
+        @return false if the states kept in the undo buffer do not connect
+            the two states, in which case the text is not modified.
+    */
+    private boolean walkText(UndoState r)
+    {
+        Map<Integer, UndoState> states=new HashMap<Integer, UndoState>();
+        for(UndoState s: um.getStates()) {
+            states.put(Integer.valueOf(s.serial), s);
+        }
+        states.put(Integer.valueOf(currentState.serial), currentState);
+        List<UndoState> up=getAncestors(currentState, states);
+        List<UndoState> down=getAncestors(r, states);
+
+        int i=0;
+        int j=-1;
+        while(i<up.size() && (j=down.indexOf(up.get(i)))<0) {
+            ++i;
+        }
+        if(j<0) {
+            return false;
+        }
+        for(UndoState s: up.subList(0, i)) {
+            s.delta.apply(currentLines, false);
+            currentHeader=s.delta.getHeader(false);
+        }
+        for(int k=j-1; k>=0; --k) {
+            UndoDelta d=down.get(k).delta;
+            d.apply(currentLines, true);
+            currentHeader=d.getHeader(true);
+        }
+        return true;
+    }
+
+    /** Get a state and the ones from which it descends, as long as they are
+        available.
+        @param s the state.
+        @param states the available states, by serial number.
+        @return the states, beginning with the given one.
+    */
+    private static List<UndoState> getAncestors(UndoState s,
+        Map<Integer, UndoState> states)
+    {
+        List<UndoState> l=new ArrayList<UndoState>();
+        for(UndoState t=s; t!=null;
+            t=states.get(Integer.valueOf(t.previousSerial)))
+        {
+            l.add(t);
+        }
+        return l;
+    }
+
+    /** Check if the drawing corresponds to the current state. As when
+        saving a state, only the text of the primitives which may have been
+        modified is compared.
+        @return true if the drawing contains exactly the primitives of the
+            current state, described by the same text.
+    */
+    private boolean isModelCurrent()
+    {
+        DrawingModel model=pa.getModel();
+        List<GraphicPrimitive> v=model.getPrimitiveVector();
+        if(v.size()!=currentPrimitives.size()
+            || model.hasModifiedPrimitives())
+        {
+            return false;
+        }
+        StringBuilder b=new StringBuilder(64);
+        for(int i=0; i<v.size(); ++i) {
+            GraphicPrimitive g=v.get(i);
+            if(g!=currentPrimitives.get(i)) {
+                return false;
+            }
+            if(g.isSelected()) {
+                b.setLength(0);
+                g.appendText(b, true);
+                if(!currentLines.get(i).contentEquals(b)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Apply the differences to the drawing and to the text of the current
+        state. Only the primitives which have been modified are parsed.
+        @param d the differences.
+        @param forward true if going from the old to the new version of the
+            differences, false for the opposite.
+        @return true if the drawing has been updated, false if it needs to
+            be parsed again from the text (the text is updated anyway).
+    */
+    private boolean applyDelta(UndoDelta d, boolean forward)
+    {
+        DrawingModel model=pa.getModel();
+        boolean success=true;
+
+        if(d.isHeaderChanged()) {
+            pa.addString(new StringBuffer(d.getHeader(forward)), false);
+        }
+        for(UndoDelta.Hunk h: d.getHunks()) {
+            int p=h.getPosition(forward);
+            String[] removed=h.getRemoved(forward);
+            String[] inserted=h.getInserted(forward);
+
+            currentLines.subList(p, p+removed.length).clear();
+            currentLines.addAll(p, Arrays.asList(inserted));
+            if(!success) {
+                continue;
+            }
+            for(int i=0; i<removed.length; ++i) {
+                model.removePrimitiveAt(p);
+            }
+            StringBuffer s=new StringBuffer();
+            for(String l: inserted) {
+                s.append(l);
+            }
+            List<GraphicPrimitive> v=pa.parsePrimitives(s);
+            if(v.size()!=inserted.length) {
+                success=false;
+                continue;
+            }
+            for(int i=0; i<v.size() && success; ++i) {
+                success=model.insertPrimitive(p+i, v.get(i))==p+i;
+            }
+        }
+        return success;
     }
 
     /** Define a listener for a undo operation involving libraries.
@@ -0,0 +1,277 @@
+package fidocadj.circuit.model;
+
+import java.util.*;
+
+import fidocadj.geom.MapCoordinates;
+import fidocadj.globals.Globals;
+import fidocadj.graphic.nil.GraphicsNull;
+import fidocadj.layers.LayerDesc;
+import fidocadj.primitives.GraphicPrimitive;
+
+/**
+    Extents of the primitives contained in a drawing, in pixels, for a
+    given coordinate mapping. They are the minimum and maximum coordinates
+    tracked by MapCoordinates while the primitives are drawn, i.e. the same
+    values which would be obtained by drawing the whole drawing in a
+    GraphicsNull object.
+
+    The extents are calculated in a lazy way, as in SpatialIndex: when a
+    primitive is added or modified, it is just marked as to be calculated
+    again. Before each query, only those primitives are drawn (one by one,
+    in a GraphicsNull object). All the extents are discarded when the
+    coordinate mapping, the layers, the visibility of the layers or the
+    size of the lines are not the same as in the previous query.
+
+    <pre>
+
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+    </pre>
+
+    @author Davide Bucci
+*/
+final class DrawingExtents
+{
+    // Extents of each primitive (xmin, ymin, xmax, ymax), or null if they
+    // should be calculated.
+    private final Map<GraphicPrimitive, int[]> extents=
+        new IdentityHashMap<GraphicPrimitive, int[]>();
+    // Primitives whose extents should be calculated.
+    private final Set<GraphicPrimitive> dirty=
+        Collections.newSetFromMap(
+            new IdentityHashMap<GraphicPrimitive, Boolean>());
+
+    // Union of the extents, valid only if totalValid is true.
+    private final int[] total=new int[4];
+    private boolean totalValid;
+
+    // The conditions in which the extents have been calculated.
+    private double xMagnitude;
+    private double yMagnitude;
+    private double xCenter;
+    private double yCenter;
+    private int orientation;
+    private boolean mirror;
+    private List<LayerDesc> layers;
+    private long visibleLayers;
+    private double lineWidth;
+    private double lineWidthCircles;
+    private double diameterConnection;
+
+    private GraphicsNull graphics;
+
+    /** Standard constructor. The index is empty.
+    */
+    DrawingExtents()
+    {
+        reset();
+    }
+
+    /** Get the number of primitives known.
+        @return the number of primitives.
+    */
+    int size()
+    {
+        return extents.size();
+    }
+
+    /** Add a primitive.
+        @param p the primitive.
+    */
+    void add(GraphicPrimitive p)
+    {
+        extents.put(p, null);
+        dirty.add(p);
+    }
+
+    /** Remove a primitive.
+        @param p the primitive.
+    */
+    void remove(GraphicPrimitive p)
+    {
+        discard(extents.remove(p));
+        dirty.remove(p);
+    }
+
+    /** Specify that a primitive has been modified, so that its extents
+        should be calculated again.
+        @param p the primitive.
+    */
+    void invalidate(GraphicPrimitive p)
+    {
+        if (extents.containsKey(p)) {
+            discard(extents.put(p, null));
+            dirty.add(p);
+        }
+    }
+
+    /** Remove all the primitives.
+    */
+    void clear()
+    {
+        extents.clear();
+        dirty.clear();
+        reset();
+    }
+
+    /** Discard all the extents and use the given primitives.
+        @param l the primitives.
+    */
+    void rebuild(List<GraphicPrimitive> l)
+    {
+        clear();
+        for (GraphicPrimitive p: l) {
+            add(p);
+        }
+    }
+
+    /** Track the extents of all the primitives in the given coordinate
+        mapping, exactly as if the drawing had been drawn with it.
+        @param m the coordinate mapping.
+        @param layerV the layers of the drawing.
+    */
+    void track(MapCoordinates m, List<LayerDesc> layerV)
+    {
+        checkConditions(m, layerV);
+        if (!dirty.isEmpty()) {
+            MapCoordinates mc=new MapCoordinates();
+            mc.setMagnitudesNoCheck(xMagnitude, yMagnitude);
+            mc.setXCenter(xCenter);
+            mc.setYCenter(yCenter);
+            mc.setOrientation(orientation);
+            mc.mirror=mirror;
+            if (graphics==null) {
+                graphics=new GraphicsNull();
+            }
+            for (GraphicPrimitive p: dirty) {
+                int[] e=calculate(p, mc, layerV);
+                extents.put(p, e);
+                if (totalValid) {
+                    merge(e);
+                }
+            }
+            dirty.clear();
+        }
+        if (!totalValid) {
+            reset();
+            for (int[] e: extents.values()) {
+                merge(e);
+            }
+        }
+        m.trackBounds(total[0], total[1], total[2], total[3]);
+    }
+
+    /** Draw a primitive and get the coordinates tracked.
+        @param p the primitive.
+        @param mc the coordinate mapping.
+        @param layerV the layers of the drawing.
+        @return the extents (xmin, ymin, xmax, ymax).
+    */
+    private int[] calculate(GraphicPrimitive p, MapCoordinates mc,
+        List<LayerDesc> layerV)
+    {
+        mc.resetMinMax();
+        // The layers are processed in the same order as in Drawing.draw.
+        p.setChanged(true);
+        for (int j=0; j<LayerDesc.MAX_LAYERS; ++j) {
+            if (p.containsLayer(j)) {
+                p.setDrawOnlyLayer(j);
+                p.draw(graphics, mc, layerV);
+            }
+        }
+        // The primitive has been calculated with a different mapping: the
+        // views must calculate it again.
+        p.setChanged(true);
+        return new int[] {mc.getXMin(), mc.getYMin(), mc.getXMax(),
+            mc.getYMax()};
+    }
+
+    /** Discard all the extents if the conditions in which they have been
+        calculated have changed.
+        @param m the coordinate mapping.
+        @param layerV the layers of the drawing.
+    */
+    private void checkConditions(MapCoordinates m, List<LayerDesc> layerV)
+    {
+        long v=0;
+        for (int i=0; i<layerV.size() && i<Long.SIZE; ++i) {
+            if (layerV.get(i).isVisible()) {
+                v|=1L<<i;
+            }
+        }
+        if (xMagnitude==m.getXMagnitude() && yMagnitude==m.getYMagnitude()
+            && xCenter==m.getXCenter() && yCenter==m.getYCenter()
+            && orientation==m.getOrientation() && mirror==m.getMirror()
+            && layers==layerV && visibleLayers==v
+            && lineWidth==Globals.getLineWidth()
+            && lineWidthCircles==Globals.getLineWidthCircles()
+            && diameterConnection==Globals.getDiameterConnection())
+        {
+            return;
+        }
+        xMagnitude=m.getXMagnitude();
+        yMagnitude=m.getYMagnitude();
+        xCenter=m.getXCenter();
+        yCenter=m.getYCenter();
+        orientation=m.getOrientation();
+        mirror=m.getMirror();
+        layers=layerV;
+        visibleLayers=v;
+        lineWidth=Globals.getLineWidth();
+        lineWidthCircles=Globals.getLineWidthCircles();
+        diameterConnection=Globals.getDiameterConnection();
+        for (Map.Entry<GraphicPrimitive, int[]> e: extents.entrySet()) {
+            e.setValue(null);
+            dirty.add(e.getKey());
+        }
+        reset();
+    }
+
+    /** Take into account that some extents are no longer valid. The union
+        must be calculated again only if they are on its border.
+        @param e the extents, or null.
+    */
+    private void discard(int[] e)
+    {
+        if (e!=null && totalValid && (e[0]<=total[0] || e[1]<=total[1]
+            || e[2]>=total[2] || e[3]>=total[3]))
+        {
+            totalValid=false;
+        }
+    }
+
+    /** Add some extents to the union.
+        @param e the extents.
+    */
+    private void merge(int[] e)
+    {
+        total[0]=Math.min(total[0], e[0]);
+        total[1]=Math.min(total[1], e[1]);
+        total[2]=Math.max(total[2], e[2]);
+        total[3]=Math.max(total[3], e[3]);
+    }
+
+    /** Empty the union of the extents.
+    */
+    private void reset()
+    {
+        total[0]=total[1]=Integer.MAX_VALUE;
+        total[2]=total[3]=Integer.MIN_VALUE;
+        totalValid=true;
+    }
+}
@@ -4,10 +4,13 @@ import java.util.*;
 
 import fidocadj.circuit.ImageAsCanvas;
 import fidocadj.circuit.controllers.UndoActions;
+import fidocadj.geom.MapCoordinates;
+import fidocadj.graphic.RectangleG;
 import fidocadj.layers.LayerDesc;
 import fidocadj.primitives.GraphicPrimitive;
 import fidocadj.primitives.MacroDesc;
 import fidocadj.primitives.PrimitiveMacro;
+import fidocadj.primitives.PrimitivePCBPad;
 
 /**
     Database of the FidoCadJ drawing. This is the "model" in the
@@ -43,11 +46,10 @@ public final class DrawingModel
 {
     // ************* DRAWING *************
 
-    // Array used to determine which layer is used in the drawing.
-    private boolean[] layersUsed;
+    // Number of primitives containing each layer (macros may contain more
+    // than one layer).
+    private final int[] layerUsage;
 
-    // Higher priority layer used in the drawing.
-    private int maxLayer;
     // True if only pads should be drawn.
     private boolean drawOnlyPads;
 
@@ -66,11 +68,36 @@ public final class DrawingModel
     // will be done. For performance reasons, this is indeed done only when
     // necessary.
     private boolean changed;
+    // Number of times the drawing has been marked as changed (see
+    // getVersion).
+    private long changes;
 
     // ******* PRIMITIVE DATABASE ********
 
-    // List containing all primitives in the drawing.
-    private List<GraphicPrimitive> primitiveVector;
+    // All primitives in the drawing, ordered by layer.
+    private final LayerBuckets primitives=new LayerBuckets();
+    // Macros contained in the drawing, ordered by layer.
+    private final LayerBuckets macros=new LayerBuckets();
+    // Primitives which may need holes (pads and macros), ordered by layer.
+    private final LayerBuckets holes=new LayerBuckets();
+    // Spatial index of the primitives, used to speed up hit-testing.
+    private final SpatialIndex spatialIndex=new SpatialIndex();
+    // Extents of the primitives in pixels, used to get the size of the
+    // drawing.
+    private final DrawingExtents extents=new DrawingExtents();
+    // Versions of the layers, used by the views which keep an image of
+    // each layer.
+    private final LayerVersions versions=new LayerVersions();
+    // Primitives added or modified since the last call to
+    // takeModifiedPrimitives, or null if any primitive may have been
+    // modified (for example, when the whole list has been replaced).
+    private Set<GraphicPrimitive> modified;
+    // Below this number of primitives, a query on the spatial index is
+    // slower than a scan of the whole list.
+    private static final int MIN_INDEXED_PRIMITIVES=64;
+    // False if the order numbers in the spatial index do not follow any
+    // more the order of the primitives.
+    private boolean indexOrdered=true;
     // List containing all layers used in the drawing.
     private List<LayerDesc> layerV;
 
@@ -83,14 +110,13 @@ public final class DrawingModel
     */
     public DrawingModel()
     {
+        layerUsage = new int[LayerDesc.MAX_LAYERS];
         setPrimitiveVector(new Vector<GraphicPrimitive>(25));
         layerV=new Vector<LayerDesc>(LayerDesc.MAX_LAYERS);
         library=new TreeMap<String, MacroDesc>();
         macroFont = "Courier New";
-        imgCanvas= new ImageAsCanvas();
         drawOnlyPads=false;
         drawOnlyLayer=-1;
-        layersUsed = new boolean[LayerDesc.MAX_LAYERS];
         changed=true;
     }
 
@@ -100,7 +126,7 @@ public final class DrawingModel
     */
     public void applyToAllElements(ProcessElementsInterface tt)
     {
-        for (GraphicPrimitive g:primitiveVector){
+        for (GraphicPrimitive g:getPrimitiveVector()){
             tt.doAction(g);
         }
     }
@@ -128,7 +154,7 @@ public final class DrawingModel
                 }
             }
         });
-        changed=true;
+        setChanged(true);
     }
 
     /** Get the current library
@@ -145,7 +171,7 @@ public final class DrawingModel
     public void setLibrary(Map<String, MacroDesc> l)
     {
         library=l;
-        changed=true;
+        setChanged(true);
     }
 
     /** Resets the current library.
@@ -153,30 +179,35 @@ public final class DrawingModel
     public void resetLibrary()
     {
         setLibrary(new TreeMap<String, MacroDesc>());
-        changed=true;
+        setChanged(true);
     }
 
 
     /** Add a graphic primitive.
         @param p the primitive to be added.
-        @param sort if true, sort the primitive layers
         @param ua if different from <pre>null</pre>, the operation will be
             undoable.
     */
-    public void addPrimitive(GraphicPrimitive p, boolean sort,
-        UndoActions ua)
+    public void addPrimitive(GraphicPrimitive p, UndoActions ua)
     {
-        // The primitive database MUST be ordered. The idea is that we insert
-        // primitives without ordering them and then we call a sorter.
+        // The primitive database MUST be ordered. The primitive is inserted
+        // at the end of the primitives belonging to the same layer, so that
+        // there is no need to sort the database.
         synchronized(this) {
-            getPrimitiveVector().add(p);
-
-            // We check if the primitives should be sorted depending of
-            // their layer
-            // If there are more than a few primitives to insert, it is wise to
-            // sort only once, at the end of the insertion process.
-            if (sort) {
-                sortPrimitiveLayers();
+            int pos=primitives.add(p);
+            if (p instanceof PrimitiveMacro) {
+                macros.add(p);
+            }
+            if (p instanceof PrimitiveMacro || p instanceof PrimitivePCBPad) {
+                holes.add(p);
+            }
+            updateLayerUsage(p, 1);
+            spatialIndex.add(p);
+            extents.add(p);
+            versions.add(p);
+            markModified(p);
+            if (pos!=primitives.getList().size()-1) {
+                indexOrdered=false;
             }
 
             // Check if it should be undoable.
@@ -186,8 +217,29 @@ public final class DrawingModel
                 // We now have to track that something has changed. This
                 // forces all the
                 // caching system used by the drawing routines to be refreshed.
-                changed=true;
+                setChanged(true);
+            }
+        }
+    }
+
+    /** Add several graphic primitives. When many primitives are added, this
+        is much faster than calling addPrimitive for each of them, as the
+        database is ordered only once. The operation is not undoable.
+        @param l the primitives to be added.
+    */
+    public void addPrimitives(List<GraphicPrimitive> l)
+    {
+        synchronized(this) {
+            List<GraphicPrimitive> v=getPrimitiveVector();
+            if (l.size()<v.size()/16) {
+                // Only a few primitives: not worth ordering everything.
+                for (GraphicPrimitive p: l) {
+                    addPrimitive(p, null);
+                }
+                return;
             }
+            v.addAll(l);
+            setPrimitiveVector(v);
         }
     }
 
@@ -203,10 +255,15 @@ public final class DrawingModel
         macroFont=f;
         macroFontSize = size;
 
-        for (GraphicPrimitive g:getPrimitiveVector()) {
-            g.setMacroFont(f, size);
+        synchronized(this) {
+            for (GraphicPrimitive g:getPrimitiveVector()) {
+                g.setMacroFont(f, size);
+                extents.invalidate(g);
+                versions.invalidate(g);
+                markModified(g);
+            }
         }
-        changed=true;
+        setChanged(true);
         if(ua!=null) { ua.setModified(true); }
     }
 
@@ -238,95 +295,134 @@ public final class DrawingModel
         return macroFontSize;
     }
 
-    /** Performs a sort of the primitives on the basis of their layer.
-        The sorting metod adopted is the Shell sort. By the practical point
-        of view, this seems to be rather good even for large drawings. This is
-        because the primitive list is always more or less already ordered.
+    /** Order again the primitives on the basis of their layer. This should
+        be done each time the layer of some primitives has been changed.
+        The primitives belonging to the same layer keep their relative order.
     */
     public void sortPrimitiveLayers()
     {
-        int i;
-        GraphicPrimitive g;
-        maxLayer = 0;
-
-        // Indexes
-        int j;
-        int k;
-        int l;
-        // Swap temporary variable
-        GraphicPrimitive s;
-
-        // Shell sort. This is a farly standard implementation
-        for(l = getPrimitiveVector().size()/2; l>0; l/=2) {
-            for(j = l; j< getPrimitiveVector().size(); ++j) {
-                for(i=j-l; i>=0; i-=l) {
-                    if(((GraphicPrimitive)getPrimitiveVector()
-                                                    .get(i+l)).getLayer()>=
-                        ((GraphicPrimitive)getPrimitiveVector()
-                                                    .get(i)).getLayer())
-                    {
-                        break;
-                    } else {
-                        // Swap
-                        s = (GraphicPrimitive)getPrimitiveVector().get(i);
-                        getPrimitiveVector().set(i,
-                            getPrimitiveVector().get(i+l));
-                        getPrimitiveVector().set(i+l, s);
-                    }
-                }
-            }
-        }
-
-        // Since for sorting we need to analyze all the primitives in the
-        // database, this is a good place to calculate which layers are
-        // used. We thus start by resetting the array.
-        maxLayer = -1;
-        k=0;
-
-        for (l=0; l<LayerDesc.MAX_LAYERS; ++l) {
-            layersUsed[l] = false;
-
-            for (i=k; i<getPrimitiveVector().size(); ++i) {
-                g=(GraphicPrimitive)getPrimitiveVector().get(i);
-
-                // We keep track of the maximum layer number used in the
-                // drawing.
-                if (g.getLayer() > maxLayer) {
-                    maxLayer = g.getLayer();
-                }
-
-                if (g.containsLayer(l)) {
-                    layersUsed[l]=true;
-                    k=i;
-                    for (int z = 0; z<l; ++z) {
-                        layersUsed[z]=true;
-                    }
-                    break;
-                }
-            }
+        synchronized(this) {
+            primitives.reorder();
+            macros.reorder();
+            holes.reorder();
+            countLayerUsage();
+            spatialIndex.renumber(getPrimitiveVector());
+            indexOrdered=true;
         }
     }
+
     /** Get the maximum layer which contains something. This value is updated
-        after a redraw. This is tracked for efficiency reasons.
+        each time a primitive is added or removed.
 
-        @return the maximum layer number.
+        @return the maximum layer number, or -1 if the drawing is empty.
     */
     public int getMaxLayer()
     {
-        return maxLayer;
+        for (int l=LayerDesc.MAX_LAYERS-1; l>=0; --l) {
+            if (!primitives.isEmpty(l)) {
+                return l;
+            }
+        }
+        return -1;
     }
 
     /** Returns true if the specified layer is contained in the schematic
-        being drawn. The analysis is done when the schematics is created, so
-        the results of this method are ready before the redraw step.
+        being drawn. A layer is considered as being used also if a layer
+        above it contains something. The analysis is done when primitives are
+        added or removed, so the results of this method are ready before the
+        redraw step.
         @param l the number of the layer to be checked.
         @return true if the specified layer is contained in the drawing.
     */
     public boolean containsLayer(int l)
     {
-        return layersUsed[l];
+        for (int i=LayerDesc.MAX_LAYERS-1; i>=l; --i) {
+            if (layerUsage[i]>0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Get the primitives belonging to the given layer, in the order of the
+        drawing. The returned list must not be modified and it is valid
+        until the drawing is modified.
+        @param l the layer.
+        @return the primitives of the layer.
+    */
+    public List<GraphicPrimitive> getLayerPrimitives(int l)
+    {
+        return primitives.getLayer(l);
+    }
+
+    /** Get the macros belonging to the layers below the given one, in the
+        order of the drawing. Macros are normally on layer 0, but they can
+        contain primitives on any layer. The returned list must not be
+        modified and it is valid until the drawing is modified.
+        @param l the layer.
+        @return the macros.
+    */
+    public List<GraphicPrimitive> getMacrosBelow(int l)
+    {
+        return macros.getBelow(l);
+    }
+
+    /** Get the macros belonging to the layers above the given one, in the
+        order of the drawing. The returned list must not be modified and it
+        is valid until the drawing is modified.
+        @param l the layer.
+        @return the macros.
+    */
+    public List<GraphicPrimitive> getMacrosAbove(int l)
+    {
+        return macros.getAbove(l);
+    }
+
+    /** Get the primitives which may need holes (pads and macros), in the
+        order of the drawing. The returned list must not be modified and it
+        is valid until the drawing is modified.
+        @return the primitives.
+    */
+    public List<GraphicPrimitive> getHolePrimitives()
+    {
+        return holes.getList();
+    }
+
+    /** Get the primitives which may need holes (pads and macros) belonging
+        to the given layer or to the layers below it, in the order of the
+        drawing. The returned list must not be modified and it is valid
+        until the drawing is modified.
+        @param l the layer.
+        @return the primitives.
+    */
+    public List<GraphicPrimitive> getHolePrimitives(int l)
+    {
+        return holes.getUpTo(l);
+    }
+
+    /** Update the count of the primitives containing each layer.
+        @param p the primitive added or removed.
+        @param d +1 if the primitive has been added, -1 if it has been
+            removed.
+    */
+    private void updateLayerUsage(GraphicPrimitive p, int d)
+    {
+        for (int l=0; l<LayerDesc.MAX_LAYERS; ++l) {
+            if (p.containsLayer(l)) {
+                layerUsage[l]=Math.max(0, layerUsage[l]+d);
+            }
+        }
     }
 
+    /** Count again the primitives containing each layer.
+    */
+    private void countLayerUsage()
+    {
+        Arrays.fill(layerUsage, 0);
+        for (GraphicPrimitive g: getPrimitiveVector()) {
+            updateLayerUsage(g, 1);
+        }
+    }
 
     /** Returns true if there is no drawing in memory
         @return true if the drawing is empty.
@@ -356,6 +452,25 @@ public final class DrawingModel
     public void setChanged(boolean c)
     {
         changed=c;
+        if(c) {
+            synchronized(this) {
+                ++changes;
+            }
+        }
+    }
+
+    /** Get the version of the drawing. It changes each time the drawing is
+        marked as changed (see setChanged) and each time a primitive is
+        added, removed or modified through the methods of this class. Unlike
+        the changed state, it is never reset by the views. It can be read
+        by any thread.
+        @return the version of the drawing.
+    */
+    public long getVersion()
+    {
+        synchronized(this) {
+            return changes+versions.getLastVersion();
+        }
     }
 
     /** Obtains a vector containing all elements.
@@ -363,15 +478,323 @@ public final class DrawingModel
     */
     public List<GraphicPrimitive> getPrimitiveVector()
     {
-        return primitiveVector;
+        return primitives.getList();
     }
 
-    /** Sets a vector containing all elements.
+    /** Sets a vector containing all elements. The vector is ordered on the
+        basis of the layers of the primitives.
         @param primitiveVector the vector containing all graphical objects.
     */
     public void setPrimitiveVector(List<GraphicPrimitive> primitiveVector)
     {
-        this.primitiveVector = primitiveVector;
+        synchronized(this) {
+            primitives.setList(primitiveVector);
+            macros.clear();
+            holes.clear();
+            for (GraphicPrimitive g: primitiveVector) {
+                if (g instanceof PrimitiveMacro) {
+                    macros.add(g);
+                }
+                if (g instanceof PrimitiveMacro
+                    || g instanceof PrimitivePCBPad)
+                {
+                    holes.add(g);
+                }
+            }
+            countLayerUsage();
+            spatialIndex.rebuild(primitiveVector);
+            extents.rebuild(primitiveVector);
+            versions.rebuild(primitiveVector);
+            modified=null;
+            indexOrdered=true;
+        }
+    }
+
+    /** Remove a graphic primitive.
+        @param p the primitive to be removed.
+    */
+    public void removePrimitive(GraphicPrimitive p)
+    {
+        synchronized(this) {
+            if (primitives.remove(p)) {
+                macros.remove(p);
+                holes.remove(p);
+                updateLayerUsage(p, -1);
+                spatialIndex.remove(p);
+                extents.remove(p);
+                versions.remove(p);
+                if (modified!=null) {
+                    modified.remove(p);
+                }
+            }
+        }
+    }
+
+    /** Insert a graphic primitive at the given position. The position is
+        adjusted if it is not compatible with the layer of the primitive,
+        since the primitives must remain ordered by layer.
+        @param index the position where the primitive should be inserted.
+        @param p the primitive to be inserted.
+        @return the position where the primitive has been inserted.
+    */
+    public int insertPrimitive(int index, GraphicPrimitive p)
+    {
+        synchronized(this) {
+            int pos=primitives.insert(index, p);
+            if (p instanceof PrimitiveMacro) {
+                macros.insert(countBefore(pos, false), p);
+            }
+            if (p instanceof PrimitiveMacro || p instanceof PrimitivePCBPad) {
+                holes.insert(countBefore(pos, true), p);
+            }
+            updateLayerUsage(p, 1);
+            spatialIndex.add(p);
+            extents.add(p);
+            versions.add(p);
+            markModified(p);
+            if (pos!=primitives.getList().size()-1) {
+                indexOrdered=false;
+            }
+            return pos;
+        }
+    }
+
+    /** Remove the graphic primitive at the given position.
+        @param index the position of the primitive.
+        @return the primitive which has been removed.
+    */
+    public GraphicPrimitive removePrimitiveAt(int index)
+    {
+        synchronized(this) {
+            GraphicPrimitive p=primitives.getList().get(index);
+            removePrimitive(p);
+            return p;
+        }
+    }
+
+    /** Count the macros (and optionally the pads) which precede the given
+        position in the list of primitives.
+        @param pos the position.
+        @param pads true if the pads should be counted too.
+        @return the number of primitives found.
+    */
+    private int countBefore(int pos, boolean pads)
+    {
+        int n=0;
+        for (GraphicPrimitive g: primitives.getList().subList(0, pos)) {
+            if (g instanceof PrimitiveMacro
+                || pads && g instanceof PrimitivePCBPad)
+            {
+                ++n;
+            }
+        }
+        return n;
+    }
+
+    /** Remove all graphic primitives.
+    */
+    public void removeAllPrimitives()
+    {
+        synchronized(this) {
+            primitives.clear();
+            macros.clear();
+            holes.clear();
+            Arrays.fill(layerUsage, 0);
+            spatialIndex.clear();
+            extents.clear();
+            versions.clear();
+            modified=null;
+            indexOrdered=true;
+        }
+    }
+
+    /** Specify that a primitive has been modified (moved, rotated, edited),
+        so that its position in the spatial index and its extents should be
+        updated.
+        @param p the primitive which has been modified.
+    */
+    public void updatePrimitiveIndex(GraphicPrimitive p)
+    {
+        synchronized(this) {
+            spatialIndex.invalidate(p);
+            extents.invalidate(p);
+            versions.invalidate(p);
+            markModified(p);
+        }
+    }
+
+    /** Get the primitives added or modified through the methods of this
+        class since the previous call, and start tracking them again. This
+        is employed by the undo system, which writes again only the text of
+        these primitives.
+        @return the primitives, or null if any primitive may have been
+            modified (for example, at the first call or when the whole list
+            of primitives has been replaced).
+    */
+    public Set<GraphicPrimitive> takeModifiedPrimitives()
+    {
+        synchronized(this) {
+            Set<GraphicPrimitive> m=modified;
+            modified=Collections.newSetFromMap(
+                new IdentityHashMap<GraphicPrimitive, Boolean>());
+            return m;
+        }
+    }
+
+    /** Check if some primitives have been added or modified since the last
+        call to takeModifiedPrimitives, without forgetting them.
+        @return true if some primitives may have been added or modified.
+    */
+    public boolean hasModifiedPrimitives()
+    {
+        synchronized(this) {
+            return modified==null || !modified.isEmpty();
+        }
+    }
+
+    /** Remember that a primitive has been added or modified (see
+        takeModifiedPrimitives).
+        @param p the primitive.
+    */
+    private void markModified(GraphicPrimitive p)
+    {
+        if (modified!=null) {
+            modified.add(p);
+        }
+    }
+
+    /** Specify that a primitive has been calculated again by a view (for
+        example, redrawn with a different zoom), so that its bounding box
+        may have changed even if the primitive has not been modified.
+        @param p the primitive which has been calculated again.
+    */
+    public void updatePrimitiveBox(GraphicPrimitive p)
+    {
+        spatialIndex.invalidate(p);
+    }
+
+    /** Get the primitives which may lie at a distance smaller than r from
+        the given point. The other primitives are guaranteed to have a
+        distance (as calculated by getDistanceToPoint) greater or equal to r.
+        @param px the x coordinate of the point (logical units).
+        @param py the y coordinate of the point (logical units).
+        @param r the distance (logical units).
+        @return the primitives, in the same order as in the drawing. If r is
+            too big for the spatial index to be useful or if the drawing is
+            small, all the primitives are returned.
+    */
+    public List<GraphicPrimitive> getPrimitivesNear(int px, int py, int r)
+    {
+        synchronized(this) {
+            if (getPrimitiveVector().size()<MIN_INDEXED_PRIMITIVES) {
+                return getPrimitiveVector();
+            }
+            checkSpatialIndex();
+            if (r>spatialIndex.getDistanceFloor()) {
+                return getPrimitiveVector();
+            }
+            return spatialIndex.query(new RectangleG(px-r, py-r, 2*r, 2*r));
+        }
+    }
+
+    /** Get the primitives which may have some part in the given rectangular
+        region. The other primitives do not have any control point nor any
+        visible part in the region.
+        @param x the x coordinate of the top left corner (logical units).
+        @param y the y coordinate of the top left corner (logical units).
+        @param w the width of the region.
+        @param h the height of the region.
+        @return the primitives, in the same order as in the drawing. For
+            small drawings, all the primitives are returned.
+    */
+    public List<GraphicPrimitive> getPrimitivesInRect(int x, int y,
+        int w, int h)
+    {
+        synchronized(this) {
+            if (getPrimitiveVector().size()<MIN_INDEXED_PRIMITIVES) {
+                return getPrimitiveVector();
+            }
+            checkSpatialIndex();
+            return spatialIndex.query(new RectangleG(x, y, w, h));
+        }
+    }
+
+    /** Get the union of the bounding boxes of all primitives.
+        @return the bounds, in logical units, or null if the drawing is
+            empty.
+    */
+    public RectangleG getPrimitivesBounds()
+    {
+        synchronized(this) {
+            checkSpatialIndex();
+            return spatialIndex.getBounds();
+        }
+    }
+
+    /** Track the minimum and maximum coordinates of the drawing in the
+        given coordinate mapping. The result is the same as the one obtained
+        by drawing all the primitives with it, but only the primitives
+        added or modified since the previous call are drawn again, as long
+        as the mapping, the layers and the line widths do not change.
+        The image in background is not taken into account.
+        @param m the coordinate mapping, where the coordinates are tracked.
+    */
+    public void trackExtremePoints(MapCoordinates m)
+    {
+        synchronized(this) {
+            if (extents.size()!=getPrimitiveVector().size()) {
+                extents.rebuild(getPrimitiveVector());
+                modified=null;
+            }
+            extents.track(m, layerV);
+        }
+    }
+
+    /** Get the version of a layer. The version changes each time a
+        primitive drawn in the layer is added, removed or modified through
+        the methods of this class, or when the primitive list is modified
+        directly. The appearance of the layer (color, visibility) is not
+        taken into account.
+        @param l the layer.
+        @return the version of the layer.
+    */
+    public long getLayerVersion(int l)
+    {
+        synchronized(this) {
+            if (versions.size()!=getPrimitiveVector().size()) {
+                versions.rebuild(getPrimitiveVector());
+                modified=null;
+            }
+            return versions.getVersion(l);
+        }
+    }
+
+    /** Get the smallest value that getDistanceToPoint may return for a
+        primitive lying far away from the given point.
+        @return the distance floor, or Integer.MAX_VALUE if the drawing is
+            empty.
+    */
+    public int getDistanceFloor()
+    {
+        synchronized(this) {
+            checkSpatialIndex();
+            return spatialIndex.getDistanceFloor();
+        }
+    }
+
+    /** Rebuild the spatial index if the primitive list has been modified
+        directly, without using the methods of this class, and update the
+        order numbers if primitives have been inserted.
+    */
+    private void checkSpatialIndex()
+    {
+        if (spatialIndex.size()!=getPrimitiveVector().size()) {
+            spatialIndex.rebuild(getPrimitiveVector());
+            indexOrdered=true;
+        } else if (!indexOrdered) {
+            spatialIndex.renumber(getPrimitiveVector());
+            indexOrdered=true;
+        }
     }
 
     /** Specify that the drawing process should only draw holes of the pcb
@@ -431,6 +854,11 @@ public final class DrawingModel
      */
     public ImageAsCanvas getImgCanvas()
     {
+        // Created only when needed, since the drawings used for the
+        // macros never have an image in background.
+        if (imgCanvas==null) {
+            imgCanvas= new ImageAsCanvas();
+        }
         return imgCanvas;
     }
 }
@@ -0,0 +1,245 @@
+package fidocadj.circuit.model;
+
+import java.util.*;
+
+import fidocadj.layers.LayerDesc;
+import fidocadj.primitives.GraphicPrimitive;
+
+/**
+    A list of primitives ordered by layer. The primitives belonging to the
+    same layer are kept in the order in which they have been added. The
+    list is thus split in consecutive buckets, one for each layer, whose
+    sizes are tracked so that a primitive can be inserted at the end of its
+    layer without sorting again the whole list.
+
+    <pre>
+
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+    </pre>
+
+    @author Davide Bucci
+*/
+final class LayerBuckets
+{
+    private List<GraphicPrimitive> list;
+
+    // Number of primitives contained in each layer.
+    private final int[] counts=new int[LayerDesc.MAX_LAYERS];
+
+    /** Create an empty list.
+    */
+    LayerBuckets()
+    {
+        list=new Vector<GraphicPrimitive>(25);
+    }
+
+    /** Get the list containing all the primitives, ordered by layer. The
+        list should not be modified directly.
+        @return the list.
+    */
+    List<GraphicPrimitive> getList()
+    {
+        return list;
+    }
+
+    /** Use the given list to store the primitives. The contents of the list
+        are ordered by layer, keeping the relative order of the primitives
+        which belong to the same layer.
+        @param l the list.
+    */
+    void setList(List<GraphicPrimitive> l)
+    {
+        list=l;
+        reorder();
+    }
+
+    /** Add a primitive at the end of its layer.
+        @param p the primitive to be added.
+        @return the position of the primitive in the list.
+    */
+    int add(GraphicPrimitive p)
+    {
+        int l=p.getLayer();
+        int pos=getEnd(l);
+        list.add(pos, p);
+        ++counts[l];
+        return pos;
+    }
+
+    /** Insert a primitive at the given position. If the position is not
+        inside the layer of the primitive, the nearest position belonging
+        to the layer is used instead, so that the list remains ordered.
+        @param pos the position.
+        @param p the primitive to be inserted.
+        @return the position of the primitive in the list.
+    */
+    int insert(int pos, GraphicPrimitive p)
+    {
+        int l=p.getLayer();
+        int start=getStart(l);
+        int end=getEnd(l);
+        int ppos=Math.max(start, Math.min(end, pos));
+        list.add(ppos, p);
+        ++counts[l];
+        return ppos;
+    }
+
+    /** Remove a primitive.
+        @param p the primitive to be removed.
+        @return true if the primitive was contained in the list.
+    */
+    boolean remove(GraphicPrimitive p)
+    {
+        // The layer of the primitive might have changed since when it has
+        // been added, so we find the bucket from the position.
+        int pos=indexOf(p);
+        if(pos<0) {
+            return false;
+        }
+        list.remove(pos);
+        int start=0;
+        for(int l=0; l<LayerDesc.MAX_LAYERS; ++l) {
+            start+=counts[l];
+            if(pos<start) {
+                --counts[l];
+                break;
+            }
+        }
+        return true;
+    }
+
+    /** Remove all the primitives.
+    */
+    void clear()
+    {
+        list.clear();
+        Arrays.fill(counts, 0);
+    }
+
+    /** Order again the list, when the layer of some primitives has been
+        changed. Primitives belonging to the same layer keep their relative
+        order. This requires a time proportional to the number of primitives.
+    */
+    void reorder()
+    {
+        if(list.isEmpty()) {
+            Arrays.fill(counts, 0);
+            return;
+        }
+        List<List<GraphicPrimitive>> buckets=
+            new ArrayList<List<GraphicPrimitive>>(LayerDesc.MAX_LAYERS);
+        for(int l=0; l<LayerDesc.MAX_LAYERS; ++l) {
+            buckets.add(new ArrayList<GraphicPrimitive>());
+        }
+        for(GraphicPrimitive g: list) {
+            buckets.get(g.getLayer()).add(g);
+        }
+        list.clear();
+        for(int l=0; l<LayerDesc.MAX_LAYERS; ++l) {
+            counts[l]=buckets.get(l).size();
+            list.addAll(buckets.get(l));
+        }
+    }
+
+    /** Get the primitives belonging to the given layer.
+        @param l the layer.
+        @return a view of the list containing only the primitives of the
+            layer. It is valid until the list is modified.
+    */
+    List<GraphicPrimitive> getLayer(int l)
+    {
+        return list.subList(getStart(l), getEnd(l));
+    }
+
+    /** Get the primitives belonging to the layers below the given one.
+        @param l the layer.
+        @return a view of the list. It is valid until the list is modified.
+    */
+    List<GraphicPrimitive> getBelow(int l)
+    {
+        return list.subList(0, getStart(l));
+    }
+
+    /** Get the primitives belonging to the given layer or to the layers
+        below it.
+        @param l the layer.
+        @return a view of the list. It is valid until the list is modified.
+    */
+    List<GraphicPrimitive> getUpTo(int l)
+    {
+        return list.subList(0, getEnd(l));
+    }
+
+    /** Get the primitives belonging to the layers above the given one.
+        @param l the layer.
+        @return a view of the list. It is valid until the list is modified.
+    */
+    List<GraphicPrimitive> getAbove(int l)
+    {
+        return list.subList(getEnd(l), list.size());
+    }
+
+    /** Tell if a layer contains at least a primitive.
+        @param l the layer.
+        @return true if the layer is empty.
+    */
+    boolean isEmpty(int l)
+    {
+        return l<0 || l>=LayerDesc.MAX_LAYERS || counts[l]==0;
+    }
+
+    /** Get the position of the first primitive of the given layer.
+        @param l the layer.
+        @return the position in the list.
+    */
+    private int getStart(int l)
+    {
+        int start=0;
+        for(int i=0; i<l && i<LayerDesc.MAX_LAYERS; ++i) {
+            start+=counts[i];
+        }
+        return start;
+    }
+
+    /** Get the position following the last primitive of the given layer.
+        @param l the layer.
+        @return the position in the list.
+    */
+    private int getEnd(int l)
+    {
+        if(l<0 || l>=LayerDesc.MAX_LAYERS) {
+            return getStart(l);
+        }
+        return getStart(l)+counts[l];
+    }
+
+    /** Search for a primitive (comparing the references).
+        @param p the primitive.
+        @return the position of the primitive or -1 if it is not found.
+    */
+    private int indexOf(GraphicPrimitive p)
+    {
+        for(int i=0; i<list.size(); ++i) {
+            if(list.get(i)==p) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
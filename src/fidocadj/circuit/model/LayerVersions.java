@@ -0,0 +1,149 @@
+package fidocadj.circuit.model;
+
+import java.util.*;
+
+import fidocadj.layers.LayerDesc;
+import fidocadj.primitives.GraphicPrimitive;
+
+/**
+    Versions of the layers of a drawing. The version of a layer changes
+    each time a primitive drawn in it is added, removed or modified, so that
+    the views keeping an image of each layer know which ones should be
+    drawn again. The layers of each primitive are remembered, since a
+    modification may move the primitive to another layer.
+
+    <pre>
+
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+    </pre>
+
+    @author Davide Bucci
+*/
+final class LayerVersions
+{
+    // Layers in which each primitive is drawn (one bit for each layer).
+    private final Map<GraphicPrimitive, Long> layers=
+        new IdentityHashMap<GraphicPrimitive, Long>();
+    private final long[] versions=new long[LayerDesc.MAX_LAYERS];
+    // Last version assigned, so that a version is never used twice.
+    private long counter;
+
+    /** Add a primitive.
+        @param p the primitive.
+    */
+    void add(GraphicPrimitive p)
+    {
+        long m=getLayers(p);
+        layers.put(p, m);
+        touch(m);
+    }
+
+    /** Remove a primitive.
+        @param p the primitive.
+    */
+    void remove(GraphicPrimitive p)
+    {
+        Long m=layers.remove(p);
+        touch(m==null ? getLayers(p) : m);
+    }
+
+    /** Specify that a primitive has been modified. Both the layers where
+        it was drawn and the ones where it is drawn now are changed.
+        @param p the primitive.
+    */
+    void invalidate(GraphicPrimitive p)
+    {
+        long m=getLayers(p);
+        Long old=layers.put(p, m);
+        touch(old==null ? m : m | old);
+    }
+
+    /** Remove all the primitives.
+    */
+    void clear()
+    {
+        layers.clear();
+        touch(-1L);
+    }
+
+    /** Discard all the primitives and use the given ones.
+        @param l the primitives.
+    */
+    void rebuild(List<GraphicPrimitive> l)
+    {
+        layers.clear();
+        for (GraphicPrimitive p: l) {
+            layers.put(p, getLayers(p));
+        }
+        touch(-1L);
+    }
+
+    /** Get the number of primitives.
+        @return the number of primitives.
+    */
+    int size()
+    {
+        return layers.size();
+    }
+
+    /** Get the version of a layer.
+        @param l the layer.
+        @return the version, which changes each time the layer is modified.
+    */
+    long getVersion(int l)
+    {
+        return versions[l];
+    }
+
+    /** Get the last version assigned to a layer.
+        @return the version, which changes each time any layer is modified.
+    */
+    long getLastVersion()
+    {
+        return counter;
+    }
+
+    /** Get the layers where a primitive is drawn, as in Drawing.draw.
+        @param p the primitive.
+        @return one bit for each layer.
+    */
+    static long getLayers(GraphicPrimitive p)
+    {
+        long m=0;
+        for (int j=0; j<LayerDesc.MAX_LAYERS; ++j) {
+            if (p.containsLayer(j)) {
+                m|=1L<<j;
+            }
+        }
+        return m;
+    }
+
+    /** Change the version of some layers.
+        @param m the layers (one bit for each layer).
+    */
+    private void touch(long m)
+    {
+        ++counter;
+        for (int j=0; j<LayerDesc.MAX_LAYERS; ++j) {
+            if ((m & 1L<<j)!=0) {
+                versions[j]=counter;
+            }
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package fidocadj.circuit.model;
+
+import java.util.*;
+
+import fidocadj.graphic.RectangleG;
+import fidocadj.primitives.GraphicPrimitive;
+
+/**
+    Spatial index of the primitives contained in a drawing. It is a uniform
+    grid of square cells: each primitive is registered in all the cells
+    touched by its bounding box (see GraphicPrimitive.getBoundingBox).
+    Primitives covering too many cells are kept in a separate list, checked
+    at each query.
+
+    The bounding boxes are calculated in a lazy way: when a primitive is
+    added or modified, it is just marked as to be updated. The update is
+    done before the next query, so that a sequence of modifications (for
+    example during a redraw) is not expensive.
+
+    Each primitive is associated to an order number, which follows the order
+    of the list of primitives in the drawing. Queries return the primitives
+    in that order, so that the results of a scan done on the candidates are
+    exactly the same as the ones of a scan done on the whole list.
+
+    <pre>
+
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+    </pre>
+
+    @author Davide Bucci
+*/
+public final class SpatialIndex
+{
+    // Size of the cells, in logical units.
+    private static final int CELL_SIZE=64;
+
+    // Primitives whose bounding box covers more than this number of cells
+    // are not registered in the grid.
+    private static final int MAX_CELLS=256;
+
+    /** Information about a primitive contained in the index.
+    */
+    private static final class Entry
+    {
+        final GraphicPrimitive primitive;
+        int order;
+        RectangleG box;     // null if the entry is not in the grid.
+        int floor;
+        boolean dirty;
+        boolean large;
+        int stamp;
+
+        Entry(GraphicPrimitive p, int o)
+        {
+            primitive=p;
+            order=o;
+        }
+    }
+
+    private static final Comparator<Entry> ORDER=new Comparator<Entry>()
+    {
+        public int compare(Entry a, Entry b)
+        {
+            return Integer.compare(a.order, b.order);
+        }
+    };
+
+    private final Map<GraphicPrimitive, Entry> entries=
+        new IdentityHashMap<GraphicPrimitive, Entry>();
+    private final Map<Long, List<Entry>> cells=
+        new HashMap<Long, List<Entry>>();
+    private final List<Entry> largeEntries=new ArrayList<Entry>();
+    private final List<Entry> dirtyEntries=new ArrayList<Entry>();
+
+    // Multiset of the distance floors of the primitives in the grid.
+    private final TreeMap<Integer, Integer> floors=
+        new TreeMap<Integer, Integer>();
+
+    private RectangleG bounds;
+    private boolean boundsValid;
+    private int nextOrder;
+    private int currentStamp;
+
+    /** Add a primitive at the end of the index.
+        @param p the primitive to be added.
+    */
+    public synchronized void add(GraphicPrimitive p)
+    {
+        Entry e=entries.get(p);
+        if(e==null) {
+            e=new Entry(p, nextOrder++);
+            entries.put(p, e);
+        }
+        markDirty(e);
+    }
+
+    /** Remove a primitive from the index.
+        @param p the primitive to be removed.
+    */
+    public synchronized void remove(GraphicPrimitive p)
+    {
+        Entry e=entries.remove(p);
+        if(e!=null) {
+            unplace(e);
+            e.dirty=false;
+        }
+    }
+
+    /** Remove all the primitives from the index.
+    */
+    public synchronized void clear()
+    {
+        entries.clear();
+        cells.clear();
+        largeEntries.clear();
+        dirtyEntries.clear();
+        floors.clear();
+        nextOrder=0;
+        boundsValid=false;
+    }
+
+    /** Fill the index with the given primitives, in the same order.
+        @param v the list of the primitives.
+    */
+    public synchronized void rebuild(List<GraphicPrimitive> v)
+    {
+        clear();
+        for(GraphicPrimitive g: v) {
+            add(g);
+        }
+    }
+
+    /** Specify that the bounding box of a primitive should be calculated
+        again before the next query.
+        @param p the primitive which has been modified.
+    */
+    public synchronized void invalidate(GraphicPrimitive p)
+    {
+        Entry e=entries.get(p);
+        if(e!=null) {
+            markDirty(e);
+        }
+    }
+
+    /** Update the order numbers, when the primitives have been reordered.
+        @param v the list of the primitives, in the new order.
+    */
+    public synchronized void renumber(List<GraphicPrimitive> v)
+    {
+        int i=0;
+        for(GraphicPrimitive g: v) {
+            Entry e=entries.get(g);
+            if(e!=null) {
+                e.order=i;
+            }
+            ++i;
+        }
+        nextOrder=i;
+    }
+
+    /** Get the number of primitives in the index.
+        @return the number of primitives.
+    */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /** Get the primitives whose bounding box has at least one point in
+        common with the given rectangle (borders included).
+        @param r the rectangle, in logical units.
+        @return the list of the primitives, in the order of the drawing.
+    */
+    public synchronized List<GraphicPrimitive> query(RectangleG r)
+    {
+        flush();
+        ++currentStamp;
+        List<Entry> found=new ArrayList<Entry>();
+
+        long cx0=cellIndex(r.x);
+        long cy0=cellIndex(r.y);
+        long cx1=cellIndex((long)r.x+r.width);
+        long cy1=cellIndex((long)r.y+r.height);
+
+        if((cx1-cx0+1)*(cy1-cy0+1)>entries.size()) {
+            // Faster to check everything than to explore the grid.
+            for(Entry e: entries.values()) {
+                if(e.box!=null && e.box.overlaps(r)) {
+                    found.add(e);
+                }
+            }
+        } else {
+            for(long cx=cx0; cx<=cx1; ++cx) {
+                for(long cy=cy0; cy<=cy1; ++cy) {
+                    List<Entry> l=cells.get(cellKey(cx, cy));
+                    if(l!=null) {
+                        collect(l, r, found);
+                    }
+                }
+            }
+            collect(largeEntries, r, found);
+        }
+
+        Collections.sort(found, ORDER);
+        List<GraphicPrimitive> result=
+            new ArrayList<GraphicPrimitive>(found.size());
+        for(Entry e: found) {
+            result.add(e.primitive);
+        }
+        return result;
+    }
+
+    /** Get the smallest distance floor of the primitives contained in the
+        index (see GraphicPrimitive.getDistanceFloor).
+        @return the distance floor, or Integer.MAX_VALUE if the index is
+            empty.
+    */
+    public synchronized int getDistanceFloor()
+    {
+        flush();
+        if(floors.isEmpty()) {
+            return Integer.MAX_VALUE;
+        }
+        return floors.firstKey();
+    }
+
+    /** Get the union of the bounding boxes of all the primitives.
+        @return the bounds (a new object), or null if the index is empty.
+    */
+    public synchronized RectangleG getBounds()
+    {
+        flush();
+        if(!boundsValid) {
+            bounds=null;
+            for(Entry e: entries.values()) {
+                if(e.box==null) {
+                    continue;
+                }
+                if(bounds==null) {
+                    bounds=new RectangleG(e.box.x, e.box.y,
+                        e.box.width, e.box.height);
+                } else {
+                    bounds.add(e.box);
+                }
+            }
+            boundsValid=true;
+        }
+        if(bounds==null) {
+            return null;
+        }
+        return new RectangleG(bounds.x, bounds.y, bounds.width,
+            bounds.height);
+    }
+
+    /** Add the entries of the given list which have not been found yet and
+        whose box overlaps the given rectangle.
+        @param l the list to be examined.
+        @param r the rectangle.
+        @param found the list where the entries should be added.
+    */
+    private void collect(List<Entry> l, RectangleG r, List<Entry> found)
+    {
+        for(Entry e: l) {
+            if(e.stamp!=currentStamp && e.box.overlaps(r)) {
+                e.stamp=currentStamp;
+                found.add(e);
+            }
+        }
+    }
+
+    /** Mark an entry as to be updated.
+        @param e the entry.
+    */
+    private void markDirty(Entry e)
+    {
+        if(!e.dirty) {
+            e.dirty=true;
+            dirtyEntries.add(e);
+        }
+    }
+
+    /** Calculate again the bounding boxes of all the modified primitives.
+    */
+    private void flush()
+    {
+        if(dirtyEntries.isEmpty()) {
+            return;
+        }
+        for(Entry e: dirtyEntries) {
+            // Skip the entries which have been removed in the meanwhile.
+            if(!e.dirty) {
+                continue;
+            }
+            e.dirty=false;
+            unplace(e);
+            e.box=e.primitive.getBoundingBox();
+            e.floor=e.primitive.getDistanceFloor();
+            place(e);
+        }
+        dirtyEntries.clear();
+    }
+
+    /** Register an entry in the grid.
+        @param e the entry, whose box has been calculated.
+    */
+    private void place(Entry e)
+    {
+        long cx0=cellIndex(e.box.x);
+        long cy0=cellIndex(e.box.y);
+        long cx1=cellIndex((long)e.box.x+e.box.width);
+        long cy1=cellIndex((long)e.box.y+e.box.height);
+
+        e.large=(cx1-cx0+1)*(cy1-cy0+1)>MAX_CELLS;
+        if(e.large) {
+            largeEntries.add(e);
+        } else {
+            for(long cx=cx0; cx<=cx1; ++cx) {
+                for(long cy=cy0; cy<=cy1; ++cy) {
+                    Long k=cellKey(cx, cy);
+                    List<Entry> l=cells.get(k);
+                    if(l==null) {
+                        l=new ArrayList<Entry>(4);
+                        cells.put(k, l);
+                    }
+                    l.add(e);
+                }
+            }
+        }
+        Integer c=floors.get(e.floor);
+        floors.put(e.floor, c==null?1:c+1);
+        boundsValid=false;
+    }
+
+    /** Remove an entry from the grid, if it has been registered.
+        @param e the entry.
+    */
+    private void unplace(Entry e)
+    {
+        if(e.box==null) {
+            return;
+        }
+        if(e.large) {
+            largeEntries.remove(e);
+        } else {
+            long cx0=cellIndex(e.box.x);
+            long cy0=cellIndex(e.box.y);
+            long cx1=cellIndex((long)e.box.x+e.box.width);
+            long cy1=cellIndex((long)e.box.y+e.box.height);
+            for(long cx=cx0; cx<=cx1; ++cx) {
+                for(long cy=cy0; cy<=cy1; ++cy) {
+                    Long k=cellKey(cx, cy);
+                    List<Entry> l=cells.get(k);
+                    if(l!=null) {
+                        l.remove(e);
+                        if(l.isEmpty()) {
+                            cells.remove(k);
+                        }
+                    }
+                }
+            }
+        }
+        int c=floors.get(e.floor);
+        if(c==1) {
+            floors.remove(e.floor);
+        } else {
+            floors.put(e.floor, c-1);
+        }
+        e.box=null;
+        boundsValid=false;
+    }
+
+    /** Get the index of the cell containing the given coordinate.
+        @param c the coordinate, in logical units.
+        @return the index of the cell.
+    */
+    private static long cellIndex(long c)
+    {
+        return Math.floorDiv(c, (long)CELL_SIZE);
+    }
+
+    /** Get the key associated to a cell in the map.
+        @param cx the x index of the cell.
+        @param cy the y index of the cell.
+        @return the key.
+    */
+    private static Long cellKey(long cx, long cy)
+    {
+        return Long.valueOf((cx<<32) ^ (cy & 0xFFFFFFFFL));
+    }
+}
@@ -1,10 +1,17 @@
 package fidocadj.circuit.views;
 
+import java.util.List;
+
 import fidocadj.circuit.model.DrawingModel;
 import fidocadj.geom.MapCoordinates;
+import fidocadj.globals.Globals;
+import fidocadj.graphic.RectangleG;
 import fidocadj.layers.LayerDesc;
 import fidocadj.primitives.GraphicPrimitive;
 import fidocadj.graphic.GraphicsInterface;
+import fidocadj.graphic.nil.GraphicsNull;
+import fidocadj.timer.Counter;
+import fidocadj.timer.Metrics;
 
 /** Drawing: draws the FidoCadJ drawing. This is a view of the drawing.
 
@@ -36,6 +43,11 @@ public class Drawing
     // step must include a cycle at the end to draw all holes.
     private boolean needHoles;
 
+    // True if all the primitives are calculated again during the current
+    // redraw. In this case, no primitive can be skipped, since the size of
+    // the drawing is being tracked.
+    private boolean fullRedraw;
+
 
     // *********** CACHE *************
 
@@ -44,14 +56,56 @@ public class Drawing
     // some time expensive allocations, since speed is important in the draw
     // operation (used in draw).
 
-    private double oZ;
-    private double oX;
-    private double oY;
-    private double oO;
-    private GraphicPrimitive gg;    // NOPMD
-    private int i_index; // NOPMD
+    // The coordinate mapping with which the primitives have calculated the
+    // coordinates kept in cache, and the extents tracked since then. It is
+    // null before the first redraw.
+    private MapCoordinates cachedMapping;
     private int jIndex; // NOPMD
 
+    // The region covered by a primitive, in pixels (see getScreenBox).
+    private final int[] screenBox=new int[4];
+
+    // Graphic context employed to calculate the primitives which are not
+    // drawn. It is created when needed.
+    private GraphicsNull nullGraphics;
+
+    // Translations larger than this are never done by translating the
+    // graphic context, to avoid integer overflows.
+    private static final double MAX_TRANSLATION=Integer.MAX_VALUE/4;
+
+    // Margin (in pixels) added to the bounding boxes of the primitives when
+    // checking if they are visible, to take into account rounding.
+    private static final int CLIP_MARGIN=2;
+
+    // Number of primitives drawn and skipped because they are not visible,
+    // for each type of primitive (see Metrics).
+    private static final ClassValue<Counter> DRAWN=
+        new ClassValue<Counter>()
+    {
+        @Override protected Counter computeValue(Class<?> c)
+        {
+            return Metrics.getCounter("draw.drawn."+c.getSimpleName());
+        }
+    };
+    private static final ClassValue<Counter> SKIPPED=
+        new ClassValue<Counter>()
+    {
+        @Override protected Counter computeValue(Class<?> c)
+        {
+            return Metrics.getCounter("draw.skipped."+c.getSimpleName());
+        }
+    };
+    // Number of primitives not drawn because they are too small (see
+    // DetailLevel).
+    private static final ClassValue<Counter> SIMPLIFIED=
+        new ClassValue<Counter>()
+    {
+        @Override protected Counter computeValue(Class<?> c)
+        {
+            return Metrics.getCounter("draw.simplified."+c.getSimpleName());
+        }
+    };
+
     /** Create a drawing view.
         @param pp the model to which the view will be associated.
     */
@@ -88,16 +142,24 @@ public class Drawing
         }
 
         synchronized (this) {
-            // At first, we check if the current view has changed.
-            if(drawingModel.getChanged() || oZ!=cs.getXMagnitude()
-                || oX!=cs.getXCenter() || oY!=cs.getYCenter()
-                || oO!=cs.getOrientation())
-            {
-                oZ=cs.getXMagnitude();
-                oX=cs.getXCenter();
-                oY=cs.getYCenter();
-                oO=cs.getOrientation();
+            // At first, we check if the current view has changed. If only
+            // the position of the origin has changed, by a whole number of
+            // pixels, the coordinates kept in cache by the primitives are
+            // still valid: the drawing is done with the previous mapping,
+            // in a translated graphic context.
+            int dx=0;
+            int dy=0;
+            if(!drawingModel.getChanged() && isTranslation(cs)) {
+                dx=(int)(cs.getXCenter()-cachedMapping.getXCenter());
+                dy=(int)(cs.getYCenter()-cachedMapping.getYCenter());
+                fullRedraw=false;
+            } else {
+                if(cachedMapping==null) {
+                    cachedMapping=new MapCoordinates();
+                }
+                cachedMapping.setMapping(cs);
                 drawingModel.setChanged(false);
+                fullRedraw=true;
 
                 // Here we force for a global refresh of graphic data at the
                 // primitive level.
@@ -110,51 +172,130 @@ public class Drawing
                 }
             }
 
-            needHoles = drawingModel.getDrawOnlyPads();
+            if(fullRedraw) {
+                drawLayers(gG, cs);
+                cachedMapping.resetMinMax();
+                cachedMapping.trackBounds(cs, 0, 0);
+            } else {
+                // The size of the drawing is the one tracked with the
+                // previous mapping, translated. The size kept in the given
+                // mapping is replaced, even without translation, since it
+                // may come from a previous translated redraw.
+                if (!drawingModel.getDrawOnlyPads()) {
+                    cs.resetMinMax();
+                }
+                gG.translate(dx, dy);
+                try {
+                    drawLayers(gG, cachedMapping);
+                } finally {
+                    gG.translate(-dx, -dy);
+                }
+                cs.trackBounds(cachedMapping, dx, dy);
+            }
+        }
+    }
 
-            /* First possibility: we need to draw only one layer (for example
-                in a macro). This is indicated by the fact that drawOnlyLayer
-                is non negative.
-            */
-            if (drawingModel.getDrawOnlyLayer() >= 0
-                                        && !drawingModel.getDrawOnlyPads())
-            {
-                // At first, we check if the layer is effectively used in the
-                // drawing. If not, we exit directly.
+    /** Calculate the coordinates of the drawing and track its size, as it
+        is done by draw, without drawing anything.
+        @param cs the coordinate mapping to be used.
+    */
+    public void calculate(MapCoordinates cs)
+    {
+        synchronized (this) {
+            draw(getNullGraphics(), cs);
+        }
+    }
 
-                if(!drawingModel.containsLayer(
-                                        drawingModel.getDrawOnlyLayer()))
-                {
-                    return;
-                }
+    /** Check if the given coordinate mapping differs from the one employed
+        to calculate the coordinates kept in cache only by a translation of
+        a whole number of pixels.
+        @param cs the coordinate mapping to be used.
+        @return true if the coordinates kept in cache can be employed in a
+            translated graphic context.
+    */
+    private boolean isTranslation(MapCoordinates cs)
+    {
+        if(cachedMapping==null
+            || cachedMapping.getXMagnitude()!=cs.getXMagnitude()
+            || cachedMapping.getYMagnitude()!=cs.getYMagnitude()
+            || cachedMapping.getOrientation()!=cs.getOrientation()
+            || cachedMapping.getMirror()!=cs.getMirror()
+            || cachedMapping.isMacro!=cs.isMacro)
+        {
+            return false;
+        }
+        double tx=cs.getXCenter()-cachedMapping.getXCenter();
+        double ty=cs.getYCenter()-cachedMapping.getYCenter();
+        return tx==Math.rint(tx) && ty==Math.rint(ty)
+            && Math.abs(tx)<MAX_TRANSLATION && Math.abs(ty)<MAX_TRANSLATION;
+    }
 
-                drawPrimitives(drawingModel.getDrawOnlyLayer(), gG, cs);
+    /** Draw the layers of the drawing and the holes, if needed.
+        @param gG the graphic context in which the drawing should be drawn.
+        @param cs the coordinate mapping to be used.
+    */
+    private void drawLayers(GraphicsInterface gG, MapCoordinates cs)
+    {
+        needHoles = drawingModel.getDrawOnlyPads();
+
+        /* First possibility: we need to draw only one layer (for example
+            in a macro). This is indicated by the fact that drawOnlyLayer
+            is non negative.
+        */
+        if (drawingModel.getDrawOnlyLayer() >= 0
+                                    && !drawingModel.getDrawOnlyPads())
+        {
+            // At first, we check if the layer is effectively used in the
+            // drawing. If not, we exit directly.
+
+            if(!drawingModel.containsLayer(
+                                    drawingModel.getDrawOnlyLayer()))
+            {
                 return;
-            } else if (!drawingModel.getDrawOnlyPads()) {
-                // If we want to draw all layers, we need to process with order.
-                for (jIndex = 0; jIndex < LayerDesc.MAX_LAYERS; ++jIndex) {
-                    if(!drawingModel.containsLayer(jIndex)) {
-                        continue;
-                    }
-                    drawPrimitives(jIndex, gG,cs);
+            }
+
+            drawPrimitives(drawingModel.getDrawOnlyLayer(), gG, cs);
+            return;
+        } else if (!drawingModel.getDrawOnlyPads()) {
+            // If we want to draw all layers, we need to process with order.
+            for (jIndex = 0; jIndex < LayerDesc.MAX_LAYERS; ++jIndex) {
+                if(!drawingModel.containsLayer(jIndex)) {
+                    continue;
                 }
+                drawPrimitives(jIndex, gG,cs);
             }
-            // Draw in a second time only the PCB pads, in order to ensure that
-            // the drills are always open.
-            if(needHoles) {
-                for (i_index = 0; i_index <
-                        drawingModel.getPrimitiveVector().size(); ++i_index){
-
-                    // We will process only primitive which require holes (pads
-                    // as well as macros containing pads).
-
-                    gg = (GraphicPrimitive)drawingModel.getPrimitiveVector()
-                                                                .get(i_index);
-                    if (gg.needsHoles()) {
+        }
+        // Draw in a second time only the PCB pads, in order to ensure that
+        // the drills are always open.
+        if(needHoles) {
+            for (GraphicPrimitive gg : drawingModel.getHolePrimitives()) {
+
+                // We will process only primitive which require holes (pads
+                // as well as macros containing pads).
+                if (gg.needsHoles()) {
+                    boolean recalculated=gg.isChanged();
+                    if(isTooSmall(gg, gG, cs)) {
+                        if(fullRedraw || recalculated) {
+                            gg.setDrawOnlyPads(true);
+                            gg.draw(getNullGraphics(), cs,
+                                drawingModel.getLayers());
+                            gg.setDrawOnlyPads(false);
+                        }
+                        SIMPLIFIED.get(gg.getClass()).increment();
+                    } else if(!fullRedraw && !recalculated
+                        && !isVisible(gg, gG, cs))
+                    {
+                        SKIPPED.get(gg.getClass()).increment();
+                        continue;
+                    } else {
+                        DRAWN.get(gg.getClass()).increment();
                         gg.setDrawOnlyPads(true);
                         gg.draw(gG, cs, drawingModel.getLayers());
                         gg.setDrawOnlyPads(false);
                     }
+                    if(recalculated) {
+                        gg.invalidateBoundingBox();
+                    }
                 }
             }
         }
@@ -181,26 +322,162 @@ public class Drawing
     private void drawPrimitives(int jIndex, GraphicsInterface graphic,
         MapCoordinates cs)
     {
-        // Here we process all the primitives, one by one!
-        for (GraphicPrimitive gg : drawingModel.getPrimitiveVector()) {
+        // Macros are processed before the other primitives, since they are
+        // normally on layer 0, but they can contain other layers.
+        if (jIndex > 0) {
+            drawPrimitives(drawingModel.getMacrosBelow(jIndex), jIndex,
+                graphic, cs);
+        }
+        drawPrimitives(drawingModel.getLayerPrimitives(jIndex), jIndex,
+            graphic, cs);
 
-            // Layers are ordered. This improves the redrawing speed.
-            if (jIndex > 0 && gg.getLayer() > jIndex) {
+        // Check if the primitives in the layers processed so far need holes.
+        // When layer 0 or a single layer is drawn, all the primitives are
+        // checked, so that the result does not depend on the layers drawn
+        // (a view may draw each layer separately, see CircuitPanel).
+        List<GraphicPrimitive> h = jIndex > 0
+            && drawingModel.getDrawOnlyLayer() < 0 ?
+            drawingModel.getHolePrimitives(jIndex) :
+            drawingModel.getHolePrimitives();
+        for (GraphicPrimitive gg : h) {
+            if(gg.needsHoles()) {
+                synchronized (this) {
+                    needHoles=true;
+                }
                 break;
             }
+        }
+    }
+
+    /** Draws the primitives of the given list which are contained in the
+        specified layer.
+        @param v the primitives to be drawn.
+        @param jIndex the layer to be considered.
+        @param graphic the graphic context in which to draw.
+        @param cs the coordinate mapping to be used.
+    */
+    private void drawPrimitives(List<GraphicPrimitive> v, int jIndex,
+        GraphicsInterface graphic, MapCoordinates cs)
+    {
+        // Here we process all the primitives, one by one!
+        for (GraphicPrimitive gg : v) {
 
             // Process a particular primitive if it is in the layer
-            // being processed.
-            if(gg.containsLayer(jIndex)) {
+            // being processed. Primitives which are to be calculated again
+            // are always drawn, since this is needed to track the size of
+            // the drawing. The others are skipped if they are outside the
+            // region to be drawn.
+            if(!gg.containsLayer(jIndex)) {
+                continue;
+            }
+            boolean recalculated=gg.isChanged();
+            if(isTooSmall(gg, graphic, cs)) {
+                // The primitive is not drawn, but its coordinates must be
+                // calculated anyway when needed, to track the size of the
+                // drawing.
+                SIMPLIFIED.get(gg.getClass()).increment();
+                if(fullRedraw || recalculated) {
+                    gg.setDrawOnlyLayer(jIndex);
+                    gg.draw(getNullGraphics(), cs, drawingModel.getLayers());
+                    if(recalculated) {
+                        gg.invalidateBoundingBox();
+                        drawingModel.updatePrimitiveBox(gg);
+                    }
+                }
+            } else if(fullRedraw || recalculated
+                || isVisible(gg, graphic, cs))
+            {
+                DRAWN.get(gg.getClass()).increment();
                 gg.setDrawOnlyLayer(jIndex);
                 gg.draw(graphic, cs, drawingModel.getLayers());
-            }
-
-            if(gg.needsHoles()) {
-                synchronized (this) {
-                    needHoles=true;
+                // When the primitive is calculated again, the size of the
+                // text may change and the bounding box must be updated.
+                if(recalculated) {
+                    gg.invalidateBoundingBox();
+                    drawingModel.updatePrimitiveBox(gg);
                 }
+            } else {
+                SKIPPED.get(gg.getClass()).increment();
             }
         }
     }
+
+    /** Get the graphic context employed to calculate the primitives which
+        are not drawn.
+        @return the graphic context.
+    */
+    private GraphicsNull getNullGraphics()
+    {
+        if(nullGraphics==null) {
+            nullGraphics=new GraphicsNull();
+        }
+        return nullGraphics;
+    }
+
+    /** Calculate the region covered by a primitive in pixels, by using its
+        cached bounding box. The result is stored in screenBox (xmin, ymin,
+        xmax, ymax).
+        @param gp the primitive.
+        @param cs the coordinate mapping to be used.
+    */
+    private void getScreenBox(GraphicPrimitive gp, MapCoordinates cs)
+    {
+        RectangleG r=gp.getCachedBoundingBox();
+
+        // Strokes and connection dots may extend beyond the box.
+        double m=Math.max(Globals.getDiameterConnection(),
+            Math.max(Globals.getLineWidth(), Globals.getLineWidthCircles()));
+
+        double xa=cs.mapXr(r.x-m, r.y-m);
+        double ya=cs.mapYr(r.x-m, r.y-m);
+        double xb=cs.mapXr((double)r.x+r.width+m, (double)r.y+r.height+m);
+        double yb=cs.mapYr((double)r.x+r.width+m, (double)r.y+r.height+m);
+
+        // The orientation may exchange the corners. Very large boxes are
+        // limited to a reasonable size, to avoid integer overflows.
+        double lim=Integer.MAX_VALUE/4;
+        screenBox[0]=(int)Math.max(-lim, Math.floor(Math.min(xa, xb)));
+        screenBox[1]=(int)Math.max(-lim, Math.floor(Math.min(ya, yb)));
+        screenBox[2]=(int)Math.min(lim, Math.ceil(Math.max(xa, xb)));
+        screenBox[3]=(int)Math.min(lim, Math.ceil(Math.max(ya, yb)));
+    }
+
+    /** Check if a primitive may be visible in the region being drawn, by
+        using its cached bounding box.
+        @param gp the primitive to be checked.
+        @param graphic the graphic context in which to draw.
+        @param cs the coordinate mapping to be used.
+        @return false if the primitive is certainly outside the clip region
+            of the graphic context.
+    */
+    private boolean isVisible(GraphicPrimitive gp,
+        GraphicsInterface graphic, MapCoordinates cs)
+    {
+        getScreenBox(gp, cs);
+        int xmin=screenBox[0]-CLIP_MARGIN;
+        int ymin=screenBox[1]-CLIP_MARGIN;
+        int xmax=screenBox[2]+CLIP_MARGIN;
+        int ymax=screenBox[3]+CLIP_MARGIN;
+
+        return graphic.hitClip(xmin, ymin, xmax-xmin+1, ymax-ymin+1);
+    }
+
+    /** Check if a primitive is too small to be drawn in the given graphic
+        context (see DetailLevel). Selected primitives are always drawn.
+        @param gp the primitive to be checked.
+        @param graphic the graphic context in which to draw.
+        @param cs the coordinate mapping to be used.
+        @return true if the primitive should not be drawn.
+    */
+    private boolean isTooSmall(GraphicPrimitive gp,
+        GraphicsInterface graphic, MapCoordinates cs)
+    {
+        int size=graphic.getDetailLevel().getPrimitiveSize();
+        if(size==0 || gp.isSelected()) {
+            return false;
+        }
+        getScreenBox(gp, cs);
+        return screenBox[2]-screenBox[0]<size
+            && screenBox[3]-screenBox[1]<size;
+    }
 }
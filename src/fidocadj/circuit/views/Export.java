@@ -1,6 +1,7 @@
 package fidocadj.circuit.views;
 
 import java.io.*;
+import java.util.List;
 
 import fidocadj.circuit.model.DrawingModel;
 import fidocadj.graphic.PointG;
@@ -59,12 +60,30 @@ public class Export
         boolean exportInvisible, MapCoordinates mp)
         throws IOException
     {
-        GraphicPrimitive g;
-
-        for (int i=0; i<drawingModel.getPrimitiveVector().size(); ++i) {
-
-            g = (GraphicPrimitive)drawingModel.getPrimitiveVector().get(i);
+        int l=drawingModel.getDrawOnlyLayer();
+
+        // Macros are processed for every layer, since they can contain
+        // anything. The order of the drawing is preserved.
+        exportObjects(drawingModel.getMacrosBelow(l), exp, exportInvisible,
+            mp);
+        exportObjects(drawingModel.getLayerPrimitives(l), exp,
+            exportInvisible, mp);
+        exportObjects(drawingModel.getMacrosAbove(l), exp, exportInvisible,
+            mp);
+    }
 
+    /** Export the primitives of the given list which belong to the layer
+        being exported, as well as all macros.
+        @param v the list of primitives.
+        @param exp the export interface to be used
+        @param exportInvisible true if invisible objects should be exported
+        @param mp the coordinate mapping
+    */
+    private void exportObjects(List<GraphicPrimitive> v, ExportInterface exp,
+        boolean exportInvisible, MapCoordinates mp)
+        throws IOException
+    {
+        for (GraphicPrimitive g : v) {
             if(g.getLayer()==drawingModel.getDrawOnlyLayer() &&
                 !(g instanceof PrimitiveMacro))
             {
@@ -139,7 +158,7 @@ public class Export
 
             // Export in a second time only the PCB pads, in order to ensure
             // that the drilling holes are always open.
-            for (GraphicPrimitive g : drawingModel.getPrimitiveVector()) {
+            for (GraphicPrimitive g : drawingModel.getHolePrimitives()) {
                 if (g instanceof PrimitivePCBPad) {
                     ((PrimitivePCBPad)g).setDrawOnlyPads(true);
 
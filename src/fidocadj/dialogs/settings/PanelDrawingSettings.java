@@ -10,7 +10,8 @@ import fidocadj.globals.SettingsManager;
 
 /**
  PanelDrawingSettings is responsible for managing the drawing settings
- of the application, such as grid width, connection size, and stroke size.
+ of the application, such as grid width, connection size, stroke size and
+ the sizes below which the elements are simplified on the screen.
  It implements the SettingsPanel interface to load and save settings.
 
  <pre>
@@ -44,6 +45,13 @@ public class PanelDrawingSettings extends JPanel implements SettingsPanel
     private JCheckBox antiAliasCheckBox;
     private JCheckBox shiftCPCheckBox;
     private JCheckBox profileCheckBox;
+    private JTextField detailTextField;
+    private JTextField detailMacroField;
+    private JTextField detailPrimitiveField;
+    private JTextField detailDashField;
+    private JCheckBox layerCacheCheckBox;
+    private JCheckBox macroCacheCheckBox;
+    private JTextField macroCacheSizeField;
 
     /**
      Constructor for PanelDrawingSettings.
@@ -182,13 +190,79 @@ public class PanelDrawingSettings extends JPanel implements SettingsPanel
                 new Insets(8, 6, 6, 6));
         add(shiftCPCheckBox, constraints);
 
+        // Sizes in pixels below which the elements are simplified on the
+        // screen (level of detail)
+        detailTextField = addTextField("detailTextSize", "detailSizeTip", 8,
+                col2Width);
+        detailMacroField = addTextField("detailMacroSize", "detailSizeTip",
+                9, col2Width);
+        detailPrimitiveField = addTextField("detailPrimitiveSize",
+                "detailSizeTip", 10, col2Width);
+        detailDashField = addTextField("detailDashSize", "detailSizeTip", 11,
+                col2Width);
+
+        // Checkbox for drawing each layer in its own image
+        layerCacheCheckBox = new JCheckBox(
+                Globals.messages.getString("layerCache"));
+        layerCacheCheckBox.setToolTipText(
+                Globals.messages.getString("layerCacheTip"));
+        constraints = DialogUtil.createConst(1, 12, 1, 1, 1.0, 0.0,
+                GridBagConstraints.WEST, GridBagConstraints.NONE,
+                new Insets(8, 6, 6, 6));
+        add(layerCacheCheckBox, constraints);
+
+        // Checkbox and memory limit for the images of the macros
+        macroCacheCheckBox = new JCheckBox(
+                Globals.messages.getString("macroRenderCache"));
+        macroCacheCheckBox.setToolTipText(
+                Globals.messages.getString("macroRenderCacheTip"));
+        constraints = DialogUtil.createConst(1, 13, 1, 1, 1.0, 0.0,
+                GridBagConstraints.WEST, GridBagConstraints.NONE,
+                new Insets(8, 6, 6, 6));
+        add(macroCacheCheckBox, constraints);
+
+        macroCacheSizeField = addTextField("macroRenderCacheSize",
+                "macroRenderCacheTip", 14, col2Width);
+        macroCacheCheckBox.addItemListener(e -> macroCacheSizeField.setEnabled(
+                macroCacheCheckBox.isSelected()));
+
         // Spacer to push all components to the top
-        constraints = DialogUtil.createConst(0, 8, 2, 1, 1.0, 1.0,
+        constraints = DialogUtil.createConst(0, 15, 2, 1, 1.0, 1.0,
                 GridBagConstraints.CENTER, GridBagConstraints.BOTH,
                 new Insets(0, 0, 0, 0));
         add(Box.createGlue(), constraints);
     }
 
+    /**
+     Add a label and a text field on a row of the layout.
+
+     @param key the key of the label in the messages.
+     @param tipKey the key of the tooltip of the field in the messages.
+     @param row the row of the layout.
+     @param width the preferred width of the text field.
+     @return the text field.
+     */
+    private JTextField addTextField(String key, String tipKey, int row,
+            int width)
+    {
+        JLabel label = new JLabel(Globals.messages.getString(key));
+        GridBagConstraints constraints = DialogUtil.createConst(0, row, 1, 1,
+                1.0, 0.0, GridBagConstraints.EAST, GridBagConstraints.NONE,
+                new Insets(8, 6, 6, 6));
+        add(label, constraints);
+
+        JTextField field = new JTextField(10);
+        TextPopupMenu.addPopupToText(field);
+        field.setToolTipText(Globals.messages.getString(tipKey));
+        field.setPreferredSize(new Dimension(width,
+                field.getPreferredSize().height));
+        constraints = DialogUtil.createConst(1, row, 1, 1, 1.0, 0.0,
+                GridBagConstraints.WEST, GridBagConstraints.NONE,
+                new Insets(8, 6, 6, 6));
+        add(field, constraints);
+        return field;
+    }
+
     /**
      Load the list of available fonts in the background to avoid UI freezing.
      */
@@ -229,6 +303,19 @@ public class PanelDrawingSettings extends JPanel implements SettingsPanel
                 SettingsManager.get("ANTIALIAS", "false").equals("true"));
         shiftCPCheckBox.setSelected(
                 SettingsManager.get("SHIFT_CP", "false").equals("true"));
+        detailTextField.setText(SettingsManager.get("DETAIL_TEXT_SIZE", "0"));
+        detailMacroField.setText(
+                SettingsManager.get("DETAIL_MACRO_SIZE", "0"));
+        detailPrimitiveField.setText(
+                SettingsManager.get("DETAIL_PRIMITIVE_SIZE", "0"));
+        detailDashField.setText(SettingsManager.get("DETAIL_DASH_SIZE", "0"));
+        layerCacheCheckBox.setSelected(
+                SettingsManager.get("LAYER_CACHE", "false").equals("true"));
+        macroCacheCheckBox.setSelected(SettingsManager.get(
+                "MACRO_RENDER_CACHE", "false").equals("true"));
+        macroCacheSizeField.setText(
+                SettingsManager.get("MACRO_RENDER_CACHE_SIZE", "32"));
+        macroCacheSizeField.setEnabled(macroCacheCheckBox.isSelected());
     }
 
     /**
@@ -251,5 +338,16 @@ public class PanelDrawingSettings extends JPanel implements SettingsPanel
                 antiAliasCheckBox.isSelected() ? "true" : "false");
         SettingsManager.put("SHIFT_CP",
                 shiftCPCheckBox.isSelected() ? "true" : "false");
+        SettingsManager.put("DETAIL_TEXT_SIZE", detailTextField.getText());
+        SettingsManager.put("DETAIL_MACRO_SIZE", detailMacroField.getText());
+        SettingsManager.put("DETAIL_PRIMITIVE_SIZE",
+                detailPrimitiveField.getText());
+        SettingsManager.put("DETAIL_DASH_SIZE", detailDashField.getText());
+        SettingsManager.put("LAYER_CACHE",
+                layerCacheCheckBox.isSelected() ? "true" : "false");
+        SettingsManager.put("MACRO_RENDER_CACHE",
+                macroCacheCheckBox.isSelected() ? "true" : "false");
+        SettingsManager.put("MACRO_RENDER_CACHE_SIZE",
+                macroCacheSizeField.getText());
     }
 }
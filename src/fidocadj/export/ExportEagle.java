@@ -51,7 +51,7 @@ public final class ExportEagle implements ExportInterface
     static final String ExportFormatString = "####.####";
 
     // Conversion between FidoCadJ units and Eagle units (1/10 inches)
-    static double res=5e-2;
+    static final double res=5e-2;
 
     /** Constructor
         @param f the File object in which the export should be done.
@@ -52,8 +52,9 @@ import fidocadj.graphic.PointDouble;
 public final class ExportFidoCad implements ExportInterface
 {
 
-    private final BufferedWriter out;
-    private final OutputStreamWriter fstream;
+    private final Writer out;
+    // True if the writer has been opened here and must be closed at the end.
+    private final boolean ownWriter;
     private List<LayerDesc> layerV;
     private boolean extensions;     // use FidoCadJ extensions
     private boolean splitStandardMacros; // Split also the standard macros
@@ -112,15 +113,33 @@ public final class ExportFidoCad implements ExportInterface
             created.
     */
     public ExportFidoCad (File f) throws IOException
+    {
+        this(new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(f), Globals.encoding)), true);
+    }
+
+    /** Constructor. The drawing is written to the given writer, which is
+        flushed but not closed at the end of the export. This can be used to
+        split the macros without writing a file.
+        @param w the writer where the export should be done.
+    */
+    public ExportFidoCad (Writer w)
+    {
+        this(w, false);
+    }
+
+    /** Constructor.
+        @param w the writer where the export should be done.
+        @param own true if the writer should be closed at the end.
+    */
+    private ExportFidoCad (Writer w, boolean own)
     {
         extensions = true;
         splitStandardMacros=false;
         textFont=Globals.defaultTextFont;
         textFontSize=3;
-        fstream = new OutputStreamWriter(
-            new FileOutputStream(f),
-            Globals.encoding);
-        out = new BufferedWriter(fstream);
+        out = w;
+        ownWriter = own;
     }
 
     /** Specify whether the FidoCadJ extensions should be taken into account.
@@ -170,8 +189,11 @@ public final class ExportFidoCad implements ExportInterface
     public void exportEnd()
         throws IOException
     {
-        out.close();
-        fstream.close();
+        if(ownWriter) {
+            out.close();
+        } else {
+            out.flush();
+        }
     }
 
     /** Called when exporting an Advanced Text primitive.
@@ -18,6 +18,8 @@ import fidocadj.graphic.PointG;
 import fidocadj.graphic.swing.Graphics2DSwing;
 import fidocadj.graphic.swing.ColorSwing;
 import fidocadj.graphic.nil.GraphicsNull;
+import fidocadj.timer.Metrics;
+import fidocadj.timer.TimeStats;
 
 
 /** ExportGraphic.java
@@ -55,6 +57,16 @@ public final class ExportGraphic
         // Nothing to do.
     }
 
+    /** Get the statistics about the time needed for exporting in the given
+        format.
+        @param format the file format code.
+        @return the statistics.
+    */
+    private static TimeStats getExportTimer(String format)
+    {
+        return Metrics.getTimer("export."+format);
+    }
+
     /** Exports the circuit contained in circ using the specified parsing
         class.
 
@@ -80,18 +92,23 @@ public final class ExportGraphic
                         boolean splitLayers)
         throws IOException
     {
-        exportSizeP(file,
-             pp,
-             format,
-             0,
-             0,
-             unitPerPixel,
-             false,
-             antiAlias,
-             blackWhite,
-             ext,
-             shiftMin,
-             splitLayers);
+        long start=TimeStats.start();
+        try {
+            exportSizeP(file,
+                 pp,
+                 format,
+                 0,
+                 0,
+                 unitPerPixel,
+                 false,
+                 antiAlias,
+                 blackWhite,
+                 ext,
+                 shiftMin,
+                 splitLayers);
+        } finally {
+            getExportTimer(format).stop(start);
+        }
     }
 
     /** Exports the circuit contained in circ using the specified parsing
@@ -121,18 +138,56 @@ public final class ExportGraphic
                         boolean splitLayers)
         throws IOException
     {
-        exportSizeP(file,
-             pp,
-             format,
-             width,
-             height,
-             1,
-             true,
-             antiAlias,
-             blackWhite,
-             ext,
-             shiftMin,
-             splitLayers);
+        long start=TimeStats.start();
+        try {
+            exportSizeP(file,
+                 pp,
+                 format,
+                 width,
+                 height,
+                 1,
+                 true,
+                 antiAlias,
+                 blackWhite,
+                 ext,
+                 shiftMin,
+                 splitLayers);
+        } finally {
+            getExportTimer(format).stop(start);
+        }
+    }
+
+    /** Exports a drawing in the FidoCadJ format, without writing any file.
+        The macros are split as when exporting to "fcd" or "fcda".
+        @param out the writer where the drawing is written. It is flushed,
+            but not closed.
+        @param pp the drawing to be exported.
+        @param splitStandardMacros if true, split also the standard macros
+            (as "fcda"). If false, split only the non standard ones (as
+            "fcd").
+        @param ext activate FidoCadJ extensions when exporting.
+        @throws IOException if the writer fails.
+    */
+    public static void exportFidoCad(Writer out, DrawingModel pp,
+        boolean splitStandardMacros, boolean ext)
+        throws IOException
+    {
+        long start=TimeStats.start();
+        try {
+            ExportFidoCad ef=new ExportFidoCad(out);
+            ef.setSplitStandardMacros(splitStandardMacros);
+            ef.setExtensions(ext);
+            MapCoordinates m=new MapCoordinates();
+            m.setMagnitudes(1, 1);
+            // The size of the drawing is not written in FidoCadJ files, so
+            // there is no need to calculate it as Export.exportHeader does.
+            ef.exportStart(new DimensionG(0, 0), pp.getLayers(),
+                m.getXGridStep());
+            new Export(pp).exportDrawing(ef, false, m);
+            ef.exportEnd();
+        } finally {
+            getExportTimer(splitStandardMacros ? "fcda" : "fcd").stop(start);
+        }
     }
 
     /** Exports the circuit contained in circ using the specified parsing
@@ -225,7 +280,20 @@ public final class ExportGraphic
             m.setXCenter(-org.x);              // if exported to pcb-rnd
             m.setYCenter(-org.y);
         }
-        if ("png".equals(format)||"jpg".equals(format)) {
+        if ("png".equals(format) && StripImage.isLarge(width, height)) {
+            // Very large images are drawn in strips, which are written as
+            // soon as they are ready, so that the whole image is never kept
+            // in memory.
+            StripImage img=new StripImage(pp, m, width, height, antiAlias);
+            try {
+                if(!ImageIO.write(img, format, file)) {
+                    throw new IOException("Wrong file format");
+                }
+            } finally {
+                img.dispose();
+                pp.setLayers(ol);
+            }
+        } else if ("png".equals(format)||"jpg".equals(format)) {
 
             // Create a buffered image in which to draw
 
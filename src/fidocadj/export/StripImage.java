@@ -0,0 +1,355 @@
+package fidocadj.export;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+
+import fidocadj.circuit.controllers.ParserActions;
+import fidocadj.circuit.model.DrawingModel;
+import fidocadj.circuit.views.Drawing;
+import fidocadj.geom.MapCoordinates;
+import fidocadj.globals.Globals;
+import fidocadj.graphic.swing.Graphics2DSwing;
+import fidocadj.layers.LayerDesc;
+import fidocadj.primitives.MacroDesc;
+
+/** StripImage: an image of a drawing which is drawn only when its pixels
+    are read, in horizontal strips. It is employed to export very large
+    images: the PNG encoder reads the image one row after the other, so
+    only a few strips are kept in memory at the same time, whatever the
+    size of the image.
+
+    The strips are drawn in advance by a pool of threads, while the encoder
+    is working on the previous ones. Each thread reads its own copy of the
+    drawing (obtained from its text) with its own copy of the libraries, so
+    that nothing is shared between the threads.
+
+    The image must be read from top to bottom: the strips above the last
+    one read are discarded and they would be drawn again if needed.
+    Call dispose when the image is no longer needed.
+
+    <pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+    </pre>
+
+    @author Davide Bucci
+*/
+final class StripImage implements RenderedImage
+{
+    // Maximum size of a strip, in bytes.
+    private static final long STRIP_BYTES=8L*1024L*1024L;
+
+    private final int width;
+    private final int height;
+    private final int stripHeight;
+    private final int strips;
+    private final ColorModel colorModel;
+    private final SampleModel sampleModel;
+    private final boolean antiAlias;
+
+    // All that is needed to build a copy of the drawing.
+    private final String text;
+    private final List<LayerDesc> layers;
+    private final Map<String, MacroDesc> library;
+    private final String font;
+    private final int fontSize;
+    private final double xMagnitude;
+    private final double yMagnitude;
+    private final double xCenter;
+    private final double yCenter;
+
+    private final ExecutorService executor;
+    private final int ahead;
+    private final ThreadLocal<Worker> worker=
+        ThreadLocal.withInitial(Worker::new);
+
+    // The strips being drawn or ready (accessed by the reading thread).
+    private final Map<Integer, Future<BufferedImage>> ready=
+        new HashMap<Integer, Future<BufferedImage>>();
+
+    /** The copy of the drawing employed by a thread.
+    */
+    private final class Worker
+    {
+        final Drawing drawing;
+        final MapCoordinates cs=new MapCoordinates();
+
+        /** Standard constructor. Read the copy of the drawing.
+        */
+        Worker()
+        {
+            // The line widths given in the drawing apply only to this copy.
+            Globals.useThreadSizes();
+            List<LayerDesc> l=new ArrayList<LayerDesc>(layers.size());
+            for(LayerDesc d : layers) {
+                l.add(new LayerDesc(d.getColor(), d.isVisible(),
+                    d.getDescription(), d.getAlpha()));
+            }
+            DrawingModel dm=new DrawingModel();
+            dm.setLibrary(MacroDesc.copyLibrary(library));
+            dm.setLayers(l);
+            dm.setTextFont(font, fontSize, null);
+            new ParserActions(dm).parseString(new StringBuffer(text));
+            drawing=new Drawing(dm);
+            cs.setMagnitudesNoCheck(xMagnitude, yMagnitude);
+            cs.setXCenter(xCenter);
+            cs.setYCenter(yCenter);
+        }
+    }
+
+    /** Standard constructor. The drawing is copied, so it can be modified
+        once the constructor has returned.
+        @param dm the drawing.
+        @param m the coordinate mapping to be used.
+        @param w the width of the image in pixels.
+        @param h the height of the image in pixels.
+        @param aa true if anti aliasing should be active.
+    */
+    StripImage(DrawingModel dm, MapCoordinates m, int w, int h, boolean aa)
+    {
+        width=w;
+        height=h;
+        antiAlias=aa;
+        stripHeight=(int)Math.max(1, Math.min(h, STRIP_BYTES/(4L*w)));
+        strips=(h+stripHeight-1)/stripHeight;
+        colorModel=new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB)
+            .getColorModel();
+        sampleModel=colorModel.createCompatibleSampleModel(w, stripHeight);
+
+        text=new ParserActions(dm).getText(true).toString();
+        layers=new ArrayList<LayerDesc>(dm.getLayers());
+        library=MacroDesc.copyLibrary(dm.getLibrary());
+        font=dm.getTextFont();
+        fontSize=dm.getTextFontSize();
+        xMagnitude=m.getXMagnitude();
+        yMagnitude=m.getYMagnitude();
+        xCenter=m.getXCenter();
+        yCenter=m.getYCenter();
+
+        int n=Math.max(1, Math.min(strips,
+            Runtime.getRuntime().availableProcessors()));
+        ahead=n;
+        executor=Executors.newFixedThreadPool(n, r -> {
+            Thread t=new Thread(r, "Strip export");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Check if an image is so large that it should be exported in strips.
+        @param w the width of the image in pixels.
+        @param h the height of the image in pixels.
+        @return true if the image is larger than a few strips.
+    */
+    static boolean isLarge(int w, int h)
+    {
+        return 4L*w*h>4*STRIP_BYTES;
+    }
+
+    /** Stop the threads and discard the strips.
+    */
+    void dispose()
+    {
+        executor.shutdownNow();
+        ready.clear();
+    }
+
+    /** Draw a strip.
+        @param k the index of the strip.
+        @return the image of the strip.
+    */
+    private BufferedImage drawStrip(int k)
+    {
+        int y=k*stripHeight;
+        int h=Math.min(stripHeight, height-y);
+        BufferedImage img=new BufferedImage(width, h,
+            BufferedImage.TYPE_INT_RGB);
+        Graphics2D g=img.createGraphics();
+        if(antiAlias) {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        }
+        g.setColor(Color.white);
+        g.fillRect(0, 0, width, h);
+        g.translate(0, -y);
+        g.clipRect(0, y, width, h);
+        Worker w=worker.get();
+        Graphics2DSwing graphicSwing=new Graphics2DSwing(g);
+        // This is important for taking into account the dashing size
+        graphicSwing.setZoom(xMagnitude);
+        w.drawing.draw(graphicSwing, w.cs);
+        g.dispose();
+        return img;
+    }
+
+    /** Get a strip, waiting until it is drawn. The strips above are
+        discarded and the following ones are requested.
+        @param k the index of the strip.
+        @return the image of the strip.
+    */
+    private BufferedImage getStrip(int k)
+    {
+        ready.keySet().removeIf(i -> i<k);
+        for(int i=k; i<Math.min(strips, k+ahead+1); ++i) {
+            if(!ready.containsKey(i)) {
+                final int j=i;
+                ready.put(i, executor.submit(() -> drawStrip(j)));
+            }
+        }
+        try {
+            return ready.get(k).get();
+        } catch (InterruptedException eE) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Export interrupted");
+        } catch (ExecutionException eE) {
+            Throwable t=eE.getCause();
+            if(t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            throw (Error) t;
+        }
+    }
+
+    @Override public Raster getData(Rectangle rect)
+    {
+        Rectangle r=rect.intersection(new Rectangle(0, 0, width, height));
+        WritableRaster wr=colorModel.createCompatibleWritableRaster(
+            Math.max(1, r.width), Math.max(1, r.height))
+            .createWritableTranslatedChild(r.x, r.y);
+        if(r.isEmpty()) {
+            return wr;
+        }
+        int k0=r.y/stripHeight;
+        int k1=(r.y+r.height-1)/stripHeight;
+        for(int k=k0; k<=k1; ++k) {
+            wr.setRect(0, k*stripHeight, getStrip(k).getRaster());
+        }
+        return wr;
+    }
+
+    @Override public Raster getData()
+    {
+        return getData(new Rectangle(0, 0, width, height));
+    }
+
+    @Override public WritableRaster copyData(WritableRaster raster)
+    {
+        WritableRaster wr=raster;
+        if(wr==null) {
+            wr=colorModel.createCompatibleWritableRaster(width, height);
+        }
+        wr.setRect(getData(wr.getBounds()));
+        return wr;
+    }
+
+    @Override public Raster getTile(int tileX, int tileY)
+    {
+        return getStrip(tileY).getRaster().createTranslatedChild(0,
+            tileY*stripHeight);
+    }
+
+    @Override public Vector<RenderedImage> getSources()
+    {
+        return null;
+    }
+
+    @Override public Object getProperty(String name)
+    {
+        return Image.UndefinedProperty;
+    }
+
+    @Override public String[] getPropertyNames()
+    {
+        return null;
+    }
+
+    @Override public ColorModel getColorModel()
+    {
+        return colorModel;
+    }
+
+    @Override public SampleModel getSampleModel()
+    {
+        return sampleModel;
+    }
+
+    @Override public int getWidth()
+    {
+        return width;
+    }
+
+    @Override public int getHeight()
+    {
+        return height;
+    }
+
+    @Override public int getMinX()
+    {
+        return 0;
+    }
+
+    @Override public int getMinY()
+    {
+        return 0;
+    }
+
+    @Override public int getNumXTiles()
+    {
+        return 1;
+    }
+
+    @Override public int getNumYTiles()
+    {
+        return strips;
+    }
+
+    @Override public int getMinTileX()
+    {
+        return 0;
+    }
+
+    @Override public int getMinTileY()
+    {
+        return 0;
+    }
+
+    @Override public int getTileWidth()
+    {
+        return width;
+    }
+
+    @Override public int getTileHeight()
+    {
+        return stripHeight;
+    }
+
+    @Override public int getTileGridXOffset()
+    {
+        return 0;
+    }
+
+    @Override public int getTileGridYOffset()
+    {
+        return 0;
+    }
+}
@@ -1,10 +1,8 @@
 package fidocadj.geom;
 
 import fidocadj.circuit.model.DrawingModel;
-import fidocadj.circuit.views.Drawing;
 import fidocadj.graphic.PointG;
 import fidocadj.graphic.DimensionG;
-import fidocadj.graphic.nil.GraphicsNull;
 
 
 /**
@@ -62,12 +60,9 @@ public final class DrawingSize
         m.setXCenter(0);
         m.setYCenter(0);
 
-        // force an in-depth recalculation
-        dm.setChanged(true);
-        Drawing drawingAgent = new Drawing(dm);
-        drawingAgent.draw(new GraphicsNull(),m);
+        // Only the primitives modified since the last call are calculated.
+        dm.trackExtremePoints(m);
         dm.getImgCanvas().trackExtremePoints(m);
-        dm.setChanged(true);
 
         // Calculate image size
         if(countMin) {
@@ -110,19 +105,13 @@ public final class DrawingSize
         int originx;
         int originy;
 
-        // force an in-depth recalculation
-        dm.setChanged(true);
         MapCoordinates m=new MapCoordinates();
         m.setMagnitudes(unitperpixel, unitperpixel);
         m.setXCenter(0);
         m.setYCenter(0);
 
-        // Draw the image. In this way, the min and max coordinates will be
-        // tracked.
-        Drawing drawingAgent = new Drawing(dm);
-        dm.getImgCanvas().trackExtremePoints(m);
-        drawingAgent.draw(new GraphicsNull(), m);
-        dm.setChanged(true);
+        // The min and max coordinates of the drawing are tracked.
+        dm.trackExtremePoints(m);
 
         // Verify that the image size is correct
         if (m.getXMax() >= m.getXMin() &&
@@ -4,6 +4,9 @@ package fidocadj.geom;
     Calculate geometric distances between a given point and a few
     geometric objects.
 
+    All the methods only employ local variables and can be called at the
+    same time from different threads. They do not allocate memory.
+
 
 <pre>
     This file is part of FidoCadJ.
@@ -37,28 +40,6 @@ public final class GeometricDistances
     // point and a Bézier curve.
     public static final int MAX_BEZIER_SEGMENTS=10;
 
-    // Some caching data
-    private static  int idx;
-    private static  int idy;
-    private static  int it;
-    private static  int ixmin;
-    private static  int ixmax;
-    private static  int iymin;
-    private static  int iymax;
-
-    private static double dx;
-    private static double dy;
-    private static double t;
-    private static double xmin;
-    private static double ymin;
-    private static double xmax;
-    private static double ymax;
-
-
-    private static int i;
-    private static int j;
-    private static  boolean c;
-
     private GeometricDistances()
     {
         // Does nothing.
@@ -129,6 +110,11 @@ public final class GeometricDistances
                                  double xb, double yb,
                                  double x, double y)
     {
+        double xmin;
+        double xmax;
+        double ymin;
+        double ymax;
+
         // Shortcuts
         if(xa>xb) {
             xmin = xb; xmax = xa;
@@ -150,8 +136,8 @@ public final class GeometricDistances
             return MIN_DISTANCE;
         }
 
-        dx=xb-xa;
-        dy=yb-ya;
+        double dx=xb-xa;
+        double dy=yb-ya;
 
         if (dx==0 && dy==0) {
             dx=x-xa;
@@ -159,7 +145,7 @@ public final class GeometricDistances
             return Math.sqrt(dx*dx+dy*dy);
         }
 
-        t=((x-xa)*dx+(y-ya)*dy)/(dx*dx+dy*dy);
+        double t=((x-xa)*dx+(y-ya)*dy)/(dx*dx+dy*dy);
         if (t<0.0) {
             dx=x-xa;
             dy=y-ya;
@@ -191,6 +177,13 @@ public final class GeometricDistances
                               int xb, int yb,
                               int x, int y)
     {
+        int ixmin;
+        int ixmax;
+        int iymin;
+        int iymax;
+        int idx;
+        int idy;
+
         // Shortcuts
 
         if(xa>xb) {
@@ -222,7 +215,7 @@ public final class GeometricDistances
         // This is an integer, fixed point implementation. We suppose to make
         // calculations with three decimals.
 
-        it=1000*((x-xa)*idx+(y-ya)*idy)/(idx*idx+idy*idy);
+        int it=1000*((x-xa)*idx+(y-ya)*idy)/(idx*idx+idy*idy);
         if (it<0) {
             idx=x-xa;
             idy=y-ya;
@@ -250,7 +243,9 @@ public final class GeometricDistances
     public static boolean pointInPolygon(
             int[] xp, int[] yp,int npol, double x, double y)
     {
-        c = false;
+        boolean c = false;
+        int i;
+        int j;
 
         for (i = 0,j = npol-1; i < npol; j=i++) {
             if ((yp[i] <= y && y < yp[j] ||
@@ -277,8 +272,8 @@ public final class GeometricDistances
                                   double h,double px,double py)
     {
         //Determine and normalize quadrant.
-        dx = Math.abs(px-(ex+w/2.0));   // NOPMD
-        dy = Math.abs(py-(ey+h/2.0));   // NOPMD
+        double dx = Math.abs(px-(ex+w/2.0));   // NOPMD
+        double dy = Math.abs(py-(ey+h/2.0));   // NOPMD
 
 
         //Shortcut
@@ -500,10 +495,11 @@ public final class GeometricDistances
         double umu;
         double u;
 
-        int[] x=new int[MAX_BEZIER_SEGMENTS+1];
-        int[] y=new int[MAX_BEZIER_SEGMENTS+1];
+        // The previous point calculated on the curve.
+        int xp=0;
+        int yp=0;
 
-        for(i=0; i<=MAX_BEZIER_SEGMENTS; ++i) {
+        for(int i=0; i<=MAX_BEZIER_SEGMENTS; ++i) {
             u=(double)i/MAX_BEZIER_SEGMENTS;
             // This is the parametric form of the Bézier curve.
             // Probably, this is not the most convenient way to draw the
@@ -516,21 +512,23 @@ public final class GeometricDistances
             b23 = 3 * u * u * umu;
             b33 = u*u*u;
 
-            x[i] = (int)(x1 * b03 +
+            int x = (int)(x1 * b03 +
                         x2 * b13 +
                         x3 * b23 +
                         x4 * b33);
-            y[i] = (int)(y1 * b03 +
+            int y = (int)(y1 * b03 +
                         y2 * b13 +
                         y3 * b23 +
                         y4 * b33);
-        }
 
-        // Calculate the distance of the given point with each of the
-        // obtained segments.
-        for(j=0;j<MAX_BEZIER_SEGMENTS;++j) {
-            distance=Math.min(distance, pointToSegment(x[j], y[j],
-                                                x[j+1], y[j+1],px, py));
+            // Calculate the distance of the given point with the segment
+            // ending in the point just obtained.
+            if(i>0) {
+                distance=Math.min(distance, pointToSegment(xp, yp,
+                                                x, y, px, py));
+            }
+            xp=x;
+            yp=y;
         }
         return distance;
     }
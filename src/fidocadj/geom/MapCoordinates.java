@@ -134,6 +134,22 @@ public class MapCoordinates
     }
 
 
+    /** Use the same mapping as another coordinate mapping: magnitudes,
+        centers, orientation and mirroring. The tracked extents, the grid
+        and the snapping are not modified.
+        @param m the coordinate mapping to be copied.
+    */
+    public void setMapping(MapCoordinates m)
+    {
+        xCenter=m.xCenter;
+        yCenter=m.yCenter;
+        xMagnitude=m.xMagnitude;
+        yMagnitude=m.yMagnitude;
+        orientation=m.orientation;
+        mirror=m.mirror;
+        isMacro=m.isMacro;
+    }
+
     /** Save in a stack the current coordinate state.
     */
     public void push()
@@ -584,6 +600,44 @@ public class MapCoordinates
         }
     }
 
+    /** Add the extents of a region in the min/max tracking system. They
+        should be specified in SCREEN coordinates. Empty extents (minimum
+        greater than maximum, as after resetMinMax) are ignored.
+        @param xmin the minimum X coordinate.
+        @param ymin the minimum Y coordinate.
+        @param xmax the maximum X coordinate.
+        @param ymax the maximum Y coordinate.
+    */
+    public final void trackBounds(int xmin, int ymin, int xmax, int ymax)
+    {
+        if(xmin<=xmax) {
+            xMin=Math.min(xMin, xmin);
+            xMax=Math.max(xMax, xmax);
+        }
+        if(ymin<=ymax) {
+            yMin=Math.min(yMin, ymin);
+            yMax=Math.max(yMax, ymax);
+        }
+    }
+
+    /** Add the extents tracked by another coordinate mapping, translated by
+        the given amount, in the min/max tracking system.
+        @param m the coordinate mapping whose extents should be added.
+        @param dx the horizontal translation, in pixels.
+        @param dy the vertical translation, in pixels.
+    */
+    public final void trackBounds(MapCoordinates m, int dx, int dy)
+    {
+        if(m.xMin<=m.xMax) {
+            xMin=Math.min(xMin, m.xMin+dx);
+            xMax=Math.max(xMax, m.xMax+dx);
+        }
+        if(m.yMin<=m.yMax) {
+            yMin=Math.min(yMin, m.yMin+dy);
+            yMax=Math.max(yMax, m.yMax+dy);
+        }
+    }
+
     /** Un Map the X screen coordinate given in the drawing coordinate.
         If the snapping is active, it is NOT applied here.
         @param x the horizontal coordinate in the screen coordinate system
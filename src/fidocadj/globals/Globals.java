@@ -66,15 +66,22 @@ public final class Globals
 
     // Line width expressed in FidoCadJ coordinates
     public static final double lineWidthDefault = 0.5;
-    public static double lineWidth = lineWidthDefault;
+    private static double lineWidth = lineWidthDefault;
 
     // Line width expressed in FidoCadJ coordinates (ovals)
     public static final double lineWidthCirclesDefault = 0.35;
-    public static double lineWidthCircles = lineWidthCirclesDefault;
+    private static double lineWidthCircles = lineWidthCirclesDefault;
 
     // Connection size in FidoCadJ coordinates (diameter)
     public static final double diameterConnectionDefault = 2.0;
-    public static double diameterConnection = diameterConnectionDefault;
+    private static double diameterConnection = diameterConnectionDefault;
+
+    // The line widths and the connection size of the threads which do not
+    // employ the values shared by the whole application (see
+    // useThreadSizes). The flag avoids looking for them in most cases.
+    private static final ThreadLocal<double[]> threadSizes =
+        new ThreadLocal<double[]>();
+    private static volatile boolean threadSizesUsed;
 
     // The last library and group selected by the user.
     // TODO: refactor this! Those variables should not be here.
@@ -173,6 +180,93 @@ public final class Globals
         }
     }
 
+    /** Let the current thread employ its own line widths and connection
+        size, starting from the default values. The values read or changed
+        by the other threads are not affected. This is useful when several
+        drawings are read and exported at the same time.
+    */
+    public static void useThreadSizes()
+    {
+        threadSizes.set(new double[] {lineWidthDefault,
+            lineWidthCirclesDefault, diameterConnectionDefault});
+        threadSizesUsed = true;
+    }
+
+    /** Get the line widths and the connection size of the current thread.
+        @return the values, or null if the thread employs the values shared
+            by the whole application.
+    */
+    private static double[] getThreadSizes()
+    {
+        return threadSizesUsed ? threadSizes.get() : null;
+    }
+
+    /** Get the line width.
+        @return the width in FidoCadJ coordinates.
+    */
+    public static double getLineWidth()
+    {
+        double[] s = getThreadSizes();
+        return s == null ? lineWidth : s[0];
+    }
+
+    /** Set the line width.
+        @param w the width in FidoCadJ coordinates.
+    */
+    public static void setLineWidth(double w)
+    {
+        double[] s = getThreadSizes();
+        if (s == null) {
+            lineWidth = w;
+        } else {
+            s[0] = w;
+        }
+    }
+
+    /** Get the line width employed for the ovals.
+        @return the width in FidoCadJ coordinates.
+    */
+    public static double getLineWidthCircles()
+    {
+        double[] s = getThreadSizes();
+        return s == null ? lineWidthCircles : s[1];
+    }
+
+    /** Set the line width employed for the ovals.
+        @param w the width in FidoCadJ coordinates.
+    */
+    public static void setLineWidthCircles(double w)
+    {
+        double[] s = getThreadSizes();
+        if (s == null) {
+            lineWidthCircles = w;
+        } else {
+            s[1] = w;
+        }
+    }
+
+    /** Get the diameter of the connections.
+        @return the diameter in FidoCadJ coordinates.
+    */
+    public static double getDiameterConnection()
+    {
+        double[] s = getThreadSizes();
+        return s == null ? diameterConnection : s[2];
+    }
+
+    /** Set the diameter of the connections.
+        @param d the diameter in FidoCadJ coordinates.
+    */
+    public static void setDiameterConnection(double d)
+    {
+        double[] s = getThreadSizes();
+        if (s == null) {
+            diameterConnection = d;
+        } else {
+            s[2] = d;
+        }
+    }
+
     /** Check if an extension is present in a file name and, if it is not the
         case, add or adjust it in order to obtain the specified extension.
         If the string contains " somewhere, this character is removed and the
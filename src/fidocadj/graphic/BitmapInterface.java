@@ -0,0 +1,49 @@
+package fidocadj.graphic;
+
+/** Provides a general way to access to an off-screen image, in which it is
+    possible to draw and which can be copied on a graphic context (see
+    GraphicsInterface.createBitmap and GraphicsInterface.drawBitmap).
+
+    <pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+</pre>
+*/
+public interface BitmapInterface
+{
+    /** Get the graphic context to be used to draw in the image. The origin
+        of the coordinates is the top left corner of the image.
+        @return the graphic context.
+    */
+    GraphicsInterface getGraphics();
+
+    /** Release the resources employed for drawing. The image can still be
+        copied, but it should not be modified anymore.
+    */
+    void finishDrawing();
+
+    /** Get the width of the image.
+        @return the width in pixels.
+    */
+    int getWidth();
+
+    /** Get the height of the image.
+        @return the height in pixels.
+    */
+    int getHeight();
+}
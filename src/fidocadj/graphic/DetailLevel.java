@@ -0,0 +1,120 @@
+package fidocadj.graphic;
+
+/** DetailLevel: the sizes in pixels below which the elements of a drawing
+    are simplified, to speed up the redraw at small zooms. A size equal to
+    zero means that the corresponding simplification is never done.
+
+    <pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+    </pre>
+
+    @author Davide Bucci
+*/
+public final class DetailLevel
+{
+    /** Complete drawing, used also for the exports: only the texts which are
+        neither rotated nor mirrored and smaller than Globals.textSizeLimit
+        are drawn as a line, as it is always the case.
+    */
+    public static final DetailLevel DEFAULT=new DetailLevel(0, 0, 0, 0);
+
+    private final int textSize;
+    private final int macroSize;
+    private final int primitiveSize;
+    private final int dashSize;
+
+    /** Standard constructor. Negative sizes are considered as zero.
+        @param text the height of the texts drawn as a line instead of
+            their characters, whatever their orientation.
+        @param macro the size of the macros drawn as a rectangle instead of
+            their contents.
+        @param primitive the size of the primitives which are not drawn.
+        @param dash the length of the dash pattern of the strokes drawn as
+            continuous lines.
+    */
+    public DetailLevel(int text, int macro, int primitive, int dash)
+    {
+        textSize=Math.max(text, 0);
+        macroSize=Math.max(macro, 0);
+        primitiveSize=Math.max(primitive, 0);
+        dashSize=Math.max(dash, 0);
+    }
+
+    /** Get the height below which the texts are drawn as a line, whatever
+        their orientation. The texts which are neither rotated nor mirrored
+        are drawn as a line anyway below Globals.textSizeLimit.
+        @return the height in pixels, or 0 if only those texts are drawn as
+            a line.
+    */
+    public int getTextSize()
+    {
+        return textSize;
+    }
+
+    /** Get the size (width and height) below which the macros which are
+        not selected are drawn as a rectangle.
+        @return the size in pixels, or 0 if macros are always drawn.
+    */
+    public int getMacroSize()
+    {
+        return macroSize;
+    }
+
+    /** Get the size (width and height) below which the primitives which
+        are not selected are not drawn at all.
+        @return the size in pixels, or 0 if primitives are always drawn.
+    */
+    public int getPrimitiveSize()
+    {
+        return primitiveSize;
+    }
+
+    /** Get the length of the dash pattern below which the dashed strokes
+        are drawn as continuous lines.
+        @return the length in pixels, or 0 if dashes are always drawn.
+    */
+    public int getDashSize()
+    {
+        return dashSize;
+    }
+
+    /** Check if two objects describe the same level of detail.
+        @param o the object to be compared.
+        @return true if o is a DetailLevel with the same sizes.
+    */
+    @Override
+    public boolean equals(Object o)
+    {
+        if(!(o instanceof DetailLevel)) {
+            return false;
+        }
+        DetailLevel d=(DetailLevel)o;
+        return textSize==d.textSize && macroSize==d.macroSize
+            && primitiveSize==d.primitiveSize && dashSize==d.dashSize;
+    }
+
+    /** Get a hash code consistent with equals.
+        @return the hash code.
+    */
+    @Override
+    public int hashCode()
+    {
+        return ((textSize*31+macroSize)*31+primitiveSize)*31+dashSize;
+    }
+}
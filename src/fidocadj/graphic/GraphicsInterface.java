@@ -278,4 +278,36 @@ public interface GraphicsInterface
         @return the screen resolution (density) in dots-per-inch.
     */
     float getScreenDensity();
+
+    /** Create an off-screen image in which it is possible to draw with the
+        same settings of the current graphic context. This is used to cache
+        the rendering of some elements.
+        @param width the width of the image in pixels.
+        @param height the height of the image in pixels.
+        @return the image, or null if off-screen images are not available
+            or not enabled for the current graphic context.
+    */
+    BitmapInterface createBitmap(int width, int height);
+
+    /** Copy an image obtained by createBitmap on the current graphic
+        context.
+        @param b the image.
+        @param x the x coordinate of the top left corner of the image.
+        @param y the y coordinate of the top left corner of the image.
+    */
+    void drawBitmap(BitmapInterface b, int x, int y);
+
+    /** Translate the origin of the graphic context. All the following
+        drawing operations (and the clip checks) are done in the translated
+        coordinates.
+        @param dx the horizontal translation, in pixels.
+        @param dy the vertical translation, in pixels.
+    */
+    void translate(int dx, int dy);
+
+    /** Get the sizes below which the elements are simplified when they are
+        drawn in the current graphic context.
+        @return the level of detail.
+    */
+    DetailLevel getDetailLevel();
 }
\ No newline at end of file
@@ -123,6 +123,70 @@ public class RectangleG
                 && other.getY() + other.getHeight() > this.y;
     }
 
+    /**
+     * Checks whether this rectangle and another one share at least a point.
+     * Differently from intersects, borders are considered as part of the
+     * rectangles, so that touching rectangles do overlap.
+     *
+     * @param other the other rectangle.
+     *
+     * @return true if the rectangles have at least a point in common.
+     */
+    public boolean overlaps(RectangleG other)
+    {
+        return (long)other.x <= (long)x + width
+                && (long)other.x + other.width >= x
+                && (long)other.y <= (long)y + height
+                && (long)other.y + other.height >= y;
+    }
+
+    /**
+     * Enlarges the rectangle so that it contains the given point.
+     *
+     * @param px the x-coordinate of the point.
+     * @param py the y-coordinate of the point.
+     */
+    public void add(int px, int py)
+    {
+        if (px < x) {
+            width += x - px;
+            x = px;
+        } else if (px > x + width) {
+            width = px - x;
+        }
+        if (py < y) {
+            height += y - py;
+            y = py;
+        } else if (py > y + height) {
+            height = py - y;
+        }
+    }
+
+    /**
+     * Enlarges the rectangle so that it contains the given rectangle.
+     *
+     * @param r the rectangle to be included.
+     */
+    public void add(RectangleG r)
+    {
+        add(r.x, r.y);
+        add(r.x + r.width, r.y + r.height);
+    }
+
+    /**
+     * Enlarges the rectangle of the given amount on each side.
+     *
+     * @param h the horizontal amount.
+     * @param v the vertical amount.
+     */
+    public void grow(int h, int v)
+    {
+        x -= h;
+        y -= v;
+        width += 2 * h;
+        height += 2 * v;
+    }
+
     /**
      * Checks whether a line defined by two points (x1, y1) and (x2, y2)
      * intersects with this rectangle.
@@ -6,6 +6,8 @@ import java.awt.image.*;
 
 import fidocadj.geom.MapCoordinates;
 import fidocadj.layers.LayerDesc;
+import fidocadj.graphic.BitmapInterface;
+import fidocadj.graphic.DetailLevel;
 import fidocadj.graphic.GraphicsInterface;
 import fidocadj.graphic.ShapeInterface;
 import fidocadj.graphic.TextInterface;
@@ -431,4 +433,42 @@ public class GraphicsNull implements GraphicsInterface, TextInterface
         // be very important.
         return 72;
     }
+
+    /** Create an off-screen image. Not available here.
+        @param width the width of the image in pixels.
+        @param height the height of the image in pixels.
+        @return null.
+    */
+    public BitmapInterface createBitmap(int width, int height)
+    {
+        return null;
+    }
+
+    /** Copy an image on the current graphic context. Nothing to do here.
+        @param b the image.
+        @param x the x coordinate of the top left corner of the image.
+        @param y the y coordinate of the top left corner of the image.
+    */
+    public void drawBitmap(BitmapInterface b, int x, int y)
+    {
+        // Nothing to do.
+    }
+
+    /** Translate the origin of the graphic context. Nothing to do here.
+        @param dx the horizontal translation, in pixels.
+        @param dy the vertical translation, in pixels.
+    */
+    public void translate(int dx, int dy)
+    {
+        // Nothing to do.
+    }
+
+    /** Get the sizes below which the elements are simplified. Nothing is
+        drawn here, but the coordinates of all the elements are calculated.
+        @return the default level of detail.
+    */
+    public DetailLevel getDetailLevel()
+    {
+        return DetailLevel.DEFAULT;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+package fidocadj.graphic.swing;
+
+import java.awt.*;
+import java.awt.image.*;
+
+import fidocadj.graphic.BitmapInterface;
+import fidocadj.graphic.GraphicsInterface;
+
+/** BitmapSwing is a wrapper around a BufferedImage.
+
+<pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+</pre>
+*/
+public class BitmapSwing implements BitmapInterface
+{
+    private final BufferedImage image;
+    private final Graphics2D g;
+    private final Graphics2DSwing gs;
+
+    /** Create a transparent image, whose graphic context has the same
+        settings of the given one.
+        @param width the width of the image in pixels.
+        @param height the height of the image in pixels.
+        @param model the graphic context whose settings should be used.
+    */
+    public BitmapSwing(int width, int height, Graphics2DSwing model)
+    {
+        image=new BufferedImage(width, height,
+            BufferedImage.TYPE_INT_ARGB_PRE);
+        g=image.createGraphics();
+        g.setRenderingHints(model.getGraphicContext().getRenderingHints());
+        gs=new Graphics2DSwing();
+        gs.setGraphicContext(g);
+        gs.setZoom(model.getZoom());
+        gs.setDetailLevel(model.getDetailLevel());
+    }
+
+    /** Get the graphic context to be used to draw in the image.
+        @return the graphic context.
+    */
+    public GraphicsInterface getGraphics()
+    {
+        return gs;
+    }
+
+    /** Release the resources employed for drawing.
+    */
+    public void finishDrawing()
+    {
+        g.dispose();
+    }
+
+    /** Get the width of the image.
+        @return the width in pixels.
+    */
+    public int getWidth()
+    {
+        return image.getWidth();
+    }
+
+    /** Get the height of the image.
+        @return the height in pixels.
+    */
+    public int getHeight()
+    {
+        return image.getHeight();
+    }
+
+    /** Get the image.
+        @return the image.
+    */
+    public BufferedImage getImage()
+    {
+        return image;
+    }
+}
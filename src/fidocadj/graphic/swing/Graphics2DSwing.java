@@ -7,7 +7,9 @@ import java.awt.image.*;    // Used in drawGrid
 import fidocadj.geom.MapCoordinates;
 import fidocadj.globals.Globals;
 import fidocadj.layers.LayerDesc;
+import fidocadj.graphic.BitmapInterface;
 import fidocadj.graphic.DecoratedText;
+import fidocadj.graphic.DetailLevel;
 import fidocadj.graphic.ColorInterface;
 import fidocadj.graphic.PolygonInterface;
 import fidocadj.graphic.ShapeInterface;
@@ -70,6 +72,10 @@ public class Graphics2DSwing implements GraphicsInterface, TextInterface
 
     private Color selectedColor;
 
+    private boolean bitmapsEnabled;
+
+    private DetailLevel detail=DetailLevel.DEFAULT;
+
     /*  Strategy in 0.24.7:
         -------------------
         The font size affects the way the font is drawn. For this reason (as
@@ -174,18 +180,26 @@ public class Graphics2DSwing implements GraphicsInterface, TextInterface
             // Resize the dash sizes depending on the current zoom size.
             float[] dashArrayStretched;
             // Then, the dashed stroke styles are created.
-            if(zoom<1.0) {
-                zoom=1.0;
-            }
+            double z=Math.max(zoom, 1.0);
             for(int i=1; i<Globals.dashNumber; ++i) {
+                // When the dash pattern would be too small at the current
+                // zoom, the line is continuous (see DetailLevel).
+                float length=0;
+                for(int j=0; j<Globals.dash[i].length;++j) {
+                    length+=Globals.dash[i][j];
+                }
+                if(length*z/2.0<detail.getDashSize()) {
+                    strokeList[i]=strokeList[0];
+                    continue;
+                }
                 // Prepare the resized dash array.
                 dashArrayStretched = new float[Globals.dash[i].length];
                 for(int j=0; j<Globals.dash[i].length;++j) {
-                    dashArrayStretched[j]=Globals.dash[i][j]*(float)zoom/2.0f;
+                    dashArrayStretched[j]=Globals.dash[i][j]*(float)z/2.0f;
                 }
                 strokeList[i]=new BasicStroke(w, BasicStroke.CAP_ROUND,
                     BasicStroke.JOIN_ROUND,
-                    (float)(10.0f*zoom), dashArrayStretched,
+                    (float)(10.0f*z), dashArrayStretched,
                     0.0f);
             }
             actual_w=w;
@@ -255,6 +269,14 @@ public class Graphics2DSwing implements GraphicsInterface, TextInterface
         selectedColor = color;
     }
 
+    /** Gets the current color of selected item
+        @return the color.
+    */
+    public Color getSelectedColor()
+    {
+        return selectedColor;
+    }
+
     /** Gets the current color.
         @return the actual color. Can be cast-able to ColorSwing class.
     */
@@ -600,17 +622,32 @@ public class Graphics2DSwing implements GraphicsInterface, TextInterface
             mm.scale(-1,1);
         }
 
+        // Subscripts and superscripts (see DecoratedText) are drawn above
+        // and below the text: take them into account when checking if the
+        // text is visible.
+        int ex=txt.indexOf('_')>=0 || txt.indexOf('^')>=0 ? th : 0;
+
+        // Very small texts are drawn as a line (see DetailLevel). As it has
+        // always been, this is done anyway for the texts neither rotated
+        // nor mirrored, which are the most common ones.
+        boolean small=th<detail.getTextSize()
+            || orientation==0 && !mirror && th<Globals.textSizeLimit;
+
         // If it's a simple normal text, draw it in the simple (fastest) way.
         if(orientation==0) {
             if (mirror) {
                 // Here the text is mirrored
                 at.scale(-1,xyfactor);
                 g.setTransform(at);
-                if(g.hitClip(-xa,qq,w,h)) {
-                    if(!g.getFont().equals(f)) {
-                        g.setFont(f);
+                if(g.hitClip(-xa,qq-ex,w,h+2*ex)) {
+                    if(small) {
+                        g.drawLine(-xa,qq,-xa+w,qq);
+                    } else {
+                        if(!g.getFont().equals(f)) {
+                            g.setFont(f);
+                        }
+                        dt.drawString(txt,-xa,qq+h);
                     }
-                    dt.drawString(txt,-xa,qq+h);
                 }
             } else {
                 // Here the text is normal
@@ -619,8 +656,8 @@ public class Graphics2DSwing implements GraphicsInterface, TextInterface
                     g.setTransform(at);
                 }
 
-                if(g.hitClip(xa,qq, w, th)){
-                    if(th<Globals.textSizeLimit) {
+                if(g.hitClip(xa,qq-ex, w, th+2*ex)){
+                    if(small) {
                         g.drawLine(xa,qq,xa+w,qq);
                         if(needsStretching) {
                             g.setTransform(ats);
@@ -647,12 +684,15 @@ public class Graphics2DSwing implements GraphicsInterface, TextInterface
                     at.concatenate(stretching);
                 }
                 g.setTransform(at);
-                if(!g.getFont().equals(f)) {
-                    g.setFont(f);
+                if(small) {
+                    g.drawLine(-xa,qq,-xa+w,qq);
+                } else {
+                    if(!g.getFont().equals(f)) {
+                        g.setFont(f);
+                    }
+                    dt.drawString(txt,-xa,qq+h);
                 }
 
-                dt.drawString(txt,-xa,qq+h);
-
             } else {
                 // Here the text is just rotated
                 at.rotate(Math.toRadians(-orientation),xa,ya);
@@ -660,10 +700,14 @@ public class Graphics2DSwing implements GraphicsInterface, TextInterface
                     at.concatenate(stretching);
                 }
                 g.setTransform(at);
-                if(!g.getFont().equals(f)) {
-                    g.setFont(f);
+                if(small) {
+                    g.drawLine(xa,qq,xa+w,qq);
+                } else {
+                    if(!g.getFont().equals(f)) {
+                        g.setFont(f);
+                    }
+                    dt.drawString(txt,xa,qq+h);
                 }
-                dt.drawString(txt,xa,qq+h);
             }
         }
         g.setTransform(ats);
@@ -843,4 +887,83 @@ public class Graphics2DSwing implements GraphicsInterface, TextInterface
     {
         return Toolkit.getDefaultToolkit().getScreenResolution();
     }
+
+    /** Allow or forbid the creation of off-screen images, used to cache the
+        rendering of some elements. They are forbidden by default, since
+        the results might be slightly different from a direct drawing.
+        @param e true if off-screen images can be created.
+    */
+    public void setBitmapsEnabled(boolean e)
+    {
+        bitmapsEnabled=e;
+    }
+
+    /** Check if the creation of off-screen images is allowed.
+        @return true if off-screen images can be created.
+    */
+    public boolean getBitmapsEnabled()
+    {
+        return bitmapsEnabled;
+    }
+
+    /** Create an off-screen image in which it is possible to draw with the
+        same settings of the current graphic context.
+        @param width the width of the image in pixels.
+        @param height the height of the image in pixels.
+        @return the image, or null if off-screen images are not enabled or
+            if the current graphic context is scaled or rotated.
+    */
+    public BitmapInterface createBitmap(int width, int height)
+    {
+        // If the context is scaled (for example on HiDPI screens), the
+        // image would be less defined than a direct drawing.
+        int t=g.getTransform().getType()
+            & ~AffineTransform.TYPE_TRANSLATION;
+        if(!bitmapsEnabled || t!=AffineTransform.TYPE_IDENTITY) {
+            return null;
+        }
+        return new BitmapSwing(width, height, this);
+    }
+
+    /** Copy an image obtained by createBitmap on the current graphic
+        context.
+        @param b the image.
+        @param x the x coordinate of the top left corner of the image.
+        @param y the y coordinate of the top left corner of the image.
+    */
+    public void drawBitmap(BitmapInterface b, int x, int y)
+    {
+        Composite c=g.getComposite();
+        g.setComposite(AlphaComposite.SrcOver);
+        g.drawImage(((BitmapSwing)b).getImage(), x, y, null);
+        g.setComposite(c);
+    }
+
+    /** Translate the origin of the graphic context.
+        @param dx the horizontal translation, in pixels.
+        @param dy the vertical translation, in pixels.
+    */
+    public void translate(int dx, int dy)
+    {
+        g.translate(dx, dy);
+    }
+
+    /** Set the sizes below which the elements are simplified. By default,
+        only the very small texts are drawn as a line.
+        @param d the level of detail.
+    */
+    public void setDetailLevel(DetailLevel d)
+    {
+        detail=d;
+        // The strokes must be created again.
+        actualZoom=-1;
+    }
+
+    /** Get the sizes below which the elements are simplified.
+        @return the level of detail.
+    */
+    public DetailLevel getDetailLevel()
+    {
+        return detail;
+    }
 }
\ No newline at end of file
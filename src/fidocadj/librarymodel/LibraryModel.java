@@ -12,6 +12,7 @@ import fidocadj.librarymodel.event.LibraryListener;
 import fidocadj.librarymodel.event.RemoveEvent;
 import fidocadj.librarymodel.event.AddEvent;
 import fidocadj.librarymodel.event.RenameEvent;
+import fidocadj.librarymodel.utils.MacroTemplateUpdater;
 import fidocadj.primitives.MacroDesc;
 
 // TODO: comment public methods
@@ -57,6 +58,10 @@ public class LibraryModel
         this.drawingModel = drawingModel;
         libraryListeners = new ArrayList<LibraryListener>();
         libraries = new ArrayList<Library>();
+
+        // The parsed macros must be discarded before the other listeners
+        // are notified, since they may parse the drawing again.
+        libraryListeners.add(new MacroTemplateUpdater());
         updateLibraries();
     }
 
@@ -0,0 +1,74 @@
+package fidocadj.librarymodel.utils;
+
+import fidocadj.librarymodel.event.LibraryListener;
+import fidocadj.librarymodel.event.AddEvent;
+import fidocadj.librarymodel.event.KeyChangeEvent;
+import fidocadj.librarymodel.event.RemoveEvent;
+import fidocadj.librarymodel.event.RenameEvent;
+import fidocadj.primitives.MacroTemplate;
+
+/** Class implementing a library listener, which discards the parsed macros
+    shared by the drawings (see MacroTemplate) each time the libraries are
+    modified.
+
+    <pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+    </pre>
+*/
+public class MacroTemplateUpdater implements LibraryListener
+{
+    /** Called when a library has been loaded.
+    */
+    public void libraryLoaded()
+    {
+        MacroTemplate.invalidateAll();
+    }
+
+    /** Called when a library has been renamed.
+        @param e the renaming event.
+    */
+    public void libraryNodeRenamed(RenameEvent e)
+    {
+        MacroTemplate.invalidateAll();
+    }
+
+    /** Called when a node has been removed from a library.
+        @param e the remove event.
+    */
+    public void libraryNodeRemoved(RemoveEvent e)
+    {
+        MacroTemplate.invalidateAll();
+    }
+
+    /** Called when a node has been added.
+        @param e the adding event.
+    */
+    public void libraryNodeAdded(AddEvent e)
+    {
+        MacroTemplate.invalidateAll();
+    }
+
+    /** Called when the key for a node (macro) has been changed.
+        @param e the node key changing event.
+    */
+    public void libraryNodeKeyChanged(KeyChangeEvent e)
+    {
+        MacroTemplate.invalidateAll();
+    }
+}
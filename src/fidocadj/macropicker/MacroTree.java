@@ -666,12 +666,16 @@ public class MacroTree extends JPanel
                     System.out.println(
                         "[SearchFieldListener] BadLocationException");
                 } finally {
-                    if("".equals(word)) {
-                        treeComponent.collapseOnce();
-                    } else {
-                        treeComponent.expandOnce();
-                    }
-                    macroTreeModel.setFilterWord(word);
+                    // The tree is expanded or collapsed only when the
+                    // results of the search are shown.
+                    final boolean expand = !"".equals(word);
+                    macroTreeModel.setFilterWord(word, () -> {
+                        if(expand) {
+                            treeComponent.expandOnce();
+                        } else {
+                            treeComponent.collapseOnce();
+                        }
+                    });
                 }
             }
         };
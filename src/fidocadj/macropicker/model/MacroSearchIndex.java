@@ -0,0 +1,198 @@
+package fidocadj.macropicker.model;
+
+import java.util.*;
+import java.util.function.BooleanSupplier;
+
+import fidocadj.primitives.MacroDesc;
+
+/** Index employed to search the macros by name, key, category or library.
+
+    All the texts are converted in lower case only once, when the index is
+    built. Each sequence of three characters (trigram) found in the texts of
+    a macro is associated to the list of the macros containing it: the words
+    searched which are long enough are then checked only against the macros
+    containing all their trigrams. The index is never modified: a new one is
+    built when the libraries change, so that it can be read by any thread.
+
+    <pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+    </pre>
+
+    @author Davide Bucci
+*/
+final class MacroSearchIndex
+{
+    private static final Locale LOCALE=Locale.forLanguageTag("en");
+
+    // Length of the sequences of characters which are indexed.
+    private static final int GRAM=3;
+
+    // Number of macros checked between two checks of the cancellation.
+    private static final int CHECK_STEP=1024;
+
+    /** A macro to be indexed, with the texts where it is searched.
+    */
+    static final class Entry
+    {
+        final MacroDesc macro;
+        final String[] texts;
+
+        /** Standard constructor. The texts should be read in the event
+            dispatching thread, since the libraries may be modified.
+            @param m the macro.
+            @param t the texts where it is searched (name, key...).
+        */
+        Entry(MacroDesc m, String... t)
+        {
+            macro=m;
+            texts=t;
+        }
+    }
+
+    private final MacroDesc[] macros;
+    // The texts of each macro, in lower case.
+    private final String[][] texts;
+    // The macros (sorted indices) containing each trigram.
+    private final Map<String, int[]> grams;
+
+    /** Build the index.
+        @param entries the macros to be indexed.
+    */
+    MacroSearchIndex(List<Entry> entries)
+    {
+        int n=entries.size();
+        macros=new MacroDesc[n];
+        texts=new String[n][];
+        Map<String, List<Integer>> g=new HashMap<String, List<Integer>>();
+        Set<String> found=new HashSet<String>();
+        for(int i=0; i<n; ++i) {
+            Entry e=entries.get(i);
+            macros[i]=e.macro;
+            texts[i]=new String[e.texts.length];
+            found.clear();
+            for(int j=0; j<e.texts.length; ++j) {
+                String t=e.texts[j]==null ? ""
+                    : e.texts[j].toLowerCase(LOCALE);
+                texts[i][j]=t;
+                for(int k=0; k+GRAM<=t.length(); ++k) {
+                    found.add(t.substring(k, k+GRAM));
+                }
+            }
+            for(String s : found) {
+                g.computeIfAbsent(s, k -> new ArrayList<Integer>()).add(i);
+            }
+        }
+        grams=new HashMap<String, int[]>(g.size()*2);
+        for(Map.Entry<String, List<Integer>> e : g.entrySet()) {
+            grams.put(e.getKey(),
+                e.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    /** Search the macros. A macro is found if each word appears in its
+        name, key, category or library.
+        @param query the words, separated by spaces.
+        @param cancelled tells if the search is no longer needed.
+        @return the macros found, or null if the search has been cancelled.
+    */
+    Set<MacroDesc> search(String query, BooleanSupplier cancelled)
+    {
+        List<String> words=new ArrayList<String>();
+        for(String w : query.toLowerCase(LOCALE).trim().split(" ")) {
+            if(w.length()>0) {
+                words.add(w);
+            }
+        }
+
+        // Only the macros containing all the trigrams of the words need to
+        // be checked.
+        int[] candidates=null;
+        for(String w : words) {
+            for(int k=0; k+GRAM<=w.length(); ++k) {
+                int[] p=grams.get(w.substring(k, k+GRAM));
+                if(p==null) {
+                    return Collections.newSetFromMap(
+                        new IdentityHashMap<MacroDesc, Boolean>());
+                }
+                candidates=candidates==null ? p : intersect(candidates, p);
+            }
+        }
+
+        Set<MacroDesc> result=Collections.newSetFromMap(
+            new IdentityHashMap<MacroDesc, Boolean>());
+        int n=candidates==null ? macros.length : candidates.length;
+        for(int c=0; c<n; ++c) {
+            if(c%CHECK_STEP==0 && cancelled.getAsBoolean()) {
+                return null;
+            }
+            int i=candidates==null ? c : candidates[c];
+            if(matches(texts[i], words)) {
+                result.add(macros[i]);
+            }
+        }
+        return result;
+    }
+
+    /** Check if all the words appear in the texts of a macro.
+        @param t the texts, in lower case.
+        @param words the words, in lower case.
+        @return true if each word appears in at least one of the texts.
+    */
+    private static boolean matches(String[] t, List<String> words)
+    {
+        for(String w : words) {
+            boolean found=false;
+            for(String s : t) {
+                if(s.contains(w)) {
+                    found=true;
+                    break;
+                }
+            }
+            if(!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Intersect two sorted arrays.
+        @param a the first array.
+        @param b the second array.
+        @return the elements present in both arrays, sorted.
+    */
+    private static int[] intersect(int[] a, int[] b)
+    {
+        int[] r=new int[Math.min(a.length, b.length)];
+        int n=0;
+        int i=0;
+        int j=0;
+        while(i<a.length && j<b.length) {
+            if(a[i]<b[j]) {
+                ++i;
+            } else if(a[i]>b[j]) {
+                ++j;
+            } else {
+                r[n++]=a[i];
+                ++i;
+                ++j;
+            }
+        }
+        return Arrays.copyOf(r, n);
+    }
+}
@@ -1,6 +1,8 @@
 package fidocadj.macropicker.model;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.event.*;
 import javax.swing.tree.*;
@@ -18,6 +20,11 @@ import fidocadj.librarymodel.event.RenameEvent;
 import fidocadj.primitives.MacroDesc;
 
 /** JTree model for showing macro library.
+
+    The search is done in a separate thread, by using a MacroSearchIndex
+    built again when the libraries change. It starts only when no key has
+    been typed for a short time, a search still running is cancelled by the
+    following one and only the result of the last search is shown.
     <pre>
     This file is part of FidoCadJ.
 
@@ -55,6 +62,31 @@ public class MacroTreeModel implements TreeModel,LibraryListener
 
     private String filterWord;
 
+    // Time to wait after the last modification of the filtering word
+    // before searching, in milliseconds.
+    private static final int SEARCH_DELAY=150;
+
+    // The searches of all the trees are done one after the other in the
+    // same thread.
+    private static final ExecutorService SEARCH_EXECUTOR=
+        Executors.newSingleThreadExecutor(r -> {
+            Thread t=new Thread(r, "Macro search");
+            t.setDaemon(true);
+            return t;
+        });
+
+    // Index of the macros, or null if it should be built again.
+    private MacroSearchIndex searchIndex;
+    // Incremented each time the libraries change.
+    private int libraryVersion;
+    // Incremented each time a search starts or is cancelled: a search whose
+    // number is not the last one is not needed any more.
+    private final AtomicInteger searchNumber=new AtomicInteger();
+    private Future<?> pendingSearch;
+    private final javax.swing.Timer searchTimer;
+    private String wordToSearch;
+    private Runnable searchDone;
+
     /** Constructor.
         @param libraryModel the library model to be associated to this class.
     */
@@ -62,48 +94,133 @@ public class MacroTreeModel implements TreeModel,LibraryListener
     {
         this.libraryModel = libraryModel;
         listeners = new ArrayList<TreeModelListener>();
+        searchTimer = new javax.swing.Timer(SEARCH_DELAY, e -> startSearch());
+        searchTimer.setRepeats(false);
         createMap();
         synchronizeTree(null);
         fireChanged();
     }
 
-    /** Set filtering word.
+    /** Set filtering word. The macros whose name, key, category or library
+        contain all the words are shown. If the word is not empty, the search
+        is done later, in a separate thread, and the tree is updated in the
+        event dispatching thread when it is complete.
         @param filterWord words separated by space.
+        @param done called in the event dispatching thread when the tree has
+            been updated, or null. It is not called if the search is
+            cancelled by another one.
      */
-    public void setFilterWord(String filterWord)
+    public void setFilterWord(String filterWord, Runnable done)
     {
-        this.filterWord = filterWord;
-
+        cancelSearch();
         if(filterWord == null || filterWord.length()==0) {
             synchronizeTree(null);
             this.filterWord = null;
             fireChanged();
+            if(done!=null) {
+                done.run();
+            }
         } else {
-            Locale lo = Locale.forLanguageTag("en");
-            final String chainedWord = filterWord.toLowerCase(lo);
-            synchronizeTree(new NodeFilterInterface() {
-                public boolean accept(MacroTreeNode node)
-                {
-                    String[] words = chainedWord.trim().split(" ");
-                    int matched=0;
-                    for(String word:words) {
-                        if(0<=node.toString().toLowerCase(lo).indexOf(word)) {
-                            matched++;
-                        } else if(word.length()==0) {
-                            matched++;
-                        }
+            wordToSearch = filterWord;
+            searchDone = done;
+            searchTimer.restart();
+        }
+    }
+
+    /** Start searching the word given to setFilterWord.
+    */
+    private void startSearch()
+    {
+        final String word = wordToSearch;
+        final Runnable done = searchDone;
+        final int number = searchNumber.incrementAndGet();
+        final int version = libraryVersion;
+        final MacroSearchIndex index = searchIndex;
+        // The libraries can be read only in this thread.
+        final List<MacroSearchIndex.Entry> entries =
+            index==null ? getSearchEntries() : null;
+
+        pendingSearch = SEARCH_EXECUTOR.submit(() -> {
+            MacroSearchIndex idx = index;
+            if(idx==null) {
+                idx = new MacroSearchIndex(entries);
+                final MacroSearchIndex built = idx;
+                SwingUtilities.invokeLater(() -> {
+                    if(version==libraryVersion) {
+                        searchIndex = built;
                     }
-                    return words.length==matched;
+                });
+            }
+            final Set<MacroDesc> found = idx.search(word,
+                () -> searchNumber.get()!=number);
+            if(found==null) {
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                // The search may have been cancelled in the meanwhile.
+                if(searchNumber.get()!=number) {
+                    return;
+                }
+                filterWord = word;
+                synchronizeTree(node -> found.contains(
+                    ((MacroNode)node).getMacro()));
+                fireChanged();
+                if(done!=null) {
+                    done.run();
                 }
             });
-            fireChanged();
+        });
+    }
+
+    /** Get the macros which can be shown in the tree, with the texts where
+        they should be searched.
+        @return the macros.
+    */
+    private List<MacroSearchIndex.Entry> getSearchEntries()
+    {
+        List<MacroSearchIndex.Entry> entries =
+            new ArrayList<MacroSearchIndex.Entry>();
+        for(Library library:libraryModel.getAllLibraries()) {
+            for(Category category:library.getAllCategories()) {
+                if(category.isHidden()) {
+                    continue;
+                }
+                for(MacroDesc macro:category.getAllMacros()) {
+                    entries.add(new MacroSearchIndex.Entry(macro, macro.name,
+                        macro.key, category.getName(), library.getName()));
+                }
+            }
         }
+        return entries;
+    }
+
+    /** Cancel the search being done or waiting to be done, if any.
+    */
+    private void cancelSearch()
+    {
+        searchTimer.stop();
+        searchNumber.incrementAndGet();
+        if(pendingSearch!=null) {
+            pendingSearch.cancel(true);
+            pendingSearch = null;
+        }
+    }
+
+    /** Take into account that the libraries have been modified: the index
+        used for the searches must be built again.
+    */
+    private void invalidateSearchIndex()
+    {
+        searchIndex = null;
+        ++libraryVersion;
     }
 
     /** Reset the current search mode.
     */
     private void resetSearchMode()
     {
+        cancelSearch();
+        invalidateSearchIndex();
         filterWord = null;
     }
 
@@ -326,6 +443,8 @@ public class MacroTreeModel implements TreeModel,LibraryListener
         TreePath renamedPath;
         TreeNode renamedMacroTreeNode;
 
+        invalidateSearchIndex();
+
         if(renamedNode==null) {
             fireTreeNodeChanged(new TreePath(rootNode));
         } else {
@@ -391,13 +510,13 @@ public class MacroTreeModel implements TreeModel,LibraryListener
         }
     }
 
-    /** Called when a library node has to be changed.
-        TODO: is this unimplemented?
+    /** Called when the key of a macro has been changed.
+        The tree does not show the keys, but they are searched.
         @param e the changed event.
     */
     public void libraryNodeKeyChanged(KeyChangeEvent e)
     {
-        // Nothing to do here
+        invalidateSearchIndex();
     }
 
     /** To be called when a new library has been loaded.
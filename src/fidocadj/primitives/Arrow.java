@@ -94,24 +94,32 @@ public final class Arrow
         @return a string containing the codes
     */
     public String createArrowTokens()
+    {
+        StringBuilder s=new StringBuilder(16);
+        appendArrowTokens(s);
+        return s.toString();
+    }
+
+    /** Append the string describing the arrow (see createArrowTokens) to
+        the given buffer.
+        @param s the buffer where the codes are appended.
+    */
+    public void appendArrowTokens(StringBuilder s)
     {
         int arrows = (arrowStart?0x01:0x00)|(arrowEnd?0x02:0x00);
-        String result="";
-        result+=arrows+" ";
-        result+=arrowStyle+" ";
+        s.append(arrows).append(' ');
+        s.append(arrowStyle).append(' ');
         if (Math.abs(arrowLength-Math.round(arrowLength))<roundTolerance) {
-            result+= (int)Math.round(arrowLength);
+            s.append((int)Math.round(arrowLength));
         } else {
-            result+=arrowLength;
+            s.append(arrowLength);
         }
-        result+=" ";
+        s.append(' ');
         if (Math.abs(arrowHalfWidth-Math.round(arrowHalfWidth))<roundTolerance){
-            result+= (int)Math.round(arrowHalfWidth);
+            s.append((int)Math.round(arrowHalfWidth));
         } else {
-            result+=arrowHalfWidth;
+            s.append(arrowHalfWidth);
         }
-
-        return result;
     }
 
     /** Determine if the arrow on the start point should be drawn.
@@ -195,6 +203,19 @@ public final class Arrow
         arrowHalfWidth=ahw;
     }
 
+    /** Get an upper bound of the distance between the tip of an arrow and
+        any of its points, in logical units.
+        @return the bound, or 0 if there are no arrows.
+    */
+    public int getArrowExtension()
+    {
+        if(!atLeastOneArrow()) {
+            return 0;
+        }
+        return (int)Math.ceil(Math.abs(arrowLength)+Math.abs(arrowHalfWidth))
+            +2;
+    }
+
     /** Parse the tokens for the description of an arrow.
         They always come (in a FCJ line) in the same order, but the starting
         index may differ. The order is as follows: 1. the presence of which
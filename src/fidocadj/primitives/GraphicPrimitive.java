@@ -74,6 +74,10 @@ public abstract class GraphicPrimitive
     // Employed by roundIntelligently.
     private static final double INT_TOLERANCE=1E-5;
 
+    // Margin added to the bounding box (logical units), to take into account
+    // truncations in the calculation of the distances.
+    protected static final int BOX_MARGIN=2;
+
     // Array containing the points defining the primitive
     public PointG[] virtualPoint;
 
@@ -82,6 +86,10 @@ public abstract class GraphicPrimitive
     // information is stored to speed up the redraw.
     protected boolean changed;
 
+    // Bounding box calculated after the last in-depth redraw (see
+    // getCachedBoundingBox). It is null if it should be calculated again.
+    private RectangleG cachedBox;
+
     private int macroFontSize;
     protected String macroFont;
     protected String name;
@@ -316,7 +324,9 @@ public abstract class GraphicPrimitive
         }
 
         // This is useful and faster for small zooms
-        if(th<Globals.textSizeLimit) {
+        if(th<Globals.textSizeLimit
+            || th<g.getDetailLevel().getTextSize())
+        {
             g.drawLine(xa,ya, xa+w1-1,ya);
             g.drawLine(xb,yb, xb+w2-1,yb);
             return;
@@ -348,66 +358,76 @@ public abstract class GraphicPrimitive
     */
     public String saveText(boolean extensions)
     {
-        String subsFont;
-        StringBuffer s2=new StringBuffer();
-
-        // Check if the font is default and in this case, just put an asterisk.
-        if (macroFont.equals(Globals.defaultTextFont)) {
-            subsFont = "*";
-        } else {
-            StringBuffer s1=new StringBuffer("");
-
-            for (int i=0; i<macroFont.length(); ++i) {
-                if(macroFont.charAt(i)==' ') {
-                    s1.append("++");
-                } else {
-                    s1.append(macroFont.charAt(i));
-                }
-            }
-            subsFont=s1.toString();
-        }
+        StringBuilder s=new StringBuilder();
+        saveText(s, extensions);
+        return s.toString();
+    }
 
+    /** Appends the text strings containing the name and value of the
+        primitive to the given buffer.
+        @param s the buffer where the commands are appended.
+        @param extensions if true, outputs the FCJ tag before the two TY
+            commands.
+    */
+    protected void saveText(StringBuilder s, boolean extensions)
+    {
         // Write down the extensions only if needed
         if (name!=null && !"".equals(name) ||
             value!=null && !"".equals(value))
         {
             if(extensions) {
-                s2.append("FCJ\n");
+                s.append("FCJ\n");
             }
+            appendTextCommand(s, getNameVirtualPointNumber(), name);
+            appendTextCommand(s, getValueVirtualPointNumber(), value);
+        }
+    }
+
+    /** Appends the TY command describing the name or the value of the
+        primitive.
+        @param s the buffer where the command is appended.
+        @param vp the index of the virtual point where the text is placed.
+        @param text the text, or null.
+    */
+    private void appendTextCommand(StringBuilder s, int vp, String text)
+    {
+        s.append("TY ");
+        s.append(virtualPoint[vp].x);
+        s.append(' ');
+        s.append(virtualPoint[vp].y);
+        s.append(' ');
+        s.append(macroFontSize*4/3);
+        s.append(' ');
+        s.append(macroFontSize);
+        s.append(" 0 0 ");
+        s.append(getLayer());
+        s.append(' ');
+        appendFontName(s, macroFont);
+        s.append(' ');
+        s.append(text==null?"":text);
+        s.append('\n');
+    }
 
-            s2.append("TY ");
-            s2.append(virtualPoint[getNameVirtualPointNumber()].x);
-            s2.append(" ");
-            s2.append(virtualPoint[getNameVirtualPointNumber()].y);
-            s2.append(" ");
-            s2.append(macroFontSize*4/3);
-            s2.append(" ");
-            s2.append(macroFontSize);
-            s2.append(" 0 0 ");
-            s2.append(getLayer());
-            s2.append(" ");
-            s2.append(subsFont);
-            s2.append(" ");
-            s2.append(name==null?"":name);
-            s2.append("\n");
-
-            s2.append("TY ");
-            s2.append(virtualPoint[getValueVirtualPointNumber()].x);
-            s2.append(" ");
-            s2.append(virtualPoint[getValueVirtualPointNumber()].y);
-            s2.append(" ");
-            s2.append(macroFontSize*4/3);
-            s2.append(" ");
-            s2.append(macroFontSize);
-            s2.append(" 0 0 ");
-            s2.append(getLayer());
-            s2.append(" ");
-            s2.append(subsFont);
-            s2.append(" ");
-            s2.append(value==null?"":value);
-            s2.append("\n");
+    /** Appends the name of a font as it is written in the FidoCadJ format.
+        The default font is indicated with an asterisk and all spaces are
+        substituted with "++" in order to avoid problems while parsing.
+        @param s the buffer where the name is appended.
+        @param font the name of the font.
+    */
+    static void appendFontName(StringBuilder s, String font)
+    {
+        if (font.equals(Globals.defaultTextFont)) {
+            s.append('*');
+            return;
+        }
+        for (int i=0; i<font.length(); ++i) {
+            char c=font.charAt(i);
+            if(c==' ') {
+                s.append("++");
+            } else {
+                s.append(c);
+            }
         }
-        return s2.toString();
     }
 
     /** Export the name and the value text lines associated to the primitive.
@@ -571,6 +591,91 @@ public abstract class GraphicPrimitive
         changed=c;
     }
 
+    /** Tells if the primitive has been modified since the last redraw.
+        @return true if the primitive should be calculated from scratch
+            during the next redraw.
+    */
+    public boolean isChanged()
+    {
+        return changed;
+    }
+
+    /** Get a conservative bounding box of the primitive, in logical units.
+        The box contains all the control points, the name and value text
+        lines as calculated during the last redraw and everything else which
+        is taken into account by getDistanceToPoint and intersects.
+        For a point lying outside the box, getDistanceToPoint never returns
+        a value smaller than the distance between the point and the box,
+        unless it is not smaller than getDistanceFloor().
+        Override this method if the primitive extends beyond its control
+        points.
+        @return the bounding box. A new object is created at each call.
+    */
+    public RectangleG getBoundingBox()
+    {
+        int n=Math.min(getControlPointNumber(), virtualPoint.length);
+        RectangleG r=new RectangleG(virtualPoint[0].x, virtualPoint[0].y,
+            0, 0);
+
+        for(int i=1; i<n; ++i) {
+            r.add(virtualPoint[i].x, virtualPoint[i].y);
+        }
+
+        // Text lines, with the sizes in logical units calculated by drawText.
+        int nn=getNameVirtualPointNumber();
+        int vn=getValueVirtualPointNumber();
+        if(nn>=0 && nn<virtualPoint.length) {
+            r.add(virtualPoint[nn].x, virtualPoint[nn].y);
+            r.add(virtualPoint[nn].x+t_w1, virtualPoint[nn].y+t_th);
+        }
+        if(vn>=0 && vn<virtualPoint.length) {
+            r.add(virtualPoint[vn].x, virtualPoint[vn].y);
+            r.add(virtualPoint[vn].x+t_w2, virtualPoint[vn].y+t_th);
+        }
+
+        // Integer distances are truncated, and some of them are reduced by
+        // one unit: a small margin covers that.
+        r.grow(BOX_MARGIN, BOX_MARGIN);
+        return r;
+    }
+
+    /** Get the bounding box of the primitive, as returned by getBoundingBox,
+        without calculating it again at each call. The box is calculated
+        again if the primitive has been modified (changed is true) or if
+        invalidateBoundingBox has been called. The returned object should
+        not be modified.
+        @return the bounding box, in logical units.
+    */
+    public RectangleG getCachedBoundingBox()
+    {
+        if(changed || cachedBox==null) {
+            cachedBox=getBoundingBox();
+        }
+        return cachedBox;
+    }
+
+    /** Specify that the cached bounding box should be calculated again. This
+        should be done each time the primitive has been redrawn in depth,
+        since some sizes (for example the ones of the text) are calculated
+        during the redraw.
+    */
+    public void invalidateBoundingBox()
+    {
+        cachedBox=null;
+    }
+
+    /** Get the smallest value getDistanceToPoint may return for points
+        lying far away from the bounding box. Distances are calculated in
+        an approximate way and saturated when the point is far from the
+        primitive, so this value is GeometricDistances.MIN_DISTANCE for most
+        primitives. Override this method if getDistanceToPoint reduces it.
+        @return the floor value, in logical units.
+    */
+    public int getDistanceFloor()
+    {
+        return GeometricDistances.MIN_DISTANCE;
+    }
+
     /** Get the first control point of the primitive
         @return the coordinates of the first control point of the object.
     */
@@ -1084,7 +1189,21 @@ public abstract class GraphicPrimitive
             extensions over the original FidoCad format.
         @return the FIDOCAD command line.
     */
-    public abstract String toString(boolean extensions);
+    public String toString(boolean extensions)
+    {
+        StringBuilder s=new StringBuilder(64);
+        appendText(s, extensions);
+        return s.toString();
+    }
+
+    /** Append the string command description of the primitive to the
+        given buffer. This avoids creating temporary strings when a whole
+        drawing is written.
+        @param s the buffer where the FIDOCAD command lines are appended.
+        @param extensions produce a string eventually containing FidoCadJ
+            extensions over the original FidoCad format.
+    */
+    public abstract void appendText(StringBuilder s, boolean extensions);
 
     /** Each graphic primitive should call the appropriate exporting method
         of the export interface specified.
@@ -1180,6 +1299,19 @@ public abstract class GraphicPrimitive
         return sb;
     }
 
+    /** Append a value rounded as done by roundIntelligently.
+        @param s the buffer where the value is appended.
+        @param v the value to be rounded.
+    */
+    protected static void appendRounded(StringBuilder s, double v)
+    {
+        if(Math.abs(v-Math.round(v))<INT_TOLERANCE) {
+            s.append((int)Math.round(v));
+        } else {
+            s.append(v);
+        }
+    }
+
     /**
      * Determines if the virtual points are fully contained within the specified
      * rectangle based on the selection direction.
@@ -1,4 +1,6 @@
 package fidocadj.primitives;
+
+import java.util.*;
 /** Class MacroDesc provides a standard description of the macro. It provides
     its name, its description and its category
 
@@ -36,6 +38,10 @@ public class MacroDesc
     // when an existing library is already present with a different filename.
     // This is a legacy from previous versions of FidoCadJ.
 
+    // The parsed descriptions, shared by all the instances of the macro
+    // drawn with the same library and layers (see MacroTemplate.get).
+    final List<MacroTemplate> templates=new ArrayList<MacroTemplate>(1);
+
     /** Standard constructor. Give the macro's name, description and category.
         @param ke the key to be used.
         @param na the name of the macro.
@@ -56,6 +62,25 @@ public class MacroDesc
         level = 0;
     }
 
+    /** Copy a library. The macros of the copy can be parsed and drawn
+        independently from the original ones, for example by another thread.
+        @param lib the library.
+        @return the copy.
+    */
+    public static Map<String, MacroDesc> copyLibrary(
+        Map<String, MacroDesc> lib)
+    {
+        Map<String, MacroDesc> copy=new TreeMap<String, MacroDesc>();
+        for(Map.Entry<String, MacroDesc> e : lib.entrySet()) {
+            MacroDesc md=e.getValue();
+            MacroDesc c=new MacroDesc(md.key, md.name, md.description,
+                md.category, md.library, md.filename);
+            c.level=md.level;
+            copy.put(e.getKey(), c);
+        }
+        return copy;
+    }
+
     /** Provide a text describing the macro, usually for debug purposes.
         @return the description.
     */
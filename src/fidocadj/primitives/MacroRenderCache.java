@@ -0,0 +1,247 @@
+package fidocadj.primitives;
+
+import java.util.*;
+
+import fidocadj.globals.Globals;
+import fidocadj.graphic.BitmapInterface;
+import fidocadj.layers.LayerDesc;
+
+/** Cache of the images obtained by drawing the contents of the macros (see
+    PrimitiveMacro). All the instances of a macro having the same
+    orientation, mirroring and zoom share the same image, provided that the
+    layers have the same appearance. The least recently used images are
+    discarded when the total memory employed exceeds a given limit.
+
+    <pre>
+
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+    </pre>
+
+    @author Davide Bucci
+*/
+public final class MacroRenderCache
+{
+    // Default memory limit, in bytes.
+    private static final long DEFAULT_MAX_MEMORY=32L*1024L*1024L;
+
+    /** Identify the image of a macro.
+    */
+    static final class Key
+    {
+        private final MacroTemplate template;
+        private final int orientation;
+        private final boolean mirror;
+        private final double xMagnitude;
+        private final double yMagnitude;
+        private final double xPhase;
+        private final double yPhase;
+        private final int drawOnlyLayer;
+        private final boolean drawOnlyPads;
+        private final long[] appearance;
+        private final int hash;
+
+        /** Standard constructor.
+            @param t the template of the macro.
+            @param o the orientation, including the one of the drawing.
+            @param m the mirroring, including the one of the drawing.
+            @param xm the horizontal magnitude.
+            @param ym the vertical magnitude.
+            @param xp the fractional part of the x coordinate of the
+                reference point, in pixels.
+            @param yp the fractional part of the y coordinate of the
+                reference point, in pixels.
+            @param l the layer being drawn.
+            @param p true if only the pads are being drawn.
+            @param a the appearance of the layers (see getAppearance).
+        */
+        Key(MacroTemplate t, int o, boolean m, double xm, double ym,
+            double xp, double yp, int l, boolean p, long[] a)
+        {
+            template=t;
+            orientation=o;
+            mirror=m;
+            xMagnitude=xm;
+            yMagnitude=ym;
+            xPhase=xp;
+            yPhase=yp;
+            drawOnlyLayer=l;
+            drawOnlyPads=p;
+            appearance=a;
+            hash=Objects.hash(System.identityHashCode(t), o, m, xm, ym, xp,
+                yp, l, p, Arrays.hashCode(a));
+        }
+
+        @Override public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override public boolean equals(Object obj)
+        {
+            if(!(obj instanceof Key)) {
+                return false;
+            }
+            Key k=(Key)obj;
+            return template==k.template && orientation==k.orientation
+                && mirror==k.mirror && xMagnitude==k.xMagnitude
+                && yMagnitude==k.yMagnitude && xPhase==k.xPhase
+                && yPhase==k.yPhase && drawOnlyLayer==k.drawOnlyLayer
+                && drawOnlyPads==k.drawOnlyPads
+                && Arrays.equals(appearance, k.appearance);
+        }
+    }
+
+    /** An image, with the information needed to use it in place of the
+        drawing of the macro contents.
+    */
+    static final class Entry
+    {
+        // The image.
+        final BitmapInterface bitmap;
+        // Position of the top left corner of the image, with respect to the
+        // integer part of the coordinates of the reference point.
+        final int dx;
+        final int dy;
+        // True if the contents of the macro need holes.
+        final boolean needHoles;
+        // The extremes of the drawing (relative to the reference point), or
+        // null if nothing has been drawn.
+        final int[] extremes;
+
+        /** Standard constructor.
+            @param b the image.
+            @param x the x position of the image.
+            @param y the y position of the image.
+            @param h true if holes are needed.
+            @param e the extremes of the drawing.
+        */
+        Entry(BitmapInterface b, int x, int y, boolean h, int[] e)
+        {
+            bitmap=b;
+            dx=x;
+            dy=y;
+            needHoles=h;
+            extremes=e;
+        }
+
+        /** Get the memory employed by the image.
+            @return the size in bytes.
+        */
+        long getSize()
+        {
+            return 4L*bitmap.getWidth()*bitmap.getHeight();
+        }
+    }
+
+    private static final Map<Key, Entry> entries=
+        new LinkedHashMap<Key, Entry>(64, 0.75f, true);
+    private static long maxMemory=DEFAULT_MAX_MEMORY;
+    private static long usedMemory;
+
+    /** Private constructor, as this class contains only static members.
+    */
+    private MacroRenderCache()
+    {
+    }
+
+    /** Describe the appearance of the layers and the sizes of the elements
+        which are taken from the global settings.
+        @param layerV the layers.
+        @return the description.
+    */
+    static long[] getAppearance(List<?> layerV)
+    {
+        long[] a=new long[3*layerV.size()+3];
+        int i=0;
+        for(Object o: layerV) {
+            LayerDesc l=(LayerDesc)o;
+            a[i++]=l.isVisible()?1:0;
+            a[i++]=l.getColor().getRGB();
+            a[i++]=Float.floatToIntBits(l.getAlpha());
+        }
+        a[i++]=Double.doubleToLongBits(Globals.getLineWidth());
+        a[i++]=Double.doubleToLongBits(Globals.getLineWidthCircles());
+        a[i]=Double.doubleToLongBits(Globals.getDiameterConnection());
+        return a;
+    }
+
+    /** Get an image from the cache.
+        @param k the key identifying the image.
+        @return the image, or null if it is not available.
+    */
+    static synchronized Entry get(Key k)
+    {
+        return entries.get(k);
+    }
+
+    /** Store an image in the cache. The least recently used images are
+        discarded if the memory limit is exceeded.
+        @param k the key identifying the image.
+        @param e the image.
+    */
+    static synchronized void put(Key k, Entry e)
+    {
+        Entry old=entries.put(k, e);
+        if(old!=null) {
+            usedMemory-=old.getSize();
+        }
+        usedMemory+=e.getSize();
+        trim();
+    }
+
+    /** Check if an image of the given size may be stored in the cache.
+        @param width the width of the image in pixels.
+        @param height the height of the image in pixels.
+        @return true if the image is small enough.
+    */
+    static synchronized boolean fits(int width, int height)
+    {
+        // A single image should not take too much of the cache.
+        return 4L*width*height<=maxMemory/8;
+    }
+
+    /** Set the maximum memory which can be employed by the cache.
+        @param m the size in bytes.
+    */
+    public static synchronized void setMaxMemory(long m)
+    {
+        maxMemory=m;
+        trim();
+    }
+
+    /** Discard all the images.
+    */
+    public static synchronized void clear()
+    {
+        entries.clear();
+        usedMemory=0;
+    }
+
+    /** Discard the least recently used images until the memory limit is
+        respected.
+    */
+    private static void trim()
+    {
+        Iterator<Entry> i=entries.values().iterator();
+        while(usedMemory>maxMemory && i.hasNext()) {
+            usedMemory-=i.next().getSize();
+            i.remove();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package fidocadj.primitives;
+
+import java.util.*;
+
+import fidocadj.circuit.controllers.ParserActions;
+import fidocadj.circuit.controllers.SelectionActions;
+import fidocadj.circuit.model.DrawingModel;
+import fidocadj.circuit.views.Drawing;
+import fidocadj.layers.LayerDesc;
+
+/** Parsed contents of a macro, shared by all the instances of the macro
+    (see PrimitiveMacro). Each instance only keeps its own position,
+    orientation, name and value: the template is parsed once and stored in
+    the MacroDesc object describing the macro. A template is shared only
+    by the instances employing the same library and the same list of
+    layers (for example, the ones of the same drawing), since the layers
+    are stored in the parsed drawing.
+
+    The primitives of the template keep in cache the coordinates calculated
+    when they are drawn. For this reason, the template is always drawn by
+    the same view (see getDrawing): the coordinates are calculated again
+    only when an instance is drawn with a different zoom, orientation or
+    mirroring, or at a position which is not a whole number of pixels away
+    from the one of the instance drawn before.
+
+    When the libraries are modified, all the templates are discarded and
+    will be parsed again when needed (see invalidateAll).
+
+    <pre>
+
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+    </pre>
+
+    @author Davide Bucci
+*/
+public final class MacroTemplate
+{
+    // Incremented each time the libraries are modified.
+    private static int libraryVersion;
+
+    // Maximum number of templates kept for each macro, for example one for
+    // each open window. The least recently used one is discarded.
+    private static final int MAX_TEMPLATES=8;
+
+    private final DrawingModel model;
+    private final String description;
+    private final int version;
+
+    // The view employed to draw the template.
+    private final Drawing drawing;
+    private boolean selected;
+
+    /** Create a template, parsing the given description.
+        @param desc the description of the macro.
+        @param lib the library to be used for the macros contained in the
+            description.
+        @param layers the layers to be used.
+        @param v the version of the libraries.
+    */
+    private MacroTemplate(String desc, Map<String, MacroDesc> lib,
+        List<LayerDesc> layers, int v)
+    {
+        description=desc;
+        version=v;
+        model=new DrawingModel();
+        model.setLibrary(lib);          // Inherit the library
+        model.setLayers(layers);        // Inherit the layers
+
+        ParserActions pa = new ParserActions(model);
+        pa.parseString(new StringBuffer(desc));
+        drawing=new Drawing(model);
+    }
+
+    /** Get the template of the given macro for the given library and
+        layers. The template is parsed only if it is not available or if it
+        is not up to date.
+        @param md the macro.
+        @param lib the library containing the macro.
+        @param layers the layers to be used.
+        @return the template.
+    */
+    public static MacroTemplate get(MacroDesc md, Map<String, MacroDesc> lib,
+        List<LayerDesc> layers)
+    {
+        int v=getLibraryVersion();
+        synchronized(md) {
+            List<MacroTemplate> l=md.templates;
+            for(int i=l.size()-1; i>=0; --i) {
+                MacroTemplate t=l.get(i);
+                if(t.version!=v || !t.description.equals(md.description)) {
+                    // Obsolete template.
+                    l.remove(i);
+                } else if(t.model.getLibrary()==lib
+                    && t.model.getLayers()==layers)
+                {
+                    // The most recently used templates are at the end.
+                    l.remove(i);
+                    l.add(t);
+                    return t;
+                }
+            }
+            if(l.size()>=MAX_TEMPLATES) {
+                l.remove(0);
+            }
+            MacroTemplate t=new MacroTemplate(md.description, lib, layers, v);
+            l.add(t);
+            return t;
+        }
+    }
+
+    /** Discard all the templates. This should be called each time the
+        libraries are modified.
+    */
+    public static synchronized void invalidateAll()
+    {
+        ++libraryVersion;
+        MacroRenderCache.clear();
+    }
+
+    /** Get the current version of the libraries. It changes each time the
+        libraries are modified (see invalidateAll).
+        @return the version number.
+    */
+    public static synchronized int getLibraryVersion()
+    {
+        return libraryVersion;
+    }
+
+    /** Get the drawing containing the primitives of the template. It should
+        not be modified (its layers in particular, which are shared by all
+        the instances).
+        @return the drawing.
+    */
+    public DrawingModel getModel()
+    {
+        return model;
+    }
+
+    /** Get the view employed to draw the template. All the instances should
+        draw the template with it, so that it knows with which coordinate
+        mapping the coordinates kept in cache have been calculated.
+        @return the view.
+    */
+    public Drawing getDrawing()
+    {
+        return drawing;
+    }
+
+    /** Select or deselect the contents of the template.
+        @param sel true if the contents of the macro should be selected.
+    */
+    public void select(boolean sel)
+    {
+        if(sel!=selected) {
+            new SelectionActions(model).setSelectionAll(sel);
+            selected=sel;
+        }
+    }
+}
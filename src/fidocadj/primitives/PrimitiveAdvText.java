@@ -389,25 +389,14 @@ public final class PrimitiveAdvText extends GraphicPrimitive
     }
 
     /**
-     Gets the distance (in primitive's coordinates space) between a
-     given point and the primitive.
-     When it is reasonable, the behaviour can be binary (polygons,
-     ovals...). In other cases (lines, points), it can be proportional.
-
-     @param px the x coordinate of the given point.
-     @param py the y coordinate of the given point.
-
-     @return the distance in logical units.
+     Calculates the area of the text which is active for the mouse, in
+     logical units. This calculation takes a lot of time, since we need to
+     obtain the size of the font used, calculate the area and so on. For this
+     reason, we make it only when necessary, by exploiting exactly the same
+     principle of the optimized drawing routines.
      */
-    @Override
-    public int getDistanceToPoint(int px, int py)
+    private void updateSelectionArea()
     {
-        // This calculation takes a lot of time, since we need to obtain the
-        // size of the font used, calculate the area which is active for the
-        // mouse and so on. For this reason, we make it only when necessary,
-        // by exploiting exactly the same principle of the optimized drawing
-        // routines.
-
         if (changed || recalcSize) {
             if (changed) {
                 GraphicsNull gSCI = new GraphicsNull();
@@ -472,6 +461,59 @@ public final class PrimitiveAdvText extends GraphicPrimitive
                 ypSCI[3] = (int) (yaSCI - wSCI * si);
             }
         }
+    }
+
+    /**
+     Get a conservative bounding box of the primitive, in logical units.
+     Both the area active for the mouse and the one employed for the
+     rectangular selection are taken into account.
+
+     @return the bounding box.
+     */
+    @Override
+    public RectangleG getBoundingBox()
+    {
+        RectangleG r = super.getBoundingBox();
+
+        updateSelectionArea();
+        if (orientationSCI == 0) {
+            r.add(xaSCI + wSCI, yaSCI + thSCI);
+        } else {
+            for (int i = 0; i < 4; ++i) {
+                r.add(xpSCI[i], ypSCI[i]);
+            }
+        }
+
+        // Text area employed by intersects.
+        GraphicsNull g = new GraphicsNull();
+        g.setFont(fontName, (int) (six * 12.0 / 7.0 + .5),
+                (sty & TEXT_ITALIC) != 0, (sty & TEXT_BOLD) != 0);
+        int ext = Math.abs(g.getStringWidth(txt)) + g.getFontAscent()
+                + g.getFontDescent();
+        RectangleG t = new RectangleG(virtualPoint[0].x, virtualPoint[0].y,
+                0, 0);
+        t.grow(ext, ext);
+        r.add(t);
+
+        r.grow(BOX_MARGIN, BOX_MARGIN);
+        return r;
+    }
+
+    /**
+     Gets the distance (in primitive's coordinates space) between a
+     given point and the primitive.
+     When it is reasonable, the behaviour can be binary (polygons,
+     ovals...). In other cases (lines, points), it can be proportional.
+
+     @param px the x coordinate of the given point.
+     @param py the y coordinate of the given point.
+
+     @return the distance in logical units.
+     */
+    @Override
+    public int getDistanceToPoint(int px, int py)
+    {
+        updateSelectionArea();
 
         if (orientationSCI == 0) {
             if (GeometricDistances.pointInRectangle(Math.min(xaSCI,
@@ -658,39 +700,25 @@ public final class PrimitiveAdvText extends GraphicPrimitive
         recalcSize = true;
     }
 
-    /**
-     Obtain a string command descripion of the primitive.
-
-     @param extensions true if the FidoCadJ extensions to the old
-     FidoCAD formad should be taken into account.
-
-     @return the FidoCad code corresponding to the primitive.
-     */
+    /** Append the string command description of the primitive.
+        @param s the buffer where the FIDOCAD command lines are appended.
+        @param extensions true if FidoCadJ extensions to the old FidoCAD format
+            should be active.
+    */
     @Override
-    public String toString(boolean extensions)
+    public void appendText(StringBuilder s, boolean extensions)
     {
-        String subsFont;
-
+        s.append("TY ");
+        s.append(virtualPoint[0].x).append(' ');
+        s.append(virtualPoint[0].y).append(' ');
+        s.append(siy).append(' ');
+        s.append(six).append(' ');
+        s.append(o).append(' ');
+        s.append(sty).append(' ');
+        s.append(getLayer()).append(' ');
         // The standard font is indicated with an asterisk
-        if (fontName.equals(Globals.defaultTextFont)) {
-            subsFont = "*";
-        } else {
-            StringBuffer s = new StringBuffer("");
-            // All spaces are substituted with "++" in order to avoid problems
-            // while parsing.
-            for (int i = 0; i < fontName.length(); ++i) {
-                if (fontName.charAt(i) == ' ') {
-                    s.append("++");
-                } else {
-                    s.append(fontName.charAt(i));
-                }
-            }
-            subsFont = s.toString();
-        }
-
-        return "TY " + virtualPoint[0].x + " " + virtualPoint[0].y +
-                " " + siy + " " + six + " " + o + " " + sty + " " +
-                getLayer() + " " + subsFont + " " + txt + "\n";
+        appendFontName(s, fontName);
+        s.append(' ').append(txt).append('\n');
     }
 
     /**
@@ -52,6 +52,8 @@ public final class PrimitiveBezier extends GraphicPrimitive
     // Basically, they are calculated once and then used as much as possible
     // without having to calculate everything from scratch.
     private ShapeInterface shape1;
+    // The kind of graphic context which created shape1.
+    private Class<?> shapeContext;
     private float w;
 
     private int xmin;
@@ -203,7 +205,7 @@ public final class PrimitiveBezier extends GraphicPrimitive
 
         if(changed) {
             // Calculating stroke width
-            w = (float)(Globals.lineWidth*coordSys.getXMagnitude());
+            w = (float)(Globals.getLineWidth()*coordSys.getXMagnitude());
             if (w<D_MIN) { w=D_MIN; }
         }
         // Apply the stroke style
@@ -234,8 +236,12 @@ public final class PrimitiveBezier extends GraphicPrimitive
 
         // in the Bézier primitive, the four virtual points represent
         // the control points of the shape.
-        if (changed) {
+        // The cached shape is created again if it comes from another kind
+        // of graphic context (for example, if the primitive has been
+        // calculated with GraphicsNull without being drawn).
+        if (changed || shapeContext!=g.getClass()) {
             changed=false;
+            shapeContext=g.getClass();
 
             shape1=g.createShape();
             // Create the Bézier curve
@@ -433,35 +439,46 @@ public final class PrimitiveBezier extends GraphicPrimitive
                 p3.x, p3.y, px,  py);
     }
 
-    /** Obtain a string command descripion of the primitive.
+    /** Get a conservative bounding box of the primitive, in logical units.
+        The arrows are taken into account.
+        @return the bounding box.
+    */
+    @Override
+    public RectangleG getBoundingBox()
+    {
+        RectangleG r=super.getBoundingBox();
+        int ext=arrowData.getArrowExtension();
+        r.grow(ext, ext);
+        return r;
+    }
+
+    /** Append the string command description of the primitive.
+        @param s the buffer where the FIDOCAD command lines are appended.
         @param extensions true if FidoCadJ extensions to the old FidoCAD format
             should be active.
-        @return the FIDOCAD command line.
     */
-    public String toString(boolean extensions)
+    public void appendText(StringBuilder s, boolean extensions)
     {
-        String s = "BE "+virtualPoint[0].x+" "+virtualPoint[0].y+" "+
-            +virtualPoint[1].x+" "+virtualPoint[1].y+" "+
-            +virtualPoint[2].x+" "+virtualPoint[2].y+" "+
-            +virtualPoint[3].x+" "+virtualPoint[3].y+" "+
-            getLayer()+"\n";
+        s.append("BE ");
+        for(int i=0; i<4; ++i) {
+            s.append(virtualPoint[i].x).append(' ');
+            s.append(virtualPoint[i].y).append(' ');
+        }
+        s.append(getLayer()).append('\n');
 
         if(extensions && (arrowData.atLeastOneArrow()|| dashStyle>0 ||
                 hasName() || hasValue()))
         {
-            String text = "0";
+            s.append("FCJ ");
+            arrowData.appendArrowTokens(s);
+            s.append(' ').append(dashStyle).append(' ');
             // We take into account that there may be some text associated
             // to that primitive.
-            if (name.length()!=0 || value.length()!=0) {
-                text = "1";
-            }
-            s+="FCJ "+arrowData.createArrowTokens()+" "+dashStyle+
-                " "+text+"\n";
+            s.append(name.length()!=0 || value.length()!=0 ? '1' : '0');
+            s.append('\n');
         }
         // The false is needed since saveText should not write the FCJ tag.
-        s+=saveText(false);
-
-        return s;
+        saveText(s, false);
     }
 
     /** Export the primitive on a vector graphic format.
@@ -487,7 +504,7 @@ public final class PrimitiveBezier extends GraphicPrimitive
                        arrowData.getArrowStyle(),
                        (int)(arrowData.getArrowLength()*cs.getXMagnitude()),
                        (int)(arrowData.getArrowHalfWidth()*cs.getXMagnitude()),
-                       dashStyle,Globals.lineWidth*cs.getXMagnitude());
+                       dashStyle,Globals.getLineWidth()*cs.getXMagnitude());
     }
 
     /** Get the number of the virtual point associated to the Name property
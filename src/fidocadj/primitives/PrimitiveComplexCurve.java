@@ -85,6 +85,8 @@ public final class PrimitiveComplexCurve
     // without having to calculate everything from scratch.
     private float w;
     private ShapeInterface gp;
+    // The kind of graphic context which created p, q and gp.
+    private Class<?> shapeContext;
 
     /** Gets the number of control points used.
         @return the number of points used by the primitive.
@@ -568,7 +570,10 @@ public final class PrimitiveComplexCurve
         }
         drawText(g, coordSys, layerV, -1);
 
-        if(changed) {
+        // The cached shape is created again if it comes from another kind
+        // of graphic context (for example, if the primitive has been
+        // calculated with GraphicsNull without being drawn).
+        if(changed || shapeContext!=g.getClass()) {
             changed=false;
 
             // Important: notice that createComplexCurve has some important
@@ -592,6 +597,7 @@ public final class PrimitiveComplexCurve
             if(q==null) { return; }
 
             gp = g.createShape();
+            shapeContext=g.getClass();
             gp.createGeneralPath(q.getNpoints());
 
             gp.moveTo((float)pp.get(0).x, (float)pp.get(0).y);
@@ -624,7 +630,7 @@ public final class PrimitiveComplexCurve
 
             if (isClosed) { gp.closePath(); }
 
-            w = (float)(Globals.lineWidth*coordSys.getXMagnitude());
+            w = (float)(Globals.getLineWidth()*coordSys.getXMagnitude());
             if (w<D_MIN) { w=D_MIN; }
         }
 
@@ -923,59 +929,74 @@ public final class PrimitiveComplexCurve
         return distance;
     }
 
-    /** Obtain a string command descripion of the primitive.
+    /** Get a conservative bounding box of the primitive, in logical units.
+        The curve calculated during the last redraw and the arrows are taken
+        into account.
+        @return the bounding box.
+    */
+    @Override
+    public RectangleG getBoundingBox()
+    {
+        RectangleG r=super.getBoundingBox();
+        if(q!=null) {
+            int[] xpoints=q.getXpoints();
+            int[] ypoints=q.getYpoints();
+            for(int i=0; i<q.getNpoints(); ++i) {
+                r.add(xpoints[i], ypoints[i]);
+            }
+        }
+        int ext=arrowData.getArrowExtension();
+        r.grow(ext, ext);
+        return r;
+    }
+
+    /** Append the string command description of the primitive.
+        @param s the buffer where the FIDOCAD command lines are appended.
         @param extensions true if FidoCadJ extensions to the old FidoCAD format
             should be active.
-        @return the FidoCadJ command line.
     */
-    public String toString(boolean extensions)
+    public void appendText(StringBuilder s, boolean extensions)
     {
         // A single point curve without anything is not worth converting.
         if (name.length()==0 && value.length()==0 && nPoints==1) {
-            return "";
+            return;
         }
 
-        StringBuffer temp=new StringBuffer(25);
-
         if(isFilled) {
-            temp.append("CP ");
+            s.append("CP ");
         } else {
-            temp.append("CV ");
+            s.append("CV ");
         }
 
         if(isClosed) {
-            temp.append("1 ");
+            s.append("1 ");
         } else {
-            temp.append("0 ");
+            s.append("0 ");
         }
 
         for(int i=0; i<nPoints;++i) {
-            temp.append(virtualPoint[i].x);
-            temp.append(" ");
-            temp.append(virtualPoint[i].y);
-            temp.append(" ");
+            s.append(virtualPoint[i].x);
+            s.append(' ');
+            s.append(virtualPoint[i].y);
+            s.append(' ');
         }
 
-        temp.append(getLayer());
-        temp.append("\n");
-
-        String cmd=temp.toString();
+        s.append(getLayer());
+        s.append('\n');
 
         if(extensions && (arrowData.atLeastOneArrow() || dashStyle>0 ||
             hasName() || hasValue()))
         {
-            String text = "0";
+            s.append("FCJ ");
+            arrowData.appendArrowTokens(s);
+            s.append(' ').append(dashStyle).append(' ');
             // We take into account that there may be some text associated
             // to that primitive.
-            if (name.length()!=0 || value.length()!=0) {
-                text = "1";
-            }
-            cmd+="FCJ "+arrowData.createArrowTokens()+" "+dashStyle+" "
-                +text+"\n";
+            s.append(name.length()!=0 || value.length()!=0 ? '1' : '0');
+            s.append('\n');
         }
         // The false is needed since saveText should not write the FCJ tag.
-        cmd+=saveText(false);
-        return cmd;
+        saveText(s, false);
     }
 
     /** Export the primitive on a vector graphic format.
@@ -1012,7 +1033,7 @@ public final class PrimitiveComplexCurve
                 arrowData.getArrowStyle(),
                 (int)(arrowData.getArrowLength()*cs.getXMagnitude()),
                 (int)(arrowData.getArrowHalfWidth()*cs.getXMagnitude()),
-                dashStyle, Globals.lineWidth*cs.getXMagnitude()))
+                dashStyle, Globals.getLineWidth()*cs.getXMagnitude()))
         {
             exportAsPolygonInterface(xPoints, yPoints, vertices, exp, cs);
 
@@ -1133,7 +1154,7 @@ public final class PrimitiveComplexCurve
         if (isClosed) {
             exp.exportPolygon(vertices, xx.length*STEPS+1, isFilled,
                 getLayer(),
-                dashStyle, Globals.lineWidth*cs.getXMagnitude());
+                dashStyle, Globals.getLineWidth()*cs.getXMagnitude());
         } else {
             float phase=0;
             for(i=1; i<xx.length*STEPS+1;++i){
@@ -1146,7 +1167,7 @@ public final class PrimitiveComplexCurve
                        false, false,
                        0, 0, 0,
                        dashStyle,
-                       Globals.lineWidth*cs.getXMagnitude());
+                       Globals.getLineWidth()*cs.getXMagnitude());
                 phase+=Math.sqrt(Math.pow(vertices[i-1].x-vertices[i].x,2)+
                     Math.pow(vertices[i-1].y-vertices[i].y,2));
             }
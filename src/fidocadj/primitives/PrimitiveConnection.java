@@ -115,13 +115,13 @@ public final class PrimitiveConnection
             y1=virtualPoint[0].y;
 
             nn=Math.abs(coordSys.mapXr(0,0)-
-                coordSys.mapXr(10,10))*Globals.diameterConnection/10.0;
+                coordSys.mapXr(10,10))*Globals.getDiameterConnection()/10.0;
 
 
             // a little boost for small zooms :-)
             if (nn<2.0) {
                 nn=(int)(Math.abs(coordSys.mapXr(0,0)-
-                    coordSys.mapXr(20,20))*Globals.diameterConnection/12);
+                    coordSys.mapXr(20,20))*Globals.getDiameterConnection()/12);
             }
 
             xa1=(int)Math.round(coordSys.mapX(x1,y1)-nn/2.0);
@@ -134,7 +134,7 @@ public final class PrimitiveConnection
                 ni=1;
             }
 
-            w = (float)(Globals.lineWidth*coordSys.getXMagnitude());
+            w = (float)(Globals.getLineWidth()*coordSys.getXMagnitude());
             if (w<D_MIN) { w=D_MIN; }
         }
 
@@ -212,25 +212,33 @@ public final class PrimitiveConnection
                 px,py)-1;
     }
 
-    /** Obtain a string command descripion of the primitive.
+    /** Get the smallest value getDistanceToPoint may return for points
+        lying far away from the bounding box. The distance from the center
+        is reduced by one unit.
+        @return the floor value, in logical units.
+    */
+    @Override
+    public int getDistanceFloor()
+    {
+        return GeometricDistances.MIN_DISTANCE-1;
+    }
+
+    /** Append the string command description of the primitive.
+        @param s the buffer where the FIDOCAD command lines are appended.
         @param extensions true if FidoCadJ extensions to the old FidoCAD format
             should be active.
-        @return the FIDOCAD command line.
     */
-    public String toString(boolean extensions)
+    public void appendText(StringBuilder s, boolean extensions)
     {
-        StringBuffer s=new StringBuffer(100);
         s.append("SA ");
         s.append(virtualPoint[0].x);
-        s.append(" ");
+        s.append(' ');
         s.append(virtualPoint[0].y);
-        s.append(" ");
+        s.append(' ');
         s.append(getLayer());
-        s.append("\n");
-
-        s.append(saveText(extensions));
+        s.append('\n');
 
-        return s.toString();
+        saveText(s, extensions);
     }
 
     /** Export the primitive on a vector graphic format.
@@ -245,7 +253,7 @@ public final class PrimitiveConnection
         exportText(exp, cs, -1);
         exp.exportConnection(cs.mapX(virtualPoint[0].x,virtualPoint[0].y),
                        cs.mapY(virtualPoint[0].x,virtualPoint[0].y), getLayer(),
-                       Globals.diameterConnection*cs.getXMagnitude());
+                       Globals.getDiameterConnection()*cs.getXMagnitude());
     }
 
     /** Get the number of the virtual point associated to the Name property
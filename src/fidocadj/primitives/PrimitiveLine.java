@@ -221,7 +221,7 @@ public final class PrimitiveLine extends GraphicPrimitive
             // Calculate the width of the stroke in pixel. It should not
             // make our lines disappear, even at very small zoom ratios.
             // So we put a limit D_MIN.
-            w = (float)(Globals.lineWidth*coordSys.getXMagnitude());
+            w = (float)(Globals.getLineWidth()*coordSys.getXMagnitude());
             if (w<D_MIN) { w=D_MIN; }
 
             // Calculate the square of the length in pixel.
@@ -378,43 +378,56 @@ public final class PrimitiveLine extends GraphicPrimitive
                 px,py);
     }
 
-    /** Obtain a string command descripion of the primitive.
+    /** Get a conservative bounding box of the primitive, in logical units.
+        The arrows are taken into account.
+        @return the bounding box.
+    */
+    @Override
+    public RectangleG getBoundingBox()
+    {
+        RectangleG r=super.getBoundingBox();
+        int ext=arrowData.getArrowExtension();
+        r.grow(ext, ext);
+        return r;
+    }
+
+    /** Append the string command description of the primitive.
+        @param s the buffer where the FIDOCAD command lines are appended.
         @param extensions true if FidoCadJ extensions to the old FidoCAD format
             should be active.
-        @return the FIDOCAD command line.
     */
-    public String toString(boolean extensions)
+    public void appendText(StringBuilder s, boolean extensions)
     {
         // A single point line without anything is not worth converting.
         if (name.length()==0 && value.length()==0 &&
             virtualPoint[0].x==virtualPoint[1].x &&
             virtualPoint[0].y==virtualPoint[1].y)
         {
-            return "";
+            return;
         }
 
-        String s= "LI "+virtualPoint[0].x+" "+virtualPoint[0].y+" "+
-            +virtualPoint[1].x+" "+virtualPoint[1].y+" "+
-            getLayer()+"\n";
+        s.append("LI ");
+        s.append(virtualPoint[0].x).append(' ');
+        s.append(virtualPoint[0].y).append(' ');
+        s.append(virtualPoint[1].x).append(' ');
+        s.append(virtualPoint[1].y).append(' ');
+        s.append(getLayer()).append('\n');
 
         if(extensions && (arrowData.atLeastOneArrow() || dashStyle>0 ||
             name!=null && name.length()!=0) ||
             value!=null && value.length()!=0)
         {
-            String text = "0";
+            s.append("FCJ ");
+            arrowData.appendArrowTokens(s);
+            s.append(' ').append(dashStyle).append(' ');
             // We take into account that there may be some text associated
             // to that primitive.
-            if (hasName() || hasValue()) {
-                text = "1";
-            }
-            s+="FCJ "+arrowData.createArrowTokens()+" "+dashStyle+
-                " "+text+"\n";
+            s.append(hasName() || hasValue() ? '1' : '0');
+            s.append('\n');
         }
 
         // The false is needed since saveText should not write the FCJ tag.
-        s+=saveText(false);
-
-        return s;
+        saveText(s, false);
     }
 
     /** Export the primitive on a vector graphic format.
@@ -437,7 +450,7 @@ public final class PrimitiveLine extends GraphicPrimitive
                        (int)(arrowData.getArrowLength()*cs.getXMagnitude()),
                        (int)(arrowData.getArrowHalfWidth()*cs.getXMagnitude()),
                        dashStyle,
-                       Globals.lineWidth*cs.getXMagnitude());
+                       Globals.getLineWidth()*cs.getXMagnitude());
     }
 
     /** Get the number of the virtual point associated to the Name property
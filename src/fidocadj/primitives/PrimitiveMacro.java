@@ -7,10 +7,12 @@ import fidocadj.dialogs.controls.ParameterDescription;
 import fidocadj.export.ExportInterface;
 import fidocadj.geom.MapCoordinates;
 import fidocadj.globals.Globals;
+import fidocadj.graphic.BitmapInterface;
 import fidocadj.graphic.GraphicsInterface;
+import fidocadj.graphic.PointG;
+import fidocadj.graphic.RectangleG;
 import fidocadj.circuit.controllers.SelectionActions;
 import fidocadj.circuit.controllers.EditorActions;
-import fidocadj.circuit.controllers.ParserActions;
 import fidocadj.circuit.model.DrawingModel;
 import fidocadj.circuit.views.Drawing;
 import fidocadj.circuit.views.Export;
@@ -46,25 +48,34 @@ public final class PrimitiveMacro extends GraphicPrimitive
 {
     static final int N_POINTS=3;
     private final Map<String, MacroDesc> library;
-    private final List<LayerDesc> layers;
+    private List<LayerDesc> layers;
     private int o;              // Macro orientation
     private boolean m;          // Macro mirroring
     private boolean drawOnlyPads;
     private int drawOnlyLayer;
     private boolean alreadyExported;
     private DrawingModel macro;
+    private MacroTemplate template;
+    private MacroDesc source;   // The macro described, or null if empty
     private final MapCoordinates macroCoord;
-    private boolean selected;
     private String macroName;
     private String macroDesc;
     private boolean exportInvisible;
 
-    private Drawing drawingAgent;
+    private boolean needHoles;
+
+    // Margin (in pixels) added around the cached images of the contents.
+    private static final int BITMAP_MARGIN=2;
 
     // Stored data for caching
     private int x1;             // NOPMD
     private int y1;             // NOPMD
 
+    // Extents of the contents in pixels (xmin, ymin, xmax, ymax), when the
+    // macro is drawn as a rectangle. It is null if they should be
+    // calculated again.
+    private int[] outline;
+
     /** Some layers may be shown or hidden by the user. Therefore, in some
         cases they may be exported or not. Set if invisible layers should be
         exported.
@@ -98,13 +109,12 @@ public final class PrimitiveMacro extends GraphicPrimitive
         layers=l;
         drawOnlyPads=false;
         drawOnlyLayer=-1;
-        macro=new DrawingModel();
         macroCoord=new MapCoordinates();
         changed=true;
 
         initPrimitive(-1, f, size);
 
-        macroStore(layers);
+        macroStore(null);
     }
 
     /** Constructor.
@@ -138,7 +148,6 @@ public final class PrimitiveMacro extends GraphicPrimitive
         library=lib;
         layers=l;
         String key=keyT.toLowerCase(Locale.forLanguageTag("en"));
-        macro=new DrawingModel();
         macroCoord=new MapCoordinates();
         changed=true;
         setMacroFontSize(macroS);
@@ -168,7 +177,7 @@ public final class PrimitiveMacro extends GraphicPrimitive
         macroName = key;
         macroFont = macroF;
 
-        macroStore(layers);
+        macroStore(macro);
     }
 
 
@@ -188,7 +197,8 @@ public final class PrimitiveMacro extends GraphicPrimitive
         @param coordSys the coordinate system.
         @param layerV the vector containing all layers.
     */
-    private void drawMacroContents(GraphicsInterface g, MapCoordinates coordSys)
+    private void drawMacroContents(GraphicsInterface g, MapCoordinates coordSys,
+        List<LayerDesc> layerV)
     {
         /* in the macro primitive, the the virtual point represents
            the position of the reference point of the macro to be drawn. */
@@ -208,21 +218,38 @@ public final class PrimitiveMacro extends GraphicPrimitive
             macroCoord.resetMinMax();
 
             macro.setChanged(true);
+            outline=null;
+        }
+
+        // Very small macros are drawn as a rectangle.
+        if(drawOutline(g, coordSys, layerV)) {
+            return;
         }
 
-        if(isSelected()) {
-            new SelectionActions(macro).setSelectionAll(true);
-            selected = true;
-        } else if (selected) {
-            new SelectionActions(macro).setSelectionAll(false);
-            selected = false;
+        // If possible, a cached image of the contents is used.
+        if(drawCachedContents(g, coordSys, layerV)) {
+            return;
         }
 
-        macro.setDrawOnlyLayer(drawOnlyLayer);
-        macro.setDrawOnlyPads(drawOnlyPads);
+        // The contents are shared with the other instances of the macro.
+        // They are always drawn by the same view, which calculates again the
+        // coordinates only if this instance is not just a translation of the
+        // one drawn before.
+        synchronized(macro) {
+            Drawing drawingAgent;
+            if(template==null) {
+                drawingAgent = new Drawing(macro);
+            } else {
+                template.select(isSelected());
+                drawingAgent = template.getDrawing();
+            }
 
-        drawingAgent = new Drawing(macro);
-        drawingAgent.draw(g,macroCoord);
+            macro.setDrawOnlyLayer(drawOnlyLayer);
+            macro.setDrawOnlyPads(drawOnlyPads);
+
+            drawingAgent.draw(g,macroCoord);
+            needHoles=drawingAgent.getNeedHoles();
+        }
 
         if (macroCoord.getXMax()>macroCoord.getXMin() &&
             macroCoord.getYMax()>macroCoord.getYMin())
@@ -232,6 +259,190 @@ public final class PrimitiveMacro extends GraphicPrimitive
         }
     }
 
+    /** Draw a rectangle covering the macro contents, if the macro is too
+        small to be drawn completely in the given graphic context (see
+        DetailLevel). Selected macros are always drawn completely.
+        @param g the graphic context.
+        @param coordSys the coordinate system.
+        @param layerV the vector containing all layers.
+        @return true if the macro has been drawn as a rectangle.
+    */
+    private boolean drawOutline(GraphicsInterface g, MapCoordinates coordSys,
+        List<LayerDesc> layerV)
+    {
+        int size=g.getDetailLevel().getMacroSize();
+        if(size==0 || template==null || isSelected() || layerV==null) {
+            return false;
+        }
+        RectangleG inner=macro.getPrimitivesBounds();
+        if(inner==null || Math.max(inner.width, inner.height)
+            *Math.max(macroCoord.getXMagnitude(),
+                macroCoord.getYMagnitude())>=size)
+        {
+            return false;
+        }
+
+        // The contents are calculated without drawing them, to obtain
+        // their exact size. This is done only when the coordinates change.
+        if(outline==null) {
+            synchronized(macro) {
+                template.select(false);
+                macro.setDrawOnlyLayer(-1);
+                macro.setDrawOnlyPads(false);
+                template.getDrawing().calculate(macroCoord);
+            }
+            outline=new int[] {macroCoord.getXMin(), macroCoord.getYMin(),
+                macroCoord.getXMax(), macroCoord.getYMax()};
+        }
+        // The holes of the pads are not drawn.
+        needHoles=false;
+        if(outline[2]<=outline[0] || outline[3]<=outline[1]) {
+            return true;
+        }
+        coordSys.trackPoint(outline[2], outline[3]);
+        coordSys.trackPoint(outline[0], outline[1]);
+
+        // The rectangle is drawn only once, in the color of the first layer
+        // contained in the macro.
+        int l=0;
+        while(l<layerV.size()-1 && !macro.containsLayer(l)) {
+            ++l;
+        }
+        LayerDesc ld=layerV.get(l);
+        if(drawOnlyPads || drawOnlyLayer>=0 && drawOnlyLayer!=l
+            || !ld.isVisible()
+            || !g.hitClip(outline[0], outline[1], outline[2]-outline[0]+1,
+                outline[3]-outline[1]+1))
+        {
+            return true;
+        }
+        g.setColor(ld.getColor());
+        g.setAlpha(ld.getAlpha());
+        g.applyStroke(D_MIN, 0);
+        g.drawRect(outline[0], outline[1], outline[2]-outline[0],
+            outline[3]-outline[1]);
+        return true;
+    }
+
+    /** Draw the macro contents by copying an image stored in the cache (see
+        MacroRenderCache). The image is created if it is not available.
+        Selected macros are never drawn in this way.
+        @param g the graphic context.
+        @param coordSys the coordinate system.
+        @param layerV the vector containing all layers.
+        @return true if the contents have been drawn, false if it is not
+            possible to use a cached image.
+    */
+    private boolean drawCachedContents(GraphicsInterface g,
+        MapCoordinates coordSys, List<LayerDesc> layerV)
+    {
+        if(template==null || isSelected() || layerV==null) {
+            return false;
+        }
+
+        // The image is shared by all the macros whose reference point has
+        // the same fractional part, so that the results are identical to
+        // the ones obtained by drawing directly.
+        double cx=macroCoord.getXCenter();
+        double cy=macroCoord.getYCenter();
+        int ix=(int)Math.floor(cx);
+        int iy=(int)Math.floor(cy);
+
+        MacroRenderCache.Key k=new MacroRenderCache.Key(template,
+            macroCoord.getOrientation(), macroCoord.mirror,
+            macroCoord.getXMagnitude(), macroCoord.getYMagnitude(),
+            cx-ix, cy-iy, drawOnlyLayer, drawOnlyPads,
+            MacroRenderCache.getAppearance(layerV));
+        MacroRenderCache.Entry e=MacroRenderCache.get(k);
+        if(e==null) {
+            e=renderContents(g, cx-ix, cy-iy);
+            if(e==null) {
+                return false;
+            }
+            MacroRenderCache.put(k, e);
+        }
+
+        g.drawBitmap(e.bitmap, ix+e.dx, iy+e.dy);
+        needHoles=e.needHoles;
+        if(e.extremes!=null) {
+            coordSys.trackPoint(ix+e.extremes[2], iy+e.extremes[3]);
+            coordSys.trackPoint(ix+e.extremes[0], iy+e.extremes[1]);
+        }
+        return true;
+    }
+
+    /** Draw the macro contents in an off-screen image.
+        @param g the graphic context on which the image will be copied.
+        @param fx the fractional part of the x coordinate of the reference
+            point, in pixels.
+        @param fy the fractional part of the y coordinate of the reference
+            point, in pixels.
+        @return the image, or null if it can not be created.
+    */
+    private MacroRenderCache.Entry renderContents(GraphicsInterface g,
+        double fx, double fy)
+    {
+        RectangleG inner=macro.getPrimitivesBounds();
+        if(inner==null) {
+            return null;
+        }
+
+        MapCoordinates sc=new MapCoordinates();
+        sc.setXMagnitude(macroCoord.getXMagnitude());
+        sc.setYMagnitude(macroCoord.getYMagnitude());
+        sc.setXCenter(fx);
+        sc.setYCenter(fy);
+        sc.setOrientation(macroCoord.getOrientation());
+        sc.mirror=macroCoord.mirror;
+        sc.isMacro=true;
+
+        // Strokes and connection dots may extend beyond the bounding box.
+        double mg=Math.max(Globals.getDiameterConnection(),
+            Math.max(Globals.getLineWidth(), Globals.getLineWidthCircles()));
+        double xa=sc.mapXr(inner.x-mg, inner.y-mg);
+        double ya=sc.mapYr(inner.x-mg, inner.y-mg);
+        double xb=sc.mapXr((double)inner.x+inner.width+mg,
+            (double)inner.y+inner.height+mg);
+        double yb=sc.mapYr((double)inner.x+inner.width+mg,
+            (double)inner.y+inner.height+mg);
+        int x0=(int)Math.floor(Math.min(xa, xb))-BITMAP_MARGIN;
+        int y0=(int)Math.floor(Math.min(ya, yb))-BITMAP_MARGIN;
+        int w=(int)Math.ceil(Math.max(xa, xb))+BITMAP_MARGIN-x0+1;
+        int h=(int)Math.ceil(Math.max(ya, yb))+BITMAP_MARGIN-y0+1;
+
+        if(!MacroRenderCache.fits(w, h)) {
+            return null;
+        }
+        BitmapInterface b=g.createBitmap(w, h);
+        if(b==null) {
+            return null;
+        }
+
+        sc.setXCenter(fx-x0);
+        sc.setYCenter(fy-y0);
+        sc.resetMinMax();
+
+        boolean holes;
+        synchronized(macro) {
+            template.select(false);
+            macro.setChanged(true);
+            macro.setDrawOnlyLayer(drawOnlyLayer);
+            macro.setDrawOnlyPads(drawOnlyPads);
+
+            Drawing d = template.getDrawing();
+            d.draw(b.getGraphics(), sc);
+            holes=d.getNeedHoles();
+        }
+        b.finishDrawing();
+
+        int[] extremes=null;
+        if (sc.getXMax()>sc.getXMin() && sc.getYMax()>sc.getYMin()) {
+            extremes=new int[] {sc.getXMin()+x0, sc.getYMin()+y0,
+                sc.getXMax()+x0, sc.getYMax()+y0};
+        }
+        return new MacroRenderCache.Entry(b, x0, y0, holes, extremes);
+    }
+
     /** Specifies that the current primitive has been modified or not.
         If it is true, during the redraw all parameters should be calulated
         from scratch.
@@ -243,29 +454,36 @@ public final class PrimitiveMacro extends GraphicPrimitive
         macro.setChanged(c);
     }
 
-    /** Parse and store the tokenized version of the macro.
-        @layerV the array containing the layer description to be inherited.
-
+    /** Obtain the parsed version of the macro. The primitives are shared
+        with all the other instances of the same macro (see MacroTemplate).
+        @param md the description of the macro, or null if the macro is
+            empty.
     */
-    private void macroStore(List<LayerDesc> layerV)
+    private void macroStore(MacroDesc md)
     {
-        macro.setLibrary(library);          // Inherit the library
-        macro.setLayers(layerV);    // Inherit the layers
         changed=true;
+        source=md;
 
-        if (macroDesc!=null) {
-            ParserActions pa = new ParserActions(macro);
-            pa.parseString(new StringBuffer(macroDesc));
-            // Recursive call
+        if (md==null) {
+            template=null;
+            macro=new DrawingModel();
+            macro.setLibrary(library);          // Inherit the library
+            macro.setLayers(layers);    // Inherit the layers
+        } else {
+            // Recursive call, if the template has not been parsed yet.
+            template=MacroTemplate.get(md, library, layers);
+            macro=template.getModel();
         }
     }
 
-    /** Set the layer vector.
+    /** Set the layer vector. The template is shared only with the macros
+        employing the same layers, so it is obtained again.
         @param layerV the layer vector.
     */
     public void setLayers(List<LayerDesc> layerV)
     {
-        macro.setLayers(layerV);
+        layers=layerV;
+        macroStore(source);
     }
 
     /** Draw the graphic primitive on the given graphic context.
@@ -277,13 +495,20 @@ public final class PrimitiveMacro extends GraphicPrimitive
                               List layerV)
     {
         // Macros are *always* on layer 0 (they can contain elements to be
-        // drawn, of course, on other layers).
-        setLayer(0);
+        // drawn, of course, on other layers). The layer is not set at each
+        // redraw, since this would calculate again all the contents.
+        if(getLayer()!=0) {
+            setLayer(0);
+        }
         if(selectLayer(g,layerV)) {
             drawText(g, coordSys, layerV, drawOnlyLayer);
         }
 
-        drawMacroContents(g, coordSys);
+        // The layer list always contains LayerDesc objects (see
+        // selectLayer).
+        @SuppressWarnings("unchecked")
+        List<LayerDesc> l=(List<LayerDesc>)layerV;
+        drawMacroContents(g, coordSys, l);
     }
 
     /** Set the Draw Only Pads mode.
@@ -365,7 +590,7 @@ public final class PrimitiveMacro extends GraphicPrimitive
                                               + macroName+"'");
             }
             macroDesc = macro.description;
-            macroStore(layers);
+            macroStore(macro);
 
         } else {
             throw new IOException("MC: Invalid primitive:"+tokens[0]+
@@ -381,7 +606,8 @@ public final class PrimitiveMacro extends GraphicPrimitive
     */
     public boolean needsHoles()
     {
-        return drawingAgent.getNeedHoles();
+        // The macro may have never been drawn.
+        return needHoles;
     }
 
     /** Gets the distance (in primitive's coordinates space) between a
@@ -394,11 +620,6 @@ public final class PrimitiveMacro extends GraphicPrimitive
     */
     public int getDistanceToPoint(int px, int py)
     {
-        /* in the macro primitive, the the first virtual point represents
-           the position of the reference point of the macro to be drawn. */
-
-        int x1=virtualPoint[0].x;
-        int y1=virtualPoint[0].y;
         int dt=Integer.MAX_VALUE;
 
         // Here we check if the given point lies inside the text areas
@@ -409,6 +630,35 @@ public final class PrimitiveMacro extends GraphicPrimitive
 
         // If not, we need to see more throughly about the inners of the macro
 
+        PointG v=toMacroCoordinates(px, py);
+        int vx=v.x;
+        int vy=v.y;
+
+        if (macroDesc==null) {
+            System.out.println("1-Unrecognized macro "+
+                    "WARNING this can be a programming problem...");
+        } else {
+            SelectionActions sa = new SelectionActions(macro);
+            EditorActions edt=new EditorActions(macro, sa, null);
+            return Math.min(edt.distancePrimitive(vx, vy), dt);
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /** Transform the given point in the coordinate system employed inside
+        the macro.
+        @param px the x coordinate of the point.
+        @param py the y coordinate of the point.
+        @return the transformed point.
+    */
+    private PointG toMacroCoordinates(int px, int py)
+    {
+        /* in the macro primitive, the the first virtual point represents
+           the position of the reference point of the macro to be drawn. */
+
+        int x1=virtualPoint[0].x;
+        int y1=virtualPoint[0].y;
+
         int vx=px-x1+100;
         int vy= py-y1+100;
 
@@ -471,15 +721,61 @@ public final class PrimitiveMacro extends GraphicPrimitive
             }
         }
 
-        if (macroDesc==null) {
-            System.out.println("1-Unrecognized macro "+
-                    "WARNING this can be a programming problem...");
-        } else {
-            SelectionActions sa = new SelectionActions(macro);
-            EditorActions edt=new EditorActions(macro, sa, null);
-            return Math.min(edt.distancePrimitive(vx, vy), dt);
+        return new PointG(vx, vy);
+    }
+
+    /** Get a conservative bounding box of the primitive, in logical units.
+        The contents of the macro are taken into account.
+        @return the bounding box.
+    */
+    @Override
+    public RectangleG getBoundingBox()
+    {
+        RectangleG r=super.getBoundingBox();
+        RectangleG inner=macro.getPrimitivesBounds();
+
+        if(inner==null) {
+            return r;
         }
-        return Integer.MAX_VALUE;
+
+        // The transformation between the macro and the drawing is a
+        // rotation of a multiple of 90 degrees, possibly combined with a
+        // mirroring. Its coefficients are obtained by transforming the unit
+        // vectors and its inverse is the transposed matrix.
+        int x1=virtualPoint[0].x;
+        int y1=virtualPoint[0].y;
+        PointG c=toMacroCoordinates(x1, y1);
+        PointG ex=toMacroCoordinates(x1+1, y1);
+        PointG ey=toMacroCoordinates(x1, y1+1);
+        int a=ex.x-c.x;
+        int b=ey.x-c.x;
+        int cc=ex.y-c.y;
+        int d=ey.y-c.y;
+
+        if(c.x!=100 || c.y!=100 || a*d-b*cc==0) {
+            // Invalid orientation: the macro is seen from everywhere.
+            return new RectangleG(Integer.MIN_VALUE/4, Integer.MIN_VALUE/4,
+                Integer.MAX_VALUE/2, Integer.MAX_VALUE/2);
+        }
+
+        int[] vxs={inner.x-100, inner.x+inner.width-100};
+        int[] vys={inner.y-100, inner.y+inner.height-100};
+        for(int vx: vxs) {
+            for(int vy: vys) {
+                r.add(x1+a*vx+cc*vy, y1+b*vx+d*vy);
+            }
+        }
+        return r;
+    }
+
+    /** Get the smallest value getDistanceToPoint may return for points
+        lying far away from the bounding box.
+        @return the floor value, in logical units.
+    */
+    @Override
+    public int getDistanceFloor()
+    {
+        return Math.min(super.getDistanceFloor(), macro.getDistanceFloor());
     }
 
     /** Select the primitive if one of its virtual point is in the specified
@@ -552,24 +848,21 @@ public final class PrimitiveMacro extends GraphicPrimitive
         changed=true;
     }
 
-    /** Obtain a string command descripion of the primitive.
+    /** Append the string command description of the primitive.
+        @param s the buffer where the FIDOCAD command lines are appended.
         @param extensions true if FidoCadJ extensions to the old FidoCAD format
             should be active.
-        @return the FIDOCAD command line.
     */
-    public String toString(boolean extensions)
+    public void appendText(StringBuilder s, boolean extensions)
     {
-        String mirror="0";
-        if(m) {
-            mirror="1";
-        }
-
-        String s="MC "+virtualPoint[0].x+" "+virtualPoint[0].y+" "+o+" "
-                +mirror+" "+macroName+"\n";
-
-        s+=saveText(extensions);
-
-        return s;
+        s.append("MC ");
+        s.append(virtualPoint[0].x).append(' ');
+        s.append(virtualPoint[0].y).append(' ');
+        s.append(o).append(' ');
+        s.append(m?'1':'0').append(' ');
+        s.append(macroName).append('\n');
+
+        saveText(s, extensions);
     }
 
     /** Get the control parameters of the given primitive.
@@ -694,14 +987,17 @@ public final class PrimitiveMacro extends GraphicPrimitive
         macroCoord.mirror=m ^ cs.mirror;
         macroCoord.isMacro=true;
 
-        macro.setDrawOnlyLayer(drawOnlyLayer);
+        synchronized(macro) {
+            macro.setDrawOnlyLayer(drawOnlyLayer);
 
-        if(isSelected()) {
-            new SelectionActions(macro).setSelectionAll(true);
-        }
+            if(template!=null) {
+                template.select(isSelected());
+            }
 
-        macro.setDrawOnlyPads(drawOnlyPads);
-        new Export(macro).exportDrawing(exp, exportInvisible, macroCoord);
+            macro.setDrawOnlyPads(drawOnlyPads);
+            new Export(macro).exportDrawing(exp, exportInvisible,
+                macroCoord);
+        }
         exportText(exp, cs, drawOnlyLayer);
 
     }
@@ -161,7 +161,7 @@ public final class PrimitiveOval extends GraphicPrimitive
             }
             coordSys.trackPoint(xa, ya);
             coordSys.trackPoint(xb, yb);
-            w = (float) (Globals.lineWidth * coordSys.getXMagnitude());
+            w = (float) (Globals.getLineWidth() * coordSys.getXMagnitude());
             if (w < D_MIN) {
                 w = D_MIN;
             }
@@ -342,40 +342,61 @@ public final class PrimitiveOval extends GraphicPrimitive
         }
     }
 
-    /**
-     Obtain a string command descripion of the primitive.
-
-     @param extensions true if FidoCadJ extensions to the old FidoCAD format
-     should be active.
-
-     @return the FIDOCAD command line.
-     */
+    /** Get a conservative bounding box of the primitive, in logical units.
+        The distance from an empty oval is not an euclidean distance: it
+        remains small far away from thin ovals. The box is therefore
+        enlarged so that the distance is at least
+        GeometricDistances.MIN_DISTANCE outside it.
+        @return the bounding box.
+    */
     @Override
-    public String toString(boolean extensions)
+    public RectangleG getBoundingBox()
     {
-        String cmd;
+        RectangleG r=super.getBoundingBox();
+        int w=Math.abs(virtualPoint[1].x-virtualPoint[0].x);
+        int h=Math.abs(virtualPoint[1].y-virtualPoint[0].y);
+        if(!isFilled && w>0 && h>0) {
+            // The distance calculated by pointToEllipse is smaller than
+            // MIN_DISTANCE only inside an ellipse scaled by this factor.
+            double s=Math.sqrt(1.0+4.0*GeometricDistances.MIN_DISTANCE/
+                Math.min(w,h));
+            int xc=(virtualPoint[0].x+virtualPoint[1].x)/2;
+            int yc=(virtualPoint[0].y+virtualPoint[1].y)/2;
+            int dx=(int)Math.ceil(s*w/2.0)+BOX_MARGIN;
+            int dy=(int)Math.ceil(s*h/2.0)+BOX_MARGIN;
+            r.add(xc-dx, yc-dy);
+            r.add(xc+dx, yc+dy);
+        }
+        return r;
+    }
 
+    /** Append the string command description of the primitive.
+        @param s the buffer where the FIDOCAD command lines are appended.
+        @param extensions true if FidoCadJ extensions to the old FidoCAD format
+            should be active.
+    */
+    @Override
+    public void appendText(StringBuilder s, boolean extensions)
+    {
         if (isFilled) {
-            cmd = "EP ";
+            s.append("EP ");
         } else {
-            cmd = "EV ";
+            s.append("EV ");
         }
 
-        cmd += virtualPoint[0].x + " " + virtualPoint[0].y + " "
-                + +virtualPoint[1].x + " " + virtualPoint[1].y + " "
-                + getLayer() + "\n";
+        s.append(virtualPoint[0].x).append(' ');
+        s.append(virtualPoint[0].y).append(' ');
+        s.append(virtualPoint[1].x).append(' ');
+        s.append(virtualPoint[1].y).append(' ');
+        s.append(getLayer()).append('\n');
 
         if (extensions && (dashStyle > 0 || hasName() || hasValue())) {
-            String text = "0";
-            if (name.length() != 0 || value.length() != 0) {
-                text = "1";
-            }
-            cmd += "FCJ " + dashStyle + " " + text + "\n";
+            s.append("FCJ ").append(dashStyle).append(' ');
+            s.append(name.length() != 0 || value.length() != 0 ? '1' : '0');
+            s.append('\n');
         }
         // The false is needed since saveText should not write the FCJ tag.
-        cmd += saveText(false);
-
-        return cmd;
+        saveText(s, false);
     }
 
     /**
@@ -399,7 +420,7 @@ public final class PrimitiveOval extends GraphicPrimitive
                 isFilled,
                 getLayer(),
                 dashStyle,
-                Globals.lineWidth * cs.getXMagnitude());
+                Globals.getLineWidth() * cs.getXMagnitude());
     }
 
     /**
@@ -274,20 +274,47 @@ public final class PrimitivePCBLine extends GraphicPrimitive
         return distance<0?0:distance;
     }
 
-    /** Obtain a string command descripion of the primitive.
-        @param extensions true if FidoCadJ extensions to the old FidoCAD format
-            should be active.
-        @return the FIDOCAD command line.
+    /** Get a conservative bounding box of the primitive, in logical units.
+        The width of the line is taken into account.
+        @return the bounding box.
     */
-    public String toString(boolean extensions)
+    @Override
+    public RectangleG getBoundingBox()
     {
-        String s= "PL "+virtualPoint[0].x+" "+virtualPoint[0].y+" "+
-            +virtualPoint[1].x+" "+virtualPoint[1].y+" "+
-            roundIntelligently(width)+" "+getLayer()+"\n";
+        RectangleG r=super.getBoundingBox();
+        int w=(int)Math.ceil(Math.abs(width)/2.0f);
+        r.grow(w, w);
+        return r;
+    }
 
-        s+=saveText(extensions);
+    /** Get the smallest value getDistanceToPoint may return for points
+        lying far away from the bounding box. The half width of the line is
+        subtracted from the distances.
+        @return the floor value, in logical units.
+    */
+    @Override
+    public int getDistanceFloor()
+    {
+        return Math.max(0,
+            (int)(GeometricDistances.MIN_DISTANCE-width/2.0f));
+    }
 
-        return s;
+    /** Append the string command description of the primitive.
+        @param s the buffer where the FIDOCAD command lines are appended.
+        @param extensions true if FidoCadJ extensions to the old FidoCAD format
+            should be active.
+    */
+    public void appendText(StringBuilder s, boolean extensions)
+    {
+        s.append("PL ");
+        s.append(virtualPoint[0].x).append(' ');
+        s.append(virtualPoint[0].y).append(' ');
+        s.append(virtualPoint[1].x).append(' ');
+        s.append(virtualPoint[1].y).append(' ');
+        appendRounded(s, width);
+        s.append(' ').append(getLayer()).append('\n');
+
+        saveText(s, extensions);
     }
 
     /** Export the primitive on a vector graphic format.
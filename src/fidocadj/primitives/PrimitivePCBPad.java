@@ -9,6 +9,7 @@ import fidocadj.geom.GeometricDistances;
 import fidocadj.geom.MapCoordinates;
 import fidocadj.globals.Globals;
 import fidocadj.graphic.GraphicsInterface;
+import fidocadj.graphic.RectangleG;
 
 /** Class to handle the PCB pad primitive.
 
@@ -380,18 +381,47 @@ public final class PrimitivePCBPad extends GraphicPrimitive
         return distance>0?distance:0;
     }
 
-    /** Obtain a string command descripion of the primitive.
+    /** Get a conservative bounding box of the primitive, in logical units.
+        The size of the pad is taken into account.
+        @return the bounding box.
+    */
+    @Override
+    public RectangleG getBoundingBox()
+    {
+        RectangleG r=super.getBoundingBox();
+        r.grow(Math.abs(rx)/2+1, Math.abs(ry)/2+1);
+        return r;
+    }
+
+    /** Get the smallest value getDistanceToPoint may return for points
+        lying far away from the bounding box. Half of the size of the pad is
+        subtracted from the distances.
+        @return the floor value, in logical units.
+    */
+    @Override
+    public int getDistanceFloor()
+    {
+        return Math.max(0,
+            GeometricDistances.MIN_DISTANCE-Math.min(rx,ry)/2);
+    }
+
+    /** Append the string command description of the primitive.
+        @param s the buffer where the FIDOCAD command lines are appended.
         @param extensions true if FidoCadJ extensions to the old FidoCAD format
             should be active.
-        @return the FIDOCAD command line.
     */
-    public String toString(boolean extensions)
+    public void appendText(StringBuilder s, boolean extensions)
     {
-        String s = "PA "+virtualPoint[0].x+" "+virtualPoint[0].y+" "+
-            rx+" "+ry+" "+ri+" "+sty+" "+getLayer()+"\n";
-
-        s+=saveText(extensions);
-        return s;
+        s.append("PA ");
+        s.append(virtualPoint[0].x).append(' ');
+        s.append(virtualPoint[0].y).append(' ');
+        s.append(rx).append(' ');
+        s.append(ry).append(' ');
+        s.append(ri).append(' ');
+        s.append(sty).append(' ');
+        s.append(getLayer()).append('\n');
+
+        saveText(s, extensions);
     }
 
     /** Export the primitive on a vector graphic format.
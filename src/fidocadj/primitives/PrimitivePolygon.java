@@ -45,6 +45,8 @@ public final class PrimitivePolygon extends GraphicPrimitive
     private boolean isFilled;
     private int dashStyle;
     private PolygonInterface p;
+    // The kind of graphic context which created p.
+    private Class<?> shapeContext;
 
     // If needed, we might increase this stuff.
     // In other words, we initially create space for storing 5 points and
@@ -293,11 +295,15 @@ public final class PrimitivePolygon extends GraphicPrimitive
             return;
         }
         drawText(g, coordSys, layerV, -1);
-        if(changed) {
+        // The cached polygon is created again if it comes from another kind
+        // of graphic context (for example, if the primitive has been
+        // calculated with GraphicsNull without being drawn).
+        if(changed || shapeContext!=g.getClass()) {
             changed=false;
+            shapeContext=g.getClass();
             createPolygon(coordSys, g);
 
-            w = (float)(Globals.lineWidth*coordSys.getXMagnitude());
+            w = (float)(Globals.getLineWidth()*coordSys.getXMagnitude());
             if (w<D_MIN) { w=D_MIN; }
         }
 
@@ -515,44 +521,37 @@ public final class PrimitivePolygon extends GraphicPrimitive
         return distance;
     }
 
-    /** Obtain a string command descripion of the primitive.
+    /** Append the string command description of the primitive.
+        @param s the buffer where the FIDOCAD command lines are appended.
         @param extensions true if FidoCadJ extensions to the old FidoCAD format
             should be active.
-        @return the FIDOCAD command line.
     */
-    public String toString(boolean extensions)
+    public void appendText(StringBuilder s, boolean extensions)
     {
-        StringBuffer temp=new StringBuffer(25);
-
         if(isFilled) {
-            temp.append("PP ");
+            s.append("PP ");
         } else {
-            temp.append("PV ");
+            s.append("PV ");
         }
 
         for(int i=0; i<nPoints;++i) {
-            temp.append(virtualPoint[i].x);
-            temp.append(" ");
-            temp.append(virtualPoint[i].y);
-            temp.append(" ");
+            s.append(virtualPoint[i].x);
+            s.append(' ');
+            s.append(virtualPoint[i].y);
+            s.append(' ');
         }
 
-        temp.append(getLayer());
-        temp.append("\n");
-
-        String cmd=temp.toString();
+        s.append(getLayer());
+        s.append('\n');
 
         if(extensions && (dashStyle>0 || hasName() || hasValue())) {
-            String text = "0";
-            if (name.length()!=0 || value.length()!=0) {
-                text = "1";
-            }
-            cmd+="FCJ "+dashStyle+" "+text+"\n";
+            s.append("FCJ ").append(dashStyle).append(' ');
+            s.append(name.length()!=0 || value.length()!=0 ? '1' : '0');
+            s.append('\n');
         }
 
         // The false is needed since saveText should not write the FCJ tag.
-        cmd+=saveText(false);
-        return cmd;
+        saveText(s, false);
     }
 
     /** Export the primitive on a vector graphic format.
@@ -574,7 +573,7 @@ public final class PrimitivePolygon extends GraphicPrimitive
         }
 
         exp.exportPolygon(vertices, nPoints, isFilled, getLayer(), dashStyle,
-            Globals.lineWidth*cs.getXMagnitude());
+            Globals.getLineWidth()*cs.getXMagnitude());
     }
     /** Get the number of the virtual point associated to the Name property
         @return the number of the virtual point associated to the Name property
@@ -160,7 +160,7 @@ public final class PrimitiveRectangle extends GraphicPrimitive
                 yb=y2;
             }
             // Calculate the stroke width
-            w = (float)(Globals.lineWidth*coordSys.getXMagnitude());
+            w = (float)(Globals.getLineWidth()*coordSys.getXMagnitude());
             if (w<D_MIN) { w=D_MIN; }
 
             width = xb-xa;
@@ -335,36 +335,32 @@ public final class PrimitiveRectangle extends GraphicPrimitive
         return GeometricDistances.pointToRectangle(xa,ya, xb-xa, yb-ya,px,py);
     }
 
-    /** Obtain a string command descripion of the primitive.
+    /** Append the string command description of the primitive.
+        @param s the buffer where the FIDOCAD command lines are appended.
         @param extensions true if FidoCadJ extensions to the old FidoCAD format
             should be active.
-        @return the FIDOCAD command line.
     */
-    public String toString(boolean extensions)
+    public void appendText(StringBuilder s, boolean extensions)
     {
-        String cmd;
-
         if (isFilled) {
-            cmd="RP ";
+            s.append("RP ");
         } else {
-            cmd="RV ";
+            s.append("RV ");
         }
 
-        cmd+=virtualPoint[0].x+" "+virtualPoint[0].y+" "+
-            +virtualPoint[1].x+" "+virtualPoint[1].y+" "+
-            getLayer()+"\n";
+        s.append(virtualPoint[0].x).append(' ');
+        s.append(virtualPoint[0].y).append(' ');
+        s.append(virtualPoint[1].x).append(' ');
+        s.append(virtualPoint[1].y).append(' ');
+        s.append(getLayer()).append('\n');
 
         if(extensions && (dashStyle>0 || hasName() || hasValue())) {
-            String text = "0";
-            if (name.length()!=0 || value.length()!=0) {
-                text = "1";
-            }
-            cmd+="FCJ "+dashStyle+" "+text+"\n";
+            s.append("FCJ ").append(dashStyle).append(' ');
+            s.append(name.length()!=0 || value.length()!=0 ? '1' : '0');
+            s.append('\n');
         }
         // The false is needed since saveText should not write the FCJ tag.
-        cmd+=saveText(false);
-
-        return cmd;
+        saveText(s, false);
     }
 
     /** Export the primitive on a vector graphic format.
@@ -384,7 +380,7 @@ public final class PrimitiveRectangle extends GraphicPrimitive
                        isFilled,
                        getLayer(),
                        dashStyle,
-                       Globals.lineWidth*cs.getXMagnitude());
+                       Globals.getLineWidth()*cs.getXMagnitude());
     }
 
     /** Get the number of the virtual point associated to the Name property
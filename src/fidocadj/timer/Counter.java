@@ -0,0 +1,73 @@
+package fidocadj.timer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Counter: count how many times something happens. The class can be used
+    by many threads at the same time, with a very small overhead.
+
+    <pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+    </pre>
+
+    @author Davide Bucci
+*/
+public final class Counter
+{
+    private final String name;
+    private final LongAdder value=new LongAdder();
+
+    /** Standard constructor. The instances are obtained by
+        Metrics.getCounter.
+        @param n the name of the counter.
+    */
+    Counter(String n)
+    {
+        name=n;
+    }
+
+    /** Get the name of the counter.
+        @return the name.
+    */
+    public String getName()
+    {
+        return name;
+    }
+
+    /** Add one to the counter.
+    */
+    public void increment()
+    {
+        value.increment();
+    }
+
+    /** Get the value of the counter.
+        @return the value.
+    */
+    public long get()
+    {
+        return value.sum();
+    }
+
+    /** Set the counter to zero.
+    */
+    public void reset()
+    {
+        value.reset();
+    }
+}
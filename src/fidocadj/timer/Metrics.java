@@ -0,0 +1,235 @@
+package fidocadj.timer;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/** Metrics: collect the measurements done while FidoCadJ is running, so
+    that the performances can be checked without attaching a profiler.
+
+    Each operation has its own TimeStats, obtained by getTimer, and each
+    event to be counted its own Counter. They are identified by a name,
+    where the dots separate the groups (for example "paint.grid"). The
+    measurements can be read through JMX (see registerMBean), through JFR
+    (see TimingEvent) or printed by getReport (-stats command line option).
+
+    <pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+    </pre>
+
+    @author Davide Bucci
+*/
+public final class Metrics
+{
+    private static final String MBEAN_NAME="fidocadj:type=Metrics";
+
+    private static final Map<String, TimeStats> TIMERS=
+        new ConcurrentHashMap<String, TimeStats>();
+    private static final Map<String, Counter> COUNTERS=
+        new ConcurrentHashMap<String, Counter>();
+
+    private static boolean registered;
+
+    /** Ensure that this is an utility class.
+    */
+    private Metrics()
+    {
+    }
+
+    /** Get the statistics about an operation, creating them if needed.
+        @param name the name of the operation.
+        @return the statistics.
+    */
+    public static TimeStats getTimer(String name)
+    {
+        return TIMERS.computeIfAbsent(name, TimeStats::new);
+    }
+
+    /** Get a counter, creating it if needed.
+        @param name the name of the counter.
+        @return the counter.
+    */
+    public static Counter getCounter(String name)
+    {
+        return COUNTERS.computeIfAbsent(name, Counter::new);
+    }
+
+    /** Discard all the measurements.
+    */
+    public static void reset()
+    {
+        for(TimeStats t : TIMERS.values()) {
+            t.reset();
+        }
+        for(Counter c : COUNTERS.values()) {
+            c.reset();
+        }
+    }
+
+    /** Get all the measurements in a readable form. The times are given in
+        milliseconds. Operations which have never been measured and counters
+        which are zero are not shown.
+        @return the report.
+    */
+    public static String getReport()
+    {
+        StringBuilder s=new StringBuilder(1024);
+        s.append(String.format(Locale.US, "%-28s %8s %9s %9s %9s %9s %9s%n",
+            "Operation", "Count", "Mean", "p50", "p95", "p99", "Max"));
+        for(TimeStats t : new TreeMap<String, TimeStats>(TIMERS).values()) {
+            if(t.getCount()==0) {
+                continue;
+            }
+            s.append(String.format(Locale.US,
+                "%-28s %8d %9.3f %9.3f %9.3f %9.3f %9.3f%n",
+                t.getName(), t.getCount(), toMillis(t.getMean()),
+                toMillis(t.getPercentile(50)), toMillis(t.getPercentile(95)),
+                toMillis(t.getPercentile(99)), toMillis(t.getMax())));
+        }
+        boolean first=true;
+        for(Counter c : new TreeMap<String, Counter>(COUNTERS).values()) {
+            long v=c.get();
+            if(v==0) {
+                continue;
+            }
+            if(first) {
+                s.append(String.format(Locale.US, "%n%-46s %12s%n",
+                    "Counter", "Value"));
+                first=false;
+            }
+            s.append(String.format(Locale.US, "%-46s %12d%n",
+                c.getName(), v));
+        }
+        return s.toString();
+    }
+
+    /** Make the measurements available through JMX, in the platform MBean
+        server. Calling this method more than once has no effect.
+    */
+    public static synchronized void registerMBean()
+    {
+        if(registered) {
+            return;
+        }
+        try {
+            MBeanServer server=ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new Bean(), new ObjectName(MBEAN_NAME));
+            registered=true;
+        } catch (JMException | SecurityException eE) {
+            System.err.println("Unable to register the metrics: "+eE);
+        }
+    }
+
+    /** Convert a time in milliseconds.
+        @param ns the time in nanoseconds.
+        @return the time in milliseconds.
+    */
+    private static double toMillis(double ns)
+    {
+        return ns/1e6;
+    }
+
+    /** Build a map with a value for each operation measured.
+        @param f the function giving the value.
+        @return the map, sorted by name.
+    */
+    private static Map<String, Double> timeMap(ToDoubleFunction<TimeStats> f)
+    {
+        Map<String, Double> m=new TreeMap<String, Double>();
+        for(TimeStats t : TIMERS.values()) {
+            m.put(t.getName(), toMillis(f.applyAsDouble(t)));
+        }
+        return m;
+    }
+
+    /** Build a map with a value for each operation measured or for each
+        counter.
+        @param c the operations or the counters.
+        @param n the function giving the name.
+        @param f the function giving the value.
+        @return the map, sorted by name.
+    */
+    private static <T> Map<String, Long> countMap(Collection<T> c,
+        Function<T, String> n, ToLongFunction<T> f)
+    {
+        Map<String, Long> m=new TreeMap<String, Long>();
+        for(T t : c) {
+            m.put(n.apply(t), f.applyAsLong(t));
+        }
+        return m;
+    }
+
+    /** The object registered in the MBean server.
+    */
+    private static final class Bean implements MetricsMXBean
+    {
+        @Override public Map<String, Long> getCounts()
+        {
+            return countMap(TIMERS.values(), TimeStats::getName,
+                TimeStats::getCount);
+        }
+
+        @Override public Map<String, Double> getMeanTimes()
+        {
+            return timeMap(TimeStats::getMean);
+        }
+
+        @Override public Map<String, Double> getP50Times()
+        {
+            return timeMap(t -> t.getPercentile(50));
+        }
+
+        @Override public Map<String, Double> getP95Times()
+        {
+            return timeMap(t -> t.getPercentile(95));
+        }
+
+        @Override public Map<String, Double> getP99Times()
+        {
+            return timeMap(t -> t.getPercentile(99));
+        }
+
+        @Override public Map<String, Double> getMaxTimes()
+        {
+            return timeMap(TimeStats::getMax);
+        }
+
+        @Override public Map<String, Long> getCounters()
+        {
+            return countMap(COUNTERS.values(), Counter::getName,
+                Counter::get);
+        }
+
+        @Override public String getReport()
+        {
+            return Metrics.getReport();
+        }
+
+        @Override public void reset()
+        {
+            Metrics.reset();
+        }
+    }
+}
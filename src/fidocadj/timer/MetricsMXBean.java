@@ -0,0 +1,77 @@
+package fidocadj.timer;
+
+import java.util.Map;
+
+/** MetricsMXBean: the interface by which the measurements collected by
+    Metrics are shown through JMX (for example in JConsole or VisualVM),
+    under the name fidocadj:type=Metrics. All the times are in
+    milliseconds.
+
+    <pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+    </pre>
+
+    @author Davide Bucci
+*/
+public interface MetricsMXBean
+{
+    /** Get the number of times each operation has been measured.
+        @return a map from the name of the operation to the count.
+    */
+    Map<String, Long> getCounts();
+
+    /** Get the average time needed by each operation.
+        @return a map from the name of the operation to the time.
+    */
+    Map<String, Double> getMeanTimes();
+
+    /** Get the median of the time needed by each operation.
+        @return a map from the name of the operation to the time.
+    */
+    Map<String, Double> getP50Times();
+
+    /** Get the 95th percentile of the time needed by each operation.
+        @return a map from the name of the operation to the time.
+    */
+    Map<String, Double> getP95Times();
+
+    /** Get the 99th percentile of the time needed by each operation.
+        @return a map from the name of the operation to the time.
+    */
+    Map<String, Double> getP99Times();
+
+    /** Get the longest time needed by each operation.
+        @return a map from the name of the operation to the time.
+    */
+    Map<String, Double> getMaxTimes();
+
+    /** Get the value of all the counters.
+        @return a map from the name of the counter to its value.
+    */
+    Map<String, Long> getCounters();
+
+    /** Get all the measurements in a readable form.
+        @return the report, one line for each operation or counter.
+    */
+    String getReport();
+
+    /** Discard all the measurements.
+    */
+    void reset();
+}
@@ -41,15 +41,23 @@ public class MyTimer
     */
     public MyTimer()
     {
-        start = System.currentTimeMillis();
+        start = System.nanoTime();
     }
 
     /** Get the elapsed time from class construction.
-        @return the elapsed time in milliseconds. Time resolution will
-        depend on your operating system.
+        @return the elapsed time in milliseconds.
     */
     public long getElapsed()
     {
-        return System.currentTimeMillis() - start;
+        return getElapsedNanos() / 1000000L;
+    }
+
+    /** Get the elapsed time from class construction.
+        @return the elapsed time in nanoseconds. The measurement is not
+        affected by changes of the system clock.
+    */
+    public long getElapsedNanos()
+    {
+        return System.nanoTime() - start;
     }
 }
\ No newline at end of file
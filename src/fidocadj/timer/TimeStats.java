@@ -0,0 +1,190 @@
+package fidocadj.timer;
+
+import java.util.Arrays;
+
+/** TimeStats: statistics about the time needed by an operation. The
+    number of measurements, the total, the minimum and the maximum are kept
+    since the start (or the last reset). The percentiles are calculated on
+    the last SAMPLES measurements only, so that they follow the recent
+    behaviour of the program.
+
+    The class can be used by many threads at the same time. Each measurement
+    is also emitted as a JFR event (see TimingEvent) when Java Flight
+    Recorder is active.
+
+    <pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+    </pre>
+
+    @author Davide Bucci
+*/
+public final class TimeStats
+{
+    // Number of measurements employed for the percentiles.
+    private static final int SAMPLES=1024;
+
+    private final String name;
+
+    // Last measurements, in nanoseconds (circular buffer).
+    private final long[] samples=new long[SAMPLES];
+    private int position;
+
+    private long count;
+    private long total;
+    private long min=Long.MAX_VALUE;
+    private long max;
+    private long last;
+
+    /** Standard constructor. The instances are obtained by
+        Metrics.getTimer.
+        @param n the name of the operation measured.
+    */
+    TimeStats(String n)
+    {
+        name=n;
+    }
+
+    /** Get the name of the operation measured.
+        @return the name.
+    */
+    public String getName()
+    {
+        return name;
+    }
+
+    /** Start a measurement.
+        @return the current time, to be given to stop.
+    */
+    public static long start()
+    {
+        return System.nanoTime();
+    }
+
+    /** End a measurement.
+        @param start the value returned by start.
+        @return the time elapsed, in nanoseconds.
+    */
+    public long stop(long start)
+    {
+        long t=System.nanoTime()-start;
+        add(t);
+        return t;
+    }
+
+    /** Add a measurement.
+        @param t the time needed by the operation, in nanoseconds.
+    */
+    public void add(long t)
+    {
+        synchronized(this) {
+            samples[position]=t;
+            position=(position+1)%SAMPLES;
+            ++count;
+            total+=t;
+            min=Math.min(min, t);
+            max=Math.max(max, t);
+            last=t;
+        }
+        TimingEvent e=new TimingEvent();
+        if(e.shouldCommit()) {
+            e.operation=name;
+            e.time=t;
+            e.commit();
+        }
+    }
+
+    /** Get the number of measurements.
+        @return the number of measurements.
+    */
+    public synchronized long getCount()
+    {
+        return count;
+    }
+
+    /** Get the total time measured.
+        @return the time in nanoseconds.
+    */
+    public synchronized long getTotal()
+    {
+        return total;
+    }
+
+    /** Get the shortest time measured.
+        @return the time in nanoseconds, or 0 if nothing has been measured.
+    */
+    public synchronized long getMin()
+    {
+        return count==0?0:min;
+    }
+
+    /** Get the longest time measured.
+        @return the time in nanoseconds.
+    */
+    public synchronized long getMax()
+    {
+        return max;
+    }
+
+    /** Get the last time measured.
+        @return the time in nanoseconds.
+    */
+    public synchronized long getLast()
+    {
+        return last;
+    }
+
+    /** Get the average time.
+        @return the time in nanoseconds, or 0 if nothing has been measured.
+    */
+    public synchronized double getMean()
+    {
+        return count==0?0:(double)total/count;
+    }
+
+    /** Get a percentile of the last measurements.
+        @param p the percentile, between 0 and 100 (e.g. 95).
+        @return the time in nanoseconds, or 0 if nothing has been measured.
+    */
+    public long getPercentile(double p)
+    {
+        long[] s;
+        synchronized(this) {
+            int n=(int)Math.min(count, SAMPLES);
+            if(n==0) {
+                return 0;
+            }
+            s=Arrays.copyOf(samples, n);
+        }
+        Arrays.sort(s);
+        int i=(int)Math.ceil(p/100.0*s.length)-1;
+        return s[Math.max(0, Math.min(s.length-1, i))];
+    }
+
+    /** Discard all the measurements.
+    */
+    public synchronized void reset()
+    {
+        position=0;
+        count=0;
+        total=0;
+        min=Long.MAX_VALUE;
+        max=0;
+        last=0;
+    }
+}
@@ -0,0 +1,52 @@
+package fidocadj.timer;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** TimingEvent: JFR event emitted each time an operation is measured by
+    TimeStats. The events can be recorded for example with:
+    <pre>
+    java -XX:StartFlightRecording:filename=rec.jfr -jar fidocadj.jar
+    </pre>
+
+    <pre>
+    This file is part of FidoCadJ.
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+    </pre>
+
+    @author Davide Bucci
+*/
+@Name("fidocadj.Timing")
+@Label("FidoCadJ Timing")
+@Category("FidoCadJ")
+@Description("Time needed by an operation of FidoCadJ")
+@StackTrace(false)
+final class TimingEvent extends Event
+{
+    @Label("Operation")
+    String operation;
+
+    @Label("Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long time;
+}
@@ -0,0 +1,235 @@
+package fidocadj.undo;
+
+import java.util.*;
+
+/** Differences between two versions of a drawing, described as text. Each
+    version is made by a header (the configuration of the drawing) and by a
+    list of strings, one for each primitive. The differences are stored as a
+    list of hunks: each hunk replaces some consecutive strings of the old
+    version with some strings of the new version. In this way, the memory
+    needed is proportional to the modification, not to the drawing size.
+
+    <pre>
+
+    FidoCadJ is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    FidoCadJ is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with FidoCadJ. If not,
+    @see <a href=http://www.gnu.org/licenses/>http://www.gnu.org/licenses/</a>.
+
+    Copyright 2024 by Davide Bucci
+    </pre>
+
+    @author Davide Bucci
+*/
+public final class UndoDelta
+{
+    /** A set of consecutive strings replaced by other ones.
+    */
+    public static final class Hunk
+    {
+        private final int oldStart;
+        private final int newStart;
+        private final String[] oldLines;
+        private final String[] newLines;
+
+        Hunk(int os, int ns, String[] ol, String[] nl)
+        {
+            oldStart=os;
+            newStart=ns;
+            oldLines=ol;
+            newLines=nl;
+        }
+
+        /** Get the position where the hunk should be applied. Hunks must
+            be applied in order.
+            @param forward true if the delta is being applied from the old
+                version to the new one, false for the opposite.
+            @return the position in the list of strings.
+        */
+        public int getPosition(boolean forward)
+        {
+            return forward?newStart:oldStart;
+        }
+
+        /** Get the strings which should be removed.
+            @param forward true if the delta is being applied from the old
+                version to the new one, false for the opposite.
+            @return the strings to be removed.
+        */
+        public String[] getRemoved(boolean forward)
+        {
+            return forward?oldLines:newLines;
+        }
+
+        /** Get the strings which should be inserted.
+            @param forward true if the delta is being applied from the old
+                version to the new one, false for the opposite.
+            @return the strings to be inserted.
+        */
+        public String[] getInserted(boolean forward)
+        {
+            return forward?newLines:oldLines;
+        }
+    }
+
+    private final String oldHeader;
+    private final String newHeader;
+    private final List<Hunk> hunks;
+
+    /** Create a delta.
+        @param oh the old header.
+        @param nh the new header.
+        @param h the hunks, in increasing order.
+    */
+    private UndoDelta(String oh, String nh, List<Hunk> h)
+    {
+        oldHeader=oh;
+        newHeader=nh;
+        hunks=h;
+    }
+
+    /** Calculate the differences between two versions of a drawing. Each
+        string can be associated to an object (the primitive it describes):
+        strings which are identical and associated to the same object in
+        both versions are considered as unchanged. Objects which are not
+        modified are supposed to keep their relative order.
+        @param oldHeader the header of the old version.
+        @param oldLines the strings of the old version.
+        @param oldRefs the objects associated to the old strings (elements
+            may be null).
+        @param newHeader the header of the new version.
+        @param newLines the strings of the new version.
+        @param newRefs the objects associated to the new strings (elements
+            may be null).
+        @return the differences.
+    */
+    public static UndoDelta compute(String oldHeader, List<String> oldLines,
+        List<?> oldRefs, String newHeader, List<String> newLines,
+        List<?> newRefs)
+    {
+        Map<Object, Integer> oldIndex=new IdentityHashMap<Object, Integer>();
+        for(int i=0; i<oldRefs.size(); ++i) {
+            if(oldRefs.get(i)!=null) {
+                oldIndex.put(oldRefs.get(i), Integer.valueOf(i));
+            }
+        }
+
+        List<Hunk> h=new ArrayList<Hunk>();
+        int lastOld=-1;
+        int lastNew=-1;
+        for(int j=0; j<newLines.size(); ++j) {
+            Object r=newRefs.get(j);
+            Integer oi=r==null?null:oldIndex.get(r);
+            if(oi!=null && oi.intValue()>lastOld
+                && oldLines.get(oi.intValue()).equals(newLines.get(j)))
+            {
+                addHunk(h, oldLines, lastOld+1, oi.intValue(),
+                    newLines, lastNew+1, j);
+                lastOld=oi.intValue();
+                lastNew=j;
+            }
+        }
+        addHunk(h, oldLines, lastOld+1, oldLines.size(),
+            newLines, lastNew+1, newLines.size());
+
+        return new UndoDelta(oldHeader, newHeader, h);
+    }
+
+    /** Add a hunk, if the given ranges are different. Identical strings at
+        the beginning and at the end of the ranges are not taken into
+        account (this happens when the objects have been replaced, for
+        example when a file is loaded again).
+        @param h the list of hunks.
+        @param ol the old strings.
+        @param os the beginning of the old range.
+        @param oe the end of the old range (excluded).
+        @param nl the new strings.
+        @param ns the beginning of the new range.
+        @param ne the end of the new range (excluded).
+    */
+    private static void addHunk(List<Hunk> h, List<String> ol, int os,
+        int oe, List<String> nl, int ns, int ne)
+    {
+        int s1=os;
+        int s2=ns;
+        int e1=oe;
+        int e2=ne;
+        while(s1<e1 && s2<e2 && ol.get(s1).equals(nl.get(s2))) {
+            ++s1;
+            ++s2;
+        }
+        while(s1<e1 && s2<e2 && ol.get(e1-1).equals(nl.get(e2-1))) {
+            --e1;
+            --e2;
+        }
+        if(s1==e1 && s2==e2) {
+            return;
+        }
+        String[] o=ol.subList(s1, e1).toArray(new String[e1-s1]);
+        String[] n=nl.subList(s2, e2).toArray(new String[e2-s2]);
+        h.add(new Hunk(s1, s2, o, n));
+    }
+
+    /** Get the hunks describing the differences, in the order in which they
+        should be applied.
+        @return the list of hunks.
+    */
+    public List<Hunk> getHunks()
+    {
+        return Collections.unmodifiableList(hunks);
+    }
+
+    /** Get the header obtained when applying the delta.
+        @param forward true if the delta is being applied from the old
+            version to the new one, false for the opposite.
+        @return the header.
+    */
+    public String getHeader(boolean forward)
+    {
+        return forward?newHeader:oldHeader;
+    }
+
+    /** Check if the header is different in the two versions.
+        @return true if the header has been changed.
+    */
+    public boolean isHeaderChanged()
+    {
+        return !oldHeader.equals(newHeader);
+    }
+
+    /** Apply the delta to a list of strings.
+        @param lines the strings. They should correspond to the old version
+            if forward is true, to the new version otherwise.
+        @param forward true if the delta is being applied from the old
+            version to the new one, false for the opposite.
+    */
+    public void apply(List<String> lines, boolean forward)
+    {
+        for(Hunk h: hunks) {
+            int p=h.getPosition(forward);
+            lines.subList(p, p+h.getRemoved(forward).length).clear();
+            lines.addAll(p, Arrays.asList(h.getInserted(forward)));
+        }
+    }
+
+    /** Get the number of strings stored in the delta.
+        @return the number of strings.
+    */
+    public int size()
+    {
+        int n=0;
+        for(Hunk h: hunks) {
+            n+=h.oldLines.length+h.newLines.length;
+        }
+        return n;
+    }
+}
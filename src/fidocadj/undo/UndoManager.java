@@ -94,11 +94,20 @@ public class UndoManager
         // edit: you can not redo or merge the old undo "timeline" with the
         // new one.
 
-        for(int i=pointer; i<undoBuffer.size();++i) {
+        while(undoBuffer.size()>pointer) {
             undoBuffer.remove(pointer);
         }
     }
 
+    /** Get the states contained in the buffer, from the oldest to the most
+        recent one.
+        @return the states (the list can not be modified).
+    */
+    public List<UndoState> getStates()
+    {
+        return Collections.unmodifiableList(undoBuffer);
+    }
+
     /** Checks if the next operation is done on a library instead than on a
         drawing.
         @return true if the next operation is on a library.
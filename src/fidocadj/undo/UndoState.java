@@ -25,8 +25,14 @@ package fidocadj.undo;
 */
 public class UndoState
 {
-    // Contains a textual description of the drawing
-    public String text;
+    // Differences in the textual description of the drawing, with respect
+    // to the previous state.
+    public UndoDelta delta;
+    // Number identifying this state.
+    public int serial;
+    // Number identifying the state with respect to which the delta has been
+    // calculated.
+    public int previousSerial;
     // Is true if there has been a modification of the drawing: something
     // that needs the file to be saved, unless the user wants to discard
     // changes.
@@ -45,7 +51,7 @@ public class UndoState
     */
     public UndoState()
     {
-        text="";
+        delta=null;
         isModified=false;
         fileName="";
         libraryDir="";
@@ -57,7 +63,9 @@ public class UndoState
     */
     @Override public String toString()
     {
-        return "text="+text+"\nfileName="+fileName+
+        return "serial="+serial+"\npreviousSerial="+previousSerial+
+            "\ndelta="+(delta==null?0:delta.size())+" lines"+
+            "\nfileName="+fileName+
             "\nOperation on a library: "+libraryOperation+
             "\nlibraryDir="+libraryDir;
     }